@@ -12,6 +12,8 @@ import java.util.Stack;
 
 import bolts.Continuation;
 import bolts.Task;
+import io.hypergroup.hyper.BlockingFetchDetector;
+import io.hypergroup.hyper.FetchPolicy;
 import io.hypergroup.hyper.Hyper;
 import io.hypergroup.hyper.HyperContext;
 import io.hypergroup.hyper.json.HyperJsons;
@@ -34,6 +36,9 @@ public class HyperActivity extends Activity {
             .setAsyncExecutor(Task.BACKGROUND_EXECUTOR)
             .setNetworkExecutor(Task.BACKGROUND_EXECUTOR)
             .setHttpClient(HyperJsons.Client.createClient(this, "cache" + ((int) (1000000000 * Math.random())), 1024 * 1024 * 100))
+            // never fetch from getView, and find out where we tried to
+            .setFetchPolicy(FetchPolicy.MAIN_THREAD_CACHE_ONLY)
+            .setBlockingFetchDetector(BuildConfig.DEBUG ? new BlockingFetchDetector() : null)
             .build();
 
         try {
@@ -4,24 +4,38 @@ import android.content.Context;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.ArrayAdapter;
 
 import java.util.ArrayList;
 import java.util.List;
 
+import bolts.Task;
+import io.hypergroup.hyper.DataDiff;
 import io.hypergroup.hyper.Hyper;
+import io.hypergroup.hyper.Pending;
+import io.hypergroup.hyper.Prefetcher;
 import io.hypergroup.hyper.exception.HyperException;
 
-public class HyperAdapter extends ArrayAdapter<HyperView.Entry> {
+public class HyperAdapter extends ArrayAdapter<HyperView.Entry> implements Prefetcher.Source {
 
     private static final String TAG = "HyperAdapter";
 
+    /**
+     * @return The value at a key, or a Pending for it while it is fetched
+     */
+    static Object valueOf(Hyper node, String key) throws Exception {
+        Pending pending = node.getPending(key);
+        Task<Object> task = pending.getTask();
+        return task.isCompleted() && !task.isFaulted() ? task.getResult() : pending;
+    }
+
     static void addKeyEntries(Hyper node, List<HyperView.Entry> entries) {
         String[] keys = node.getAvailableKeys();
         for (String key : keys) {
             if (!"collection".equals(key) && !"href".equals(key)) {
                 try {
-                    entries.add(new HyperView.Entry(node, key, node.get(key)));
+                    entries.add(new HyperView.Entry(node, key, valueOf(node, key)));
                 } catch (Exception ex) {
                     Log.e(TAG, "Error getting attribute " + key, ex);
                 }
@@ -53,8 +67,66 @@ public class HyperAdapter extends ArrayAdapter<HyperView.Entry> {
         return entries;
     }
 
+    private final List<HyperView.Entry> mEntries;
+
     public HyperAdapter(Context context, Hyper node) {
-        super(context, 0, makeEntries(node));
+        this(context, makeEntries(node));
+    }
+
+    private HyperAdapter(Context context, List<HyperView.Entry> entries) {
+        super(context, 0, entries);
+        mEntries = entries;
+    }
+
+    /**
+     * Apply a change to the node, rebinding only the visible rows that changed
+     *
+     * @param node Latest node
+     * @param diff Changes to apply
+     * @param list List displaying this adapter
+     */
+    public void applyDiff(Hyper node, DataDiff diff, AbsListView list) {
+        if (!diff.getInsertedKeys().isEmpty() || !diff.getRemovedKeys().isEmpty() || diff.isCollectionStructureChanged()) {
+            // rows come and go, start over
+            setNotifyOnChange(false);
+            clear();
+            addAll(makeEntries(node));
+            notifyDataSetChanged();
+            return;
+        }
+        for (String key : diff.getChangedKeys()) {
+            replaceEntry(node, key, list);
+        }
+        for (int index : diff.getChangedItems()) {
+            replaceEntry(node, String.valueOf(index), list);
+        }
+    }
+
+    private void replaceEntry(Hyper node, String key, AbsListView list) {
+        for (int position = 0; position < mEntries.size(); position++) {
+            if (key.equals(mEntries.get(position).getKey())) {
+                HyperView.Entry entry;
+                try {
+                    entry = new HyperView.Entry(node, key, valueOf(node, key));
+                } catch (Exception ex) {
+                    Log.e(TAG, "Error getting attribute " + key, ex);
+                    return;
+                }
+                mEntries.set(position, entry);
+                // rebind the row if it is on screen
+                View view = list.getChildAt(position - list.getFirstVisiblePosition());
+                if (view instanceof HyperView) {
+                    ((HyperView) view).setEntry(entry);
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public Hyper getNode(int position) {
+        Object value = getItem(position).getValue();
+        return value instanceof Hyper ? (Hyper) value : null;
     }
 
     @Override
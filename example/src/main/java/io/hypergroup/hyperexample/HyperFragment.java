@@ -2,10 +2,12 @@ package io.hypergroup.hyperexample;
 
 import android.app.Fragment;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.ListView;
 import android.widget.TextView;
@@ -13,9 +15,12 @@ import android.widget.Toast;
 
 import bolts.Continuation;
 import bolts.Task;
+import io.hypergroup.hyper.ChangeListener;
+import io.hypergroup.hyper.DataDiff;
 import io.hypergroup.hyper.Hyper;
+import io.hypergroup.hyper.Prefetcher;
 
-public class HyperFragment extends Fragment implements AdapterView.OnItemClickListener {
+public class HyperFragment extends Fragment implements AdapterView.OnItemClickListener, AbsListView.OnScrollListener, ChangeListener {
 
     private static final String TAG = HyperFragment.class.getSimpleName();
 
@@ -25,6 +30,10 @@ public class HyperFragment extends Fragment implements AdapterView.OnItemClickLi
     private ListView mListView;
     private HyperAdapter mAdapter;
     private String mKeyPath;
+    private Hyper mNode;
+    private Prefetcher mPrefetcher;
+    private int mLastFirstVisible;
+    private long mLastScrollTime;
 
     public void setArguments(String keyPath) {
         Bundle args = new Bundle();
@@ -65,6 +74,7 @@ public class HyperFragment extends Fragment implements AdapterView.OnItemClickLi
         mLoadingView = (TextView) view.findViewById(R.id.text_loading);
         mListView = (ListView) view.findViewById(R.id.list);
         mListView.setOnItemClickListener(this);
+        mListView.setOnScrollListener(this);
         return view;
     }
 
@@ -79,9 +89,49 @@ public class HyperFragment extends Fragment implements AdapterView.OnItemClickLi
     }
 
     private void onFetchSuccess(Hyper node) {
+        mNode = node;
         mAdapter = new HyperAdapter(getActivity(), node);
         mListView.setAdapter(mAdapter);
         mAdapter.notifyDataSetChanged();
+        node.addChangeListener(this);
+        if (mPrefetcher != null) {
+            mPrefetcher.shutdown();
+        }
+        mPrefetcher = new Prefetcher(mAdapter);
+        mPrefetcher.onScroll(mListView.getFirstVisiblePosition(), mListView.getChildCount(), 0);
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (mNode != null) {
+            mNode.removeChangeListener(this);
+            mNode = null;
+        }
+        if (mPrefetcher != null) {
+            mPrefetcher.shutdown();
+            mPrefetcher = null;
+        }
+    }
+
+    @Override
+    public void onChange(final Hyper node, final DataDiff diff) {
+        if (getActivity() == null) {
+            return;
+        }
+        getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (mAdapter != null && mListView != null) {
+                    mAdapter.applyDiff(node, diff, mListView);
+                    boolean rowsMoved = diff.isCollectionStructureChanged()
+                        || !diff.getInsertedKeys().isEmpty() || !diff.getRemovedKeys().isEmpty();
+                    if (mPrefetcher != null && rowsMoved) {
+                        mPrefetcher.reset();
+                    }
+                }
+            }
+        });
     }
 
     private void onFetchDone() {
@@ -89,6 +139,26 @@ public class HyperFragment extends Fragment implements AdapterView.OnItemClickLi
         mLoadingView.setVisibility(View.GONE);
     }
 
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+    }
+
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        if (mPrefetcher == null) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        float velocity = 0;
+        if (mLastScrollTime != 0 && now > mLastScrollTime) {
+            // rows per second
+            velocity = (firstVisibleItem - mLastFirstVisible) * 1000f / (now - mLastScrollTime);
+        }
+        mLastFirstVisible = firstVisibleItem;
+        mLastScrollTime = now;
+        mPrefetcher.onScroll(firstVisibleItem, visibleItemCount, velocity);
+    }
+
     @Override
     public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
         HyperView.Entry entry = mAdapter.getItem(position);
@@ -8,14 +8,14 @@ import android.widget.ImageView;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 
-import com.squareup.okhttp.OkHttpClient;
-import com.squareup.okhttp.Request;
-import com.squareup.okhttp.Response;
 import com.squareup.picasso.Picasso;
 
 import bolts.Continuation;
 import bolts.Task;
 import io.hypergroup.hyper.Hyper;
+import io.hypergroup.hyper.Pending;
+import io.hypergroup.hyper.UrlMetadata;
+import io.hypergroup.hyper.UrlMetadataService;
 
 public class HyperView extends RelativeLayout {
 
@@ -25,7 +25,6 @@ public class HyperView extends RelativeLayout {
         Hyper mParent;
         String mKey;
         Object mValue;
-        String mContentType;
 
         public Entry(Hyper parent, String key, Object value) {
             mParent = parent;
@@ -69,7 +68,9 @@ public class HyperView extends RelativeLayout {
         mEntry = entry;
         mLabelTextView.setText(entry.getKey());
         Object value = entry.getValue();
-        if (value instanceof Hyper) {
+        if (value instanceof Pending) {
+            loadPending(entry, (Pending) value);
+        } else if (value instanceof Hyper) {
             loadHyper((Hyper) value);
         } else {
             String key = entry.getKey();
@@ -109,33 +110,54 @@ public class HyperView extends RelativeLayout {
         }
     }
 
-    private void loadUrl(final Entry entry) {
-        if (entry.mContentType == null) {
-            (new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        OkHttpClient client = entry.getParent().getContext().getHttpClient();
-                        Request request = new Request.Builder().head().url(entry.getValue().toString()).build();
-                        Response response = client.newCall(request).execute();
-                        final String contentType = response.header("content-type");
-                        post(new Runnable() {
-                            @Override
-                            public void run() {
-                                entry.mContentType = contentType;
-                                onContentType(contentType, entry);
+    private void loadPending(final Entry entry, Pending pending) {
+        showText("(loading)");
+        pending.getTask().continueWith(new Continuation<Object, Object>() {
+            @Override
+            public Void then(final Task<Object> task) throws Exception {
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (task.isFaulted()) {
+                            Log.e(TAG, "Error fetching value", task.getError());
+                            showText("xxx");
+                        } else {
+                            entry.mValue = task.getResult();
+                            if (mEntry == entry) {
+                                setEntry(entry);
                             }
-                        });
-                    } catch (Exception ex) {
-                        Log.e(TAG, "Error fetching url: " + entry.getValue(), ex);
+                        }
                     }
+                });
+                return null;
+            }
+        });
+    }
 
-
-                }
-            })).start();
-        } else {
-            onContentType(entry.mContentType, entry);
+    private void loadUrl(final Entry entry) {
+        UrlMetadataService service = entry.getParent().getContext().getUrlMetadataService();
+        String url = entry.getValue().toString();
+        UrlMetadata cached = service.getCached(url);
+        if (cached != null) {
+            onContentType(cached.getContentType(), entry);
+            return;
         }
+        service.probe(url).continueWith(new Continuation<UrlMetadata, Object>() {
+            @Override
+            public Void then(final Task<UrlMetadata> task) throws Exception {
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (task.isFaulted()) {
+                            Log.e(TAG, "Error fetching url: " + entry.getValue(), task.getError());
+                        } else if (mEntry == entry) {
+                            onContentType(task.getResult().getContentType(), entry);
+                        }
+                    }
+                });
+                return null;
+            }
+        });
     }
 
     private void showText(String text) {
@@ -0,0 +1,467 @@
+package io.hypergroup.hyper.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates Data-backed implementations of interfaces annotated with
+ * io.hypergroup.hyper.model.HyperModel.
+ * <br/>
+ * For an interface User the generated class is HyperUser, in the same package. Each accessor
+ * reads its key from the wrapped Data with a typed helper from io.hypergroup.hyper.model.Models,
+ * so there is no reflection and no key path parsing at runtime. from() checks every accessor's
+ * read once, so the accessors themselves can not fail on the data they were created with.
+ */
+public class HyperModelProcessor extends AbstractProcessor {
+
+    private static final String HYPER_MODEL = "io.hypergroup.hyper.model.HyperModel";
+    private static final String HYPER_KEY = "io.hypergroup.hyper.model.HyperKey";
+
+    private static final String DATA = "io.hypergroup.hyper.Data";
+    private static final String HYPER = "io.hypergroup.hyper.Hyper";
+    private static final String MODELS = "io.hypergroup.hyper.model.Models";
+    private static final String HYPER_EXCEPTION = "io.hypergroup.hyper.exception.HyperException";
+    private static final String READ_EXCEPTIONS = "io.hypergroup.hyper.exception.MissingPropertyException, io.hypergroup.hyper.exception.WrongDataTypeException";
+
+    /**
+     * Prefix of generated class names
+     */
+    private static final String PREFIX = "Hyper";
+
+    private Elements mElements;
+    private Filer mFiler;
+    private Messager mMessager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment env) {
+        super.init(env);
+        mElements = env.getElementUtils();
+        mFiler = env.getFiler();
+        mMessager = env.getMessager();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        // claim @HyperKey too, it is only read off the methods of a @HyperModel
+        return new HashSet<String>(Arrays.asList(HYPER_MODEL, HYPER_KEY));
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        TypeElement annotation = mElements.getTypeElement(HYPER_MODEL);
+        if (annotation == null) {
+            return false;
+        }
+        for (Element element : round.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.INTERFACE) {
+                mMessager.printMessage(Diagnostic.Kind.ERROR, "@HyperModel must be placed on an interface", element);
+                continue;
+            }
+            try {
+                generate((TypeElement) element);
+            } catch (IOException ex) {
+                mMessager.printMessage(Diagnostic.Kind.ERROR, "Unable to generate model: " + ex.getMessage(), element);
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement model) throws IOException {
+        String packageName = getPackageName(model);
+        String className = getGeneratedName(model);
+        String modelName = model.getQualifiedName().toString();
+
+        StringBuilder out = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("/**\n * Generated from {@link ").append(modelName).append("}, do not edit.\n */\n");
+        out.append("public final class ").append(className).append(" implements ").append(modelName).append(" {\n\n");
+
+        // ## Keys
+
+        for (Element member : model.getEnclosedElements()) {
+            if (isAccessor(member)) {
+                ExecutableElement method = (ExecutableElement) member;
+                out.append("    private static final String KEY_").append(method.getSimpleName())
+                    .append(" = \"").append(escape(getKey(method))).append("\";\n");
+            }
+        }
+
+        // ## Reads
+
+        StringBuilder reads = new StringBuilder();
+        StringBuilder checks = new StringBuilder();
+        StringBuilder fetches = new StringBuilder();
+        StringBuilder nestedFetches = new StringBuilder();
+        StringBuilder nestedFromNode = new StringBuilder();
+        StringBuilder nestedFromData = new StringBuilder();
+        StringBuilder fields = new StringBuilder();
+        StringBuilder accessors = new StringBuilder();
+        for (Element member : model.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.METHOD || !member.getModifiers().contains(Modifier.ABSTRACT)) {
+                continue;
+            }
+            ExecutableElement method = (ExecutableElement) member;
+            if (!isAccessor(method)) {
+                mMessager.printMessage(Diagnostic.Kind.ERROR, "@HyperModel accessors take no arguments", method);
+                continue;
+            }
+            TypeMirror type = method.getReturnType();
+            String name = method.getSimpleName().toString();
+            String key = "KEY_" + name;
+            String read = getRead(type, key, method);
+            if (read == null) {
+                continue;
+            }
+            String reader = "read_" + name;
+            reads.append("\n    private static ").append(type).append(" ").append(reader).append("(").append(DATA).append(" data) throws ").append(READ_EXCEPTIONS).append(" {\n");
+            reads.append(read);
+            reads.append("    }\n");
+            accessors.append("\n    @Override\n");
+            accessors.append("    public ").append(type).append(" ").append(name).append("() {\n");
+
+            TypeMirror nested = getNestedModel(type);
+            if (nested == null) {
+                // read from the data every time, it was checked once
+                checks.append("        ").append(reader).append("(data);\n");
+                fetches.append("        node.get(").append(key).append(");\n");
+                accessors.append("        try {\n");
+                accessors.append("            return ").append(reader).append("(mData);\n");
+                accessors.append("        } catch (").append(HYPER_EXCEPTION).append(" ex) {\n");
+                accessors.append("            throw new IllegalStateException(\"Data changed after it was checked\", ex);\n");
+                accessors.append("        }\n");
+            } else {
+                // other models are made once, from the nodes they are linked to when there are some
+                String field = "m" + Character.toUpperCase(name.charAt(0)) + name.substring(1) + "Model";
+                String local = "value_" + name;
+                String nestedName = getGeneratedQualifiedName(nested);
+                fields.append("    private ").append(type).append(" ").append(field).append(";\n");
+                if (nested == type) {
+                    nestedFetches.append("        ").append(type).append(" ").append(local).append(" = ").append(nestedName)
+                        .append(".from(").append(MODELS).append(".asNode(node.get(").append(key).append("), ").append(key).append("));\n");
+                } else {
+                    nestedFetches.append("        ").append(type).append(" ").append(local).append(" = fetch_").append(name).append("(node);\n");
+                    reads.append("\n    private static ").append(type).append(" fetch_").append(name).append("(").append(HYPER).append(" node) throws InterruptedException, ").append(HYPER_EXCEPTION).append(" {\n");
+                    reads.append("        java.util.List<Object> raws = ").append(MODELS).append(".getList(node, ").append(key).append(");\n");
+                    reads.append("        if (raws == null) {\n");
+                    reads.append("            return null;\n");
+                    reads.append("        }\n");
+                    reads.append("        java.util.List<").append(nested).append("> items = new java.util.ArrayList<").append(nested).append(">(raws.size());\n");
+                    reads.append("        for (int index = 0, N = raws.size(); index < N; index++) {\n");
+                    reads.append("            Object raw = raws.get(index);\n");
+                    reads.append("            items.add(raw instanceof ").append(HYPER).append(" ? ").append(nestedName).append(".from((").append(HYPER).append(") raw) : ")
+                        .append(nestedName).append(".from(").append(MODELS).append(".asData(raw, ").append(key).append(")));\n");
+                    reads.append("        }\n");
+                    reads.append("        return items;\n");
+                    reads.append("    }\n");
+                }
+                nestedFromNode.append("            model.").append(field).append(" = ").append(local).append(";\n");
+                nestedFromData.append("            model.").append(field).append(" = ").append(reader).append("(data);\n");
+                accessors.append("        return ").append(field).append(";\n");
+            }
+            accessors.append("    }\n");
+        }
+
+        // ## Construction
+
+        out.append("\n    private final ").append(DATA).append(" mData;\n");
+        out.append(fields);
+        out.append("\n    private ").append(className).append("(").append(DATA).append(" data) {\n");
+        out.append("        mData = data;\n");
+        out.append("    }\n\n");
+        out.append("    /**\n     * Read every key of the model from a node, which records the reads and fetches the node\n");
+        out.append("     * when a key is not there yet. Other models are read from the nodes they are linked to.\n     *\n");
+        out.append("     * @return A view of the node's data, or null if it has none\n     */\n");
+        out.append("    public static ").append(modelName).append(" from(").append(HYPER).append(" node) throws InterruptedException, ").append(HYPER_EXCEPTION).append(" {\n");
+        out.append(fetches);
+        out.append(nestedFetches);
+        if (nestedFromNode.length() > 0) {
+            out.append("        ").append(className).append(" model = check(node.getData());\n");
+            out.append("        if (model != null) {\n");
+            out.append(nestedFromNode);
+            out.append("        }\n");
+            out.append("        return model;\n");
+        } else {
+            out.append("        return check(node.getData());\n");
+        }
+        out.append("    }\n\n");
+        out.append("    /**\n     * @return A view of the data, or null if there is none\n");
+        out.append("     * @throws io.hypergroup.hyper.exception.MissingPropertyException When a key is missing\n");
+        out.append("     * @throws io.hypergroup.hyper.exception.WrongDataTypeException   When a value does not have its accessor's type\n     */\n");
+        out.append("    public static ").append(modelName).append(" from(").append(DATA).append(" data) throws ").append(READ_EXCEPTIONS).append(" {\n");
+        if (nestedFromData.length() > 0) {
+            out.append("        ").append(className).append(" model = check(data);\n");
+            out.append("        if (model != null) {\n");
+            out.append(nestedFromData);
+            out.append("        }\n");
+            out.append("        return model;\n");
+        } else {
+            out.append("        return check(data);\n");
+        }
+        out.append("    }\n\n");
+        out.append("    private static ").append(className).append(" check(").append(DATA).append(" data) throws ").append(READ_EXCEPTIONS).append(" {\n");
+        out.append("        if (data == null) {\n");
+        out.append("            return null;\n");
+        out.append("        }\n");
+        out.append(checks);
+        out.append("        return new ").append(className).append("(data);\n");
+        out.append("    }\n\n");
+        out.append("    public ").append(DATA).append(" getData() {\n");
+        out.append("        return mData;\n");
+        out.append("    }\n");
+        out.append(reads);
+
+        // ## Accessors
+
+        out.append(accessors);
+
+        out.append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+        Writer writer = mFiler.createSourceFile(qualifiedName, model).openWriter();
+        try {
+            writer.write(out.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @return The body of an accessor reading key as type, or null after reporting an error
+     */
+    private String getRead(TypeMirror type, String key, Element method) {
+        String data = "data, " + key;
+        switch (type.getKind()) {
+            case INT:
+                return "        return " + MODELS + ".getInt(" + data + ");\n";
+            case LONG:
+                return "        return " + MODELS + ".getLong(" + data + ");\n";
+            case DOUBLE:
+                return "        return " + MODELS + ".getDouble(" + data + ");\n";
+            case FLOAT:
+                return "        return " + MODELS + ".getFloat(" + data + ");\n";
+            case BOOLEAN:
+                return "        return " + MODELS + ".getBoolean(" + data + ");\n";
+            case DECLARED:
+                break;
+            default:
+                mMessager.printMessage(Diagnostic.Kind.ERROR, "Unsupported @HyperModel type " + type, method);
+                return null;
+        }
+
+        String name = getQualifiedName(type);
+        if ("java.lang.String".equals(name)) {
+            return "        return " + MODELS + ".getString(" + data + ");\n";
+        } else if ("java.lang.Boolean".equals(name)) {
+            return "        return " + MODELS + ".getBooleanObject(" + data + ");\n";
+        } else if (DATA.equals(name)) {
+            return "        return " + MODELS + ".getData(" + data + ");\n";
+        } else if (isNumberBox(name)) {
+            return "        Number value = " + MODELS + ".getNumber(" + data + ");\n"
+                + "        return value == null ? null : value." + getUnboxMethod(name) + "();\n";
+        } else if (isModel(type)) {
+            return "        return " + getGeneratedQualifiedName(type) + ".from(" + MODELS + ".getData(" + data + "));\n";
+        } else if ("java.util.List".equals(name)) {
+            List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+            if (arguments.size() != 1) {
+                mMessager.printMessage(Diagnostic.Kind.ERROR, "@HyperModel lists must declare their item type", method);
+                return null;
+            }
+            return getListRead(arguments.get(0), data, key, method);
+        }
+        mMessager.printMessage(Diagnostic.Kind.ERROR, "Unsupported @HyperModel type " + type, method);
+        return null;
+    }
+
+    private String getListRead(TypeMirror item, String data, String key, Element method) {
+        String name = getQualifiedName(item);
+        String convert;
+        if (isModel(item)) {
+            convert = getGeneratedQualifiedName(item) + ".from(" + MODELS + ".asData(raw, " + key + "))";
+        } else if (DATA.equals(name)) {
+            convert = MODELS + ".asData(raw, " + key + ")";
+        } else if ("java.lang.String".equals(name)) {
+            convert = MODELS + ".asString(raw, " + key + ")";
+        } else if (isNumberBox(name)) {
+            convert = "number == null ? null : number." + getUnboxMethod(name) + "()";
+        } else if ("java.lang.Boolean".equals(name)) {
+            convert = MODELS + ".asBoolean(raw, " + key + ")";
+        } else {
+            mMessager.printMessage(Diagnostic.Kind.ERROR, "Unsupported @HyperModel list item type " + item, method);
+            return null;
+        }
+        return "        java.util.List<Object> raws = " + MODELS + ".getList(" + data + ");\n"
+            + "        if (raws == null) {\n"
+            + "            return null;\n"
+            + "        }\n"
+            + "        java.util.List<" + item + "> items = new java.util.ArrayList<" + item + ">(raws.size());\n"
+            + "        for (int index = 0, N = raws.size(); index < N; index++) {\n"
+            + "            Object raw = raws.get(index);\n"
+            + (isNumberBox(name) ? "            Number number = " + MODELS + ".asNumber(raw, " + key + ");\n" : "")
+            + "            items.add(" + convert + ");\n"
+            + "        }\n"
+            + "        return items;\n";
+    }
+
+    /**
+     * @return The model type, itself or as the items of a List, or null if it is not one
+     */
+    private TypeMirror getNestedModel(TypeMirror type) {
+        if (isModel(type)) {
+            return type;
+        } else if ("java.util.List".equals(getQualifiedName(type))) {
+            List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+            if (arguments.size() == 1 && isModel(arguments.get(0))) {
+                return arguments.get(0);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isAccessor(Element member) {
+        return member.getKind() == ElementKind.METHOD
+            && member.getModifiers().contains(Modifier.ABSTRACT)
+            && ((ExecutableElement) member).getParameters().isEmpty();
+    }
+
+    private boolean isModel(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        Element element = ((DeclaredType) type).asElement();
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (HYPER_MODEL.equals(((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNumberBox(String name) {
+        return "java.lang.Integer".equals(name) || "java.lang.Long".equals(name)
+            || "java.lang.Double".equals(name) || "java.lang.Float".equals(name);
+    }
+
+    private static String getUnboxMethod(String name) {
+        if ("java.lang.Integer".equals(name)) {
+            return "intValue";
+        }
+        return name.substring("java.lang.".length()).toLowerCase() + "Value";
+    }
+
+    private static String getQualifiedName(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return type.toString();
+        }
+        return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+    }
+
+    /**
+     * @return The key an accessor reads, from @HyperKey or the snake_case of its name
+     */
+    private static String getKey(ExecutableElement method) {
+        for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+            if (HYPER_KEY.equals(((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString())) {
+                for (AnnotationValue value : mirror.getElementValues().values()) {
+                    return value.getValue().toString();
+                }
+            }
+        }
+        return toSnakeCase(method.getSimpleName().toString());
+    }
+
+    /**
+     * @return The contents of a Java string literal for a value
+     */
+    /* default */ static String escape(String value) {
+        StringBuilder literal = new StringBuilder(value.length() + 8);
+        for (int index = 0; index < value.length(); index++) {
+            char c = value.charAt(index);
+            if (c == '"' || c == '\\') {
+                literal.append('\\').append(c);
+            } else if (c < 0x20) {
+                // octal, unicode escapes are decoded before the literal is and a newline ends it
+                literal.append(String.format("\\%03o", (int) c));
+            } else if (c > 0x7e) {
+                literal.append(String.format("\\u%04x", (int) c));
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.toString();
+    }
+
+    /**
+     * firstName => first_name
+     */
+    /* default */ static String toSnakeCase(String name) {
+        StringBuilder key = new StringBuilder(name.length() + 4);
+        for (int index = 0; index < name.length(); index++) {
+            char c = name.charAt(index);
+            if (Character.isUpperCase(c)) {
+                if (index > 0) {
+                    key.append('_');
+                }
+                key.append(Character.toLowerCase(c));
+            } else {
+                key.append(c);
+            }
+        }
+        return key.toString();
+    }
+
+    private String getPackageName(TypeElement type) {
+        PackageElement pkg = mElements.getPackageOf(type);
+        return pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+    }
+
+    /**
+     * User => HyperUser, Outer.User => HyperOuter_User
+     */
+    private static String getGeneratedName(TypeElement type) {
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+        Element enclosing = type.getEnclosingElement();
+        while (enclosing instanceof TypeElement) {
+            name.insert(0, enclosing.getSimpleName() + "_");
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return PREFIX + name;
+    }
+
+    private String getGeneratedQualifiedName(TypeMirror type) {
+        TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        String packageName = getPackageName(element);
+        String name = getGeneratedName(element);
+        return packageName.isEmpty() ? name : packageName + "." + name;
+    }
+}
@@ -0,0 +1,194 @@
+package io.hypergroup.hyper;
+
+import android.util.Log;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import junit.framework.TestCase;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import bolts.Task;
+import io.hypergroup.hyper.exception.FetchException;
+import io.hypergroup.hyper.json.HyperJsons;
+
+public class BatchTransportTest extends TestCase {
+
+    private static final String TAG = BatchTransportTest.class.getSimpleName();
+
+    private static final int PAGE_SIZE = 20;
+
+    /**
+     * Item the stand-in server does not have
+     */
+    private static final int MISSING = 13;
+
+    /**
+     * Item the stand-in server answers with another item's part
+     */
+    private static final int MISPLACED = 7;
+
+    /**
+     * Simulated round trip of every request
+     */
+    private static final long RTT_MILLIS = 20;
+
+    private MockWebServer mServer;
+    private ExecutorService mExecutor;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new BatchDispatcher());
+        mServer.play();
+        mExecutor = Executors.newFixedThreadPool(PAGE_SIZE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mExecutor.shutdown();
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testParse() throws Exception {
+        String body = "--b1\r\nStatus: 404 Not Found\r\n\r\n\r\n"
+            + "--b1\r\nContent-Type: application/json\r\n\r\n{\"a\": 1}\r\n"
+            + "--b1--\r\n";
+        List<BatchTransport.Part> parts = BatchTransport.parse("multipart/mixed; boundary=\"b1\"", body.getBytes("UTF-8"));
+
+        assertEquals(2, parts.size());
+        assertEquals(404, parts.get(0).code());
+        assertEquals(200, parts.get(1).code());
+        assertEquals("application/json", parts.get(1).header("content-type"));
+        assertEquals("{\"a\": 1}", new String(parts.get(1).body(), "UTF-8"));
+    }
+
+    public void testBatchedPage() throws Exception {
+        List<Task<Hyper>> tasks = hydrate(batchedContext());
+
+        // test the page was fetched on its own, and its items took one batch
+        assertEquals(2, mServer.getRequestCount());
+        assertEquals("/users", mServer.takeRequest().getPath());
+        RecordedRequest batch = mServer.takeRequest();
+        assertEquals("/batch", batch.getPath());
+        // test the batch was built like the requests it carries
+        assertEquals("*/*", batch.getHeader("Accept"));
+
+        // test the missing and misplaced items failed alone
+        for (int index = 0; index < PAGE_SIZE; index++) {
+            Task<Hyper> task = tasks.get(index);
+            if (index == MISSING) {
+                assertEquals(404, ((FetchException) task.getError()).getCode());
+            } else if (index == MISPLACED) {
+                assertTrue(task.getError() instanceof FetchException);
+            } else {
+                assertEquals("User " + index, task.getResult().get("name"));
+            }
+        }
+    }
+
+    public void testBenchmark() throws Exception {
+        long start = System.nanoTime();
+        hydrate(new HyperContext.Builder().setAsyncExecutor(mExecutor).build());
+        long plainMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        int plainRequests = mServer.getRequestCount();
+
+        start = System.nanoTime();
+        hydrate(batchedContext());
+        long batchedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        int batchedRequests = mServer.getRequestCount() - plainRequests;
+
+        Log.i(TAG, "Page of " + PAGE_SIZE + ": " + plainRequests + " requests in " + plainMillis + "ms, batched "
+            + batchedRequests + " requests in " + batchedMillis + "ms");
+        assertEquals(PAGE_SIZE + 1, plainRequests);
+        assertTrue(batchedRequests <= 3);
+    }
+
+    private HyperContext batchedContext() {
+        return new HyperContext.Builder()
+            .setAsyncExecutor(mExecutor)
+            .setBatchEndpoint(mServer.getUrl("/batch"), 50, TimeUnit.MILLISECONDS, 25)
+            .build();
+    }
+
+    /**
+     * Fetch a page and all of its items at once
+     */
+    private List<Task<Hyper>> hydrate(HyperContext context) throws Exception {
+        Hyper page = HyperJsons.createRoot(mServer.getUrl("/users"), context);
+        List<Task<Hyper>> tasks = new ArrayList<Task<Hyper>>();
+        for (Hyper item : page.<Hyper>each()) {
+            tasks.add(item.fetchAsync());
+        }
+        Task.whenAll(tasks).waitForCompletion();
+        return tasks;
+    }
+
+    /**
+     * Stand-in for a server with a batch endpoint
+     */
+    private static class BatchDispatcher extends Dispatcher {
+
+        private static final String BOUNDARY = "hyper-batch";
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            Thread.sleep(RTT_MILLIS);
+            String path = request.getPath();
+            if ("/users".equals(path)) {
+                StringBuilder body = new StringBuilder("{\"href\": \"/users\", \"collection\": [");
+                for (int index = 0; index < PAGE_SIZE; index++) {
+                    body.append(index == 0 ? "" : ", ").append("{\"href\": \"/users/").append(index).append("\"}");
+                }
+                return new MockResponse().setBody(body.append("]}").toString());
+            } else if ("/batch".equals(path)) {
+                StringBuilder body = new StringBuilder();
+                for (String uri : request.getUtf8Body().split("\r\n")) {
+                    if (uri.length() == 0) {
+                        continue;
+                    }
+                    body.append("--").append(BOUNDARY).append("\r\n");
+                    try {
+                        String part = new URL(uri).getPath();
+                        String user = user(part);
+                        if (user == null) {
+                            body.append("Status: 404 Not Found\r\n\r\n");
+                        } else {
+                            String location = part.endsWith("/" + MISPLACED) ? "/users/0" : uri;
+                            body.append("Content-Type: application/json\r\n")
+                                .append("Content-Location: ").append(location).append("\r\n\r\n")
+                                .append(user);
+                        }
+                    } catch (Exception ex) {
+                        body.append("Status: 400 Bad Request\r\n\r\n");
+                    }
+                    body.append("\r\n");
+                }
+                body.append("--").append(BOUNDARY).append("--\r\n");
+                return new MockResponse()
+                    .setHeader("Content-Type", "multipart/mixed; boundary=" + BOUNDARY)
+                    .setBody(body.toString());
+            }
+            String user = user(path);
+            return user == null ? new MockResponse().setResponseCode(404) : new MockResponse().setBody(user);
+        }
+
+        private static String user(String path) {
+            int id = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+            if (id == MISSING) {
+                return null;
+            }
+            return "{\"href\": \"" + path + "\", \"name\": \"User " + id + "\"}";
+        }
+    }
+}
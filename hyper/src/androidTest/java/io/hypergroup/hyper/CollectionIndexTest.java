@@ -0,0 +1,134 @@
+package io.hypergroup.hyper;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+import io.hypergroup.hyper.json.HyperJsons;
+
+public class CollectionIndexTest extends TestCase {
+
+    private static final int PAGES = 3;
+    private static final int PAGE_SIZE = 12;
+    private static final String[] NAMES = {"Matt", "Sam", "Alex"};
+
+    private MockWebServer mServer;
+    private Hyper mRoot;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new UserDispatcher());
+        mServer.play();
+        mRoot = HyperJsons.createRoot(mServer.getUrl("/root"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testFilterWithoutIndex() throws Exception {
+        List<Hyper> matts = mRoot.get("users[first_name=Matt]");
+        List<String> lastNames = mRoot.get("users[first_name=Matt].last_name");
+
+        // test every page is scanned
+        assertEquals(PAGES * PAGE_SIZE / NAMES.length, matts.size());
+        assertEquals("Matt", matts.get(1).get("first_name"));
+        assertEquals("L3", lastNames.get(1));
+        assertEquals("L" + (PAGES * PAGE_SIZE - NAMES.length), lastNames.get(lastNames.size() - 1));
+    }
+
+    public void testHashIndex() throws Exception {
+        List<Hyper> scanned = HyperJsons.createRoot(mServer.getUrl("/root")).get("users[first_name=Sam]");
+        Hyper users = mRoot.get("users");
+        CollectionIndex index = users.addIndex("first_name", CollectionIndex.Type.HASH);
+
+        List<Hyper> sams = mRoot.get("users[first_name=Sam]");
+
+        // test the index answers the same as a scan, over every page
+        assertEquals(PAGES * PAGE_SIZE, index.size());
+        assertEquals(PAGES * PAGE_SIZE / NAMES.length, sams.size());
+        assertEquals(scanned.size(), sams.size());
+        for (int item = 0; item < sams.size(); item++) {
+            assertEquals(scanned.get(item).getHref(), sams.get(item).getHref());
+        }
+        assertEquals((Object) 1, sams.get(0).get("id"));
+        assertEquals(0, ((List<?>) mRoot.get("users[first_name=Nobody]")).size());
+    }
+
+    public void testSortedIndexRanges() throws Exception {
+        Hyper users = mRoot.get("users");
+        users.addIndex("age", CollectionIndex.Type.SORTED);
+        int size = PAGES * PAGE_SIZE;
+
+        // ages are 20 + id
+        assertEquals(5, ((List<?>) users.get("[age<25]")).size());
+        assertEquals(6, ((List<?>) users.get("[age<=25]")).size());
+        assertEquals(1, ((List<?>) users.get("[age=25]")).size());
+        assertEquals(size - 6, ((List<?>) users.get("[age>25]")).size());
+        assertEquals(size - 5, ((List<?>) users.get("[age>=25]")).size());
+        // test values of another kind are not ordered against numbers
+        assertEquals(0, ((List<?>) users.get("[age<Matt]")).size());
+    }
+
+    public void testIndexFollowsPages() throws Exception {
+        Hyper users = mRoot.get("users");
+        CollectionIndex index = users.addIndex("first_name", CollectionIndex.Type.HASH);
+
+        // test the pages are fetched for the first lookup, and only then
+        List<Hyper> alexes = users.get("[first_name=Alex]");
+        int requests = mServer.getRequestCount();
+        assertEquals(PAGES * PAGE_SIZE, index.size());
+        assertEquals(PAGES * PAGE_SIZE / NAMES.length, alexes.size());
+        assertEquals((Object) (PAGES * PAGE_SIZE - 1), alexes.get(alexes.size() - 1).get("id"));
+        assertEquals(PAGES * PAGE_SIZE / NAMES.length, ((List<?>) users.get("[first_name=Alex]")).size());
+        assertEquals(requests, mServer.getRequestCount());
+
+        // test an invalidated page drops out, and is fetched again for the next lookup
+        Hyper page = users.get("next");
+        page.fetch();
+        page.invalidate();
+        assertEquals(PAGE_SIZE * (PAGES - 1), index.size());
+        assertEquals(PAGES * PAGE_SIZE / NAMES.length, ((List<?>) users.get("[first_name=Alex]")).size());
+        assertEquals(PAGE_SIZE * PAGES, index.size());
+        assertEquals(requests + 2, mServer.getRequestCount());
+    }
+
+    /**
+     * Serves a root linking to PAGES pages of users
+     */
+    private static class UserDispatcher extends Dispatcher {
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            String path = request.getPath();
+            if ("/root".equals(path)) {
+                return new MockResponse().setBody("{\"href\": \"/root\", \"users\": {\"href\": \"/users?page=1\"}}");
+            }
+            int page = Integer.parseInt(path.substring(path.indexOf('=') + 1));
+            StringBuilder body = new StringBuilder("{\"href\": \"" + path + "\", ");
+            if (page < PAGES) {
+                body.append("\"next\": {\"href\": \"/users?page=").append(page + 1).append("\"}, ");
+            }
+            body.append("\"collection\": [");
+            for (int index = 0; index < PAGE_SIZE; index++) {
+                int id = (page - 1) * PAGE_SIZE + index;
+                body.append(index == 0 ? "" : ", ")
+                    .append("{\"href\": \"/users/").append(id)
+                    .append("\", \"id\": ").append(id)
+                    .append(", \"first_name\": \"").append(NAMES[id % NAMES.length])
+                    .append("\", \"last_name\": \"L").append(id)
+                    .append("\", \"age\": ").append(20 + id).append("}");
+            }
+            return new MockResponse().setBody(body.append("]}").toString());
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package io.hypergroup.hyper;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import bolts.Continuation;
+import bolts.Task;
+import io.hypergroup.hyper.json.HyperJsons;
+
+public class ConcurrencyLimiterTest extends TestCase {
+
+    private static final String HOST = "example.com";
+
+    public void testWaitsForSlot() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 2, 2, null);
+        ConcurrencyLimiter.Permit first = limiter.acquire(HOST);
+        limiter.acquire(HOST);
+        final CountDownLatch acquired = new CountDownLatch(1);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire(HOST);
+                    acquired.countDown();
+                } catch (InterruptedException ex) {
+                    // test fails below
+                }
+            }
+        }.start();
+
+        // test the third fetch waits until a slot frees up
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        first.release();
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        assertEquals(2, limiter.getInFlight(HOST));
+    }
+
+    public void testTryAcquire() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, null);
+        ConcurrencyLimiter.Permit permit = limiter.tryAcquire(HOST);
+        assertNotNull(permit);
+
+        // test a full host is refused right away, until its slot frees up
+        assertNull(limiter.tryAcquire(HOST));
+        permit.release();
+        assertNotNull(limiter.tryAcquire(HOST));
+        assertEquals(1, limiter.getInFlight(HOST));
+    }
+
+    public void testGrowsWhileLatencyIsFlat() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 2, 16, null);
+        for (int round = 0; round < 50; round++) {
+            List<ConcurrencyLimiter.Permit> permits = new ArrayList<ConcurrencyLimiter.Permit>();
+            for (int index = 0; index < limiter.getLimit(HOST); index++) {
+                permits.add(limiter.acquire(HOST));
+            }
+            for (ConcurrencyLimiter.Permit permit : permits) {
+                permit.onResponse();
+                permit.release();
+            }
+        }
+        assertTrue(limiter.getLimit(HOST) > 4);
+    }
+
+    public void testBacksOff() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(16, 2, 16, null);
+        ConcurrencyLimiter.Permit permit = limiter.acquire(HOST);
+        permit.onResponse();
+        permit.release();
+
+        // test queueing shrinks the limit
+        permit = limiter.acquire(HOST);
+        Thread.sleep(50);
+        permit.onResponse();
+        permit.release();
+        assertTrue(limiter.getLimit(HOST) < 16);
+
+        // test drops shrink it down to the minimum
+        for (int index = 0; index < 20; index++) {
+            permit = limiter.acquire(HOST);
+            permit.onDropped();
+            permit.release();
+        }
+        assertEquals(2, limiter.getLimit(HOST));
+    }
+
+    public void testLimitsFetches() throws Exception {
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int count = concurrent.incrementAndGet();
+                synchronized (maxConcurrent) {
+                    maxConcurrent.set(Math.max(maxConcurrent.get(), count));
+                }
+                Thread.sleep(50);
+                concurrent.decrementAndGet();
+                return new MockResponse().setBody("{\"href\": \"" + request.getPath() + "\"}");
+            }
+        });
+        server.play();
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        try {
+            HyperContext context = new HyperContext.Builder()
+                .setAsyncExecutor(executor)
+                .setConcurrencyLimits(3, 1, 3)
+                .build();
+            List<Task<Hyper>> tasks = new ArrayList<Task<Hyper>>();
+            for (int index = 0; index < 20; index++) {
+                tasks.add(HyperJsons.createRoot(server.getUrl("/items/" + index), context).fetchAsync());
+            }
+            Task.whenAll(tasks).waitForCompletion();
+
+            // test no more than the limit reached the server at once, and the waits were measured
+            assertTrue(maxConcurrent.get() <= 3);
+            assertEquals(20, context.getMetrics().getLimiterWaitCount());
+            assertTrue(context.getMetrics().getMaxLimiterWaitMillis() > 0);
+        } finally {
+            executor.shutdown();
+            server.shutdown();
+        }
+    }
+
+    public void testNestedFetchesWhileStreaming() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                if (!path.contains("/items/")) {
+                    StringBuilder body = new StringBuilder("{\"href\": \"" + path + "\", \"collection\": [");
+                    for (int index = 0; index < 5; index++) {
+                        body.append(index == 0 ? "" : ", ").append("{\"href\": \"").append(path).append("/items/").append(index).append("\"}");
+                    }
+                    return new MockResponse().setBody(body.append("]}").toString());
+                }
+                return new MockResponse().setBody("{\"href\": \"" + path + "\", \"name\": \"" + path + "\"}");
+            }
+        });
+        server.play();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final HyperContext context = new HyperContext.Builder()
+                .setAsyncExecutor(executor)
+                .setConcurrencyLimits(ConcurrencyLimiter.DEFAULT_MIN_LIMIT, ConcurrencyLimiter.DEFAULT_MIN_LIMIT, ConcurrencyLimiter.DEFAULT_MIN_LIMIT)
+                .build();
+            final List<String> names = Collections.synchronizedList(new ArrayList<String>());
+            List<Task<Void>> tasks = new ArrayList<Task<Void>>();
+            for (int page = 0; page < ConcurrencyLimiter.DEFAULT_MIN_LIMIT; page++) {
+                final Hyper root = HyperJsons.createRoot(server.getUrl("/pages/" + page), context);
+                tasks.add(Task.call(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        root.each(new ItemCallback<Hyper>() {
+                            @Override
+                            public void onItem(int index, Hyper item) {
+                                try {
+                                    // a fetch from the same host while the page is streaming
+                                    names.add(item.<String>get("name"));
+                                } catch (Exception ex) {
+                                    throw new RuntimeException(ex);
+                                }
+                            }
+                        });
+                        return null;
+                    }
+                }, executor));
+            }
+
+            // test every stream finishes at the limit's minimum, instead of waiting on itself
+            final CountDownLatch done = new CountDownLatch(1);
+            Task.whenAll(tasks).continueWith(new Continuation<Void, Void>() {
+                @Override
+                public Void then(Task<Void> task) throws Exception {
+                    done.countDown();
+                    return null;
+                }
+            });
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertNull(tasks.get(0).getError());
+            assertNull(tasks.get(1).getError());
+            assertEquals(ConcurrencyLimiter.DEFAULT_MIN_LIMIT * 5, names.size());
+        } finally {
+            executor.shutdownNow();
+            server.shutdown();
+        }
+    }
+}
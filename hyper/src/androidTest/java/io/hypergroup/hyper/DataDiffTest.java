@@ -0,0 +1,90 @@
+package io.hypergroup.hyper;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.hypergroup.hyper.json.HyperJsons;
+import io.hypergroup.hyper.json.JsonData;
+
+public class DataDiffTest extends TestCase {
+
+    private static DataSnapshot snapshot(String json) throws Exception {
+        return DataSnapshot.of(new JsonData(new JSONObject(json)));
+    }
+
+    public void testKeys() throws Exception {
+        DataDiff diff = DataDiff.compute(
+            snapshot("{\"a\": 1, \"b\": {\"c\": 2}, \"d\": 3}"),
+            snapshot("{\"a\": 1.0, \"b\": {\"c\": 3}, \"e\": 4}"));
+
+        assertEquals(1, diff.getInsertedKeys().size());
+        assertTrue(diff.getInsertedKeys().contains("e"));
+        assertTrue(diff.getRemovedKeys().contains("d"));
+        assertEquals(1, diff.getChangedKeys().size());
+        assertTrue(diff.getChangedKeys().contains("b"));
+        assertFalse(diff.isCollectionStructureChanged());
+    }
+
+    public void testCollection() throws Exception {
+        DataDiff diff = DataDiff.compute(
+            snapshot("{\"collection\": [{\"href\": \"/1\"}, {\"href\": \"/2\"}, {\"href\": \"/3\", \"n\": 1}, {\"href\": \"/4\"}]}"),
+            snapshot("{\"collection\": [{\"href\": \"/4\"}, {\"href\": \"/1\"}, {\"href\": \"/3\", \"n\": 2}, {\"href\": \"/5\"}]}"));
+
+        assertTrue(diff.getInsertedKeys().isEmpty());
+        assertTrue(diff.getChangedKeys().isEmpty());
+        assertEquals("[3]", Arrays.toString(diff.getInsertedItems()));
+        assertEquals("[1]", Arrays.toString(diff.getRemovedItems()));
+        assertEquals("[2]", Arrays.toString(diff.getChangedItems()));
+        assertEquals("[3]", Arrays.toString(diff.getMovedFrom()));
+        assertEquals("[0]", Arrays.toString(diff.getMovedTo()));
+        assertTrue(diff.isCollectionStructureChanged());
+    }
+
+    public void testUnchanged() throws Exception {
+        String json = "{\"a\": [1, 2], \"collection\": [1, 1, 2]}";
+        assertTrue(DataDiff.compute(snapshot(json), snapshot(json)).isEmpty());
+    }
+
+    public void testListener() throws Exception {
+
+        // Create a mock server
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody("{\"name\": \"Matt\", \"collection\": [1]}"));
+        server.enqueue(new MockResponse().setBody("{\"name\": \"Matthew\", \"collection\": [1, 2]}"));
+        server.play();
+        URL url = server.getUrl("/api/users/1");
+
+        Hyper root = HyperJsons.createRoot(url).fetch();
+
+        // observe the refetch
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<DataDiff> received = new AtomicReference<DataDiff>();
+        root.addChangeListener(new ChangeListener() {
+            @Override
+            public void onChange(Hyper node, DataDiff diff) {
+                received.set(diff);
+                latch.countDown();
+            }
+        });
+        root.setFetched(false);
+        root.fetch();
+
+        // the merged refetch is delivered as one diff
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        DataDiff diff = received.get();
+        assertTrue(diff.getChangedKeys().contains("name"));
+        assertEquals("[1]", Arrays.toString(diff.getInsertedItems()));
+
+        server.shutdown();
+    }
+}
@@ -0,0 +1,80 @@
+package io.hypergroup.hyper;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+
+import bolts.Task;
+import io.hypergroup.hyper.exception.DeadlineExceededException;
+import io.hypergroup.hyper.json.HyperJsons;
+
+public class DeadlineTest extends TestCase {
+
+    private static final long SLOW_MILLIS = 2000;
+
+    private MockWebServer mServer;
+    private Hyper mRoot;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new HopDispatcher());
+        mServer.play();
+        mRoot = HyperJsons.createRoot(mServer.getUrl("/root"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testWithinDeadline() throws Exception {
+        assertEquals("fast", mRoot.get("a.name", Deadline.in(5, TimeUnit.SECONDS)));
+    }
+
+    public void testSlowHopExceedsDeadline() throws Exception {
+        long start = System.nanoTime();
+        try {
+            mRoot.get("a.b.name", Deadline.in(500, TimeUnit.MILLISECONDS));
+            fail("Expected a DeadlineExceededException");
+        } catch (DeadlineExceededException ex) {
+            // test the slow hop is named, and the timeout shrunk to the deadline
+            assertEquals("root.a.b", ex.getKeyPath());
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < SLOW_MILLIS);
+        }
+    }
+
+    public void testExpiredAsyncDropped() throws Exception {
+        Task<String> task = mRoot.getAsync("a.name", Deadline.in(0, TimeUnit.MILLISECONDS));
+        task.waitForCompletion();
+
+        // test nothing was sent
+        assertTrue(task.getError() instanceof DeadlineExceededException);
+        assertEquals(0, mServer.getRequestCount());
+    }
+
+    /**
+     * Serves root.a quickly and root.a.b slowly
+     */
+    private static class HopDispatcher extends Dispatcher {
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            String path = request.getPath();
+            if ("/root".equals(path)) {
+                return new MockResponse().setBody("{\"href\": \"/root\", \"a\": {\"href\": \"/a\"}}");
+            } else if ("/a".equals(path)) {
+                return new MockResponse().setBody("{\"href\": \"/a\", \"name\": \"fast\", \"b\": {\"href\": \"/b\"}}");
+            }
+            Thread.sleep(SLOW_MILLIS);
+            return new MockResponse().setBody("{\"href\": \"/b\", \"name\": \"slow\"}");
+        }
+    }
+}
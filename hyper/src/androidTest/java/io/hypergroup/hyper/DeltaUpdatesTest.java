@@ -0,0 +1,160 @@
+package io.hypergroup.hyper;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+
+import io.hypergroup.hyper.json.HyperJsons;
+
+public class DeltaUpdatesTest extends TestCase {
+
+    private static final int SIZE = 200;
+
+    private MockWebServer mServer;
+    private VersionDispatcher mDispatcher;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDispatcher = new VersionDispatcher();
+        mServer = new MockWebServer();
+        mServer.setDispatcher(mDispatcher);
+        mServer.play();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testJsonPatch() throws Exception {
+        HyperContext context = new HyperContext.Builder().setDeltaUpdates(new DeltaUpdates()).build();
+        Hyper root = HyperJsons.createRoot(mServer.getUrl("/items"), context).fetch();
+        JSONArray before = (JSONArray) root.getData().getProperty("collection");
+
+        mDispatcher.mVersion = 2;
+        root.refresh();
+
+        // test the delta was asked for against the data held
+        mServer.takeRequest();
+        RecordedRequest refresh = mServer.takeRequest();
+        assertEquals("json-patch, merge-patch", refresh.getHeader(DeltaUpdates.HEADER_A_IM));
+        assertEquals("\"v1\"", refresh.getHeader("If-None-Match"));
+        assertEquals(1, context.getMetrics().getDeltaFetchCount());
+        assertTrue(context.getMetrics().getDeltaSavedBytes() > 0);
+
+        // test the data is the next version
+        assertVersion2(root);
+
+        // test only the changed item was rebuilt
+        JSONArray after = (JSONArray) root.getData().getProperty("collection");
+        assertNotSame(before, after);
+        assertSame(before.get(1), after.get(0));
+        assertNotSame(before.get(3), after.get(2));
+        assertSame(before.get(4), after.get(3));
+
+        // test unchanged data is kept as it is
+        root.refresh();
+        assertEquals("\"v2\"", mServer.takeRequest().getHeader("If-None-Match"));
+        assertSame(after, root.getData().getProperty("collection"));
+    }
+
+    public void testMergePatch() throws Exception {
+        mDispatcher.mFormat = DeltaUpdates.MERGE_PATCH;
+        HyperContext context = new HyperContext.Builder().setDeltaUpdates(new DeltaUpdates(DeltaUpdates.MERGE_PATCH)).build();
+        Hyper root = HyperJsons.createRoot(mServer.getUrl("/items"), context).fetch();
+
+        mDispatcher.mVersion = 2;
+        root.refresh();
+
+        assertEquals(1, context.getMetrics().getDeltaFetchCount());
+        assertVersion2(root);
+        assertFalse(root.getData().hasProperty("legacy"));
+    }
+
+    public void testBrokenPatchFallsBack() throws Exception {
+        HyperContext context = new HyperContext.Builder().setDeltaUpdates(new DeltaUpdates()).build();
+        Hyper root = HyperJsons.createRoot(mServer.getUrl("/items"), context).fetch();
+
+        mDispatcher.mVersion = 2;
+        mDispatcher.mBroken = true;
+        root.refresh();
+
+        // test the whole body was fetched after the delta failed to apply
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals(0, context.getMetrics().getDeltaFetchCount());
+        assertEquals(1, context.getMetrics().getDeltaFallbackCount());
+        assertVersion2(root);
+    }
+
+    private static void assertVersion2(Hyper root) throws Exception {
+        assertEquals("Things", root.get("title"));
+        assertEquals(SIZE, root.each().size());
+        assertEquals("Item 1", root.get("0.name"));
+        assertEquals("Renamed", root.get("2.name"));
+        assertEquals("Item " + SIZE, root.get((SIZE - 1) + ".name"));
+    }
+
+    /**
+     * Serves two versions of a collection, and deltas from the first to the second
+     */
+    private static class VersionDispatcher extends Dispatcher {
+
+        volatile int mVersion = 1;
+        volatile String mFormat = DeltaUpdates.JSON_PATCH;
+        volatile boolean mBroken;
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            String eTag = "\"v" + mVersion + "\"";
+            String base = request.getHeader("If-None-Match");
+            String accept = request.getHeader(DeltaUpdates.HEADER_A_IM);
+            if (eTag.equals(base)) {
+                return new MockResponse().setResponseCode(304);
+            }
+            if ("\"v1\"".equals(base) && accept != null && accept.contains(mFormat)) {
+                boolean jsonPatch = DeltaUpdates.JSON_PATCH.equals(mFormat);
+                return new MockResponse()
+                    .setResponseCode(DeltaUpdates.HTTP_IM_USED)
+                    .setHeader(DeltaUpdates.HEADER_IM, mFormat)
+                    .setHeader("ETag", eTag)
+                    .setHeader("Content-Type", jsonPatch ? "application/json-patch+json" : "application/merge-patch+json")
+                    .setBody(jsonPatch ? jsonPatch() : mergePatch());
+            }
+            return new MockResponse().setHeader("ETag", eTag).setBody(body(mVersion));
+        }
+
+        private String jsonPatch() {
+            return "[{\"op\": \"test\", \"path\": \"/collection/3/id\", \"value\": " + (mBroken ? 4 : 3) + "},"
+                + " {\"op\": \"replace\", \"path\": \"/title\", \"value\": \"Things\"},"
+                + " {\"op\": \"remove\", \"path\": \"/legacy\"},"
+                + " {\"op\": \"replace\", \"path\": \"/collection/3/name\", \"value\": \"Renamed\"},"
+                + " {\"op\": \"add\", \"path\": \"/collection/-\", \"value\": {\"id\": " + SIZE + ", \"name\": \"Item " + SIZE + "\"}},"
+                + " {\"op\": \"remove\", \"path\": \"/collection/0\"}]";
+        }
+
+        private static String mergePatch() {
+            // arrays are replaced as a whole
+            String body = body(2);
+            return "{\"title\": \"Things\", \"legacy\": null, " + body.substring(body.indexOf("\"collection\""));
+        }
+
+        private static String body(int version) {
+            StringBuilder body = new StringBuilder("{\"href\": \"/items\", ");
+            body.append(version == 1 ? "\"title\": \"Items\", \"legacy\": true, " : "\"title\": \"Things\", ");
+            body.append("\"collection\": [");
+            for (int id = version == 1 ? 0 : 1; id < SIZE + (version == 1 ? 0 : 1); id++) {
+                String name = version == 2 && id == 3 ? "Renamed" : "Item " + id;
+                body.append(id == (version == 1 ? 0 : 1) ? "" : ", ")
+                    .append("{\"id\": ").append(id).append(", \"name\": \"").append(name).append("\"}");
+            }
+            return body.append("]}").toString();
+        }
+    }
+}
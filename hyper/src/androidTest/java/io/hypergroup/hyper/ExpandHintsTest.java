@@ -0,0 +1,144 @@
+package io.hypergroup.hyper;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.hypergroup.hyper.json.HyperJsons;
+
+public class ExpandHintsTest extends TestCase {
+
+    private static final Map<String, String> RESOURCES = new HashMap<String, String>();
+
+    static {
+        RESOURCES.put("/root", "{\"href\": \"/root\", \"current_user\": {\"href\": \"/users/1\"}}");
+        RESOURCES.put("/users/1", "{\"href\": \"/users/1\", \"first_name\": \"Matt\", \"friends\": {\"href\": \"/users/1/friends\"}}");
+        RESOURCES.put("/users/1/friends", "{\"href\": \"/users/1/friends\", \"collection\": [{\"href\": \"/users/2\"}, {\"href\": \"/users/3\"}]}");
+        RESOURCES.put("/users/2", "{\"href\": \"/users/2\", \"first_name\": \"Sam\"}");
+        RESOURCES.put("/users/3", "{\"href\": \"/users/3\", \"first_name\": \"Alex\"}");
+    }
+
+    private MockWebServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new ExpandingDispatcher());
+        mServer.play();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testFollowedLinksAreEmbedded() throws Exception {
+        ExpandHints hints = new ExpandHints(ExpandHints.DEFAULT_PARAMETER, 1);
+        HyperContext context = new HyperContext.Builder().setExpandHints(hints).build();
+
+        // a hop per link the first time
+        Hyper root = HyperJsons.createRoot(mServer.getUrl("/root"), context);
+        assertEquals("Sam", root.get("current_user.friends.0.first_name"));
+        assertEquals(4, mServer.getRequestCount());
+
+        // test the links are learned, nested ones included
+        assertEquals(3, hints.getRelations("root").size());
+        assertEquals(2, hints.getRelations("root.current_user").size());
+
+        // test a single round trip brings the whole key path along
+        root = HyperJsons.createRoot(mServer.getUrl("/root"), context);
+        assertEquals("Sam", root.get("current_user.friends.0.first_name"));
+        assertEquals("Alex", root.get("current_user.friends.1.first_name"));
+        assertEquals(5, mServer.getRequestCount());
+        for (int index = 0; index < 4; index++) {
+            mServer.takeRequest();
+        }
+        String path = URLDecoder.decode(mServer.takeRequest().getPath(), "UTF-8");
+        assertTrue(path, path.contains("current_user.friends.*"));
+    }
+
+    public void testNoHintsWithoutFollows() throws Exception {
+        HyperContext context = new HyperContext.Builder().setExpandHints(new ExpandHints()).build();
+        Hyper root = HyperJsons.createRoot(mServer.getUrl("/root"), context);
+        root.fetch();
+
+        // test a node nothing was followed from is fetched as is
+        assertEquals("/root", mServer.takeRequest().getPath());
+    }
+
+    /**
+     * Stand-in for a server that embeds the links named by the expand parameter
+     */
+    private static class ExpandingDispatcher extends Dispatcher {
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            String[] parts = request.getPath().split("\\?", 2);
+            try {
+                JSONObject resource = new JSONObject(RESOURCES.get(parts[0]));
+                if (parts.length > 1 && parts[1].startsWith(ExpandHints.DEFAULT_PARAMETER + "=")) {
+                    String expand = URLDecoder.decode(parts[1].substring(ExpandHints.DEFAULT_PARAMETER.length() + 1), "UTF-8");
+                    // shorter paths first, so nested links are found in embedded resources
+                    for (String relation : sortByDepth(expand.split(","))) {
+                        embed(resource, relation.split("\\."), 0);
+                    }
+                }
+                return new MockResponse().setBody(resource.toString());
+            } catch (Exception ex) {
+                return new MockResponse().setResponseCode(500);
+            }
+        }
+
+        private static String[] sortByDepth(String[] relations) {
+            Arrays.sort(relations, new Comparator<String>() {
+                @Override
+                public int compare(String lhs, String rhs) {
+                    return lhs.split("\\.").length - rhs.split("\\.").length;
+                }
+            });
+            return relations;
+        }
+
+        private static void embed(JSONObject resource, String[] segments, int depth) throws JSONException {
+            if (depth == segments.length) {
+                return;
+            }
+            if (ExpandHints.ANY_ITEM.equals(segments[depth])) {
+                JSONArray items = resource.optJSONArray("collection");
+                for (int index = 0; items != null && index < items.length(); index++) {
+                    items.put(index, expand(items.getJSONObject(index)));
+                    embed(items.getJSONObject(index), segments, depth + 1);
+                }
+            } else if (resource.optJSONObject(segments[depth]) != null) {
+                resource.put(segments[depth], expand(resource.getJSONObject(segments[depth])));
+                embed(resource.getJSONObject(segments[depth]), segments, depth + 1);
+            }
+        }
+
+        /**
+         * @return The full resource for a link, or the link itself if it is already embedded
+         */
+        private static JSONObject expand(JSONObject link) throws JSONException {
+            String href = link.optString("href");
+            if (link.length() > 1 || !RESOURCES.containsKey(href)) {
+                return link;
+            }
+            return new JSONObject(RESOURCES.get(href));
+        }
+    }
+}
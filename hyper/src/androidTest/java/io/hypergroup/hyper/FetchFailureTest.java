@@ -0,0 +1,123 @@
+package io.hypergroup.hyper;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+
+import io.hypergroup.hyper.exception.FetchException;
+import io.hypergroup.hyper.json.HyperJsons;
+
+public class FetchFailureTest extends TestCase {
+
+    private static final String BODY = "{\"href\": \"/root\", \"name\": \"Matt\"}";
+
+    private MockWebServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new MockWebServer();
+        mServer.play();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testRetryServerError() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(503));
+        mServer.enqueue(new MockResponse().setBody(BODY));
+        HyperContext context = new HyperContext.Builder()
+            .setRetryPolicy(new RetryPolicy(3, 10, 10, TimeUnit.MILLISECONDS))
+            .build();
+
+        Hyper root = HyperJsons.createRoot(mServer.getUrl("/root"), context);
+
+        // test the second attempt is used
+        assertEquals("Matt", root.get("name"));
+        assertEquals(2, mServer.getRequestCount());
+        assertEquals(1, context.getMetrics().getRetryCount());
+    }
+
+    public void testClientErrorNotRetried() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(404));
+        mServer.enqueue(new MockResponse().setBody(BODY));
+        HyperContext context = new HyperContext.Builder()
+            .setNegativeCacheTtl(0, TimeUnit.MILLISECONDS)
+            .build();
+        Hyper root = HyperJsons.createRoot(mServer.getUrl("/root"), context);
+
+        try {
+            root.get("name");
+            fail("Expected a FetchException");
+        } catch (FetchException ex) {
+            assertEquals(404, ex.getCode());
+            assertFalse(ex.isRetryable());
+        }
+
+        // test a failed node is not marked fetched, and fetches again
+        assertFalse(root.isFetched());
+        assertEquals("Matt", root.get("name"));
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    public void testNegativeCache() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(404));
+        mServer.enqueue(new MockResponse().setBody(BODY));
+        HyperContext context = new HyperContext.Builder()
+            .setNegativeCacheTtl(5, TimeUnit.SECONDS)
+            .build();
+        Hyper root = HyperJsons.createRoot(mServer.getUrl("/root"), context);
+
+        FetchException first = null;
+        try {
+            root.fetch();
+        } catch (FetchException ex) {
+            first = ex;
+        }
+        try {
+            root.fetch();
+            fail("Expected a FetchException");
+        } catch (FetchException ex) {
+            // test the remembered failure is thrown without a request
+            assertSame(first, ex);
+            assertEquals(1, mServer.getRequestCount());
+            assertEquals(1, context.getMetrics().getNegativeCacheHits());
+        }
+
+        // test invalidating forgets the failure
+        root.invalidate();
+        assertEquals("Matt", root.get("name"));
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    public void testCircuitOpens() throws Exception {
+        for (int index = 0; index < 2; index++) {
+            mServer.enqueue(new MockResponse().setResponseCode(500));
+        }
+        HyperContext context = new HyperContext.Builder()
+            .setRetryPolicy(RetryPolicy.NONE)
+            .setCircuitBreaker(new CircuitBreaker(2, 1, TimeUnit.MINUTES))
+            .setNegativeCacheTtl(0, TimeUnit.MILLISECONDS)
+            .build();
+
+        for (int index = 0; index < 3; index++) {
+            try {
+                HyperJsons.createRoot(mServer.getUrl("/root/" + index), context).fetch();
+                fail("Expected a FetchException");
+            } catch (FetchException ex) {
+                assertTrue(ex.isRetryable());
+            }
+        }
+
+        // test the third fetch to the host never left the device
+        assertEquals(2, mServer.getRequestCount());
+        assertEquals(1, context.getMetrics().getCircuitRejections());
+        assertTrue(context.getCircuitBreaker().isOpen(mServer.getUrl("/").getAuthority()));
+    }
+}
@@ -0,0 +1,150 @@
+package io.hypergroup.hyper;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.Arrays;
+
+import io.hypergroup.hyper.exception.MissingPropertyException;
+import io.hypergroup.hyper.json.HyperJsons;
+
+public class FieldHintsTest extends TestCase {
+
+    private MockWebServer mServer;
+    private HyperContext mContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new SparseDispatcher());
+        mServer.play();
+        mContext = new HyperContext.Builder()
+            .setFieldHints(new FieldHints(FieldHints.DEFAULT_PARAMETER, 2))
+            .build();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testTemplate() throws Exception {
+        assertEquals("example.com/users/*/friends", FieldHints.toTemplate(new URL("http://example.com/users/123/friends?page=2")));
+        assertEquals("example.com/notes/*", FieldHints.toTemplate(new URL("http://example.com/notes/5f1b2c3d4e5f6a7b8c9d")));
+    }
+
+    public void testOnlyReadKeysFetched() throws Exception {
+        // learn from full fetches
+        for (int id = 1; id <= 2; id++) {
+            Hyper user = user(id);
+            assertEquals("User " + id, user.get("display_name"));
+            user.get("avatar");
+            assertEquals(null, query(mServer.takeRequest()));
+        }
+
+        // test later fetches ask for the keys read only
+        Hyper user = user(3);
+        assertEquals("User 3", user.get("display_name"));
+        assertEquals("/a/3.png", user.get("avatar"));
+        assertEquals("avatar,collection,display_name,href", query(mServer.takeRequest()));
+        assertEquals(1, mContext.getMetrics().getPartialFetchCount());
+        assertTrue(mContext.getMetrics().getPartialSavedBytes() > 0);
+
+        // test reading another key falls back to a full fetch
+        assertEquals(bio(3), user.get("bio"));
+        assertEquals(null, query(mServer.takeRequest()));
+        assertEquals(1, mContext.getMetrics().getFieldsFallbackCount());
+
+        // test the key is asked for from then on
+        assertEquals(bio(4), user(4).get("bio"));
+        assertEquals("avatar,bio,collection,display_name,href", query(mServer.takeRequest()));
+    }
+
+    public void testAvailableKeysFetchesEverything() throws Exception {
+        for (int id = 1; id <= 2; id++) {
+            user(id).get("display_name");
+        }
+        Hyper user = user(3);
+        user.fetch();
+        user.getAvailableKeys();
+        user(4).get("display_name");
+        mServer.takeRequest();
+        mServer.takeRequest();
+        assertNotNull(query(mServer.takeRequest()));
+
+        // test listing keys stops partial fetches
+        assertEquals(null, query(mServer.takeRequest()));
+    }
+
+    public void testEmptyKeyPath() throws Exception {
+        Hyper user = user(1).fetch();
+
+        // test an empty key path is not recorded as a read, and fails like it does without hints
+        try {
+            user.get("");
+            fail();
+        } catch (MissingPropertyException ex) {
+            // expected
+        }
+    }
+
+    private Hyper user(int id) {
+        return HyperJsons.createRoot(mServer.getUrl("/users/" + id), mContext);
+    }
+
+    private static String bio(int id) {
+        char[] bio = new char[1000];
+        Arrays.fill(bio, (char) ('a' + id));
+        return new String(bio);
+    }
+
+    /**
+     * @return Decoded fields asked for, or null
+     */
+    private static String query(RecordedRequest request) throws Exception {
+        String[] parts = request.getPath().split("\\?fields=", 2);
+        return parts.length < 2 ? null : URLDecoder.decode(parts[1], "UTF-8");
+    }
+
+    /**
+     * Stand-in for a server that supports sparse fieldsets
+     */
+    private static class SparseDispatcher extends Dispatcher {
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            try {
+                String[] parts = request.getPath().split("\\?fields=", 2);
+                int id = Integer.parseInt(parts[0].substring(parts[0].lastIndexOf('/') + 1));
+                JSONObject user = new JSONObject()
+                    .put("href", parts[0])
+                    .put("display_name", "User " + id)
+                    .put("avatar", "/a/" + id + ".png")
+                    .put("email", "user" + id + "@example.com")
+                    .put("bio", bio(id));
+                if (parts.length == 2) {
+                    JSONObject sparse = new JSONObject();
+                    for (String field : URLDecoder.decode(parts[1], "UTF-8").split(",")) {
+                        if (user.has(field)) {
+                            sparse.put(field, user.get(field));
+                        }
+                    }
+                    user = sparse;
+                }
+                return new MockResponse().setBody(user.toString());
+            } catch (Exception ex) {
+                return new MockResponse().setResponseCode(500);
+            }
+        }
+    }
+}
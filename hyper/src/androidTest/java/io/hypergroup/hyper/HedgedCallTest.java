@@ -0,0 +1,107 @@
+package io.hypergroup.hyper;
+
+import android.util.Log;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import junit.framework.TestCase;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import io.hypergroup.hyper.json.HyperJsons;
+
+public class HedgedCallTest extends TestCase {
+
+    private static final String TAG = HedgedCallTest.class.getSimpleName();
+
+    private static final int FETCHES = 200;
+
+    /**
+     * One item in SLOW_EVERY is first served by the slow replica
+     */
+    private static final int SLOW_EVERY = 20;
+    private static final long SLOW_MILLIS = 500;
+
+    private MockWebServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new SlowReplicaDispatcher());
+        mServer.play();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testHedgingCutsTail() throws Exception {
+        long plain = benchmark("/plain", new HyperContext.Builder().build());
+        HedgePolicy policy = new HedgePolicy();
+        long hedged = benchmark("/hedged", new HyperContext.Builder().setHedgePolicy(policy).build());
+        Log.i(TAG, "p99 of " + FETCHES + " fetches: " + plain + "ms plain, " + hedged + "ms hedged with " + policy.getHedgeCount() + " hedges");
+
+        // test the slow replica no longer sets the p99, within the budget
+        assertTrue(plain >= SLOW_MILLIS);
+        assertTrue(hedged < SLOW_MILLIS);
+        assertTrue(policy.getHedgeCount() > 0);
+        assertTrue(policy.getHedgeCount() <= HedgePolicy.DEFAULT_BUDGET * FETCHES);
+    }
+
+    public void testHostAtLimitIsNotHedged() throws Exception {
+        HedgePolicy policy = new HedgePolicy();
+        HyperContext context = new HyperContext.Builder()
+            .setHedgePolicy(policy)
+            .setConcurrencyLimited(true)
+            .setConcurrencyLimits(1, 1, 1)
+            .build();
+        long hedged = benchmark("/limited", context);
+
+        // test the fetch holds the only slot, so the slow replica is waited out
+        assertEquals(0, policy.getHedgeCount());
+        assertTrue(hedged >= SLOW_MILLIS);
+        assertEquals(0, context.getConcurrencyLimiter().getInFlight(mServer.getUrl("/").getAuthority()));
+    }
+
+    /**
+     * @param prefix Prefix of the items' paths, so every benchmark hits the slow replica alike
+     * @return p99 latency of FETCHES sequential fetches
+     */
+    private long benchmark(String prefix, HyperContext context) throws Exception {
+        LatencyHistogram latencies = new LatencyHistogram(FETCHES);
+        for (int index = 0; index < FETCHES; index++) {
+            long start = System.nanoTime();
+            Hyper node = HyperJsons.createRoot(mServer.getUrl(prefix + "/items/" + index), context).fetch();
+            latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            assertEquals((Object) index, node.get("id"));
+        }
+        return latencies.getPercentile(0.99);
+    }
+
+    /**
+     * Answers the first request for every SLOW_EVERY-th item slowly, and its hedge right away
+     */
+    private static class SlowReplicaDispatcher extends Dispatcher {
+
+        private final Set<String> mRequested = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            String path = request.getPath();
+            int id = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+            if (mRequested.add(path) && id % SLOW_EVERY == 0) {
+                Thread.sleep(SLOW_MILLIS);
+            }
+            return new MockResponse().setBody("{\"href\": \"" + path + "\", \"id\": " + id + "}");
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package io.hypergroup.hyper;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import junit.framework.TestCase;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import io.hypergroup.hyper.json.HyperJsons;
+
+public class HyperPublisherTest extends TestCase {
+
+    private static final int PAGES = 4;
+    private static final int PAGE_SIZE = 5;
+
+    private MockWebServer mServer;
+
+    /**
+     * Name served for /user
+     */
+    private volatile String mName = "Matt";
+
+    /**
+     * Friends resource linked from /user, and the count each one serves
+     */
+    private volatile String mFriends = "/friends/1";
+    private volatile int mFriendCount = 2;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new PageDispatcher());
+        mServer.play();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testStreamFollowsDemand() throws Exception {
+        Hyper root = HyperJsons.createRoot(mServer.getUrl("/items?page=1"));
+        RecordingSubscriber<Hyper> subscriber = new RecordingSubscriber<Hyper>();
+        root.<Hyper>stream().subscribe(subscriber);
+
+        // test a slow subscriber only causes the first page to be fetched
+        subscriber.request(3);
+        subscriber.take(3);
+        Thread.sleep(200);
+        assertEquals(1, mServer.getRequestCount());
+
+        // test pages are fetched as far as the demand goes
+        subscriber.request(10);
+        subscriber.take(10);
+        Thread.sleep(200);
+        assertEquals(3, mServer.getRequestCount());
+
+        // test the stream completes after the last page
+        subscriber.request(Long.MAX_VALUE);
+        subscriber.take(PAGES * PAGE_SIZE - 13);
+        assertTrue(subscriber.awaitComplete());
+        assertEquals(PAGES, mServer.getRequestCount());
+        assertTrue(subscriber.mItems.isEmpty());
+    }
+
+    public void testPages() throws Exception {
+        Hyper root = HyperJsons.createRoot(mServer.getUrl("/items?page=1"));
+        RecordingSubscriber<Hyper> subscriber = new RecordingSubscriber<Hyper>();
+        root.pages().subscribe(subscriber);
+        subscriber.request(Long.MAX_VALUE);
+
+        for (int page = 1; page <= PAGES; page++) {
+            assertEquals(mServer.getUrl("/items?page=" + page), subscriber.take(1).getHref());
+        }
+        assertTrue(subscriber.awaitComplete());
+    }
+
+    public void testWatch() throws Exception {
+        Hyper root = HyperJsons.createRoot(mServer.getUrl("/user"));
+        RecordingSubscriber<String> subscriber = new RecordingSubscriber<String>();
+        root.<String>watch("name").subscribe(subscriber);
+        subscriber.request(10);
+        assertEquals("Matt", subscriber.take(1));
+
+        // test a refetch with the same value is not published, and let its change be delivered
+        // before the name changes
+        root.invalidate();
+        root.fetch();
+        assertNull(subscriber.mItems.poll(500, TimeUnit.MILLISECONDS));
+
+        // test a changed value is published
+        mName = "Matthew";
+        root.invalidate();
+        root.fetch();
+        assertEquals("Matthew", subscriber.take(1));
+
+        // test cancelling stops the publisher
+        subscriber.mSubscription.cancel();
+        mName = "Matt";
+        root.invalidate();
+        root.fetch();
+        assertNull(subscriber.mItems.poll(500, TimeUnit.MILLISECONDS));
+        assertNull(subscriber.mError);
+    }
+
+    public void testWatchNestedResource() throws Exception {
+        Hyper root = HyperJsons.createRoot(mServer.getUrl("/user"));
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<Integer>();
+        root.<Integer>watch("friends.count").subscribe(subscriber);
+        subscriber.request(10);
+        assertEquals(2, (int) subscriber.take(1));
+
+        // test reading the nested resource does not keep fetching it
+        Thread.sleep(300);
+        int requests = mServer.getRequestCount();
+        Thread.sleep(300);
+        assertEquals(requests, mServer.getRequestCount());
+
+        // test a change to the nested resource is published
+        mFriendCount = 3;
+        Hyper friends = root.get("friends");
+        friends.invalidate();
+        friends.fetch();
+        assertEquals(3, (int) subscriber.take(1));
+
+        // test the key path is followed to another resource, and that one is watched instead
+        mFriends = "/friends/2";
+        mFriendCount = 4;
+        root.invalidate();
+        root.fetch();
+        assertEquals(4, (int) subscriber.take(1));
+        mFriendCount = 5;
+        friends.invalidate();
+        friends.fetch();
+        assertNull(subscriber.mItems.poll(500, TimeUnit.MILLISECONDS));
+        friends = root.get("friends");
+        friends.invalidate();
+        friends.fetch();
+        assertEquals(5, (int) subscriber.take(1));
+
+        subscriber.mSubscription.cancel();
+        assertNull(subscriber.mError);
+    }
+
+    /**
+     * Records the signals it receives
+     */
+    private static class RecordingSubscriber<T> implements Subscriber<T> {
+
+        final BlockingQueue<T> mItems = new LinkedBlockingQueue<T>();
+        final CountDownLatch mComplete = new CountDownLatch(1);
+        volatile Subscription mSubscription;
+        volatile Throwable mError;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            mSubscription = subscription;
+        }
+
+        @Override
+        public void onNext(T item) {
+            mItems.add(item);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            mError = error;
+            mComplete.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            mComplete.countDown();
+        }
+
+        void request(long n) {
+            mSubscription.request(n);
+        }
+
+        /**
+         * @return The last of the next count items
+         */
+        T take(int count) throws InterruptedException {
+            T item = null;
+            for (int index = 0; index < count; index++) {
+                item = mItems.poll(5, TimeUnit.SECONDS);
+                assertNotNull("Timed out waiting for an item", item);
+            }
+            return item;
+        }
+
+        boolean awaitComplete() throws InterruptedException {
+            return mComplete.await(5, TimeUnit.SECONDS) && mError == null;
+        }
+    }
+
+    /**
+     * Serves PAGES pages of PAGE_SIZE items, and a user with friends for /user
+     */
+    private class PageDispatcher extends Dispatcher {
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            String path = request.getPath();
+            if ("/user".equals(path)) {
+                return new MockResponse().setBody("{\"href\": \"/user\", \"name\": \"" + mName + "\", \"friends\": {\"href\": \"" + mFriends + "\"}}");
+            }
+            if (path.startsWith("/friends/")) {
+                return new MockResponse().setBody("{\"href\": \"" + path + "\", \"count\": " + mFriendCount + "}");
+            }
+            int page = Integer.parseInt(path.substring(path.indexOf('=') + 1));
+            StringBuilder body = new StringBuilder("{\"href\": \"" + path + "\", ");
+            if (page < PAGES) {
+                body.append("\"next\": {\"href\": \"/items?page=").append(page + 1).append("\"}, ");
+            }
+            body.append("\"collection\": [");
+            for (int index = 0; index < PAGE_SIZE; index++) {
+                int id = (page - 1) * PAGE_SIZE + index;
+                body.append(index == 0 ? "" : ", ").append("{\"href\": \"/items/").append(id).append("\", \"id\": ").append(id).append("}");
+            }
+            return new MockResponse().setBody(body.append("]}").toString());
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package io.hypergroup.hyper;
+
+import android.util.Log;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.hypergroup.hyper.json.HyperJsons;
+import io.hypergroup.hyper.json.JsonData;
+import io.hypergroup.hyper.json.JsonFiles;
+
+public class HyperSnapshotTest extends TestCase {
+
+    private static final String TAG = HyperSnapshotTest.class.getSimpleName();
+
+    /**
+     * Collection sizes for the benchmark
+     */
+    private static final int[] BENCHMARK_SIZES = {1000, 10000, 100000};
+
+    /**
+     * Users per page in the benchmark tree
+     */
+    private static final int PAGE_SIZE = 100;
+
+    public void testRoundTrip() throws Exception {
+
+        // Create a mock server
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody(JsonFiles.USER.GET).setHeader("ETag", "\"user-1\""));
+        server.play();
+        URL url = server.getUrl(JsonFiles.USER.URL.replace("<user_id>", "1"));
+
+        // Fetch and snapshot, leaving out the avatar node between the root and its default
+        Hyper root = HyperJsons.createRoot(url).fetch();
+        Hyper friends = root.get("friends");
+        Hyper avatar = root.get("avatar.default");
+        friends.setETag("\"friends-1\"", true);
+        byte[] snapshot = HyperSnapshot.toByteArray(avatar, root, friends);
+        server.shutdown();
+
+        // Restore without a network
+        Hyper restoredRoot = HyperJsons.createRoot(url);
+        List<Hyper> restored = HyperSnapshot.read(new ByteArrayInputStream(snapshot), restoredRoot);
+
+        // test nodes
+        assertEquals(3, restored.size());
+        assertSame(restoredRoot, restored.get(1));
+        assertTrue(restoredRoot.isFetched());
+        assertEquals(root.getFetchedAt(), restoredRoot.getFetchedAt());
+        assertEquals("\"user-1\"", restoredRoot.getETag());
+        assertFalse(restoredRoot.isPartial());
+
+        Hyper restoredFriends = restored.get(2);
+        assertSame(restoredRoot, restoredFriends.getParent());
+        assertEquals("friends", restoredFriends.getSegment());
+        assertEquals("/api/users/1/friends", restoredFriends.getHref().getPath());
+        assertTrue(restoredFriends.isPartial());
+        assertNull(restoredFriends.getETag());
+
+        // test the parent chain, the avatar is rebuilt from the root's data
+        Hyper restoredAvatar = restored.get(0);
+        assertEquals("default", restoredAvatar.getSegment());
+        assertEquals("avatar.default", restoredAvatar.getKeyPath());
+        Hyper restoredParent = restoredAvatar.getParent();
+        assertEquals("avatar", restoredParent.getSegment());
+        assertSame(restoredRoot, restoredParent.getParent());
+        assertEquals("http://0.gravatar.com/avatar/40d7909c10c12eb67bf967d6431d4e97", restoredParent.get("default.url"));
+
+        // test data is served from the snapshot
+        assertEquals("Matt", restoredRoot.get("first_name"));
+        assertEquals((Object) 10, restoredFriends.get("count"));
+        assertSame(LazyData.class, restoredRoot.getData().getClass());
+        assertSame(JsonData.class, ((LazyData) restoredRoot.getData()).getDecoded().getClass());
+    }
+
+    public void testBenchmark() throws Exception {
+        URL url = new URL("http://example.com/api/users");
+        for (int size : BENCHMARK_SIZES) {
+
+            // ## Tree of size users, in pages under the root
+
+            JSONArray pages = new JSONArray();
+            for (int pageIndex = 0; pageIndex < size / PAGE_SIZE; pageIndex++) {
+                JSONArray users = new JSONArray();
+                for (int index = 0; index < PAGE_SIZE; index++) {
+                    int id = pageIndex * PAGE_SIZE + index;
+                    JSONObject user = new JSONObject();
+                    user.put("href", "/api/users/" + id);
+                    user.put("id", id);
+                    user.put("display_name", "User " + id);
+                    users.put(user);
+                }
+                JSONObject page = new JSONObject();
+                page.put("href", "/api/users?page=" + pageIndex);
+                page.put("collection", users);
+                pages.put(page);
+            }
+            JSONObject data = new JSONObject();
+            data.put("href", "/api/users");
+            data.put("collection", pages);
+            Hyper root = HyperJsons.createRoot(url);
+            root.setData(new JsonData(data));
+            root.setFetched(true);
+
+            List<Hyper> nodes = new ArrayList<Hyper>();
+            Map<Hyper, Integer> indexes = new IdentityHashMap<Hyper, Integer>();
+            List<Hyper> pageNodes = root.each();
+            for (Hyper page : pageNodes) {
+                indexes.put(page, nodes.size());
+                nodes.add(page);
+                // embedded in full, nothing to fetch
+                page.setFetched(true);
+                List<Hyper> users = page.each();
+                nodes.addAll(users);
+            }
+            assertEquals(size + size / PAGE_SIZE, nodes.size());
+
+            // ## Snapshot every page and user, not the root
+
+            long start = System.nanoTime();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            HyperSnapshot.Writer writer = new HyperSnapshot.Writer(bytes);
+            for (Hyper node : nodes) {
+                writer.write(node);
+            }
+            writer.finish();
+            byte[] snapshot = bytes.toByteArray();
+            long writeNanos = System.nanoTime() - start;
+
+            // ## Restore
+
+            Hyper restoredRoot = HyperJsons.createRoot(url);
+            start = System.nanoTime();
+            List<Hyper> restored = HyperSnapshot.read(new ByteArrayInputStream(snapshot), restoredRoot);
+            long readNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (Hyper node : restored) {
+                node.get("href");
+            }
+            long rehydrateNanos = System.nanoTime() - start;
+
+            Log.i(TAG, restored.size() + " nodes: " + snapshot.length + "B, snapshot " + (writeNanos / 1000000) + "ms, restore " + (readNanos / 1000000) + "ms, rehydrate " + (rehydrateNanos / 1000000) + "ms");
+
+            // test the tree came back in shape
+            assertEquals(nodes.size(), restored.size());
+            for (int index = 0; index < nodes.size(); index++) {
+                Hyper node = nodes.get(index);
+                Hyper restoredNode = restored.get(index);
+                assertEquals(node.getKeyPath(), restoredNode.getKeyPath());
+                assertEquals(node.getHref(), restoredNode.getHref());
+                if (node.getParent() == root) {
+                    assertSame(restoredRoot, restoredNode.getParent());
+                } else {
+                    assertSame(restored.get(indexes.get(node.getParent())), restoredNode.getParent());
+                }
+            }
+        }
+    }
+}
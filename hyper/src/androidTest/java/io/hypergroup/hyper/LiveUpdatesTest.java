@@ -0,0 +1,299 @@
+package io.hypergroup.hyper;
+
+import android.util.Log;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.hypergroup.hyper.json.HyperJsons;
+
+public class LiveUpdatesTest extends TestCase {
+
+    private static final String TAG = LiveUpdatesTest.class.getSimpleName();
+
+    private static final int USERS = 20;
+    private static final int ROUNDS = 5;
+    private static final int CHANGES_PER_ROUND = 2;
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private MockWebServer mServer;
+    private EventDispatcher mDispatcher;
+    private LiveUpdates mLiveUpdates;
+    private HyperContext mContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDispatcher = new EventDispatcher();
+        mServer = new MockWebServer();
+        mServer.setDispatcher(mDispatcher);
+        mServer.play();
+        mLiveUpdates = new LiveUpdates(LiveUpdates.DEFAULT_PATH, 10);
+        mContext = new HyperContext.Builder().setLiveUpdates(mLiveUpdates).build();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mLiveUpdates.close();
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testEmbeddedChange() throws Exception {
+        final Hyper user = fetchUsers().get(1);
+        user.subscribe();
+        int fetches = mDispatcher.mResourceRequests.get();
+
+        mDispatcher.publish(1, EventDispatcher.EMBED);
+
+        // test the pushed data is applied without a fetch
+        waitForName(user, "User 1 v1");
+        assertEquals(fetches, mDispatcher.mResourceRequests.get());
+        assertEquals("\"1-1\"", user.getETag());
+    }
+
+    public void testPatchChange() throws Exception {
+        final Hyper user = fetchUsers().get(2);
+        user.subscribe();
+        int fetches = mDispatcher.mResourceRequests.get();
+
+        mDispatcher.publish(2, EventDispatcher.PATCH);
+
+        waitForName(user, "User 2 v1");
+        assertEquals(fetches, mDispatcher.mResourceRequests.get());
+    }
+
+    public void testChangeFetchesConditionally() throws Exception {
+        final Hyper user = fetchUsers().get(3);
+        user.subscribe();
+        int fetches = mDispatcher.mResourceRequests.get();
+
+        mDispatcher.publish(3, EventDispatcher.NOTIFY);
+
+        // test the node was fetched again against the ETag it held
+        waitForName(user, "User 3 v1");
+        assertEquals(fetches + 1, mDispatcher.mResourceRequests.get());
+        assertEquals("\"3-0\"", mDispatcher.mIfNoneMatch.get(mDispatcher.mIfNoneMatch.size() - 1));
+
+        // test a change to the version held is skipped
+        final long events = mContext.getMetrics().getLiveEventCount();
+        mDispatcher.republish(3, EventDispatcher.NOTIFY);
+        waitFor(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return mContext.getMetrics().getLiveEventCount() > events;
+            }
+        });
+        Thread.sleep(100);
+        assertEquals(fetches + 1, mDispatcher.mResourceRequests.get());
+    }
+
+    public void testReconnectWithLastEventId() throws Exception {
+        Hyper user = fetchUsers().get(4);
+        user.subscribe();
+
+        mDispatcher.publish(4, EventDispatcher.EMBED);
+        waitForName(user, "User 4 v1");
+
+        // test the stream picks up after the last event it saw
+        waitFor(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return mDispatcher.mLastEventIds.contains("1");
+            }
+        });
+        assertTrue(mContext.getMetrics().getLiveReconnectCount() > 0);
+    }
+
+    public void testOneStreamPerHost() throws Exception {
+        List<Hyper> users = fetchUsers();
+        LiveUpdates.Subscription first = users.get(0).subscribe();
+        LiveUpdates.Subscription second = users.get(1).subscribe();
+        assertEquals(1, mLiveUpdates.getStreamCount());
+
+        // test the stream closes with its last subscription
+        first.cancel();
+        assertEquals(1, mLiveUpdates.getStreamCount());
+        second.cancel();
+        assertEquals(0, mLiveUpdates.getStreamCount());
+    }
+
+    public void testBenchmark() throws Exception {
+        // polling every user every round
+        List<Hyper> polled = fetchUsers();
+        int start = mServer.getRequestCount();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int change = 0; change < CHANGES_PER_ROUND; change++) {
+                mDispatcher.change(round * CHANGES_PER_ROUND + change);
+            }
+            for (Hyper user : polled) {
+                user.invalidate();
+                user.fetch();
+            }
+        }
+        int pollingRequests = mServer.getRequestCount() - start;
+
+        // subscribing to every user
+        List<Hyper> subscribed = fetchUsers();
+        start = mServer.getRequestCount();
+        for (Hyper user : subscribed) {
+            user.subscribe();
+        }
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int change = 0; change < CHANGES_PER_ROUND; change++) {
+                int id = round * CHANGES_PER_ROUND + change;
+                // half the changes carry their data, the others are fetched
+                mDispatcher.publish(id, change % 2 == 0 ? EventDispatcher.EMBED : EventDispatcher.NOTIFY);
+            }
+            for (int change = 0; change < CHANGES_PER_ROUND; change++) {
+                int id = round * CHANGES_PER_ROUND + change;
+                waitForName(subscribed.get(id), "User " + id + " v" + mDispatcher.mVersions.get(id));
+            }
+        }
+        int liveRequests = mServer.getRequestCount() - start;
+
+        Log.i(TAG, USERS + " users, " + ROUNDS + " rounds of " + CHANGES_PER_ROUND + " changes: polling "
+            + pollingRequests + " requests, live " + liveRequests + " requests");
+        assertEquals(USERS * ROUNDS, pollingRequests);
+        assertTrue(liveRequests * 4 < pollingRequests);
+    }
+
+    private List<Hyper> fetchUsers() throws Exception {
+        Hyper root = HyperJsons.createRoot(mServer.getUrl("/users"), mContext);
+        List<Hyper> users = root.each();
+        for (Hyper user : users) {
+            user.fetch();
+        }
+        return users;
+    }
+
+    private static void waitForName(final Hyper user, final String name) throws Exception {
+        waitFor(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return name.equals(user.get("name"));
+            }
+        });
+    }
+
+    private static void waitFor(Callable<Boolean> condition) throws Exception {
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.call()) {
+            if (System.currentTimeMillis() > end) {
+                fail("Timed out");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Stand-in for a server with versioned users and an event stream of their changes. Each
+     * stream response carries the events published since the last one and ends, so clients
+     * reconnect with Last-Event-ID.
+     */
+    private static class EventDispatcher extends Dispatcher {
+
+        static final int EMBED = 0;
+        static final int PATCH = 1;
+        static final int NOTIFY = 2;
+
+        final ConcurrentHashMap<Integer, Integer> mVersions = new ConcurrentHashMap<Integer, Integer>();
+        final AtomicInteger mResourceRequests = new AtomicInteger();
+        final List<String> mIfNoneMatch = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> mLastEventIds = Collections.synchronizedList(new ArrayList<String>());
+        private final BlockingQueue<String> mEvents = new LinkedBlockingQueue<String>();
+        private final AtomicInteger mNextEventId = new AtomicInteger(1);
+
+        EventDispatcher() {
+            for (int id = 0; id < USERS; id++) {
+                mVersions.put(id, 0);
+            }
+        }
+
+        /**
+         * Change a user without telling anyone
+         */
+        void change(int id) {
+            mVersions.put(id, mVersions.get(id) + 1);
+        }
+
+        /**
+         * Change a user and publish the change
+         */
+        void publish(int id, int kind) {
+            change(id);
+            republish(id, kind);
+        }
+
+        /**
+         * Publish the current version of a user again
+         */
+        void republish(int id, int kind) {
+            int version = mVersions.get(id);
+            StringBuilder change = new StringBuilder("{\"href\": \"/users/").append(id)
+                .append("\", \"etag\": \"\\\"").append(id).append('-').append(version).append("\\\"\"");
+            if (kind == EMBED) {
+                change.append(", \"data\": ").append(user(id));
+            } else if (kind == PATCH) {
+                change.append(", \"base\": \"\\\"").append(id).append('-').append(version - 1).append("\\\"\"")
+                    .append(", \"format\": \"merge-patch\", \"patch\": {\"name\": \"").append(name(id)).append("\"}");
+            }
+            change.append('}');
+            mEvents.add("id: " + mNextEventId.getAndIncrement() + "\nevent: change\ndata: " + change + "\n\n");
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            String path = request.getPath();
+            if (LiveUpdates.DEFAULT_PATH.equals(path)) {
+                mLastEventIds.add(request.getHeader(LiveUpdates.HEADER_LAST_EVENT_ID));
+                StringBuilder body = new StringBuilder("retry: 10\n\n");
+                String event = mEvents.poll(1, TimeUnit.SECONDS);
+                while (event != null) {
+                    body.append(event);
+                    event = mEvents.poll();
+                }
+                return new MockResponse().setHeader("Content-Type", "text/event-stream").setBody(body.toString());
+            } else if ("/users".equals(path)) {
+                StringBuilder body = new StringBuilder("{\"href\": \"/users\", \"collection\": [");
+                for (int id = 0; id < USERS; id++) {
+                    body.append(id == 0 ? "" : ", ").append("{\"href\": \"/users/").append(id).append("\"}");
+                }
+                return new MockResponse().setBody(body.append("]}").toString());
+            }
+            mResourceRequests.incrementAndGet();
+            int id = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+            String eTag = "\"" + id + "-" + mVersions.get(id) + "\"";
+            String ifNoneMatch = request.getHeader("If-None-Match");
+            if (ifNoneMatch != null) {
+                mIfNoneMatch.add(ifNoneMatch);
+            }
+            if (eTag.equals(ifNoneMatch)) {
+                return new MockResponse().setResponseCode(304);
+            }
+            return new MockResponse().setHeader("ETag", eTag).setBody(user(id));
+        }
+
+        private String user(int id) {
+            return "{\"href\": \"/users/" + id + "\", \"name\": \"" + name(id) + "\"}";
+        }
+
+        private String name(int id) {
+            return "User " + id + " v" + mVersions.get(id);
+        }
+    }
+}
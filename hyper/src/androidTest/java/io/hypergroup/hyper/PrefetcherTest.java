@@ -0,0 +1,168 @@
+package io.hypergroup.hyper;
+
+import android.util.Log;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+import io.hypergroup.hyper.json.HyperJsons;
+
+public class PrefetcherTest extends TestCase {
+
+    private static final String TAG = PrefetcherTest.class.getSimpleName();
+
+    /**
+     * Rows in the scripted list
+     */
+    private static final int ROWS = 300;
+
+    /**
+     * Rows on screen
+     */
+    private static final int VISIBLE = 10;
+
+    /**
+     * Scripted scroll, one row per frame
+     */
+    private static final int FRAMES = 200;
+    private static final long FRAME_MILLIS = 16;
+
+    private MockWebServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new ItemDispatcher(30));
+        mServer.play();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testCancelOutOfRange() throws Exception {
+        final List<Hyper> items = fetchItems();
+        Prefetcher prefetcher = new Prefetcher(new ListSource(items), 1);
+
+        // queue the top of the list, then jump away from it
+        prefetcher.onScroll(0, VISIBLE, 0);
+        prefetcher.onScroll(ROWS - VISIBLE, VISIBLE, 0);
+
+        // test everything that had not started was dropped
+        assertTrue(prefetcher.getCancelCount() >= VISIBLE + Prefetcher.DEFAULT_LOOKAHEAD - 1);
+        prefetcher.shutdown();
+    }
+
+    public void testMemoryBudget() throws Exception {
+        final List<Hyper> items = fetchItems();
+        Prefetcher prefetcher = new Prefetcher(new ListSource(items));
+        prefetcher.setMemoryBudget(0);
+
+        prefetcher.onScroll(0, VISIBLE, 0);
+        for (Hyper item : items.subList(0, VISIBLE)) {
+            item.fetchAsync().waitForCompletion();
+        }
+        Thread.sleep(500);
+        prefetcher.onScroll(VISIBLE * 5, VISIBLE, 0);
+
+        // test nothing off screen is kept
+        assertEquals(0, prefetcher.getRetainedBytes());
+        prefetcher.shutdown();
+    }
+
+    public void testScrollBenchmark() throws Exception {
+        int baseline = scroll(false);
+        int prefetched = scroll(true);
+        Log.i(TAG, "rows shown loading over " + FRAMES + " frames: " + baseline + " without prefetch, " + prefetched + " with prefetch");
+        assertTrue(prefetched <= baseline);
+    }
+
+    /**
+     * Scroll down one row per frame, binding rows as they come on screen
+     *
+     * @return Number of rows that were still loading when they came on screen
+     */
+    private int scroll(boolean prefetch) throws Exception {
+        List<Hyper> items = fetchItems();
+        Prefetcher prefetcher = prefetch ? new Prefetcher(new ListSource(items)) : null;
+        float velocity = 1000f / FRAME_MILLIS;
+        int loading = 0;
+        for (int frame = 0; frame < FRAMES; frame++) {
+            if (prefetcher != null) {
+                prefetcher.onScroll(frame, VISIBLE, frame == 0 ? 0 : velocity);
+            }
+            // bind the rows that came on screen, the way HyperView does
+            int from = frame == 0 ? 0 : frame + VISIBLE - 1;
+            for (int position = from; position < frame + VISIBLE; position++) {
+                Hyper item = items.get(position);
+                if (!item.isFetched()) {
+                    loading++;
+                    item.fetchAsync();
+                }
+            }
+            Thread.sleep(FRAME_MILLIS);
+        }
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+        }
+        return loading;
+    }
+
+    private List<Hyper> fetchItems() throws Exception {
+        return HyperJsons.createRoot(mServer.getUrl("/items")).each();
+    }
+
+    private static class ListSource implements Prefetcher.Source {
+
+        private final List<Hyper> mItems;
+
+        ListSource(List<Hyper> items) {
+            mItems = items;
+        }
+
+        @Override
+        public int getCount() {
+            return mItems.size();
+        }
+
+        @Override
+        public Hyper getNode(int position) {
+            return mItems.get(position);
+        }
+    }
+
+    /**
+     * Serves a collection of ROWS items, each item after a delay
+     */
+    private static class ItemDispatcher extends Dispatcher {
+
+        private final long mDelayMillis;
+
+        ItemDispatcher(long delayMillis) {
+            mDelayMillis = delayMillis;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            String path = request.getPath();
+            if ("/items".equals(path)) {
+                StringBuilder body = new StringBuilder("{\"href\": \"/items\", \"collection\": [");
+                for (int index = 0; index < ROWS; index++) {
+                    body.append(index == 0 ? "" : ", ").append("{\"href\": \"/items/").append(index).append("\"}");
+                }
+                return new MockResponse().setBody(body.append("]}").toString());
+            }
+            Thread.sleep(mDelayMillis);
+            return new MockResponse().setBody("{\"href\": \"" + path + "\", \"name\": \"Item " + path.substring(path.lastIndexOf('/') + 1) + "\"}");
+        }
+    }
+}
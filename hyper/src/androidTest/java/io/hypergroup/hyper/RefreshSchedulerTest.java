@@ -0,0 +1,248 @@
+package io.hypergroup.hyper;
+
+import android.util.Log;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.hypergroup.hyper.json.HyperJsons;
+
+public class RefreshSchedulerTest extends TestCase {
+
+    private static final String TAG = RefreshSchedulerTest.class.getSimpleName();
+
+    private static final int SCREENS = 10;
+    private static final int RESOURCES = 3;
+    private static final long MAX_AGE_MILLIS = 100;
+    private static final long WINDOW_MILLIS = 20;
+    private static final long DURATION_MILLIS = 1000;
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private MockWebServer mServer;
+    private VersionDispatcher mDispatcher;
+    private HyperContext mContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDispatcher = new VersionDispatcher();
+        mServer = new MockWebServer();
+        mServer.setDispatcher(mDispatcher);
+        mServer.play();
+        mContext = new HyperContext.Builder()
+            .setRefreshScheduling(WINDOW_MILLIS, RefreshScheduler.DEFAULT_IDLE_AFTER_MILLIS, TimeUnit.MILLISECONDS, RefreshScheduler.DEFAULT_JITTER)
+            .build();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getRefreshScheduler().close();
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testOneRefreshPerResource() throws Exception {
+        List<List<Hyper>> screens = openScreens();
+        int start = mDispatcher.mRequests.get();
+        for (List<Hyper> screen : screens) {
+            for (Hyper item : screen) {
+                item.keepFresh(MAX_AGE_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        assertEquals(RESOURCES, mContext.getRefreshScheduler().getEntryCount());
+
+        mDispatcher.change(0);
+
+        // test every screen sees the change
+        for (List<Hyper> screen : screens) {
+            waitForName(screen.get(0), "Item 0 v1");
+        }
+        Thread.sleep(DURATION_MILLIS);
+
+        // test the requests follow the resources, and are conditional
+        int requests = mDispatcher.mRequests.get() - start;
+        long refreshes = DURATION_MILLIS / MAX_AGE_MILLIS + 2;
+        assertTrue(requests <= RESOURCES * refreshes * 2);
+        assertTrue(requests * 4 < SCREENS * RESOURCES * refreshes);
+        assertTrue(mDispatcher.mNotModified.get() > 0);
+        assertTrue(mContext.getMetrics().getRefreshWakeUpCount() <= requests);
+    }
+
+    public void testPausedIsSkipped() throws Exception {
+        Hyper item = HyperJsons.createRoot(mServer.getUrl("/items/0"), mContext).fetch();
+        RefreshScheduler.Registration registration = item.keepFresh(MAX_AGE_MILLIS, TimeUnit.MILLISECONDS);
+        registration.pause();
+        int start = mDispatcher.mRequests.get();
+
+        mDispatcher.change(0);
+        Thread.sleep(MAX_AGE_MILLIS * 3);
+
+        // test nothing was refreshed while nobody was looking
+        assertEquals(start, mDispatcher.mRequests.get());
+
+        // test the overdue refresh is made once resumed
+        registration.resume();
+        waitForName(item, "Item 0 v1");
+
+        // test nothing is refreshed once cancelled
+        registration.cancel();
+        assertEquals(0, mContext.getRefreshScheduler().getEntryCount());
+        start = mDispatcher.mRequests.get();
+        Thread.sleep(MAX_AGE_MILLIS * 3);
+        assertEquals(start, mDispatcher.mRequests.get());
+    }
+
+    public void testIdleBackoff() throws Exception {
+        long idleAfter = MAX_AGE_MILLIS;
+        mContext.getRefreshScheduler().close();
+        mContext = new HyperContext.Builder()
+            .setRefreshScheduling(WINDOW_MILLIS, idleAfter, TimeUnit.MILLISECONDS, RefreshScheduler.DEFAULT_JITTER)
+            .build();
+        Hyper item = HyperJsons.createRoot(mServer.getUrl("/items/0"), mContext).fetch();
+        item.keepFresh(MAX_AGE_MILLIS / 2, TimeUnit.MILLISECONDS);
+
+        // without activity the max age doubles every idle period, up to 16 times
+        Thread.sleep(idleAfter * 5);
+        int start = mDispatcher.mRequests.get();
+        Thread.sleep(idleAfter * 4);
+        assertTrue(mDispatcher.mRequests.get() - start <= 1);
+
+        // test activity brings the refreshes back
+        mDispatcher.change(0);
+        mContext.getRefreshScheduler().onActivity();
+        waitForName(item, "Item 0 v1");
+    }
+
+    public void testBenchmark() throws Exception {
+        // every screen refreshing its own items on its own timer
+        final List<List<Hyper>> timed = openScreens();
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        ScheduledExecutorService timers = Executors.newScheduledThreadPool(SCREENS);
+        int start = mDispatcher.mRequests.get();
+        for (final List<Hyper> screen : timed) {
+            timers.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    for (Hyper item : screen) {
+                        try {
+                            item.invalidate();
+                            item.fetch();
+                        } catch (Throwable ex) {
+                            errors.add(ex);
+                        }
+                    }
+                }
+            }, MAX_AGE_MILLIS, MAX_AGE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        Thread.sleep(DURATION_MILLIS);
+        // let the fetches in progress finish, an interrupted one would count as an error
+        timers.shutdown();
+        timers.awaitTermination(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        int timedRequests = mDispatcher.mRequests.get() - start;
+        assertTrue(errors.isEmpty());
+
+        // every screen registering its items with the scheduler
+        List<List<Hyper>> scheduled = openScreens();
+        start = mDispatcher.mRequests.get();
+        List<RefreshScheduler.Registration> registrations = new ArrayList<RefreshScheduler.Registration>();
+        for (List<Hyper> screen : scheduled) {
+            for (Hyper item : screen) {
+                registrations.add(item.keepFresh(MAX_AGE_MILLIS, TimeUnit.MILLISECONDS));
+            }
+        }
+        Thread.sleep(DURATION_MILLIS);
+        for (RefreshScheduler.Registration registration : registrations) {
+            registration.cancel();
+        }
+        int scheduledRequests = mDispatcher.mRequests.get() - start;
+        long wakeUps = mContext.getMetrics().getRefreshWakeUpCount();
+
+        Log.i(TAG, SCREENS + " screens of " + RESOURCES + " items for " + DURATION_MILLIS + "ms: timers "
+            + timedRequests + " requests, scheduler " + scheduledRequests + " requests in " + wakeUps + " wake-ups");
+        assertTrue(scheduledRequests * 4 < timedRequests);
+        assertTrue(wakeUps * 4 < timedRequests);
+    }
+
+    /**
+     * @return Nodes for every item, fetched separately for every screen
+     */
+    private List<List<Hyper>> openScreens() throws Exception {
+        List<List<Hyper>> screens = new ArrayList<List<Hyper>>();
+        for (int screen = 0; screen < SCREENS; screen++) {
+            List<Hyper> items = new ArrayList<Hyper>();
+            for (int id = 0; id < RESOURCES; id++) {
+                items.add(HyperJsons.createRoot(mServer.getUrl("/items/" + id), mContext).fetch());
+            }
+            screens.add(items);
+        }
+        return screens;
+    }
+
+    private static void waitForName(final Hyper item, final String name) throws Exception {
+        waitFor(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return name.equals(item.get("name"));
+            }
+        });
+    }
+
+    private static void waitFor(Callable<Boolean> condition) throws Exception {
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.call()) {
+            if (System.currentTimeMillis() > end) {
+                fail("Timed out");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Stand-in for a server with versioned items, answering 304 to the version held
+     */
+    private static class VersionDispatcher extends Dispatcher {
+
+        final ConcurrentHashMap<Integer, Integer> mVersions = new ConcurrentHashMap<Integer, Integer>();
+        final AtomicInteger mRequests = new AtomicInteger();
+        final AtomicInteger mNotModified = new AtomicInteger();
+
+        VersionDispatcher() {
+            for (int id = 0; id < RESOURCES; id++) {
+                mVersions.put(id, 0);
+            }
+        }
+
+        void change(int id) {
+            mVersions.put(id, mVersions.get(id) + 1);
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            mRequests.incrementAndGet();
+            String path = request.getPath();
+            int id = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+            int version = mVersions.get(id);
+            String eTag = "\"" + id + "-" + version + "\"";
+            if (eTag.equals(request.getHeader("If-None-Match"))) {
+                mNotModified.incrementAndGet();
+                return new MockResponse().setResponseCode(304);
+            }
+            return new MockResponse().setHeader("ETag", eTag)
+                .setBody("{\"href\": \"/items/" + id + "\", \"name\": \"Item " + id + " v" + version + "\"}");
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package io.hypergroup.hyper;
+
+import junit.framework.TestCase;
+
+import java.net.URL;
+
+public class UrlCacheTest extends TestCase {
+
+    public void testKeyedByBase() throws Exception {
+        UrlCache cache = new UrlCache(UrlCache.DEFAULT_MAX_SIZE);
+        URL first = new URL("http://example.com/api/users/1/");
+        URL second = new URL("http://example.com/api/users/2/");
+
+        // test the same relative href resolves against each base
+        assertEquals("http://example.com/api/users/1/friends", cache.resolve(first, "friends").toExternalForm());
+        assertEquals("http://example.com/api/users/2/friends", cache.resolve(second, "friends").toExternalForm());
+        assertEquals("http://example.com/api/users/1/friends", cache.resolve(first, "friends").toExternalForm());
+
+        // test an equal base hits the cache
+        URL resolved = cache.resolve(first, "groups");
+        assertSame(resolved, cache.resolve(new URL("http://example.com/api/users/1/"), "groups"));
+        assertSame(resolved, cache.resolve(first, "groups"));
+    }
+}
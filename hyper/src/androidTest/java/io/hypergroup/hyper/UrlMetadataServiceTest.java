@@ -0,0 +1,131 @@
+package io.hypergroup.hyper;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+
+import bolts.Task;
+
+public class UrlMetadataServiceTest extends TestCase {
+
+    public void testHead() throws Exception {
+
+        // Create a mock server
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().addHeader("Content-Type", "image/png").addHeader("Content-Length", "1234"));
+        server.play();
+        String url = server.getUrl("/image.png").toString();
+
+        UrlMetadataService service = new UrlMetadataService(new OkHttpClient());
+
+        // probe twice at once
+        Task<UrlMetadata> first = service.probe(url);
+        Task<UrlMetadata> second = service.probe(url);
+        first.waitForCompletion();
+        second.waitForCompletion();
+
+        // test result
+        UrlMetadata metadata = first.getResult();
+        assertTrue(metadata.isImage());
+        assertEquals(1234, metadata.getContentLength());
+        assertSame(metadata, second.getResult());
+
+        // test cache
+        assertSame(metadata, service.getCached(url));
+        assertSame(metadata, service.probe(url).getResult());
+        assertEquals(1, server.getRequestCount());
+        assertEquals("HEAD", server.takeRequest().getMethod());
+
+        // shut down the server
+        server.shutdown();
+    }
+
+    public void testRangedGetFallback() throws Exception {
+
+        // Create a mock server that refuses HEAD
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setResponseCode(405));
+        server.enqueue(new MockResponse().setResponseCode(206)
+            .addHeader("Content-Type", "video/mp4")
+            .addHeader("Content-Range", "bytes 0-0/987654")
+            .setBody("x"));
+        server.play();
+        String url = server.getUrl("/video.mp4").toString();
+
+        Task<UrlMetadata> task = new UrlMetadataService(new OkHttpClient()).probe(url);
+        task.waitForCompletion();
+
+        // test result
+        UrlMetadata metadata = task.getResult();
+        assertEquals("video/mp4", metadata.getContentType());
+        assertEquals(987654, metadata.getContentLength());
+
+        // test requests
+        assertEquals("HEAD", server.takeRequest().getMethod());
+        RecordedRequest get = server.takeRequest();
+        assertEquals("GET", get.getMethod());
+        assertEquals("bytes=0-0", get.getHeader("Range"));
+
+        // shut down the server
+        server.shutdown();
+    }
+
+    public void testErrorResultExpiresSooner() throws Exception {
+
+        // Create a mock server
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().addHeader("Content-Type", "image/png"));
+        server.play();
+        String url = server.getUrl("/image.png").toString();
+
+        UrlMetadataService service = new UrlMetadataService(new OkHttpClient(), 1, 16, TimeUnit.MINUTES.toMillis(10), 50, 50);
+        Task<UrlMetadata> task = service.probe(url);
+        task.waitForCompletion();
+        assertEquals(404, task.getResult().getCode());
+
+        // test the error is cached, for less than a success would be
+        assertSame(task.getResult(), service.getCached(url));
+        Thread.sleep(100);
+        assertNull(service.getCached(url));
+        task = service.probe(url);
+        task.waitForCompletion();
+        assertTrue(task.getResult().isImage());
+        assertEquals(2, server.getRequestCount());
+
+        // shut down the server
+        server.shutdown();
+    }
+
+    public void testFailureIsCachedBriefly() throws Exception {
+
+        // Create a mock server that is gone
+        MockWebServer server = new MockWebServer();
+        server.play();
+        String url = server.getUrl("/image.png").toString();
+        server.shutdown();
+
+        UrlMetadataService service = new UrlMetadataService(new OkHttpClient(), 1, 16, TimeUnit.MINUTES.toMillis(10), 50, 50);
+        Task<UrlMetadata> first = service.probe(url);
+        first.waitForCompletion();
+        assertTrue(first.isFaulted());
+
+        // test the failure is answered without probing again
+        Task<UrlMetadata> second = service.probe(url);
+        assertTrue(second.isFaulted());
+        assertSame(first.getError(), second.getError());
+        assertNull(service.getCached(url));
+
+        // test it is probed again once the failure expired
+        Thread.sleep(100);
+        Task<UrlMetadata> third = service.probe(url);
+        third.waitForCompletion();
+        assertTrue(third.isFaulted());
+        assertNotSame(first.getError(), third.getError());
+    }
+}
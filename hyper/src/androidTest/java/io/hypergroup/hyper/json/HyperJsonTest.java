@@ -6,15 +6,26 @@ import com.squareup.okhttp.mockwebserver.RecordedRequest;
 
 import junit.framework.TestCase;
 
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 import bolts.Task;
 import io.hypergroup.hyper.Data;
+import io.hypergroup.hyper.FetchPolicy;
+import io.hypergroup.hyper.FetchStats;
 import io.hypergroup.hyper.Hyper;
+import io.hypergroup.hyper.HyperContext;
+import io.hypergroup.hyper.HyperMetrics;
+import io.hypergroup.hyper.ItemCallback;
+import io.hypergroup.hyper.Pending;
 import io.hypergroup.hyper.exception.IndexErrorException;
 import io.hypergroup.hyper.exception.InvalidCollectionException;
 import io.hypergroup.hyper.exception.MissingPropertyException;
 import io.hypergroup.hyper.exception.NoHrefException;
+import io.hypergroup.hyper.exception.PendingFetchException;
 
 public class HyperJsonTest extends TestCase {
 
@@ -57,6 +68,102 @@ public class HyperJsonTest extends TestCase {
 
         RecordedRequest request = server.takeRequest();
         assertNotNull(request.getHeader("Accept"));
+        assertEquals("gzip, deflate", request.getHeader("Accept-Encoding"));
+
+        // shut down the server
+        server.shutdown();
+    }
+
+    public void testGzipResponse() throws Exception {
+
+        // Compress the body the way a server would
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(JsonFiles.USER.GET.getBytes("UTF-8"));
+        gzip.close();
+        byte[] compressed = bytes.toByteArray();
+
+        // Create a mock server
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody(compressed).addHeader("Content-Encoding", "gzip"));
+        server.play();
+
+        // Record the measurements of each fetch
+        final List<FetchStats> fetches = new ArrayList<FetchStats>();
+        HyperContext context = new HyperContext.Builder()
+            .setMetricsListener(new HyperMetrics.Listener() {
+                @Override
+                public void onFetch(FetchStats stats) {
+                    fetches.add(stats);
+                }
+            })
+            .build();
+
+        // Create our root node using the mock server
+        Hyper root = HyperJsons.createRoot(server.getUrl(JsonFiles.USER.URL.replace("<user_id>", "1")), context).fetch();
+
+        // test data was decoded before parsing
+        assertEquals("Matt", root.get("first_name"));
+
+        // test measurements
+        assertEquals(1, fetches.size());
+        FetchStats stats = fetches.get(0);
+        assertEquals("gzip", stats.getContentEncoding());
+        assertEquals(compressed.length, stats.getCompressedBytes());
+        assertEquals(JsonFiles.USER.GET.getBytes("UTF-8").length, stats.getDecompressedBytes());
+        assertEquals(1, context.getMetrics().getFetchCount());
+
+        // shut down the server
+        server.shutdown();
+    }
+
+    public void testCacheOnlyFetchPolicy() throws Exception {
+
+        // Create a mock server
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody(JsonFiles.USER.GET));
+        server.enqueue(new MockResponse().setBody(JsonFiles.USER.GET));
+        server.enqueue(new MockResponse().setBody(JsonFiles.FRIENDS.GET));
+        server.play();
+
+        // Keep the test thread cache-only
+        final Thread testThread = Thread.currentThread();
+        HyperContext context = new HyperContext.Builder()
+            .setFetchPolicy(new FetchPolicy() {
+                @Override
+                public boolean isNetworkAllowed() {
+                    return Thread.currentThread() != testThread;
+                }
+            })
+            .build();
+        Hyper root = HyperJsons.createRoot(server.getUrl(JsonFiles.USER.URL.replace("<user_id>", "1")), context);
+
+        // test typed gets do not get a Pending in place of their value
+        try {
+            String name = root.get("first_name");
+            fail("Expected a PendingFetchException, got " + name);
+        } catch (PendingFetchException ex) {
+            ex.getTask().waitForCompletion();
+            assertEquals("Matt", ex.getTask().getResult());
+        }
+        root.invalidate();
+
+        // test values are pending
+        Pending name = root.getPending("first_name");
+        Task<String> nameTask = name.getTask();
+        nameTask.waitForCompletion();
+        assertEquals("Matt", nameTask.getResult());
+
+        // test pending key paths continue through pending nodes, the friends collection is not embedded
+        Pending friend = root.getPending("friends.0.href");
+        Task<String> friendTask = friend.getTask();
+        friendTask.waitForCompletion();
+        assertEquals("/api/users/1", friendTask.getResult());
+
+        // test the fetched node now answers from memory
+        assertEquals("Matt", root.get("first_name"));
+        assertTrue(root.getPending("first_name").getTask().isCompleted());
+        assertEquals(3, server.getRequestCount());
 
         // shut down the server
         server.shutdown();
@@ -509,6 +616,32 @@ public class HyperJsonTest extends TestCase {
         server.shutdown();
     }
 
+    public void testKeyPathSharesParent() throws Exception {
+        // Create a mock server
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody(JsonFiles.FRIENDS.GET));
+        server.enqueue(new MockResponse().setBody(JsonFiles.USERS.GET)); // extra in case of failure
+        server.play();
+
+        // Create our root node using the mock server
+        Hyper root = HyperJsons.createRoot(server.getUrl(JsonFiles.FRIENDS.URL.replace("<user_id>", "1"))).fetch();
+        List<Hyper> friends = root.each();
+
+        // test requests
+        assertEquals(1, server.getRequestCount());
+
+        // test data
+        Hyper friend = friends.get(3);
+        assertSame(root, friend.getParent());
+        assertEquals("3", friend.getSegment());
+        assertEquals("3", friend.getKeyPath());
+        assertEquals("/api/users/456", friend.getHref().getPath());
+        assertSame(friend.getHref(), root.<Hyper>get("3").getHref());
+
+        // shut down the server
+        server.shutdown();
+    }
+
     public void testKeyPathDeep() throws Exception {
         // Create a mock server
         MockWebServer server = new MockWebServer();
@@ -587,5 +720,43 @@ public class HyperJsonTest extends TestCase {
         server.shutdown();
     }
 
+    public void testStreamingCollection() throws Exception {
+        // a large page, trickled out by the server
+        int N = 5000;
+        StringBuilder body = new StringBuilder("{\"href\": \"/items\", \"collection\": [");
+        for (int index = 0; index < N; index++) {
+            body.append(index == 0 ? "" : ", ").append("{\"href\": \"/items/").append(index).append("\", \"name\": \"Item ").append(index).append("\"}");
+        }
+        body.append("]}");
 
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody(body.toString()).throttleBody(16 * 1024, 50, TimeUnit.MILLISECONDS));
+        server.play();
+
+        Hyper root = HyperJsons.createRoot(server.getUrl("/items"));
+        final long start = System.nanoTime();
+        final long[] firstItem = {0};
+        final List<Hyper> items = new ArrayList<Hyper>();
+        root.each(new ItemCallback<Hyper>() {
+            @Override
+            public void onItem(int index, Hyper item) {
+                if (index == 0) {
+                    firstItem[0] = System.nanoTime() - start;
+                }
+                items.add(item);
+            }
+        });
+        long total = System.nanoTime() - start;
+
+        // test the first item arrived long before the body finished
+        assertTrue(firstItem[0] < total / 4);
+
+        // test every item arrived in order and the node holds the full collection
+        assertEquals(N, items.size());
+        assertEquals("Item 42", items.get(42).get("name"));
+        assertEquals(N, root.each().size());
+        assertEquals(1, server.getRequestCount());
+
+        server.shutdown();
+    }
 }
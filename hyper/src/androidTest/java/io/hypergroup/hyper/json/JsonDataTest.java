@@ -4,14 +4,19 @@ import android.test.AndroidTestCase;
 
 import org.json.JSONObject;
 
+import java.io.ByteArrayInputStream;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 
+import io.hypergroup.hyper.ItemCallback;
+import io.hypergroup.hyper.NumberArray;
 import io.hypergroup.hyper.exception.InvalidCollectionException;
 import io.hypergroup.hyper.exception.MissingPropertyException;
 import io.hypergroup.hyper.exception.NoHrefException;
+import io.hypergroup.hyper.exception.WrongDataTypeException;
 
 public class JsonDataTest extends AndroidTestCase {
 
@@ -169,4 +174,66 @@ public class JsonDataTest extends AndroidTestCase {
         assertSame(error.getClass(), InvalidCollectionException.class);
         assertEquals(error.getMessage(), "Collection not found");
     }
+
+    public void testPrimitiveAccessors() throws Exception {
+        JSONObject json = new JSONObject(JsonFiles.USER.GET);
+        JsonData data = new JsonData(json);
+
+        assertEquals(1, data.getInt("id"));
+        assertEquals(1L, data.getLong("id"));
+        assertEquals(1d, data.getDouble("id"));
+        assertTrue(data.getBoolean("public"));
+
+        Exception error = null;
+        try {
+            data.getInt("first_name");
+        } catch (Exception ex) {
+            error = ex;
+        }
+        assertNotNull(error);
+        assertSame(error.getClass(), WrongDataTypeException.class);
+    }
+
+    public void testNumberCollection() throws Exception {
+        JsonData ints = new JsonData(new JSONObject("{\"collection\": [1, 2, 3]}"));
+        JsonData doubles = new JsonData(new JSONObject("{\"samples\": [1, 2.5, 4000000000]}"));
+        JsonData mixed = new JsonData(new JSONObject("{\"collection\": [1, 2.5, 4000000000]}"));
+
+        // test collections keep the numbers as they were parsed
+        assertEquals(Arrays.asList((Object) 1, 2, 3), ints.getCollection());
+        List<Object> collection = mixed.getCollection();
+        assertEquals(Integer.class, collection.get(0).getClass());
+        assertEquals(Double.class, collection.get(1).getClass());
+        assertEquals(Long.class, collection.get(2).getClass());
+
+        // test collections of numbers are primitive views when asked for
+        NumberArray numbers = ints.getNumberArray("collection");
+        assertEquals(3, numbers.getInt(2));
+        assertSame(numbers, ints.getNumberArray("collection"));
+
+        // test the narrowest array is picked
+        NumberArray samples = doubles.getNumberArray("samples");
+        assertTrue(samples.isFloatingPoint());
+        assertEquals(2.5, samples.getDouble(1));
+        assertEquals(4000000000L, samples.getLong(2));
+    }
+
+    public void testStreamingParse() throws Exception {
+        String body = JsonFiles.FRIENDS.GET;
+        final List<Object> items = new ArrayList<Object>();
+        JsonData streamed = JsonData.parse(null, new ByteArrayInputStream(body.getBytes("UTF-8")), new ItemCallback<Object>() {
+            @Override
+            public void onItem(int index, Object item) {
+                items.add(item);
+            }
+        });
+        JSONObject raw = new JSONObject(body);
+        JsonData parsed = new JsonData(raw);
+
+        // test every item was handed over and the result matches a plain parse
+        assertEquals(parsed.getCollection().size(), items.size());
+        assertEquals(new HashSet<String>(Arrays.asList(parsed.getKeys())), new HashSet<String>(Arrays.asList(streamed.getKeys())));
+        assertEquals(parsed.getProperty("href"), streamed.getProperty("href"));
+        assertEquals(raw.getJSONArray("collection").getJSONObject(3).toString(), items.get(3).toString());
+    }
 }
@@ -0,0 +1,218 @@
+package io.hypergroup.hyper.model;
+
+import android.util.Log;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import io.hypergroup.hyper.Data;
+import io.hypergroup.hyper.FieldHints;
+import io.hypergroup.hyper.Hyper;
+import io.hypergroup.hyper.HyperContext;
+import io.hypergroup.hyper.exception.MissingPropertyException;
+import io.hypergroup.hyper.exception.WrongDataTypeException;
+import io.hypergroup.hyper.json.HyperJsons;
+import io.hypergroup.hyper.json.JsonData;
+import io.hypergroup.hyper.json.JsonFiles;
+
+public class HyperModelTest extends TestCase {
+
+    private static final String TAG = HyperModelTest.class.getSimpleName();
+
+    private static final int BENCHMARK_READS = 100000;
+
+    @HyperModel
+    public interface User {
+
+        int id();
+
+        String firstName();
+
+        @HyperKey("public")
+        boolean isPublic();
+
+        Avatar avatar();
+
+        Friends friends();
+    }
+
+    @HyperModel
+    public interface Avatar {
+
+        @HyperKey("default")
+        Image defaultImage();
+    }
+
+    @HyperModel
+    public interface Image {
+
+        String url();
+    }
+
+    @HyperModel
+    public interface Friends {
+
+        int count();
+    }
+
+    @HyperModel
+    public interface Gallery {
+
+        List<Image> collection();
+    }
+
+    @HyperModel
+    public interface Counter {
+
+        int count();
+
+        String name();
+
+        Integer optional();
+
+        @HyperKey("we\"ird\\key\n")
+        String weird();
+    }
+
+    private Hyper createUser() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody(JsonFiles.USER.GET));
+        server.play();
+        Hyper root = HyperJsons.createRoot(server.getUrl(JsonFiles.USER.URL.replace("<user_id>", "1"))).fetch();
+        server.shutdown();
+        return root;
+    }
+
+    public void testGeneratedModel() throws Exception {
+        User user = HyperHyperModelTest_User.from(createUser());
+
+        // test properties
+        assertEquals(1, user.id());
+        assertEquals("Matt", user.firstName());
+        assertTrue(user.isPublic());
+        assertEquals("http://0.gravatar.com/avatar/40d7909c10c12eb67bf967d6431d4e97", user.avatar().defaultImage().url());
+        assertEquals(10, user.friends().count());
+
+        // test collection
+        String gallery = "{\"href\": \"/gallery\", \"collection\": [{\"url\": \"a\"}, {\"url\": \"b\"}]}";
+        List<Image> images = HyperHyperModelTest_Gallery.from(new JsonData(new JSONObject(gallery))).collection();
+        assertEquals(2, images.size());
+        assertEquals("b", images.get(1).url());
+
+        // test collection items are read from the collection's nodes
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody(gallery));
+        server.play();
+        images = HyperHyperModelTest_Gallery.from(HyperJsons.createRoot(server.getUrl("/gallery"))).collection();
+        assertEquals(2, images.size());
+        assertEquals("b", images.get(1).url());
+        server.shutdown();
+    }
+
+    public void testFromFetchesNode() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody(JsonFiles.USER.GET));
+        server.play();
+        final Set<String> reads = Collections.synchronizedSet(new HashSet<String>());
+        HyperContext context = new HyperContext.Builder()
+            .setFieldHints(new FieldHints() {
+                @Override
+                public synchronized void onRead(URL href, String key) {
+                    reads.add(href.getPath() + " " + key);
+                    super.onRead(href, key);
+                }
+            })
+            .build();
+        Hyper root = HyperJsons.createRoot(server.getUrl(JsonFiles.USER.URL.replace("<user_id>", "1")), context);
+
+        // test an unfetched node is fetched, and its keys read like get would, the friends count on
+        // the node it links to
+        User user = HyperHyperModelTest_User.from(root);
+        assertEquals("Matt", user.firstName());
+        assertEquals(1, server.getRequestCount());
+        Set<String> expected = new HashSet<String>();
+        for (String key : Arrays.asList("id", "first_name", "public", "avatar", "friends")) {
+            expected.add("/api/users/1 " + key);
+        }
+        expected.add("/api/users/1/friends count");
+        assertEquals(expected, reads);
+        server.shutdown();
+    }
+
+    public void testStrictReads() throws Exception {
+        Counter counter = HyperHyperModelTest_Counter.from(counter("{\"count\": \"3\", \"name\": \"a\", \"optional\": null}"));
+        assertEquals(3, counter.count());
+        assertEquals("a", counter.name());
+        assertNull(counter.optional());
+
+        // test @HyperKey values are escaped in the generated literal
+        assertEquals("w", counter.weird());
+
+        // test missing and mistyped values are not defaulted
+        try {
+            HyperHyperModelTest_Counter.from(counter("{\"name\": \"a\", \"optional\": 1}"));
+            fail("Expected a MissingPropertyException");
+        } catch (MissingPropertyException ex) {
+            // expected
+        }
+        assertWrongType("{\"count\": \"many\", \"name\": \"a\", \"optional\": 1}");
+        assertWrongType("{\"count\": null, \"name\": \"a\", \"optional\": 1}");
+        assertWrongType("{\"count\": 1, \"name\": {\"first\": \"a\"}, \"optional\": 1}");
+        assertWrongType("{\"count\": 1, \"name\": [\"a\"], \"optional\": 1}");
+        assertWrongType("{\"count\": 1, \"name\": \"a\", \"optional\": true}");
+    }
+
+    private static Data counter(String json) throws Exception {
+        JSONObject object = new JSONObject(json);
+        object.put("we\"ird\\key\n", "w");
+        return new JsonData(object);
+    }
+
+    private static void assertWrongType(String json) throws Exception {
+        try {
+            HyperHyperModelTest_Counter.from(counter(json));
+            fail("Expected a WrongDataTypeException for " + json);
+        } catch (WrongDataTypeException ex) {
+            // expected
+        }
+    }
+
+    public void testBenchmark() throws Exception {
+        Hyper node = createUser();
+        User user = HyperHyperModelTest_User.from(node);
+
+        // ## String key paths
+
+        long start = System.nanoTime();
+        long sum = 0;
+        for (int read = 0; read < BENCHMARK_READS; read++) {
+            Integer id = node.get("id");
+            String url = node.get("avatar.default.url");
+            sum += id + url.length();
+        }
+        long keyPathNanos = System.nanoTime() - start;
+
+        // ## Generated model
+
+        start = System.nanoTime();
+        long modelSum = 0;
+        for (int read = 0; read < BENCHMARK_READS; read++) {
+            modelSum += user.id() + user.avatar().defaultImage().url().length();
+        }
+        long modelNanos = System.nanoTime() - start;
+
+        Log.i(TAG, BENCHMARK_READS + " reads: key paths " + (keyPathNanos / 1000000) + "ms, model " + (modelNanos / 1000000) + "ms");
+        assertEquals(sum, modelSum);
+    }
+}
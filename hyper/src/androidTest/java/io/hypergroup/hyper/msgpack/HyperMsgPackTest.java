@@ -0,0 +1,215 @@
+package io.hypergroup.hyper.msgpack;
+
+import android.os.Debug;
+import android.util.Log;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import io.hypergroup.hyper.Hyper;
+import io.hypergroup.hyper.NumberArray;
+import io.hypergroup.hyper.json.JsonData;
+import io.hypergroup.hyper.json.JsonFiles;
+
+public class HyperMsgPackTest extends TestCase {
+
+    private static final String TAG = HyperMsgPackTest.class.getSimpleName();
+
+    /**
+     * Number of items in the benchmark collection
+     */
+    private static final int BENCHMARK_ITEMS = 1000;
+
+    /**
+     * Number of times each benchmark body is parsed
+     */
+    private static final int BENCHMARK_ROUNDS = 20;
+
+    private static byte[] encode(JSONObject json) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MsgPackWriter writer = new MsgPackWriter(bytes);
+        writer.writeValue(json);
+        writer.flush();
+        return bytes.toByteArray();
+    }
+
+    public void testMsgPackFetch() throws Exception {
+
+        // Create a mock server
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse()
+            .setBody(encode(new JSONObject(JsonFiles.USER.GET)))
+            .addHeader("Content-Type", MsgPack.MEDIA_TYPE));
+        server.play();
+
+        // Create our root node using the mock server
+        Hyper root = HyperMsgPacks.createRoot(server.getUrl(JsonFiles.USER.URL.replace("<user_id>", "1"))).fetch();
+
+        // test request prefers MessagePack
+        RecordedRequest request = server.takeRequest();
+        assertTrue(request.getHeader("Accept").startsWith(MsgPack.MEDIA_TYPE));
+
+        // test data
+        assertSame(MsgPackData.class, root.getData().getClass());
+        assertEquals("Matt", root.get("first_name"));
+        assertEquals((Object) 1, root.get("id"));
+        assertEquals((Object) 10, root.get("friends.count"));
+        assertEquals("/api/users/1/friends", root.<Hyper>get("friends").getHref().getPath());
+
+        // shut down the server
+        server.shutdown();
+    }
+
+    public void testJsonFallback() throws Exception {
+
+        // Create a mock server
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse()
+            .setBody(JsonFiles.FRIENDS.GET)
+            .addHeader("Content-Type", "application/json"));
+        server.play();
+
+        // Create our root node using the mock server
+        Hyper root = HyperMsgPacks.createRoot(server.getUrl(JsonFiles.FRIENDS.URL.replace("<user_id>", "1"))).fetch();
+        List<Hyper> friends = root.each();
+
+        // test data
+        assertSame(JsonData.class, root.getData().getClass());
+        assertEquals(20, friends.size());
+        assertEquals("/api/users/1", friends.get(0).getHref().getPath());
+
+        // shut down the server
+        server.shutdown();
+    }
+
+    public void testJsonFallbackMerge() throws Exception {
+
+        // Create a mock server
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse()
+            .setBody(encode(new JSONObject(JsonFiles.USER.GET)))
+            .addHeader("Content-Type", MsgPack.MEDIA_TYPE));
+        server.enqueue(new MockResponse()
+            .setBody(JsonFiles.FRIENDS.GET)
+            .addHeader("Content-Type", "application/json"));
+        server.play();
+
+        // Fetch the embedded friends as JSON, into the MessagePack data they were embedded with
+        Hyper root = HyperMsgPacks.createRoot(server.getUrl(JsonFiles.USER.URL.replace("<user_id>", "1"))).fetch();
+        Hyper friends = root.get("friends");
+        List<Hyper> items = friends.each();
+
+        // test the merged collection reads back
+        assertSame(MsgPackData.class, friends.getData().getClass());
+        assertEquals(20, items.size());
+        assertEquals("/api/users/100", items.get(1).getHref().getPath());
+        assertEquals((Object) 10, friends.get("count"));
+
+        // shut down the server
+        server.shutdown();
+    }
+
+    public void testMergeArrays() throws Exception {
+        MsgPackData msgpack = (MsgPackData) new MsgPackReader(encode(new JSONObject("{\"collection\": [{\"id\": 1}], \"scores\": [1, 2]}"))).readValue();
+        JsonData json = new JsonData(new JSONObject("{\"collection\": [{\"id\": 2}, {\"id\": 3}], \"scores\": [3], \"none\": null}"));
+
+        // test JSON arrays merged into MessagePack data read back
+        MsgPackData merged = new MsgPackData();
+        merged.merge(msgpack);
+        merged.merge(json);
+        assertEquals(2, merged.getCollection().size());
+        assertEquals(3, merged.getNumberArray("scores").getInt(0));
+        assertNull(merged.getProperty("none"));
+
+        // test MessagePack arrays merged into JSON data read back
+        json.merge(msgpack);
+        assertEquals(1, json.getCollection().size());
+        assertEquals(2, json.getNumberArray("scores").getInt(1));
+    }
+
+    public void testNumberArrays() throws Exception {
+        JSONObject json = new JSONObject("{\"ints\": [1, -2, 300], \"longs\": [1, 4000000000], \"doubles\": [1.5, 0.5], \"numbers\": [1, 0.5, 4000000000], \"mixed\": [1, \"a\"]}");
+        MsgPackData data = (MsgPackData) new MsgPackReader(encode(json)).readValue();
+
+        // test numeric arrays are decoded without boxing
+        NumberArray ints = data.getNumberArray("ints");
+        assertFalse(ints.isFloatingPoint());
+        assertEquals(-2, ints.getInt(1));
+        assertEquals(4000000000L, data.getNumberArray("longs").getLong(1));
+        assertEquals(0.5, data.getNumberArray("doubles").getDouble(1));
+        assertEquals(1.5, data.getNumberArray("doubles").getDouble(0));
+
+        // test mixed kinds of numbers keep their boxes
+        List<?> numbers = (List<?>) data.getProperty("numbers");
+        assertFalse(numbers instanceof NumberArray);
+        assertEquals(Integer.class, numbers.get(0).getClass());
+        assertEquals(Double.class, numbers.get(1).getClass());
+        assertEquals(Long.class, numbers.get(2).getClass());
+        assertEquals(1.0, data.getNumberArray("numbers").getDouble(0));
+
+        // test mixed arrays stay lists
+        assertFalse(data.getProperty("mixed") instanceof NumberArray);
+        assertEquals("a", ((List<?>) data.getProperty("mixed")).get(1));
+    }
+
+    public void testBenchmarkAgainstJson() throws Exception {
+
+        // ## Equivalent payloads
+
+        JSONArray collection = new JSONArray();
+        for (int index = 0; index < BENCHMARK_ITEMS; index++) {
+            JSONObject user = new JSONObject(JsonFiles.USER.GET);
+            user.put("id", index);
+            user.put("score", index * 1.5);
+            collection.put(user);
+        }
+        JSONObject page = new JSONObject();
+        page.put("href", "/api/users");
+        page.put("collection", collection);
+
+        byte[] json = page.toString().getBytes("UTF-8");
+        byte[] msgpack = encode(page);
+
+        // ## Parse
+
+        // warm up both parsers
+        assertEquals(BENCHMARK_ITEMS, JsonData.parse(null, new ByteArrayInputStream(json)).getCollection().size());
+        assertEquals(BENCHMARK_ITEMS, ((MsgPackData) new MsgPackReader(msgpack).readValue()).getCollection().size());
+
+        long jsonNanos = 0;
+        long msgpackNanos = 0;
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            long start = System.nanoTime();
+            JsonData.parse(null, new ByteArrayInputStream(json)).getCollection();
+            jsonNanos += System.nanoTime() - start;
+        }
+        int jsonAllocs = Debug.getThreadAllocCount();
+        Debug.resetThreadAllocCount();
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            long start = System.nanoTime();
+            ((MsgPackData) new MsgPackReader(msgpack).readValue()).getCollection();
+            msgpackNanos += System.nanoTime() - start;
+        }
+        int msgpackAllocs = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+
+        Log.i(TAG, "json:    " + json.length + "B " + (jsonNanos / BENCHMARK_ROUNDS / 1000) + "us " + (jsonAllocs / BENCHMARK_ROUNDS) + " allocs");
+        Log.i(TAG, "msgpack: " + msgpack.length + "B " + (msgpackNanos / BENCHMARK_ROUNDS / 1000) + "us " + (msgpackAllocs / BENCHMARK_ROUNDS) + " allocs");
+
+        // test the binary form is smaller and parses faster
+        assertTrue(msgpack.length < json.length);
+        assertTrue(msgpackNanos < jsonNanos);
+    }
+}
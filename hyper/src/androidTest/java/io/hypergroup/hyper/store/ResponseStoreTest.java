@@ -0,0 +1,203 @@
+package io.hypergroup.hyper.store;
+
+import android.test.AndroidTestCase;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import io.hypergroup.hyper.Hyper;
+import io.hypergroup.hyper.HyperContext;
+import io.hypergroup.hyper.json.HyperJsons;
+import io.hypergroup.hyper.json.JsonFiles;
+
+public class ResponseStoreTest extends AndroidTestCase {
+
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), "response-store-test");
+        deleteDirectory();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteDirectory();
+        super.tearDown();
+    }
+
+    private void deleteDirectory() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    private static String asString(StoredResponse stored) throws Exception {
+        ByteBuffer body = stored.getBody();
+        byte[] bytes = new byte[body.remaining()];
+        body.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    public void testPutGet() throws Exception {
+        ResponseStore store = new ResponseStore(mDirectory, 1024 * 1024);
+        store.put("/api", "\"v1\"", null, "application/json", 1000, JsonFiles.ROOT.GET.getBytes("UTF-8"));
+        store.put("/api", "\"v2\"", null, "application/json", 2000, JsonFiles.USER.GET.getBytes("UTF-8"));
+
+        StoredResponse stored = store.get("/api");
+
+        assertNotNull(stored);
+        assertEquals("\"v2\"", stored.getETag());
+        assertNull(stored.getLastModified());
+        assertEquals(2000, stored.getFetchedAt());
+        assertEquals(JsonFiles.USER.GET, asString(stored));
+        assertNull(store.get("/api/users"));
+        store.close();
+    }
+
+    public void testReopen() throws Exception {
+        ResponseStore store = new ResponseStore(mDirectory, 1024 * 1024);
+        store.put("/api", null, "Mon, 02 Jun 2014 00:00:00 GMT", "application/json", 1000, JsonFiles.ROOT.GET.getBytes("UTF-8"));
+        store.put("/api/users/1", null, null, null, 1000, JsonFiles.USER.GET.getBytes("UTF-8"));
+        store.remove("/api/users/1");
+        store.close();
+
+        store = new ResponseStore(mDirectory, 1024 * 1024);
+
+        assertEquals(1, store.getCount());
+        assertEquals(JsonFiles.ROOT.GET, asString(store.get("/api")));
+        assertEquals("Mon, 02 Jun 2014 00:00:00 GMT", store.get("/api").getLastModified());
+        assertNull(store.get("/api/users/1"));
+        store.close();
+    }
+
+    public void testTouch() throws Exception {
+        ResponseStore store = new ResponseStore(mDirectory, 1024 * 1024);
+        store.put("/api", "\"v1\"", null, "application/json", 1000, JsonFiles.ROOT.GET.getBytes("UTF-8"));
+        store.touch("/api", 5000);
+        store.touch("/api/users", 5000);
+
+        // test only the fetch time changed
+        assertEquals(5000, store.get("/api").getFetchedAt());
+        assertEquals("\"v1\"", store.get("/api").getETag());
+        assertNull(store.get("/api/users"));
+        store.close();
+
+        // test it survives a reopen and a compaction
+        store = new ResponseStore(mDirectory, 1024 * 1024);
+        assertEquals(5000, store.get("/api").getFetchedAt());
+        store.compact();
+        assertEquals(5000, store.get("/api").getFetchedAt());
+        assertEquals(JsonFiles.ROOT.GET, asString(store.get("/api")));
+        store.close();
+    }
+
+    public void testRevalidateHeldData() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody(JsonFiles.USER.GET).addHeader("ETag", "\"1\""));
+        server.enqueue(new MockResponse().setResponseCode(304));
+        server.play();
+        URL url = server.getUrl(JsonFiles.USER.URL.replace("<user_id>", "1"));
+
+        ResponseStore store = new ResponseStore(mDirectory, 1024 * 1024);
+        HyperContext context = new HyperContext.Builder().setResponseStore(store).build();
+        Hyper root = HyperJsons.createRoot(url, context).fetch();
+        long fetchedAt = root.getFetchedAt();
+        Thread.sleep(10);
+        root.refresh();
+
+        server.takeRequest();
+        assertEquals("\"1\"", server.takeRequest().getHeader("If-None-Match"));
+        server.shutdown();
+
+        // test the data held and the stored response are both as fresh as the 304
+        assertTrue(root.getFetchedAt() > fetchedAt);
+        assertEquals(root.getFetchedAt(), store.get(url.toString()).getFetchedAt());
+        assertEquals("Matt", root.get("first_name"));
+        store.close();
+    }
+
+    public void testSizeCap() throws Exception {
+        byte[] body = JsonFiles.FRIENDS.GET.getBytes("UTF-8");
+        long maxSize = body.length * 10;
+        ResponseStore store = new ResponseStore(mDirectory, maxSize);
+        for (int index = 0; index < 100; index++) {
+            store.put("/api/users/" + index + "/friends", null, null, null, index, body);
+        }
+
+        // test the cap holds and the newest responses survive
+        assertTrue(store.getSizeBytes() <= maxSize);
+        assertNotNull(store.get("/api/users/99/friends"));
+        assertNull(store.get("/api/users/0/friends"));
+        assertEquals(JsonFiles.FRIENDS.GET, asString(store.get("/api/users/99/friends")));
+        store.close();
+    }
+
+    public void testOfflineRestore() throws Exception {
+
+        // Create a mock server
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody(JsonFiles.USER.GET).addHeader("ETag", "\"1\""));
+        server.enqueue(new MockResponse().setResponseCode(304));
+        server.play();
+        URL url = server.getUrl(JsonFiles.USER.URL.replace("<user_id>", "1"));
+
+        // First run fills the store
+        ResponseStore store = new ResponseStore(mDirectory, 1024 * 1024);
+        HyperContext context = new HyperContext.Builder().setResponseStore(store).build();
+        HyperJsons.createRoot(url, context).fetch();
+
+        // Second run revalidates
+        context = new HyperContext.Builder().setResponseStore(store).build();
+        Hyper root = HyperJsons.createRoot(url, context).fetch();
+        assertEquals("Matt", root.get("first_name"));
+
+        server.takeRequest();
+        RecordedRequest revalidate = server.takeRequest();
+        assertEquals("\"1\"", revalidate.getHeader("If-None-Match"));
+        server.shutdown();
+
+        // Third run is offline
+        context = new HyperContext.Builder().setResponseStore(store).build();
+        root = HyperJsons.createRoot(url, context).fetch();
+        assertEquals("Matt", root.get("first_name"));
+        store.close();
+    }
+
+    public void testUndecodableStoredResponse() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody(JsonFiles.USER.GET));
+        server.play();
+        URL url = server.getUrl(JsonFiles.USER.URL.replace("<user_id>", "1"));
+
+        // a fresh stored body that does not decode
+        ResponseStore store = new ResponseStore(mDirectory, 1024 * 1024);
+        store.put(url.toString(), "\"1\"", null, "application/json", System.currentTimeMillis(), "{\"first_name\": ".getBytes("UTF-8"));
+        HyperContext context = new HyperContext.Builder()
+            .setResponseStore(store)
+            .setResponseStoreMaxAge(1, TimeUnit.HOURS)
+            .build();
+        Hyper root = HyperJsons.createRoot(url, context).fetch();
+        assertTrue(root.isFetched());
+        assertEquals(0, server.getRequestCount());
+
+        // test reading it fetches the node again, and the bad body is replaced
+        assertEquals("Matt", root.get("first_name"));
+        assertEquals(1, server.getRequestCount());
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+        assertEquals(JsonFiles.USER.GET, asString(store.get(url.toString())));
+        server.shutdown();
+        store.close();
+    }
+}
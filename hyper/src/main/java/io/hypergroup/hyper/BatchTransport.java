@@ -0,0 +1,363 @@
+package io.hypergroup.hyper;
+
+import android.os.SystemClock;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Collects fetches made within a short window and sends them to a batch endpoint as one request.
+ * <br/>
+ * The protocol: a POST of the request URLs as text/uri-list, one per line, with the Accept header
+ * the requests share, answered with a multipart/mixed body holding one part per URL, in order.
+ * Each part carries a CGI-style Status header (200 when missing), its Content-Type, and optionally
+ * Content-Location, ETag and Last-Modified. Parts are parsed by the fetching nodes like any other
+ * response, and a part with an error status, or a Content-Location other than its URL, fails only
+ * its own node.
+ * <br/>
+ * The first fetch of a window waits for the window to end, or for the batch to fill up, and sends
+ * the batch, the others wait for its response. Requests are only batched with requests that accept
+ * the same content, and a fetch that nothing joined by the end of the window is handed back to be
+ * sent on its own.
+ */
+public class BatchTransport {
+
+    /**
+     * Default time fetches are collected for
+     */
+    public static final long DEFAULT_WINDOW_MILLIS = 10;
+
+    /**
+     * Default largest number of hrefs in a batch
+     */
+    public static final int DEFAULT_MAX_SIZE = 25;
+
+    public static final String HEADER_STATUS = "Status";
+    public static final String HEADER_CONTENT_TYPE = "Content-Type";
+    public static final String HEADER_CONTENT_LOCATION = "Content-Location";
+    public static final String HEADER_ACCEPT = "Accept";
+
+    private static final MediaType URI_LIST = MediaType.parse("text/uri-list; charset=utf-8");
+    private static final String CRLF = "\r\n";
+    private static final String BOUNDARY = "boundary=";
+
+    private final OkHttpClient mClient;
+    private final URL mEndpoint;
+    private final long mWindowMillis;
+    private final int mMaxSize;
+
+    /**
+     * Batches collecting fetches by the Accept header of their requests, absent between windows
+     */
+    private final Map<String, Batch> mBatches = new HashMap<String, Batch>();
+
+    /**
+     * @param client   Client to send batches with
+     * @param endpoint Batch endpoint, only hrefs on its host are batched
+     * @param window   Milliseconds fetches are collected for
+     * @param maxSize  Largest number of hrefs in a batch
+     */
+    public BatchTransport(OkHttpClient client, URL endpoint, long window, int maxSize) {
+        mClient = client;
+        mEndpoint = endpoint;
+        mWindowMillis = window;
+        mMaxSize = maxSize;
+    }
+
+    public URL getEndpoint() {
+        return mEndpoint;
+    }
+
+    /**
+     * @return Whether or not the endpoint can fetch an href
+     */
+    public boolean accepts(URL href) {
+        return mEndpoint.getProtocol().equals(href.getProtocol()) && mEndpoint.getAuthority().equals(href.getAuthority());
+    }
+
+    /**
+     * Fetch a GET as part of a batch
+     *
+     * @param request Request to fetch, as it would be sent on its own
+     * @return The part of the batch response for the request, or null when no other fetch joined
+     * the batch and the request is better sent on its own
+     * @throws IOException          When the batch as a whole failed, or answered with another URL
+     * @throws InterruptedException When interrupted waiting for the batch
+     */
+    public Part fetch(Request request) throws IOException, InterruptedException {
+        String accept = request.header(HEADER_ACCEPT);
+        String key = accept == null ? "" : accept;
+        Batch batch;
+        int index;
+        boolean leader;
+        synchronized (this) {
+            batch = mBatches.get(key);
+            leader = batch == null;
+            if (leader) {
+                batch = new Batch(accept);
+                mBatches.put(key, batch);
+            }
+            index = batch.urls.size();
+            batch.urls.add(request.urlString());
+            if (batch.urls.size() >= mMaxSize) {
+                // full, the next fetch starts another one
+                mBatches.remove(key);
+                batch.fill();
+            }
+        }
+        if (leader) {
+            boolean interrupted = batch.awaitFull(mWindowMillis);
+            boolean alone;
+            synchronized (this) {
+                if (mBatches.get(key) == batch) {
+                    mBatches.remove(key);
+                }
+                alone = batch.urls.size() == 1;
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (alone) {
+                return null;
+            }
+            send(batch);
+        }
+        Part part = batch.await(index);
+        String location = part.header(HEADER_CONTENT_LOCATION);
+        if (location != null && !new URL(mEndpoint, location).toExternalForm().equals(request.urlString())) {
+            throw new IOException("Batch answered " + request.urlString() + " with " + location);
+        }
+        return part;
+    }
+
+    /**
+     * Send a batch that no longer takes hrefs, and hand the parts to its fetches
+     */
+    private void send(Batch batch) {
+        try {
+            StringBuilder uris = new StringBuilder();
+            for (String url : batch.urls) {
+                uris.append(url).append(CRLF);
+            }
+            Request.Builder builder = new Request.Builder()
+                .url(mEndpoint)
+                .header(ContentEncoding.HEADER_ACCEPT_ENCODING, ContentEncoding.ACCEPT_ENCODING)
+                .post(RequestBody.create(URI_LIST, uris.toString()));
+            if (batch.accept != null) {
+                builder.header(HEADER_ACCEPT, batch.accept);
+            }
+            Response response = mClient.newCall(builder.build()).execute();
+            InputStream body = ContentEncoding.decode(response.header(ContentEncoding.HEADER_CONTENT_ENCODING), response.body().byteStream());
+            byte[] bytes;
+            try {
+                bytes = Hyper.readBytes(body);
+            } finally {
+                body.close();
+            }
+            if (!response.isSuccessful()) {
+                throw new IOException("Batch failed with HTTP " + response.code());
+            }
+            List<Part> parts = parse(response.header(HEADER_CONTENT_TYPE), bytes);
+            if (parts.size() != batch.urls.size()) {
+                throw new IOException("Batch of " + batch.urls.size() + " answered with " + parts.size() + " parts");
+            }
+            batch.complete(parts, null);
+        } catch (IOException ex) {
+            batch.complete(null, ex);
+        } catch (RuntimeException ex) {
+            batch.complete(null, new IOException("Batch failed", ex));
+        }
+    }
+
+    /**
+     * Split a multipart/mixed body into its parts
+     */
+    /* default */ static List<Part> parse(String contentType, byte[] body) throws IOException {
+        int boundaryIndex = contentType == null ? -1 : contentType.indexOf(BOUNDARY);
+        if (boundaryIndex < 0) {
+            throw new IOException("Not a multipart response: " + contentType);
+        }
+        String boundary = contentType.substring(boundaryIndex + BOUNDARY.length()).split(";")[0].trim();
+        if (boundary.startsWith("\"") && boundary.endsWith("\"") && boundary.length() > 1) {
+            boundary = boundary.substring(1, boundary.length() - 1);
+        }
+        byte[] delimiter = bytes("--" + boundary);
+
+        List<Part> parts = new ArrayList<Part>();
+        int start = indexOf(body, delimiter, 0);
+        while (start >= 0) {
+            int afterDelimiter = start + delimiter.length;
+            if (afterDelimiter + 1 < body.length && body[afterDelimiter] == '-' && body[afterDelimiter + 1] == '-') {
+                // closing delimiter
+                break;
+            }
+            int headersStart = indexOf(body, bytes(CRLF), afterDelimiter) + CRLF.length();
+            int next = indexOf(body, bytes(CRLF + "--" + boundary), headersStart - CRLF.length());
+            if (headersStart < CRLF.length() || next < 0) {
+                throw new IOException("Truncated multipart response");
+            }
+            parts.add(parsePart(body, headersStart, next));
+            start = next + CRLF.length();
+        }
+        return parts;
+    }
+
+    private static Part parsePart(byte[] body, int start, int end) throws IOException {
+        int bodyStart = indexOf(body, bytes(CRLF + CRLF), start - CRLF.length());
+        Map<String, String> headers = new HashMap<String, String>();
+        if (bodyStart < 0 || bodyStart > end) {
+            throw new IOException("Multipart part without headers");
+        }
+        String head = new String(body, start, Math.max(0, bodyStart - start), "UTF-8");
+        for (String line : head.split(CRLF)) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+            }
+        }
+        bodyStart += 2 * CRLF.length();
+        byte[] partBody = new byte[Math.max(0, end - bodyStart)];
+        System.arraycopy(body, bodyStart, partBody, 0, partBody.length);
+        return new Part(headers, partBody);
+    }
+
+    private static int indexOf(byte[] haystack, byte[] needle, int from) {
+        outer:
+        for (int index = Math.max(0, from); index <= haystack.length - needle.length; index++) {
+            for (int offset = 0; offset < needle.length; offset++) {
+                if (haystack[index + offset] != needle[offset]) {
+                    continue outer;
+                }
+            }
+            return index;
+        }
+        return -1;
+    }
+
+    private static byte[] bytes(String string) {
+        try {
+            return string.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * The response to one href of a batch
+     */
+    public static class Part {
+
+        private final Map<String, String> mHeaders;
+        private final byte[] mBody;
+        private final int mCode;
+
+        /* default */ Part(Map<String, String> headers, byte[] body) {
+            mHeaders = headers;
+            mBody = body;
+            String status = headers.get(HEADER_STATUS.toLowerCase(Locale.US));
+            int code = 200;
+            if (status != null) {
+                try {
+                    code = Integer.parseInt(status.split(" ")[0]);
+                } catch (NumberFormatException ex) {
+                    code = 0;
+                }
+            }
+            mCode = code;
+        }
+
+        /**
+         * @return The part's status code, 200 when it has none
+         */
+        public int code() {
+            return mCode;
+        }
+
+        public boolean isSuccessful() {
+            return mCode >= 200 && mCode < 300;
+        }
+
+        /**
+         * @return A header of the part, or null
+         */
+        public String header(String name) {
+            return mHeaders.get(name.toLowerCase(Locale.US));
+        }
+
+        /**
+         * @return Decoded body of the part
+         */
+        public byte[] body() {
+            return mBody;
+        }
+    }
+
+    /**
+     * Request URLs sent together
+     */
+    private static class Batch {
+
+        final String accept;
+        final List<String> urls = new ArrayList<String>();
+        final CountDownLatch done = new CountDownLatch(1);
+        private boolean mFull;
+        private List<Part> mParts;
+        private IOException mError;
+
+        Batch(String accept) {
+            this.accept = accept;
+        }
+
+        synchronized void fill() {
+            mFull = true;
+            notifyAll();
+        }
+
+        /**
+         * Wait until the batch is full or the window is over
+         *
+         * @return Whether or not the wait was interrupted
+         */
+        synchronized boolean awaitFull(long windowMillis) {
+            long end = SystemClock.elapsedRealtime() + windowMillis;
+            long remaining;
+            while (!mFull && (remaining = end - SystemClock.elapsedRealtime()) > 0) {
+                try {
+                    wait(remaining);
+                } catch (InterruptedException ex) {
+                    // send what there is
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void complete(List<Part> parts, IOException error) {
+            mParts = parts;
+            mError = error;
+            done.countDown();
+        }
+
+        Part await(int index) throws IOException, InterruptedException {
+            done.await();
+            if (mError != null) {
+                throw mError;
+            }
+            return mParts.get(index);
+        }
+    }
+}
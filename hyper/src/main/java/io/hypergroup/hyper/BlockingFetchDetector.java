@@ -0,0 +1,111 @@
+package io.hypergroup.hyper;
+
+import android.util.Log;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Debugging aid that records a stack trace for every network fetch made on the main thread, so
+ * jank can be removed at its source.
+ */
+public class BlockingFetchDetector {
+
+    /**
+     * Tag for logging
+     */
+    private static final String TAG = BlockingFetchDetector.class.getSimpleName();
+
+    /**
+     * Default number of records to keep
+     */
+    public static final int DEFAULT_MAX_RECORDS = 64;
+
+    private final int mMaxRecords;
+
+    /**
+     * Most recent records, oldest first
+     */
+    private final LinkedList<BlockingFetch> mRecords = new LinkedList<BlockingFetch>();
+
+    public BlockingFetchDetector() {
+        this(DEFAULT_MAX_RECORDS);
+    }
+
+    /**
+     * @param maxRecords Number of records to keep
+     */
+    public BlockingFetchDetector(int maxRecords) {
+        mMaxRecords = maxRecords;
+    }
+
+    /**
+     * Record a fetch if it is made on the main thread
+     *
+     * @param href Href being fetched
+     */
+    /* default */ void onFetch(URL href) {
+        if (!FetchPolicy.isMainThread()) {
+            return;
+        }
+        BlockingFetch fetch = new BlockingFetch(href, System.currentTimeMillis());
+        Log.w(TAG, "Blocking fetch on the main thread", fetch.getStackTrace());
+        synchronized (mRecords) {
+            mRecords.addLast(fetch);
+            if (mRecords.size() > mMaxRecords) {
+                mRecords.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * @return The most recent blocking fetches, oldest first
+     */
+    public List<BlockingFetch> getRecords() {
+        synchronized (mRecords) {
+            return new ArrayList<BlockingFetch>(mRecords);
+        }
+    }
+
+    public void clear() {
+        synchronized (mRecords) {
+            mRecords.clear();
+        }
+    }
+
+    /**
+     * A network fetch made on the main thread
+     */
+    public static class BlockingFetch {
+
+        private final URL mHref;
+        private final long mTime;
+        private final Throwable mStackTrace;
+
+        BlockingFetch(URL href, long time) {
+            mHref = href;
+            mTime = time;
+            mStackTrace = new Throwable("Blocking fetch of " + href);
+        }
+
+        public URL getHref() {
+            return mHref;
+        }
+
+        /**
+         * @return Wall clock time of the fetch
+         */
+        public long getTime() {
+            return mTime;
+        }
+
+        /**
+         * @return Where the fetch was made from
+         */
+        public Throwable getStackTrace() {
+            return mStackTrace;
+        }
+    }
+}
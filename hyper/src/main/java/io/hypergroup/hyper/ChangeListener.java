@@ -0,0 +1,17 @@
+package io.hypergroup.hyper;
+
+/**
+ * Receives the changes made to an observed Hyper node's data
+ *
+ * @see Hyper#addChangeListener(ChangeListener)
+ */
+public interface ChangeListener {
+
+    /**
+     * Called once per batch of changes, on the HyperContext's async executor
+     *
+     * @param node Latest Hyper node for the observed resource
+     * @param diff What changed since the previous notification
+     */
+    public void onChange(Hyper node, DataDiff diff);
+}
@@ -0,0 +1,261 @@
+package io.hypergroup.hyper;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Delivers DataDiffs to the ChangeListeners of a HyperContext.
+ * <br/>
+ * Hyper nodes are recreated every time they are retrieved, so listeners are registered by the
+ * identity of the resource (its href, or its key path when it has none). The first change to an
+ * observed resource captures a snapshot of its data, and a single diff against that snapshot is
+ * delivered on the executor once the burst of changes is over.
+ */
+public class ChangeNotifier {
+
+    /**
+     * Tag for logging
+     */
+    private static final String TAG = ChangeNotifier.class.getSimpleName();
+
+    /**
+     * Listeners by identity
+     */
+    private final Map<String, List<ChangeListener>> mListeners = new HashMap<String, List<ChangeListener>>();
+
+    /**
+     * Observers by identity
+     */
+    private final Map<String, List<Observer>> mObservers = new HashMap<String, List<Observer>>();
+
+    /**
+     * Changes waiting for delivery by identity
+     */
+    private final Map<String, Pending> mPending = new LinkedHashMap<String, Pending>();
+
+    /**
+     * Delivery executor
+     */
+    private final Executor mExecutor;
+
+    /**
+     * Fast check that avoids resolving identities when nothing is observed
+     */
+    private volatile boolean mObserved;
+
+    private boolean mFlushScheduled;
+
+    public ChangeNotifier(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Called on the changing thread right after every change to an observed resource, for
+     * bookkeeping that can not wait for a diff
+     */
+    public interface Observer {
+
+        /**
+         * @param node The node that changed
+         */
+        public void onChanged(Hyper node);
+    }
+
+    /**
+     * @param identity Identity of the observed resource
+     * @param listener Listener to add
+     */
+    public synchronized void addListener(String identity, ChangeListener listener) {
+        List<ChangeListener> listeners = mListeners.get(identity);
+        if (listeners == null) {
+            listeners = new CopyOnWriteArrayList<ChangeListener>();
+            mListeners.put(identity, listeners);
+        }
+        listeners.add(listener);
+        mObserved = true;
+    }
+
+    /**
+     * @param identity Identity of the observed resource
+     * @param listener Listener to remove
+     */
+    public synchronized void removeListener(String identity, ChangeListener listener) {
+        List<ChangeListener> listeners = mListeners.get(identity);
+        if (listeners != null) {
+            listeners.remove(listener);
+            if (listeners.isEmpty()) {
+                mListeners.remove(identity);
+                mPending.remove(identity);
+            }
+        }
+        mObserved = !mListeners.isEmpty() || !mObservers.isEmpty();
+    }
+
+    /**
+     * @param identity Identity of the observed resource
+     * @param observer Observer to add
+     */
+    public synchronized void addObserver(String identity, Observer observer) {
+        List<Observer> observers = mObservers.get(identity);
+        if (observers == null) {
+            observers = new CopyOnWriteArrayList<Observer>();
+            mObservers.put(identity, observers);
+        }
+        observers.add(observer);
+        mObserved = true;
+    }
+
+    /**
+     * @param identity Identity of the observed resource
+     * @param observer Observer to remove
+     */
+    public synchronized void removeObserver(String identity, Observer observer) {
+        List<Observer> observers = mObservers.get(identity);
+        if (observers != null) {
+            observers.remove(observer);
+            if (observers.isEmpty()) {
+                mObservers.remove(identity);
+            }
+        }
+        mObserved = !mListeners.isEmpty() || !mObservers.isEmpty();
+    }
+
+    /**
+     * @return Whether or not anyone listens for changes to the resource
+     */
+    public synchronized boolean isObserved(String identity) {
+        return mListeners.containsKey(identity);
+    }
+
+    /**
+     * Called by a Hyper node before it changes its data
+     */
+    /* default */ void beforeChange(Hyper node) {
+        if (!mObserved) {
+            return;
+        }
+        String identity = node.getIdentity();
+        synchronized (this) {
+            if (!mListeners.containsKey(identity)) {
+                return;
+            }
+            Pending pending = mPending.get(identity);
+            if (pending == null) {
+                pending = new Pending(DataSnapshot.of(node.getData()));
+                mPending.put(identity, pending);
+            }
+            pending.node = node;
+            pending.changing++;
+        }
+    }
+
+    /**
+     * Called by a Hyper node after it changed its data
+     */
+    /* default */ void afterChange(Hyper node) {
+        if (!mObserved) {
+            return;
+        }
+        String identity = node.getIdentity();
+        List<Observer> observers;
+        synchronized (this) {
+            Pending pending = mPending.get(identity);
+            if (pending != null) {
+                pending.changing--;
+                scheduleFlush();
+            }
+            observers = mObservers.get(identity);
+        }
+        if (observers != null) {
+            for (Observer observer : observers) {
+                observer.onChanged(node);
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mExecutor.execute(mFlush);
+        }
+    }
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Diff and deliver every pending change that is not still in progress
+     */
+    private void flush() {
+        List<Map.Entry<String, Pending>> ready = new ArrayList<Map.Entry<String, Pending>>();
+        synchronized (this) {
+            mFlushScheduled = false;
+            Iterator<Map.Entry<String, Pending>> iterator = mPending.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Pending> entry = iterator.next();
+                if (entry.getValue().changing == 0) {
+                    ready.add(entry);
+                    iterator.remove();
+                }
+            }
+        }
+        for (Map.Entry<String, Pending> entry : ready) {
+            Pending pending = entry.getValue();
+            DataDiff diff = DataDiff.compute(pending.before, DataSnapshot.of(pending.node.getData()));
+            if (diff.isEmpty()) {
+                continue;
+            }
+            List<ChangeListener> listeners;
+            synchronized (this) {
+                listeners = mListeners.get(entry.getKey());
+            }
+            if (listeners == null) {
+                continue;
+            }
+            for (ChangeListener listener : listeners) {
+                try {
+                    listener.onChange(pending.node, diff);
+                } catch (RuntimeException ex) {
+                    Log.e(TAG, "Error in change listener", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * A resource with undelivered changes
+     */
+    private static class Pending {
+
+        /**
+         * State before the first undelivered change
+         */
+        final DataSnapshot before;
+
+        /**
+         * Most recent node for the resource
+         */
+        Hyper node;
+
+        /**
+         * Number of changes in progress
+         */
+        int changing;
+
+        Pending(DataSnapshot before) {
+            this.before = before;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package io.hypergroup.hyper;
+
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fails fetches fast while their host is down.
+ * <br/>
+ * After a number of consecutive failed fetches a host's circuit opens and fetches to it are
+ * refused without touching the network. Once the circuit has been open for a while a single
+ * trial fetch is let through, which closes the circuit when it succeeds and keeps it open for
+ * another period when it fails.
+ */
+public class CircuitBreaker {
+
+    /**
+     * Default consecutive failures that open a circuit
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * Default time a circuit stays open before a trial fetch
+     */
+    public static final long DEFAULT_OPEN_MILLIS = 30 * 1000;
+
+    private final int mFailureThreshold;
+    private final long mOpenMillis;
+
+    /**
+     * Circuits of hosts that failed recently, by host
+     */
+    private final Map<String, Circuit> mCircuits = new HashMap<String, Circuit>();
+
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param failureThreshold Consecutive failures that open a circuit
+     * @param openTime         Time a circuit stays open before a trial fetch
+     * @param unit             Unit of openTime
+     */
+    public CircuitBreaker(int failureThreshold, long openTime, TimeUnit unit) {
+        mFailureThreshold = failureThreshold;
+        mOpenMillis = unit.toMillis(openTime);
+    }
+
+    /**
+     * @param host Host about to be fetched from
+     * @return Whether or not the fetch may go ahead
+     */
+    public synchronized boolean allowRequest(String host) {
+        Circuit circuit = mCircuits.get(host);
+        if (circuit == null || circuit.openedAt == 0) {
+            return true;
+        }
+        if (SystemClock.elapsedRealtime() - circuit.openedAt < mOpenMillis || circuit.trial) {
+            return false;
+        }
+        // half open, let a single trial through
+        circuit.trial = true;
+        return true;
+    }
+
+    /**
+     * Record that the host answered
+     */
+    public synchronized void onSuccess(String host) {
+        mCircuits.remove(host);
+    }
+
+    /**
+     * Record that the host could not be reached or failed to answer
+     */
+    public synchronized void onFailure(String host) {
+        Circuit circuit = mCircuits.get(host);
+        if (circuit == null) {
+            circuit = new Circuit();
+            mCircuits.put(host, circuit);
+        }
+        circuit.failures++;
+        if (circuit.trial || circuit.failures >= mFailureThreshold) {
+            circuit.openedAt = SystemClock.elapsedRealtime();
+        }
+        circuit.trial = false;
+    }
+
+    /**
+     * @return Whether or not fetches to the host are being refused
+     */
+    public synchronized boolean isOpen(String host) {
+        Circuit circuit = mCircuits.get(host);
+        return circuit != null && circuit.openedAt != 0;
+    }
+
+    private static class Circuit {
+
+        /**
+         * Consecutive failures
+         */
+        int failures;
+
+        /**
+         * When the circuit last opened, 0 while closed
+         */
+        long openedAt;
+
+        /**
+         * Whether or not a trial fetch is in flight
+         */
+        boolean trial;
+    }
+}
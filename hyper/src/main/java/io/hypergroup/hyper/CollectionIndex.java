@@ -0,0 +1,401 @@
+package io.hypergroup.hyper;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.hypergroup.hyper.exception.FetchException;
+import io.hypergroup.hyper.exception.NoHrefException;
+
+/**
+ * An index of a collection's items by the value at a key path, used to answer key path filters
+ * such as users[first_name=Matt] without scanning the collection.
+ * <br/>
+ * The index covers the collection node and every page linked from it as "next", the same as a
+ * scan of the collection. Pages are reindexed as soon as their data changes or is invalidated, and
+ * a lookup first fetches the pages that are not loaded. Only values embedded in the pages are
+ * indexed, items are never fetched for the sake of the index.
+ *
+ * @see Hyper#addIndex(String, Type)
+ */
+public class CollectionIndex implements ChangeNotifier.Observer {
+
+    /**
+     * Tag for logging
+     */
+    private static final String TAG = CollectionIndex.class.getSimpleName();
+
+    public enum Type {
+
+        /**
+         * Constant time equality lookups
+         */
+        HASH,
+
+        /**
+         * Logarithmic time equality and range lookups
+         */
+        SORTED
+    }
+
+    private final ChangeNotifier mNotifier;
+    private final String mIdentity;
+    private final String mKeyPath;
+    private final Type mType;
+
+    /**
+     * Indexed pages by identity, in the order they are linked
+     */
+    private final Map<String, Page> mPages = new LinkedHashMap<String, Page>();
+
+    /**
+     * Entries of every page, by value for HASH and ordered by value for SORTED
+     */
+    private Map<Object, List<Hyper>> mHash;
+    private List<Entry> mSorted;
+    private int mSize;
+
+    /* default */ CollectionIndex(ChangeNotifier notifier, String identity, String keyPath, Type type) {
+        mNotifier = notifier;
+        mIdentity = identity;
+        mKeyPath = keyPath;
+        mType = type;
+    }
+
+    /**
+     * @return Identity of the indexed collection
+     */
+    public String getIdentity() {
+        return mIdentity;
+    }
+
+    public String getKeyPath() {
+        return mKeyPath;
+    }
+
+    public Type getType() {
+        return mType;
+    }
+
+    /**
+     * @return Number of indexed items
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * @return Whether or not the index can answer the filter
+     */
+    /* default */ boolean supports(KeyFilter filter) {
+        return mKeyPath.equals(filter.keyPath) && (mType == Type.SORTED || filter.operator == KeyFilter.Operator.EQUAL);
+    }
+
+    @Override
+    public synchronized void onChanged(Hyper node) {
+        indexPage(node);
+        rebuild();
+    }
+
+    /**
+     * Find the items that pass the filter, reindexing the collection node first if it changed, and
+     * fetching the pages that are not loaded
+     *
+     * @param collection Current node of the indexed collection
+     * @param filter     Filter this index supports
+     * @return Matching items, in page order for equality and in value order for ranges
+     * @throws InterruptedException When interrupted fetching a page
+     * @throws NoHrefException      When a page can not be fetched for lack of an href
+     * @throws FetchException       When fetching a page failed
+     */
+    /* default */ List<Hyper> lookup(Hyper collection, KeyFilter filter) throws InterruptedException, NoHrefException, FetchException {
+        synchronized (this) {
+            Page page = mPages.get(collection.getIdentity());
+            if (page == null || page.data != collection.getData() || page.fetchedAt != collection.getFetchedAt()) {
+                indexPage(collection);
+                rebuild();
+            }
+        }
+
+        // ## Pages not loaded, fetched outside the lock
+        Set<String> fetched = new HashSet<String>();
+        while (true) {
+            Hyper missing = null;
+            synchronized (this) {
+                for (Map.Entry<String, Page> entry : mPages.entrySet()) {
+                    if (entry.getValue().data == null && !fetched.contains(entry.getKey())) {
+                        fetched.add(entry.getKey());
+                        missing = entry.getValue().node;
+                        break;
+                    }
+                }
+            }
+            if (missing == null) {
+                break;
+            }
+            missing.fetch();
+            synchronized (this) {
+                indexPage(missing);
+                rebuild();
+            }
+        }
+        return find(filter);
+    }
+
+    private synchronized List<Hyper> find(KeyFilter filter) {
+        if (mType == Type.HASH) {
+            List<Hyper> items = mHash.get(filter.value);
+            return items == null ? new ArrayList<Hyper>() : new ArrayList<Hyper>(items);
+        }
+
+        // ## Ranges of the sorted entries, within values of the same kind
+        int rank = KeyFilter.rank(filter.value);
+        int kindStart = search(new RankBound(rank, false));
+        int kindEnd = search(new RankBound(rank, true));
+        int start;
+        int end;
+        switch (filter.operator) {
+            case LESS:
+                start = kindStart;
+                end = search(new ValueBound(filter.value, false));
+                break;
+            case LESS_OR_EQUAL:
+                start = kindStart;
+                end = search(new ValueBound(filter.value, true));
+                break;
+            case GREATER:
+                start = search(new ValueBound(filter.value, true));
+                end = kindEnd;
+                break;
+            case GREATER_OR_EQUAL:
+                start = search(new ValueBound(filter.value, false));
+                end = kindEnd;
+                break;
+            default:
+                start = search(new ValueBound(filter.value, false));
+                end = search(new ValueBound(filter.value, true));
+                break;
+        }
+        List<Hyper> items = new ArrayList<Hyper>(Math.max(end - start, 0));
+        for (int index = start; index < end; index++) {
+            items.add(mSorted.get(index).item);
+        }
+        return items;
+    }
+
+    /**
+     * Stop maintaining the index
+     */
+    /* default */ synchronized void release() {
+        for (String identity : mPages.keySet()) {
+            mNotifier.removeObserver(identity, this);
+        }
+        mPages.clear();
+        rebuild();
+    }
+
+    /**
+     * Index the items of a page, and start following the page it links as next
+     */
+    private void indexPage(Hyper node) {
+        String identity = node.getIdentity();
+        Page page = mPages.get(identity);
+        if (page == null) {
+            page = new Page();
+            mPages.put(identity, page);
+            mNotifier.addObserver(identity, this);
+        }
+        page.node = node;
+        page.data = node.getData();
+        page.fetchedAt = node.getFetchedAt();
+        page.entries.clear();
+        if (page.data == null) {
+            return;
+        }
+
+        // ## Items
+        if (page.data.hasProperty(DataSnapshot.KEY_COLLECTION)) {
+            try {
+                List<Object> collection = node.getCollection();
+                for (int index = 0; index < collection.size(); index++) {
+                    Object item = node.coerce(String.valueOf(index), collection.get(index));
+                    if (item instanceof Hyper) {
+                        Object value = KeyFilter.normalize(getEmbedded(item, mKeyPath));
+                        if (value != null) {
+                            page.entries.add(new Entry(value, (Hyper) item));
+                        }
+                    }
+                }
+            } catch (Exception ex) {
+                Log.w(TAG, "Unable to index " + identity, ex);
+            }
+        }
+
+        // ## Next page
+        Object next = getEmbedded(node, CollectionPublisher.KEY_NEXT);
+        if (next instanceof Hyper && ((Hyper) next).getHref() != null) {
+            String nextIdentity = ((Hyper) next).getIdentity();
+            if (!mPages.containsKey(nextIdentity)) {
+                Page nextPage = new Page();
+                nextPage.node = (Hyper) next;
+                mPages.put(nextIdentity, nextPage);
+                mNotifier.addObserver(nextIdentity, this);
+            }
+        }
+    }
+
+    private void rebuild() {
+        List<Entry> entries = new ArrayList<Entry>();
+        for (Page page : mPages.values()) {
+            entries.addAll(page.entries);
+        }
+        mSize = entries.size();
+        if (mType == Type.HASH) {
+            mHash = new HashMap<Object, List<Hyper>>();
+            for (Entry entry : entries) {
+                List<Hyper> items = mHash.get(entry.value);
+                if (items == null) {
+                    items = new ArrayList<Hyper>(1);
+                    mHash.put(entry.value, items);
+                }
+                items.add(entry.item);
+            }
+        } else {
+            // stable, equal values stay in page order
+            Collections.sort(entries, ENTRY_ORDER);
+            mSorted = entries;
+        }
+    }
+
+    /**
+     * @return Index of the first sorted entry that is not before the bound
+     */
+    private int search(Bound bound) {
+        int low = 0;
+        int high = mSorted.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (bound.isBefore(mSorted.get(mid).value)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Read the value at a key path from embedded data only, without fetching, the way both
+     * indexes and scans read the values filters compare
+     *
+     * @return The value, or null if it is not embedded
+     */
+    /* default */ static Object getEmbedded(Object node, String keyPath) {
+        try {
+            Object value = node;
+            for (String key : keyPath.split("\\.")) {
+                if (!(value instanceof Hyper)) {
+                    return null;
+                }
+                Data data = ((Hyper) value).getData();
+                if (data == null || !data.hasProperty(key)) {
+                    return null;
+                }
+                // with the key present, get never fetches
+                value = ((Hyper) value).get(key);
+            }
+            return value;
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CollectionIndex{" + mIdentity + "[" + mKeyPath + "] " + mType + ", " + mSize + " items}";
+    }
+
+    private static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            return KeyFilter.compare(lhs.value, rhs.value);
+        }
+    };
+
+    /**
+     * Indexed items of one page
+     */
+    private static class Page {
+        Hyper node;
+        Data data;
+        long fetchedAt;
+        final List<Entry> entries = new ArrayList<Entry>();
+    }
+
+    private static class Entry {
+        final Object value;
+        final Hyper item;
+
+        Entry(Object value, Hyper item) {
+            this.value = value;
+            this.item = item;
+        }
+    }
+
+    /**
+     * A position in the sorted entries
+     */
+    private interface Bound {
+
+        /**
+         * @return Whether or not an entry with the value sorts before this position
+         */
+        boolean isBefore(Object value);
+    }
+
+    /**
+     * Before or after every entry with a value
+     */
+    private static class ValueBound implements Bound {
+        private final Object mValue;
+        private final boolean mAfter;
+
+        ValueBound(Object value, boolean after) {
+            mValue = value;
+            mAfter = after;
+        }
+
+        @Override
+        public boolean isBefore(Object value) {
+            int comparison = KeyFilter.compare(value, mValue);
+            return mAfter ? comparison <= 0 : comparison < 0;
+        }
+    }
+
+    /**
+     * Before or after every entry of a kind of value
+     */
+    private static class RankBound implements Bound {
+        private final int mRank;
+        private final boolean mAfter;
+
+        RankBound(int rank, boolean after) {
+            mRank = rank;
+            mAfter = after;
+        }
+
+        @Override
+        public boolean isBefore(Object value) {
+            int rank = KeyFilter.rank(value);
+            return mAfter ? rank <= mRank : rank < mRank;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package io.hypergroup.hyper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The CollectionIndexes of a HyperContext, by the identity of the collection they index
+ */
+public class CollectionIndexes {
+
+    private final ChangeNotifier mNotifier;
+
+    private final Map<String, List<CollectionIndex>> mIndexes = new HashMap<String, List<CollectionIndex>>();
+
+    public CollectionIndexes(ChangeNotifier notifier) {
+        mNotifier = notifier;
+    }
+
+    /**
+     * Index a collection, or return its existing index of the same key path and type
+     *
+     * @param collection Collection node to index
+     * @param keyPath    Key path of the indexed value of each item
+     * @param type       Kind of index
+     * @return The index
+     */
+    /* default */ synchronized CollectionIndex add(Hyper collection, String keyPath, CollectionIndex.Type type) {
+        String identity = collection.getIdentity();
+        List<CollectionIndex> indexes = mIndexes.get(identity);
+        if (indexes == null) {
+            indexes = new ArrayList<CollectionIndex>(1);
+            mIndexes.put(identity, indexes);
+        }
+        for (CollectionIndex index : indexes) {
+            if (index.getKeyPath().equals(keyPath) && index.getType() == type) {
+                return index;
+            }
+        }
+        CollectionIndex index = new CollectionIndex(mNotifier, identity, keyPath, type);
+        indexes.add(index);
+        // index what is there already, and start observing the collection
+        index.onChanged(collection);
+        return index;
+    }
+
+    /**
+     * Stop maintaining an index
+     */
+    /* default */ synchronized void remove(CollectionIndex index) {
+        List<CollectionIndex> indexes = mIndexes.get(index.getIdentity());
+        if (indexes != null && indexes.remove(index)) {
+            index.release();
+            if (indexes.isEmpty()) {
+                mIndexes.remove(index.getIdentity());
+            }
+        }
+    }
+
+    /**
+     * @return An index of the collection that can answer the filter, preferring hash indexes for
+     * equality, or null if there is none
+     */
+    /* default */ synchronized CollectionIndex find(String identity, KeyFilter filter) {
+        List<CollectionIndex> indexes = mIndexes.get(identity);
+        if (indexes == null) {
+            return null;
+        }
+        CollectionIndex found = null;
+        for (CollectionIndex index : indexes) {
+            if (index.supports(filter) && (found == null || index.getType() == CollectionIndex.Type.HASH)) {
+                found = index;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,155 @@
+package io.hypergroup.hyper;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import bolts.Task;
+import io.hypergroup.hyper.exception.MissingPropertyException;
+
+/**
+ * Publishes the collection of a Hyper node item by item, following its "next" links page by page.
+ * <br/>
+ * Items are published as soon as they are parsed. A page is only fetched while the subscriber
+ * has requested more items than are buffered, so a slow subscriber holds back the network
+ * instead of piling up pages it cannot consume. Null items are skipped, Reactive Streams does not
+ * allow them.
+ *
+ * @see Hyper#stream()
+ * @see Hyper#pages()
+ */
+/* default */ class CollectionPublisher<T> implements Publisher<T> {
+
+    /**
+     * Key of the link to the next page of a collection
+     */
+    public static final String KEY_NEXT = "next";
+
+    private final Hyper mNode;
+
+    /**
+     * Publish the pages themselves rather than their items
+     */
+    private final boolean mPages;
+
+    /* default */ CollectionPublisher(Hyper node, boolean pages) {
+        mNode = node;
+        mPages = pages;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        subscriber.onSubscribe(new CollectionSubscription(subscriber));
+    }
+
+    private class CollectionSubscription extends HyperSubscription<T> {
+
+        /**
+         * Fetched items waiting for demand
+         */
+        private final Queue<Object> mBuffer = new ConcurrentLinkedQueue<Object>();
+
+        /**
+         * Page to fetch next, null after the last page
+         */
+        private volatile Hyper mNextPage = mNode;
+
+        private volatile boolean mFetching;
+
+        private volatile Throwable mError;
+
+        CollectionSubscription(Subscriber<? super T> subscriber) {
+            super(subscriber);
+        }
+
+        @Override
+        protected void emit() {
+            while (getRequested() > 0 && !isCancelled()) {
+                Object item = mBuffer.poll();
+                if (item == null) {
+                    break;
+                }
+                signalNext((T) item);
+            }
+            if (isCancelled() || mFetching) {
+                return;
+            }
+            if (mBuffer.isEmpty()) {
+                if (mError != null) {
+                    signalError(mError);
+                    return;
+                } else if (mNextPage == null) {
+                    signalComplete();
+                    return;
+                }
+            }
+            // read ahead only as far as the demand that buffered items do not cover
+            if (mNextPage != null && getRequested() > mBuffer.size()) {
+                mFetching = true;
+                fetchPage(mNextPage);
+            }
+        }
+
+        private void fetchPage(final Hyper page) {
+            Task.call(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    try {
+                        if (mPages) {
+                            page.each();
+                            mNextPage = getNextPage(page);
+                            mBuffer.add(page);
+                        } else {
+                            // publish items while the page is still downloading
+                            page.each(new ItemCallback<Object>() {
+                                @Override
+                                public void onItem(int index, Object item) {
+                                    if (item != null && !isCancelled()) {
+                                        mBuffer.add(item);
+                                        drain();
+                                    }
+                                }
+                            });
+                            mNextPage = getNextPage(page);
+                        }
+                    } catch (Exception ex) {
+                        mError = ex;
+                        mNextPage = null;
+                    }
+                    mFetching = false;
+                    drain();
+                    return null;
+                }
+            }, mNode.getContext().getAsyncExecutor());
+        }
+
+        @Override
+        protected void onCancel() {
+            mBuffer.clear();
+        }
+    }
+
+    /**
+     * @return The page linked as next, or null if this is the last one
+     */
+    private static Hyper getNextPage(Hyper page) throws Exception {
+        Object next;
+        try {
+            next = page.get(KEY_NEXT);
+        } catch (MissingPropertyException ex) {
+            return null;
+        }
+        if (!(next instanceof Hyper)) {
+            return null;
+        }
+        Hyper nextPage = (Hyper) next;
+        // guard against a page linking to itself
+        if (nextPage.getHref() == null || nextPage.getIdentity().equals(page.getIdentity())) {
+            return null;
+        }
+        return nextPage;
+    }
+}
@@ -0,0 +1,250 @@
+package io.hypergroup.hyper;
+
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Adapts the number of concurrent fetches to each host from the latency it answers with.
+ * <br/>
+ * Limits grow additively while response headers arrive about as fast as the fastest recent
+ * ones, and shrink multiplicatively once latency climbs, which means requests are queueing at the
+ * server or on the radio, or when a fetch is dropped. Fetches over the limit wait for a slot.
+ */
+public class ConcurrencyLimiter {
+
+    /**
+     * Default limit of a host that has not answered yet
+     */
+    public static final int DEFAULT_INITIAL_LIMIT = 8;
+    public static final int DEFAULT_MIN_LIMIT = 2;
+    public static final int DEFAULT_MAX_LIMIT = 64;
+
+    /**
+     * Latency over the baseline times this is taken as queueing
+     */
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    /**
+     * Latency over the baseline by less than this is never taken as queueing
+     */
+    private static final long LATENCY_SLACK_MILLIS = 5;
+
+    private static final double BACKOFF_QUEUEING = 0.9;
+    private static final double BACKOFF_DROPPED = 0.75;
+
+    /**
+     * Samples after which the baseline is re-measured, in case the network itself got slower
+     */
+    private static final int BASELINE_WINDOW = 100;
+
+    private final int mInitialLimit;
+    private final int mMinLimit;
+    private final int mMaxLimit;
+    private final HyperMetrics mMetrics;
+
+    /**
+     * State of every host fetched from, by host
+     */
+    private final Map<String, HostLimit> mHosts = new HashMap<String, HostLimit>();
+
+    public ConcurrencyLimiter(HyperMetrics metrics) {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, metrics);
+    }
+
+    /**
+     * @param initialLimit Limit of a host that has not answered yet
+     * @param minLimit     Lowest a limit shrinks to
+     * @param maxLimit     Highest a limit grows to
+     * @param metrics      Receives wait times, may be null
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, HyperMetrics metrics) {
+        mInitialLimit = initialLimit;
+        mMinLimit = Math.max(1, minLimit);
+        mMaxLimit = maxLimit;
+        mMetrics = metrics;
+    }
+
+    /**
+     * Wait for a slot to fetch from a host
+     *
+     * @param host Host about to be fetched from
+     * @return A permit, to be released once the fetch is over
+     * @throws InterruptedException When interrupted waiting for a slot
+     */
+    public Permit acquire(String host) throws InterruptedException {
+        return acquire(host, null);
+    }
+
+    /**
+     * Wait for a slot to fetch from a host, until a deadline
+     *
+     * @param host     Host about to be fetched from
+     * @param deadline Deadline of the fetch, may be null for none
+     * @return A permit, to be released once the fetch is over, or null if the deadline passed
+     * @throws InterruptedException When interrupted waiting for a slot
+     */
+    public Permit acquire(String host, Deadline deadline) throws InterruptedException {
+        long start = SystemClock.elapsedRealtime();
+        HostLimit limit;
+        synchronized (this) {
+            limit = getHostLimit(host);
+            while (limit.inFlight >= (int) limit.limit) {
+                if (deadline == null) {
+                    wait();
+                } else if (deadline.isExpired()) {
+                    // dropped before it was sent
+                    return null;
+                } else {
+                    wait(deadline.getRemainingMillis());
+                }
+            }
+            limit.inFlight++;
+        }
+        long waited = SystemClock.elapsedRealtime() - start;
+        if (mMetrics != null) {
+            mMetrics.onLimiterWait(waited);
+        }
+        return new Permit(limit);
+    }
+
+    /**
+     * Take a slot to fetch from a host if one is free, without waiting
+     *
+     * @param host Host about to be fetched from
+     * @return A permit, to be released once the fetch is over, or null if the host is at its limit
+     */
+    public synchronized Permit tryAcquire(String host) {
+        HostLimit limit = getHostLimit(host);
+        if (limit.inFlight >= (int) limit.limit) {
+            return null;
+        }
+        limit.inFlight++;
+        return new Permit(limit);
+    }
+
+    /**
+     * @return Current limit of a host
+     */
+    public synchronized int getLimit(String host) {
+        return (int) getHostLimit(host).limit;
+    }
+
+    /**
+     * @return Fetches to a host in flight
+     */
+    public synchronized int getInFlight(String host) {
+        return getHostLimit(host).inFlight;
+    }
+
+    /**
+     * @return Current limit of every host fetched from
+     */
+    public synchronized Map<String, Integer> getLimits() {
+        Map<String, Integer> limits = new HashMap<String, Integer>();
+        for (Map.Entry<String, HostLimit> entry : mHosts.entrySet()) {
+            limits.put(entry.getKey(), (int) entry.getValue().limit);
+        }
+        return limits;
+    }
+
+    private HostLimit getHostLimit(String host) {
+        HostLimit limit = mHosts.get(host);
+        if (limit == null) {
+            limit = new HostLimit(mInitialLimit);
+            mHosts.put(host, limit);
+        }
+        return limit;
+    }
+
+    /**
+     * Adapt a host's limit to the outcome of a fetch, and free its slot
+     *
+     * @param latency Milliseconds until response headers, -1 without a sample
+     * @param dropped Whether or not the fetch failed in a way that suggests overload
+     */
+    private synchronized void release(HostLimit limit, long latency, boolean dropped) {
+        int inFlight = limit.inFlight--;
+        if (dropped) {
+            limit.limit = Math.max(mMinLimit, limit.limit * BACKOFF_DROPPED);
+        } else if (latency >= 0) {
+            // ## Baseline, the fastest latency of the current window
+            if (limit.baseline < 0 || latency < limit.baseline) {
+                limit.baseline = latency;
+            }
+            if (limit.windowMin < 0 || latency < limit.windowMin) {
+                limit.windowMin = latency;
+            }
+            if (++limit.samples % BASELINE_WINDOW == 0) {
+                limit.baseline = limit.windowMin;
+                limit.windowMin = -1;
+            }
+
+            // ## AIMD
+            if (latency > limit.baseline * LATENCY_TOLERANCE + LATENCY_SLACK_MILLIS) {
+                limit.limit = Math.max(mMinLimit, limit.limit * BACKOFF_QUEUEING);
+            } else if (inFlight * 2 >= limit.limit) {
+                // only grow while the limit is actually in use, about one per limit fetches
+                limit.limit = Math.min(mMaxLimit, limit.limit + 1 / limit.limit);
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * A slot for one fetch
+     */
+    public class Permit {
+
+        private final HostLimit mLimit;
+        private final long mStart = SystemClock.elapsedRealtime();
+        private long mLatency = -1;
+        private boolean mDropped;
+        private boolean mReleased;
+
+        private Permit(HostLimit limit) {
+            mLimit = limit;
+        }
+
+        /**
+         * Record that response headers arrived
+         */
+        public void onResponse() {
+            mLatency = SystemClock.elapsedRealtime() - mStart;
+        }
+
+        /**
+         * Record that the fetch failed in a way that suggests overload, such as a timeout or a 503
+         */
+        public void onDropped() {
+            mDropped = true;
+        }
+
+        /**
+         * Free the slot, once
+         */
+        public void release() {
+            if (!mReleased) {
+                mReleased = true;
+                ConcurrencyLimiter.this.release(mLimit, mLatency, mDropped);
+            }
+        }
+    }
+
+    private static class HostLimit {
+
+        /**
+         * Fractional, so that it can grow by less than one fetch at a time
+         */
+        double limit;
+        int inFlight;
+        long baseline = -1;
+        long windowMin = -1;
+        long samples;
+
+        HostLimit(int limit) {
+            this.limit = limit;
+        }
+    }
+}
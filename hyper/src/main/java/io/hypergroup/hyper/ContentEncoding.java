@@ -0,0 +1,60 @@
+package io.hypergroup.hyper;
+
+import android.text.TextUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Content-Encoding negotiation and decoding for Hyper responses.
+ * <br/>
+ * Setting Accept-Encoding on a request turns off OkHttp's transparent gzip, so Hyper advertises
+ * only the encodings it can decode here and inflates the body itself. That keeps the compressed
+ * byte count visible for metrics.
+ */
+public final class ContentEncoding {
+
+    /**
+     * HTTP Header for Accept-Encoding
+     */
+    public static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+
+    /**
+     * HTTP Header for Content-Encoding
+     */
+    public static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+
+    public static final String IDENTITY = "identity";
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    /**
+     * Encodings that can be decoded by {@link #decode(String, java.io.InputStream)}
+     */
+    public static final String ACCEPT_ENCODING = GZIP + ", " + DEFLATE;
+
+    private ContentEncoding() {
+    }
+
+    /**
+     * Wrap a response body in a streaming decoder for the given Content-Encoding
+     *
+     * @param encoding Value of the Content-Encoding header, may be null
+     * @param in       Encoded body
+     * @return A stream of the decoded body
+     * @throws IOException When the encoding is not supported or the stream is corrupt
+     */
+    public static InputStream decode(String encoding, InputStream in) throws IOException {
+        if (TextUtils.isEmpty(encoding) || IDENTITY.equalsIgnoreCase(encoding)) {
+            return in;
+        } else if (GZIP.equalsIgnoreCase(encoding)) {
+            return new GZIPInputStream(in);
+        } else if (DEFLATE.equalsIgnoreCase(encoding)) {
+            return new InflaterInputStream(in);
+        } else {
+            throw new IOException("Unsupported Content-Encoding: " + encoding);
+        }
+    }
+}
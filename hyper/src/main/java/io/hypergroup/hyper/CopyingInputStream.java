@@ -0,0 +1,57 @@
+package io.hypergroup.hyper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream that keeps a copy of the bytes read through it
+ */
+/* default */ class CopyingInputStream extends FilterInputStream {
+
+    private final ByteArrayOutputStream mCopy = new ByteArrayOutputStream();
+
+    /* default */ CopyingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            mCopy.write(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        int read = super.read(buffer, offset, count);
+        if (read > 0) {
+            mCopy.write(buffer, offset, read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long byteCount) throws IOException {
+        // skipped bytes would be missing from the copy, read them instead
+        byte[] buffer = new byte[(int) Math.min(byteCount, 8192)];
+        int read = read(buffer, 0, buffer.length);
+        return Math.max(read, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+        // resetting would duplicate bytes in the copy
+        return false;
+    }
+
+    /**
+     * @return The bytes read so far
+     */
+    public byte[] toByteArray() {
+        return mCopy.toByteArray();
+    }
+}
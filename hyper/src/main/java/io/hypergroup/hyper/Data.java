@@ -7,6 +7,7 @@ import java.util.List;
 import io.hypergroup.hyper.exception.InvalidCollectionException;
 import io.hypergroup.hyper.exception.MissingPropertyException;
 import io.hypergroup.hyper.exception.NoHrefException;
+import io.hypergroup.hyper.exception.WrongDataTypeException;
 
 /**
  * Represents underlying data, a thin wrapper for object such as JSONObject.
@@ -30,10 +31,50 @@ public interface Data extends Serializable {
      */
     public Object getProperty(String key) throws MissingPropertyException;
 
+    /**
+     * Retrieve a numeric property without boxing it again
+     *
+     * @param key Key to retrieve
+     * @return The property as an int
+     * @throws io.hypergroup.hyper.exception.MissingPropertyException When the property does not exist
+     * @throws io.hypergroup.hyper.exception.WrongDataTypeException   When the property is not a number
+     */
+    public int getInt(String key) throws MissingPropertyException, WrongDataTypeException;
+
+    /**
+     * @see #getInt(String)
+     */
+    public long getLong(String key) throws MissingPropertyException, WrongDataTypeException;
+
+    /**
+     * @see #getInt(String)
+     */
+    public double getDouble(String key) throws MissingPropertyException, WrongDataTypeException;
+
+    /**
+     * Retrieve a boolean property
+     *
+     * @param key Key to retrieve
+     * @return The property as a boolean
+     * @throws io.hypergroup.hyper.exception.MissingPropertyException When the property does not exist
+     * @throws io.hypergroup.hyper.exception.WrongDataTypeException   When the property is not a boolean
+     */
+    public boolean getBoolean(String key) throws MissingPropertyException, WrongDataTypeException;
+
+    /**
+     * Retrieve an array of numbers, "collection" included, stored in a primitive array
+     *
+     * @param key Key to retrieve
+     * @return The array as a NumberArray
+     * @throws io.hypergroup.hyper.exception.MissingPropertyException When the property does not exist
+     * @throws io.hypergroup.hyper.exception.WrongDataTypeException   When the property is not an array of numbers
+     */
+    public NumberArray getNumberArray(String key) throws MissingPropertyException, WrongDataTypeException;
+
     /**
      * Retrieve a collection from this source
      *
-     * @return A list of boxed primitives or wrapper objects
+     * @return A list of boxed primitives or wrapper objects, boxed as they were parsed
      * @throws io.hypergroup.hyper.exception.InvalidCollectionException When the collection does not exist
      */
     public List<Object> getCollection() throws InvalidCollectionException;
@@ -47,6 +88,14 @@ public interface Data extends Serializable {
      */
     public URL getHref(URL base) throws NoHrefException;
 
+    /**
+     * Retrieve the unresolved href for wrapped data
+     *
+     * @return The raw href, an empty String when the href refers to the base URL itself
+     * @throws io.hypergroup.hyper.exception.NoHrefException When the href property is missing entirely or null.
+     */
+    public String getRawHref() throws NoHrefException;
+
     /**
      * Retrieve the list of keys for this data
      */
@@ -0,0 +1,358 @@
+package io.hypergroup.hyper;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.hypergroup.hyper.exception.MissingPropertyException;
+import io.hypergroup.hyper.exception.NoHrefException;
+
+/**
+ * Key-level and collection-level differences between two states of a Hyper node's data.
+ * <br/>
+ * Keys are inserted, removed or changed. Collection items are matched by their href, or by their
+ * value or position when they have none, and are then inserted, removed, changed or moved.
+ * Inserted, changed and moved-to indexes refer to the new collection, removed and moved-from
+ * indexes refer to the old one.
+ */
+public class DataDiff {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final Set<String> mInsertedKeys;
+    private final Set<String> mRemovedKeys;
+    private final Set<String> mChangedKeys;
+    private final int[] mInsertedItems;
+    private final int[] mRemovedItems;
+    private final int[] mChangedItems;
+    private final int[] mMovedFrom;
+    private final int[] mMovedTo;
+
+    private DataDiff(Set<String> insertedKeys, Set<String> removedKeys, Set<String> changedKeys,
+                     int[] insertedItems, int[] removedItems, int[] changedItems, int[] movedFrom, int[] movedTo) {
+        mInsertedKeys = Collections.unmodifiableSet(insertedKeys);
+        mRemovedKeys = Collections.unmodifiableSet(removedKeys);
+        mChangedKeys = Collections.unmodifiableSet(changedKeys);
+        mInsertedItems = insertedItems;
+        mRemovedItems = removedItems;
+        mChangedItems = changedItems;
+        mMovedFrom = movedFrom;
+        mMovedTo = movedTo;
+    }
+
+    public Set<String> getInsertedKeys() {
+        return mInsertedKeys;
+    }
+
+    public Set<String> getRemovedKeys() {
+        return mRemovedKeys;
+    }
+
+    public Set<String> getChangedKeys() {
+        return mChangedKeys;
+    }
+
+    /**
+     * @return Indexes in the new collection of items that were not in the old one
+     */
+    public int[] getInsertedItems() {
+        return mInsertedItems;
+    }
+
+    /**
+     * @return Indexes in the old collection of items that are no longer in the collection
+     */
+    public int[] getRemovedItems() {
+        return mRemovedItems;
+    }
+
+    /**
+     * @return Indexes in the new collection of items whose content changed
+     */
+    public int[] getChangedItems() {
+        return mChangedItems;
+    }
+
+    /**
+     * @return Old indexes of moved items, paired with {@link #getMovedTo()}
+     */
+    public int[] getMovedFrom() {
+        return mMovedFrom;
+    }
+
+    /**
+     * @return New indexes of moved items, paired with {@link #getMovedFrom()}
+     */
+    public int[] getMovedTo() {
+        return mMovedTo;
+    }
+
+    /**
+     * @return Whether or not the collection gained, lost or reordered items
+     */
+    public boolean isCollectionStructureChanged() {
+        return mInsertedItems.length > 0 || mRemovedItems.length > 0 || mMovedFrom.length > 0;
+    }
+
+    /**
+     * @return Whether or not nothing changed at all
+     */
+    public boolean isEmpty() {
+        return mInsertedKeys.isEmpty() && mRemovedKeys.isEmpty() && mChangedKeys.isEmpty()
+            && !isCollectionStructureChanged() && mChangedItems.length == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "DataDiff{keys +" + mInsertedKeys + " -" + mRemovedKeys + " ~" + mChangedKeys
+            + ", items +" + Arrays.toString(mInsertedItems) + " -" + Arrays.toString(mRemovedItems)
+            + " ~" + Arrays.toString(mChangedItems) + " " + Arrays.toString(mMovedFrom) + "->" + Arrays.toString(mMovedTo) + "}";
+    }
+
+    /**
+     * Compute the differences between two snapshots
+     */
+    /* default */ static DataDiff compute(DataSnapshot before, DataSnapshot after) {
+
+        // ## Keys
+
+        Set<String> insertedKeys = new LinkedHashSet<String>();
+        Set<String> removedKeys = new LinkedHashSet<String>();
+        Set<String> changedKeys = new LinkedHashSet<String>();
+        for (Map.Entry<String, Object> entry : after.values.entrySet()) {
+            String key = entry.getKey();
+            if (!before.values.containsKey(key)) {
+                insertedKeys.add(key);
+            } else if (!deepEquals(before.values.get(key), entry.getValue())) {
+                changedKeys.add(key);
+            }
+        }
+        for (String key : before.values.keySet()) {
+            if (!after.values.containsKey(key)) {
+                removedKeys.add(key);
+            }
+        }
+
+        // ## Collection
+
+        List<Object> oldItems = before.collection;
+        List<Object> newItems = after.collection;
+        if (oldItems.isEmpty() && newItems.isEmpty()) {
+            return new DataDiff(insertedKeys, removedKeys, changedKeys, EMPTY, EMPTY, EMPTY, EMPTY, EMPTY);
+        }
+
+        Map<String, Integer> oldIndexes = new HashMap<String, Integer>();
+        List<String> oldIds = identify(oldItems);
+        for (int index = 0; index < oldIds.size(); index++) {
+            oldIndexes.put(oldIds.get(index), index);
+        }
+
+        List<Integer> inserted = new ArrayList<Integer>();
+        List<Integer> changed = new ArrayList<Integer>();
+        // old index of each surviving item, in new order
+        List<int[]> common = new ArrayList<int[]>();
+        Set<Integer> kept = new HashSet<Integer>();
+        List<String> newIds = identify(newItems);
+        for (int index = 0; index < newIds.size(); index++) {
+            Integer oldIndex = oldIndexes.get(newIds.get(index));
+            if (oldIndex == null) {
+                inserted.add(index);
+            } else {
+                kept.add(oldIndex);
+                common.add(new int[]{oldIndex, index});
+                if (!deepEquals(oldItems.get(oldIndex), newItems.get(index))) {
+                    changed.add(index);
+                }
+            }
+        }
+        List<Integer> removed = new ArrayList<Integer>();
+        for (int index = 0; index < oldItems.size(); index++) {
+            if (!kept.contains(index)) {
+                removed.add(index);
+            }
+        }
+
+        // items outside the longest run that kept its relative order have moved
+        boolean[] stayed = longestIncreasingRun(common);
+        List<Integer> movedFrom = new ArrayList<Integer>();
+        List<Integer> movedTo = new ArrayList<Integer>();
+        for (int index = 0; index < common.size(); index++) {
+            if (!stayed[index]) {
+                movedFrom.add(common.get(index)[0]);
+                movedTo.add(common.get(index)[1]);
+            }
+        }
+
+        return new DataDiff(insertedKeys, removedKeys, changedKeys,
+            toArray(inserted), toArray(removed), toArray(changed), toArray(movedFrom), toArray(movedTo));
+    }
+
+    /**
+     * Give each collection item an identity: its href, its value, or its position
+     */
+    private static List<String> identify(List<Object> items) {
+        List<String> ids = new ArrayList<String>(items.size());
+        Map<String, Integer> occurrences = new HashMap<String, Integer>();
+        for (int index = 0; index < items.size(); index++) {
+            Object item = items.get(index);
+            String id;
+            if (item instanceof Data) {
+                try {
+                    id = "href:" + ((Data) item).getRawHref();
+                } catch (NoHrefException ex) {
+                    id = "index:" + index;
+                }
+            } else {
+                id = "value:" + item;
+            }
+            // duplicates are told apart by occurrence
+            Integer count = occurrences.get(id);
+            occurrences.put(id, count == null ? 1 : count + 1);
+            ids.add(count == null ? id : id + "#" + count);
+        }
+        return ids;
+    }
+
+    /**
+     * Mark the pairs that form the longest run of increasing old indexes
+     *
+     * @param pairs Old and new index pairs ordered by new index
+     */
+    private static boolean[] longestIncreasingRun(List<int[]> pairs) {
+        int N = pairs.size();
+        boolean[] stayed = new boolean[N];
+        if (N == 0) {
+            return stayed;
+        }
+        // patience sorting, tails[k] is the pair index ending the best run of length k + 1
+        int[] tails = new int[N];
+        int[] previous = new int[N];
+        int length = 0;
+        for (int index = 0; index < N; index++) {
+            int value = pairs.get(index)[0];
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (pairs.get(tails[mid])[0] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            previous[index] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = index;
+            if (low == length) {
+                length++;
+            }
+        }
+        for (int index = tails[length - 1]; index >= 0; index = previous[index]) {
+            stayed[index] = true;
+        }
+        return stayed;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        if (list.isEmpty()) {
+            return EMPTY;
+        }
+        int[] array = new int[list.size()];
+        for (int index = 0; index < array.length; index++) {
+            array[index] = list.get(index);
+        }
+        return array;
+    }
+
+    /**
+     * Structural equality across Data, org.json types, Lists and boxed numbers of any width
+     */
+    /* default */ static boolean deepEquals(Object a, Object b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null || a == JSONObject.NULL || b == JSONObject.NULL) {
+            return isNull(a) && isNull(b);
+        }
+        if (a instanceof Number && b instanceof Number) {
+            return ((Number) a).doubleValue() == ((Number) b).doubleValue();
+        }
+        if (a instanceof Data && b instanceof Data) {
+            return dataEquals((Data) a, (Data) b);
+        }
+        if (a instanceof JSONObject && b instanceof JSONObject) {
+            return jsonEquals((JSONObject) a, (JSONObject) b);
+        }
+        if (a instanceof JSONArray && b instanceof JSONArray) {
+            JSONArray lhs = (JSONArray) a;
+            JSONArray rhs = (JSONArray) b;
+            if (lhs.length() != rhs.length()) {
+                return false;
+            }
+            for (int index = 0; index < lhs.length(); index++) {
+                if (!deepEquals(lhs.opt(index), rhs.opt(index))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a instanceof List && b instanceof List) {
+            List<?> lhs = (List<?>) a;
+            List<?> rhs = (List<?>) b;
+            if (lhs.size() != rhs.size()) {
+                return false;
+            }
+            for (int index = 0; index < lhs.size(); index++) {
+                if (!deepEquals(lhs.get(index), rhs.get(index))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return a.equals(b);
+    }
+
+    private static boolean isNull(Object value) {
+        return value == null || value == JSONObject.NULL;
+    }
+
+    private static boolean dataEquals(Data a, Data b) {
+        String[] keys = a.getKeys();
+        if (keys.length != b.getKeys().length) {
+            return false;
+        }
+        try {
+            for (String key : keys) {
+                if (!b.hasProperty(key) || !deepEquals(a.getProperty(key), b.getProperty(key))) {
+                    return false;
+                }
+            }
+        } catch (MissingPropertyException ex) {
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean jsonEquals(JSONObject a, JSONObject b) {
+        if (a.length() != b.length()) {
+            return false;
+        }
+        Iterator<String> keys = a.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!b.has(key) || !deepEquals(a.opt(key), b.opt(key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
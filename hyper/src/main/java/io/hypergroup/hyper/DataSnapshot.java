@@ -0,0 +1,57 @@
+package io.hypergroup.hyper;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.hypergroup.hyper.exception.HyperException;
+
+/**
+ * Shallow copy of the state of a Data, taken so a later state can be diffed against it
+ */
+/* default */ class DataSnapshot {
+
+    /**
+     * Key used to extract collections, diffed separately from the other keys
+     */
+    /* default */ static final String KEY_COLLECTION = "collection";
+
+    /**
+     * Values of every key except the collection
+     */
+    final Map<String, Object> values;
+
+    /**
+     * Items of the collection, empty if there is none
+     */
+    final List<Object> collection;
+
+    private DataSnapshot(Map<String, Object> values, List<Object> collection) {
+        this.values = values;
+        this.collection = collection;
+    }
+
+    /**
+     * @param data Data to copy, may be null
+     * @return A snapshot of the data
+     */
+    static DataSnapshot of(Data data) {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        List<Object> collection = Collections.emptyList();
+        if (data != null) {
+            for (String key : data.getKeys()) {
+                try {
+                    if (KEY_COLLECTION.equals(key)) {
+                        collection = data.getCollection();
+                    } else {
+                        values.put(key, data.getProperty(key));
+                    }
+                } catch (HyperException ex) {
+                    // treat unreadable values as absent
+                }
+            }
+        }
+        return new DataSnapshot(values, collection);
+    }
+}
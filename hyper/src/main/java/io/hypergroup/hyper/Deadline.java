@@ -0,0 +1,78 @@
+package io.hypergroup.hyper;
+
+import android.os.SystemClock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which a whole key path must be resolved, however many fetches it takes.
+ * <br/>
+ * While get(keyPath, deadline) runs, the deadline is current on its thread. Every fetch made for
+ * the key path checks it before it is sent and has its timeouts shrunk to the time remaining.
+ */
+public class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+
+    /**
+     * Time of the deadline on the SystemClock.elapsedRealtime() clock
+     */
+    private final long mDeadlineMillis;
+
+    private Deadline(long deadlineMillis) {
+        mDeadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * @return A deadline the given time from now
+     */
+    public static Deadline in(long duration, TimeUnit unit) {
+        return new Deadline(SystemClock.elapsedRealtime() + unit.toMillis(duration));
+    }
+
+    /**
+     * @return The deadline current on this thread, or null
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Make a deadline current on this thread
+     *
+     * @param deadline Deadline, may be null for none
+     * @return The deadline it replaces, to restore afterwards
+     */
+    /* default */ static Deadline set(Deadline deadline) {
+        Deadline previous = CURRENT.get();
+        if (deadline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+        return previous;
+    }
+
+    /**
+     * @return Milliseconds left, 0 once the deadline has passed
+     */
+    public long getRemainingMillis() {
+        return Math.max(0, mDeadlineMillis - SystemClock.elapsedRealtime());
+    }
+
+    public boolean isExpired() {
+        return getRemainingMillis() == 0;
+    }
+
+    /**
+     * @return The earlier of this deadline and another one
+     */
+    public Deadline min(Deadline other) {
+        return other == null || mDeadlineMillis <= other.mDeadlineMillis ? this : other;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline{" + getRemainingMillis() + "ms left}";
+    }
+}
@@ -0,0 +1,100 @@
+package io.hypergroup.hyper;
+
+import com.squareup.okhttp.MediaType;
+
+import java.util.Locale;
+
+/**
+ * Asks for the changes since the data a node holds instead of the whole body when it is fetched
+ * again, the way RFC 3229 delta encoding does.
+ * <br/>
+ * The request carries the ETag of the data in If-None-Match and the formats the node can apply in
+ * A-IM. A server that still knows that version may answer 226 IM Used with a JSON Patch (RFC 6902)
+ * or a JSON Merge Patch (RFC 7386), which is applied to the node's data in place. Any other answer
+ * is handled as usual, and a delta that does not apply is followed by a full fetch.
+ */
+public class DeltaUpdates {
+
+    /**
+     * RFC 6902 JSON Patch, changes collection items one by one
+     */
+    public static final String JSON_PATCH = "json-patch";
+
+    /**
+     * RFC 7386 JSON Merge Patch, replaces arrays as a whole
+     */
+    public static final String MERGE_PATCH = "merge-patch";
+
+    public static final String HEADER_A_IM = "A-IM";
+    public static final String HEADER_IM = "IM";
+
+    /**
+     * Status of a delta response
+     */
+    public static final int HTTP_IM_USED = 226;
+
+    private static final String SUBTYPE_JSON_PATCH = "json-patch+json";
+    private static final String SUBTYPE_MERGE_PATCH = "merge-patch+json";
+
+    /**
+     * Formats to ask for, most preferred first
+     */
+    private final String[] mFormats;
+
+    /**
+     * Ask for JSON Patch, then JSON Merge Patch
+     */
+    public DeltaUpdates() {
+        this(JSON_PATCH, MERGE_PATCH);
+    }
+
+    /**
+     * @param formats Formats to ask for, most preferred first
+     */
+    public DeltaUpdates(String... formats) {
+        mFormats = formats.clone();
+    }
+
+    public String[] getFormats() {
+        return mFormats.clone();
+    }
+
+    /**
+     * @param node Node to be fetched again
+     * @return Value of the A-IM header, or null if the node can apply none of the formats
+     */
+    /* default */ String getAcceptHeader(Hyper node) {
+        StringBuilder header = new StringBuilder();
+        for (String format : mFormats) {
+            if (node.canApplyDelta(format)) {
+                header.append(header.length() == 0 ? "" : ", ").append(format);
+            }
+        }
+        return header.length() == 0 ? null : header.toString();
+    }
+
+    /**
+     * @param im          Value of the IM header of a delta response, may be null
+     * @param contentType Content-Type of the delta response, may be null
+     * @return Format of the delta, from the IM header or else the Content-Type, or null
+     */
+    /* default */ static String getFormat(String im, MediaType contentType) {
+        if (im != null) {
+            // we only ever ask for a single manipulation
+            String format = im.split(",")[0];
+            int parameters = format.indexOf(';');
+            format = (parameters == -1 ? format : format.substring(0, parameters)).trim().toLowerCase(Locale.US);
+            if (format.length() > 0) {
+                return format;
+            }
+        }
+        if (contentType != null) {
+            if (SUBTYPE_JSON_PATCH.equals(contentType.subtype())) {
+                return JSON_PATCH;
+            } else if (SUBTYPE_MERGE_PATCH.equals(contentType.subtype())) {
+                return MERGE_PATCH;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,174 @@
+package io.hypergroup.hyper;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Learns which links are followed from each resource, and asks a server that can embed linked
+ * resources to do so, as in /users/1?expand=friends,friends.*
+ * <br/>
+ * Resources are told apart by their key path, with collection indexes replaced by *. Once a
+ * link has been followed often enough from a key path, fetches at that key path ask for it to be
+ * embedded, along with whatever is followed from it in turn. Embedded resources land in the
+ * parent's data, so following them later takes no fetch at all.
+ */
+public class ExpandHints {
+
+    /**
+     * Tag for logging
+     */
+    private static final String TAG = ExpandHints.class.getSimpleName();
+
+    /**
+     * Default query parameter naming the links to embed
+     */
+    public static final String DEFAULT_PARAMETER = "expand";
+
+    /**
+     * Default number of times a link is followed before it is asked for
+     */
+    public static final int DEFAULT_MIN_FOLLOWS = 2;
+
+    /**
+     * Key path segment standing for every item of a collection
+     */
+    public static final String ANY_ITEM = "*";
+
+    /**
+     * Key paths remembered
+     */
+    private static final int MAX_KEY_PATHS = 256;
+
+    /**
+     * How deep links followed from links are asked for
+     */
+    private static final int MAX_DEPTH = 3;
+
+    private final String mParameter;
+    private final int mMinFollows;
+
+    /**
+     * Number of times each link was followed, by the key path it was followed from
+     */
+    private final LruCache<String, Map<String, Integer>> mFollows = new LruCache<String, Map<String, Integer>>(MAX_KEY_PATHS);
+
+    public ExpandHints() {
+        this(DEFAULT_PARAMETER, DEFAULT_MIN_FOLLOWS);
+    }
+
+    /**
+     * @param parameter  Query parameter the server reads the links to embed from
+     * @param minFollows Number of times a link is followed before it is asked for
+     */
+    public ExpandHints(String parameter, int minFollows) {
+        mParameter = parameter;
+        mMinFollows = minFollows;
+    }
+
+    public String getParameter() {
+        return mParameter;
+    }
+
+    /**
+     * Record that a link was fetched
+     *
+     * @param keyPath Friendly key path of the node the link was followed from
+     * @param segment Key of the link
+     */
+    public synchronized void onFollow(String keyPath, String segment) {
+        String pattern = toPattern(keyPath);
+        Map<String, Integer> follows = mFollows.get(pattern);
+        if (follows == null) {
+            follows = new HashMap<String, Integer>();
+            mFollows.put(pattern, follows);
+        }
+        String relation = toPattern(segment);
+        Integer count = follows.get(relation);
+        follows.put(relation, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * @param keyPath Friendly key path of a node about to be fetched
+     * @return Links to ask to embed, relative to the node and nested ones dotted
+     */
+    public synchronized List<String> getRelations(String keyPath) {
+        List<String> relations = new ArrayList<String>();
+        collect(toPattern(keyPath), "", 0, relations);
+        return relations;
+    }
+
+    private void collect(String pattern, String prefix, int depth, List<String> relations) {
+        Map<String, Integer> follows = mFollows.get(pattern);
+        if (follows == null || depth >= MAX_DEPTH) {
+            return;
+        }
+        for (Map.Entry<String, Integer> follow : follows.entrySet()) {
+            if (follow.getValue() >= mMinFollows) {
+                String relation = prefix + follow.getKey();
+                relations.add(relation);
+                collect(pattern + "." + follow.getKey(), relation + ".", depth + 1, relations);
+            }
+        }
+    }
+
+    /**
+     * @param href    Href about to be fetched
+     * @param keyPath Friendly key path of the node it belongs to
+     * @return The href asking to embed the links usually followed from it
+     */
+    public URL addHint(URL href, String keyPath) {
+        List<String> relations = getRelations(keyPath);
+        if (relations.isEmpty()) {
+            return href;
+        }
+        StringBuilder value = new StringBuilder();
+        for (String relation : relations) {
+            value.append(value.length() == 0 ? "" : ",").append(relation);
+        }
+        String externalForm = href.toExternalForm();
+        try {
+            return new URL(externalForm
+                + (href.getQuery() == null ? "?" : "&")
+                + mParameter + "=" + URLEncoder.encode(value.toString(), "UTF-8"));
+        } catch (MalformedURLException ex) {
+            Log.w(TAG, "Unable to add hint to " + href, ex);
+            return href;
+        } catch (UnsupportedEncodingException ex) {
+            Log.w(TAG, "Unable to add hint to " + href, ex);
+            return href;
+        }
+    }
+
+    /**
+     * @return The key path with collection indexes replaced by *
+     */
+    private static String toPattern(String keyPath) {
+        String[] segments = keyPath.split("\\.");
+        StringBuilder pattern = new StringBuilder();
+        for (String segment : segments) {
+            pattern.append(pattern.length() == 0 ? "" : ".").append(isIndex(segment) ? ANY_ITEM : segment);
+        }
+        return pattern.toString();
+    }
+
+    private static boolean isIndex(String segment) {
+        if (segment.length() == 0) {
+            return false;
+        }
+        for (int index = 0; index < segment.length(); index++) {
+            if (!Character.isDigit(segment.charAt(index))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,75 @@
+package io.hypergroup.hyper;
+
+import android.os.SystemClock;
+import android.util.LruCache;
+
+import io.hypergroup.hyper.exception.FetchException;
+
+/**
+ * Remembers hard fetch failures for a short while, so that nodes for a failing resource do not
+ * fetch it again and again
+ */
+public class FailureCache {
+
+    /**
+     * Default number of failed hrefs to remember
+     */
+    public static final int DEFAULT_MAX_SIZE = 128;
+
+    private final LruCache<String, Failure> mFailures;
+    private final long mTtlMillis;
+
+    /**
+     * @param maxSize   Number of failed hrefs to remember
+     * @param ttlMillis How long a failure is remembered, 0 to remember none
+     */
+    public FailureCache(int maxSize, long ttlMillis) {
+        mFailures = new LruCache<String, Failure>(maxSize);
+        mTtlMillis = ttlMillis;
+    }
+
+    /**
+     * @param href Href about to be fetched
+     * @return The failure of its last fetch if it is still remembered, or null
+     */
+    public FetchException get(String href) {
+        Failure failure = mFailures.get(href);
+        if (failure == null) {
+            return null;
+        } else if (SystemClock.elapsedRealtime() >= failure.expiresAt) {
+            mFailures.remove(href);
+            return null;
+        }
+        return failure.exception;
+    }
+
+    /**
+     * Remember that fetching an href failed
+     */
+    public void put(String href, FetchException exception) {
+        if (mTtlMillis > 0) {
+            mFailures.put(href, new Failure(exception, SystemClock.elapsedRealtime() + mTtlMillis));
+        }
+    }
+
+    /**
+     * Forget the failure of an href, for example when it is invalidated
+     */
+    public void remove(String href) {
+        mFailures.remove(href);
+    }
+
+    public void clear() {
+        mFailures.evictAll();
+    }
+
+    private static class Failure {
+        final FetchException exception;
+        final long expiresAt;
+
+        Failure(FetchException exception, long expiresAt) {
+            this.exception = exception;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
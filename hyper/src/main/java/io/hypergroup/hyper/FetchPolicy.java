@@ -0,0 +1,45 @@
+package io.hypergroup.hyper;
+
+import android.os.Looper;
+
+/**
+ * Decides which threads may make implicit network requests.
+ * <br/>
+ * On a thread that may not, get() only answers from memory or the response store and throws a
+ * PendingFetchException for anything that would need the network, getPending() returns a
+ * {@link Pending} for it instead.
+ */
+public abstract class FetchPolicy {
+
+    /**
+     * Every thread may fetch, the default
+     */
+    public static final FetchPolicy ALLOW_ALL = new FetchPolicy() {
+        @Override
+        public boolean isNetworkAllowed() {
+            return true;
+        }
+    };
+
+    /**
+     * The main thread is cache-only, every other thread may fetch
+     */
+    public static final FetchPolicy MAIN_THREAD_CACHE_ONLY = new FetchPolicy() {
+        @Override
+        public boolean isNetworkAllowed() {
+            return !isMainThread();
+        }
+    };
+
+    /**
+     * @return Whether or not the current thread may make network requests
+     */
+    public abstract boolean isNetworkAllowed();
+
+    /**
+     * @return Whether or not the current thread is the main thread
+     */
+    public static boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+}
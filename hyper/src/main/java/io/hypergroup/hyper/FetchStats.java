@@ -0,0 +1,72 @@
+package io.hypergroup.hyper;
+
+import java.net.URL;
+
+/**
+ * Measurements of a single network fetch
+ */
+public class FetchStats {
+
+    private final URL mHref;
+    private final int mStatusCode;
+    private final String mContentEncoding;
+    private final long mCompressedBytes;
+    private final long mDecompressedBytes;
+    private final long mDurationMillis;
+
+    public FetchStats(URL href, int statusCode, String contentEncoding, long compressedBytes, long decompressedBytes, long durationMillis) {
+        mHref = href;
+        mStatusCode = statusCode;
+        mContentEncoding = contentEncoding;
+        mCompressedBytes = compressedBytes;
+        mDecompressedBytes = decompressedBytes;
+        mDurationMillis = durationMillis;
+    }
+
+    /**
+     * @return The href that was fetched
+     */
+    public URL getHref() {
+        return mHref;
+    }
+
+    /**
+     * @return The HTTP status code of the response
+     */
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
+    /**
+     * @return The Content-Encoding of the response, or null if it was not encoded
+     */
+    public String getContentEncoding() {
+        return mContentEncoding;
+    }
+
+    /**
+     * @return Number of body bytes as they came over the wire (or out of the http cache)
+     */
+    public long getCompressedBytes() {
+        return mCompressedBytes;
+    }
+
+    /**
+     * @return Number of body bytes handed to the parser
+     */
+    public long getDecompressedBytes() {
+        return mDecompressedBytes;
+    }
+
+    /**
+     * @return Time from sending the request until the body was parsed
+     */
+    public long getDurationMillis() {
+        return mDurationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return mHref + " " + mStatusCode + " " + mContentEncoding + " " + mCompressedBytes + "/" + mDecompressedBytes + "B " + mDurationMillis + "ms";
+    }
+}
@@ -0,0 +1,188 @@
+package io.hypergroup.hyper;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Learns which keys are read from each kind of resource, and asks a server that supports sparse
+ * fieldsets for only those, as in /users/1?fields=avatar,display_name
+ * <br/>
+ * Resources are told apart by URL template, their host and path with numeric and id-like path
+ * segments replaced by *. Once a template has been fetched in full a few times, later fetches ask
+ * for the keys read so far. Reading any other key fetches the resource again in full, and the key
+ * is asked for from then on. Templates whose keys are listed with getAvailableKeys() are always
+ * fetched in full.
+ */
+public class FieldHints {
+
+    /**
+     * Tag for logging
+     */
+    private static final String TAG = FieldHints.class.getSimpleName();
+
+    /**
+     * Default query parameter naming the keys to fetch
+     */
+    public static final String DEFAULT_PARAMETER = "fields";
+
+    /**
+     * Default number of full fetches of a template before its keys are asked for
+     */
+    public static final int DEFAULT_MIN_FETCHES = 3;
+
+    /**
+     * Keys every fetch asks for
+     */
+    private static final String[] ALWAYS = {"href", DataSnapshot.KEY_COLLECTION};
+
+    /**
+     * Templates remembered
+     */
+    private static final int MAX_TEMPLATES = 256;
+
+    /**
+     * Path segments at least this long made of hex digits and dashes are taken for ids
+     */
+    private static final int MIN_ID_LENGTH = 16;
+
+    private final String mParameter;
+    private final int mMinFetches;
+
+    private final LruCache<String, Template> mTemplates = new LruCache<String, Template>(MAX_TEMPLATES);
+
+    public FieldHints() {
+        this(DEFAULT_PARAMETER, DEFAULT_MIN_FETCHES);
+    }
+
+    /**
+     * @param parameter  Query parameter the server reads the keys to return from
+     * @param minFetches Number of full fetches of a template before its keys are asked for
+     */
+    public FieldHints(String parameter, int minFetches) {
+        mParameter = parameter;
+        mMinFetches = minFetches;
+    }
+
+    /**
+     * Record that a key was read from a resource
+     */
+    public synchronized void onRead(URL href, String key) {
+        getTemplate(href).keys.add(key);
+    }
+
+    /**
+     * Record that every key of a resource was asked for, its template is fetched in full from now on
+     */
+    public synchronized void onReadAll(URL href) {
+        getTemplate(href).all = true;
+    }
+
+    /**
+     * Record a response
+     *
+     * @param href    Href of the resource
+     * @param partial Whether or not only some keys were asked for
+     * @param bytes   Decoded size of the response body
+     * @return Bytes saved, estimated against the average full response of the template
+     */
+    public synchronized long onResponse(URL href, boolean partial, long bytes) {
+        Template template = getTemplate(href);
+        if (!partial) {
+            template.fullBytes += bytes;
+            template.fullFetches++;
+            return 0;
+        }
+        return Math.max(0, template.fullBytes / Math.max(1, template.fullFetches) - bytes);
+    }
+
+    /**
+     * @param href Href about to be fetched
+     * @return The href asking for the keys usually read from it, or the href itself
+     */
+    public URL addHint(URL href) {
+        String value;
+        synchronized (this) {
+            Template template = getTemplate(href);
+            if (template.all || template.fullFetches < mMinFetches || template.keys.isEmpty()) {
+                return href;
+            }
+            Set<String> keys = new TreeSet<String>(template.keys);
+            for (String key : ALWAYS) {
+                keys.add(key);
+            }
+            StringBuilder builder = new StringBuilder();
+            for (String key : keys) {
+                builder.append(builder.length() == 0 ? "" : ",").append(key);
+            }
+            value = builder.toString();
+        }
+        try {
+            return new URL(href.toExternalForm()
+                + (href.getQuery() == null ? "?" : "&")
+                + mParameter + "=" + URLEncoder.encode(value, "UTF-8"));
+        } catch (MalformedURLException ex) {
+            Log.w(TAG, "Unable to add hint to " + href, ex);
+            return href;
+        } catch (UnsupportedEncodingException ex) {
+            Log.w(TAG, "Unable to add hint to " + href, ex);
+            return href;
+        }
+    }
+
+    private Template getTemplate(URL href) {
+        String key = toTemplate(href);
+        Template template = mTemplates.get(key);
+        if (template == null) {
+            template = new Template();
+            mTemplates.put(key, template);
+        }
+        return template;
+    }
+
+    /**
+     * @return Host and path of the href, with ids replaced by *
+     */
+    /* default */ static String toTemplate(URL href) {
+        StringBuilder template = new StringBuilder(href.getAuthority() == null ? "" : href.getAuthority());
+        for (String segment : href.getPath().split("/")) {
+            if (segment.length() > 0) {
+                template.append('/').append(isId(segment) ? "*" : segment);
+            }
+        }
+        return template.toString();
+    }
+
+    private static boolean isId(String segment) {
+        boolean digits = true;
+        boolean hex = true;
+        for (int index = 0; index < segment.length(); index++) {
+            char c = segment.charAt(index);
+            digits &= Character.isDigit(c);
+            hex &= Character.digit(c, 16) >= 0 || c == '-';
+        }
+        return digits || (hex && segment.length() >= MIN_ID_LENGTH);
+    }
+
+    private static class Template {
+
+        /**
+         * Keys read so far
+         */
+        final Set<String> keys = new TreeSet<String>();
+
+        /**
+         * Whether or not every key is needed
+         */
+        boolean all;
+
+        int fullFetches;
+        long fullBytes;
+    }
+}
@@ -0,0 +1,116 @@
+package io.hypergroup.hyper;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * When to send a second, identical GET for a fetch that is taking unusually long.
+ * <br/>
+ * A fetch that has not received response headers by the given percentile of recent header
+ * latencies is hedged, the first response wins and the other call is cancelled. The wait is capped
+ * at MEDIAN_MULTIPLE times the median, so that a slow share of responses as large as the
+ * percentile's tail does not push the wait past itself. Hedges are capped to a share of all
+ * fetches, so that a slow backend is not hit with twice the load.
+ */
+public class HedgePolicy {
+
+    /**
+     * Default percentile of recent latencies after which a fetch is hedged
+     */
+    public static final double DEFAULT_PERCENTILE = 0.95;
+
+    /**
+     * Default share of fetches that may be hedged
+     */
+    public static final double DEFAULT_BUDGET = 0.05;
+
+    /**
+     * Most the wait before hedging is, relative to the median latency
+     */
+    public static final int MEDIAN_MULTIPLE = 4;
+
+    /**
+     * Latencies recorded before any fetch is hedged
+     */
+    private static final int MIN_SAMPLES = 20;
+
+    private final double mPercentile;
+    private final double mBudget;
+    private final long mMinDelayMillis;
+    private final LatencyHistogram mLatencies = new LatencyHistogram();
+
+    private final AtomicLong mFetchCount = new AtomicLong();
+    private final AtomicLong mHedgeCount = new AtomicLong();
+
+    public HedgePolicy() {
+        this(DEFAULT_PERCENTILE, DEFAULT_BUDGET, 10, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param percentile Percentile of recent latencies after which a fetch is hedged, such as 0.95
+     * @param budget     Share of fetches that may be hedged, such as 0.05
+     * @param minDelay   Shortest wait before hedging, however fast recent fetches were
+     * @param unit       Unit of minDelay
+     */
+    public HedgePolicy(double percentile, double budget, long minDelay, TimeUnit unit) {
+        mPercentile = percentile;
+        mBudget = budget;
+        mMinDelayMillis = unit.toMillis(minDelay);
+    }
+
+    /**
+     * @return Latencies until response headers of recent fetches
+     */
+    public LatencyHistogram getLatencies() {
+        return mLatencies;
+    }
+
+    /**
+     * @return Number of fetches that went through the policy
+     */
+    public long getFetchCount() {
+        return mFetchCount.get();
+    }
+
+    /**
+     * @return Number of hedges sent
+     */
+    public long getHedgeCount() {
+        return mHedgeCount.get();
+    }
+
+    /**
+     * Record that a fetch is starting
+     */
+    /* default */ void onFetch() {
+        mFetchCount.incrementAndGet();
+    }
+
+    /**
+     * @return Milliseconds to wait for response headers before hedging, -1 to never hedge
+     */
+    /* default */ long getDelayMillis() {
+        if (mLatencies.getCount() < MIN_SAMPLES) {
+            return -1;
+        }
+        long delay = Math.min(mLatencies.getPercentile(mPercentile), MEDIAN_MULTIPLE * mLatencies.getPercentile(0.5));
+        return Math.max(mMinDelayMillis, delay);
+    }
+
+    /**
+     * Take a hedge from the budget
+     *
+     * @return Whether or not the budget allows another hedge
+     */
+    /* default */ boolean tryHedge() {
+        while (true) {
+            long hedges = mHedgeCount.get();
+            if (hedges + 1 > mBudget * mFetchCount.get()) {
+                return false;
+            }
+            if (mHedgeCount.compareAndSet(hedges, hedges + 1)) {
+                return true;
+            }
+        }
+    }
+}
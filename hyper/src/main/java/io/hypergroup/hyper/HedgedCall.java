@@ -0,0 +1,230 @@
+package io.hypergroup.hyper;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes a GET, sending an identical hedge if the first call is slow to answer.
+ * <br/>
+ * The first response wins and the other call is cancelled, the body of a response that arrives
+ * too late is closed. When one call fails the other one still gets to answer. Only the latency of
+ * the winning call is recorded, from when it was sent, so a call cut short by its hedge does not
+ * feed the tail the policy hedges against.
+ * <br/>
+ * Calls run on threads of their own rather than being enqueued with the client, whose dispatcher
+ * in OkHttp 2.0 runs enqueued calls one at a time, which would hold the hedge behind the call it
+ * hedges. Those threads are bounded, a call that finds them all busy runs on the caller's thread
+ * without a hedge. A hedge also takes a slot of its host's concurrency limit, and is not sent
+ * while the host is at its limit.
+ */
+/* default */ class HedgedCall {
+
+    /**
+     * Tag for logging
+     */
+    private static final String TAG = HedgedCall.class.getSimpleName();
+
+    private static final String METHOD_GET = "GET";
+
+    /**
+     * Most calls in flight on call threads, across all hosts
+     */
+    private static final int MAX_CALL_THREADS = 2 * ConcurrencyLimiter.DEFAULT_MAX_LIMIT;
+
+    /**
+     * Runs the calls, threads are only kept while calls are in flight
+     */
+    private static final ExecutorService CALL_EXECUTOR = new ThreadPoolExecutor(0, MAX_CALL_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new CallThreadFactory());
+
+    private final OkHttpClient mClient;
+    private final Request mRequest;
+    private final HedgePolicy mPolicy;
+    private final ConcurrencyLimiter mLimiter;
+
+    /**
+     * Responses and failures of the calls, in the order they arrive
+     */
+    private final LinkedBlockingQueue<Outcome> mOutcomes = new LinkedBlockingQueue<Outcome>();
+
+    /**
+     * Whether or not a response won, later responses are closed
+     */
+    private boolean mDone;
+
+    private HedgedCall(OkHttpClient client, Request request, HedgePolicy policy, ConcurrencyLimiter limiter) {
+        mClient = client;
+        mRequest = request;
+        mPolicy = policy;
+        mLimiter = limiter;
+    }
+
+    /**
+     * Execute a request, hedging it as the policy says
+     *
+     * @param policy  Hedging policy, null to never hedge
+     * @param limiter Limiter the hedge takes a slot of, may be null
+     * @return The first response
+     * @throws IOException          When every call failed
+     * @throws InterruptedException When interrupted waiting for a response
+     */
+    public static Response execute(OkHttpClient client, Request request, HedgePolicy policy, ConcurrencyLimiter limiter) throws IOException, InterruptedException {
+        if (policy == null || !METHOD_GET.equals(request.method())) {
+            return client.newCall(request).execute();
+        }
+        return new HedgedCall(client, request, policy, limiter).execute();
+    }
+
+    private Response execute() throws IOException, InterruptedException {
+        long start = SystemClock.elapsedRealtime();
+        Call primary = enqueue();
+        if (primary == null) {
+            // every call thread is busy, no hedging
+            return mClient.newCall(mRequest).execute();
+        }
+        mPolicy.onFetch();
+        Call hedge = null;
+        ConcurrencyLimiter.Permit hedgePermit = null;
+        long hedgeStart = 0;
+        Outcome outcome = null;
+        try {
+            long delay = mPolicy.getDelayMillis();
+            if (delay < 0) {
+                outcome = mOutcomes.take();
+            } else {
+                outcome = mOutcomes.poll(delay, TimeUnit.MILLISECONDS);
+                if (outcome == null) {
+                    hedgePermit = mLimiter == null ? null : mLimiter.tryAcquire(mRequest.url().getAuthority());
+                    if (mLimiter != null && hedgePermit == null) {
+                        Log.v(TAG, "Not hedging " + mRequest.urlString() + ", its host is at its limit");
+                    } else if (mPolicy.tryHedge()) {
+                        Log.v(TAG, "Hedging " + mRequest.urlString() + " after " + delay + "ms");
+                        hedgeStart = SystemClock.elapsedRealtime();
+                        hedge = enqueue();
+                    }
+                }
+                if (outcome == null) {
+                    outcome = mOutcomes.take();
+                }
+            }
+            if (outcome.response == null && hedge != null) {
+                // the other call may still answer
+                Outcome other = mOutcomes.take();
+                if (other.response != null) {
+                    outcome = other;
+                }
+            }
+            if (outcome.response == null) {
+                throw outcome.failure;
+            }
+            long sent = outcome.call == hedge ? hedgeStart : start;
+            mPolicy.getLatencies().record(SystemClock.elapsedRealtime() - sent);
+            return outcome.response;
+        } finally {
+            finish(outcome, primary, hedge);
+            if (hedgePermit != null) {
+                // only the winner is left in flight, under the caller's own permit
+                hedgePermit.release();
+            }
+        }
+    }
+
+    /**
+     * @return The call, or null when every call thread is busy
+     */
+    private Call enqueue() {
+        final Call call = mClient.newCall(mRequest);
+        try {
+            CALL_EXECUTOR.execute(newCallRunnable(call));
+        } catch (RejectedExecutionException ex) {
+            return null;
+        }
+        return call;
+    }
+
+    private Runnable newCallRunnable(final Call call) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                Response response;
+                try {
+                    response = call.execute();
+                } catch (IOException ex) {
+                    mOutcomes.add(new Outcome(call, null, ex));
+                    return;
+                }
+                synchronized (HedgedCall.this) {
+                    if (!mDone) {
+                        mOutcomes.add(new Outcome(call, response, null));
+                        return;
+                    }
+                }
+                Hyper.closeQuietly(response.body());
+            }
+        };
+    }
+
+    /**
+     * Cancel the calls that lost and close their responses
+     *
+     * @param winner Outcome that is returned, null when there is none
+     */
+    private void finish(Outcome winner, Call primary, Call hedge) {
+        synchronized (this) {
+            mDone = true;
+        }
+        Call won = winner == null || winner.response == null ? null : winner.call;
+        for (Call call : new Call[]{primary, hedge}) {
+            if (call != null && call != won) {
+                call.cancel();
+            }
+        }
+        Outcome outcome;
+        while ((outcome = mOutcomes.poll()) != null) {
+            if (outcome.response != null) {
+                Hyper.closeQuietly(outcome.response.body());
+            }
+        }
+    }
+
+    /**
+     * Names call threads and keeps them from holding up the process
+     */
+    private static class CallThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "hyper-hedge-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static class Outcome {
+        final Call call;
+        final Response response;
+        final IOException failure;
+
+        Outcome(Call call, Response response, IOException failure) {
+            this.call = call;
+            this.response = response;
+            this.failure = failure;
+        }
+    }
+}
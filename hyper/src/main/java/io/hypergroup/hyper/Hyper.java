@@ -3,23 +3,43 @@ package io.hypergroup.hyper;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.squareup.okhttp.MediaType;
 import com.squareup.okhttp.OkHttpClient;
 import com.squareup.okhttp.Request;
 import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
 
+import org.reactivestreams.Publisher;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
+import bolts.Continuation;
 import bolts.Task;
 import io.hypergroup.hyper.exception.DataParseException;
+import io.hypergroup.hyper.exception.DeadlineExceededException;
+import io.hypergroup.hyper.exception.FetchException;
 import io.hypergroup.hyper.exception.IndexErrorException;
 import io.hypergroup.hyper.exception.InvalidCollectionException;
 import io.hypergroup.hyper.exception.MissingPropertyException;
 import io.hypergroup.hyper.exception.NoHrefException;
+import io.hypergroup.hyper.exception.PendingFetchException;
 import io.hypergroup.hyper.exception.WrongDataTypeException;
+import io.hypergroup.hyper.store.ByteBufferInputStream;
+import io.hypergroup.hyper.store.ResponseStore;
+import io.hypergroup.hyper.store.StoredResponse;
 
 /**
  * Hyper node.
@@ -41,23 +61,78 @@ public abstract class Hyper {
      */
     private static final String KEY_PATH_ROOT = "root";
 
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int HTTP_CLIENT_TIMEOUT = 408;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
     /**
-     * Href of this object. Used for fetching
+     * Size of the buffer used to read bodies
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Href of this object. Used for fetching, resolved lazily
      */
     protected URL mHref;
 
+    /**
+     * Whether or not mHref has been resolved
+     */
+    private volatile boolean mHrefResolved;
+
     /**
      * Whether or not data has been fetched
      */
     private boolean mFetched = false;
 
+    /**
+     * Whether or not only the keys FieldHints asked for were fetched
+     */
+    private volatile boolean mPartial;
+
+    /**
+     * Whether or not the request being built asks for some keys only
+     */
+    private volatile boolean mFieldsRequested;
+
+    /**
+     * ETag of the whole response the data was fetched from, the base for deltas, null if unknown
+     */
+    private volatile String mETag;
+
+    /**
+     * Wall clock time the data was fetched at, 0 if it never was
+     */
+    private long mFetchedAt;
+
+    /**
+     * Decoded size in bytes of the fetched response body, 0 if it never was fetched
+     */
+    private long mFetchedBytes;
+
     /**
      * Internal underlying data
      */
     private Data mData;
 
     /**
-     * Key path of this Hyper node
+     * Parent of this Hyper node, or null if it is the root node
+     */
+    private Hyper mParent;
+
+    /**
+     * Key of this Hyper node within its parent, or the whole key path of a root node
+     */
+    private String mSegment;
+
+    /**
+     * Key path of this Hyper node, built from the parent on demand
      */
     private String mKeyPath;
 
@@ -66,6 +141,11 @@ public abstract class Hyper {
      */
     private HyperContext mContext;
 
+    /**
+     * Fetch started for a thread that may not fetch itself
+     */
+    private Task<Hyper> mBackgroundFetch;
+
     /**
      * Construct a Hyper node for a given url, un-fetched.
      *
@@ -73,31 +153,37 @@ public abstract class Hyper {
      * @param context Context of this hyper node
      */
     public Hyper(String keyPath, URL href, HyperContext context) {
+        mSegment = keyPath;
         mKeyPath = keyPath;
         mHref = href;
+        mHrefResolved = true;
         mContext = context;
     }
 
     /**
      * Construct a Hyper node with a given Data package.
+     * <br/>
+     * The href is not resolved until it is asked for, so embedded data that is never fetched
+     * never costs a URL parse.
      *
+     * @param parent  Node this node was retrieved from, its href is the base for this node's href
+     * @param segment Key of this node within its parent
      * @param data    Initial data. More can be fetched if the data provided has an href
      * @param context Context of this hyper node
      */
-    public Hyper(String keyPath, URL relativeHref, Data data, HyperContext context) {
-        mKeyPath = keyPath;
-        try {
-            mHref = data.getHref(relativeHref);
-        } catch (NoHrefException e) {
-            mHref = null;
-        }
-        setData(data);
+    public Hyper(Hyper parent, String segment, Data data, HyperContext context) {
+        mParent = parent;
+        mSegment = segment;
+        mData = data;
         mContext = context;
     }
 
     /**
      * Get a keyPath property in the form of a dot-notation.
      * <br/>
+     * On a thread the context's FetchPolicy keeps cache-only, a value that needs the network
+     * throws a PendingFetchException while it is retrieved in the background.
+     * <br/>
      * ex.
      * <pre>
      *     current_user.first_name
@@ -114,16 +200,54 @@ public abstract class Hyper {
      * @return The fetched type
      * @throws InterruptedException       Network fetch was interrupted
      * @throws NoHrefException            When fetching deep-links, if there is a missing link between nodes, this error will occur
+     * @throws FetchException             When fetching failed, or was not attempted because its host is failing
      * @throws IndexErrorException        When fetching a specific index from a collection but that index does not exist
      * @throws MissingPropertyException   When fetching a property that doesn't exist
      * @throws InvalidCollectionException When fetching from a collection that doesn't exist or in an unexpected format
      * @throws WrongDataTypeException     When fetching an object that doesn't have the same class as the specified type T
+     * @throws PendingFetchException      When the value needs the network on a cache-only thread
      * @see #getAsync(String)
+     * @see #getPending(String)
+     */
+    public <T> T get(final String keyPath) throws InterruptedException, NoHrefException, IndexErrorException, MissingPropertyException, InvalidCollectionException, WrongDataTypeException, FetchException {
+        Object value = getOrPending(keyPath);
+        if (value instanceof Pending) {
+            throw new PendingFetchException(getConcatenatedKeyPath(keyPath) + " is being fetched", ((Pending) value).getTask());
+        }
+        return (T) value;
+    }
+
+    /**
+     * Retrieve the value at a key path without making a cache-only thread wait for the network.
+     * <br/>
+     * The Pending's task is already complete when the value is in memory or stored, otherwise it
+     * completes once the value is retrieved in the background.
+     * <pre>
+     *     Pending name = node.getPending("name");
+     *     name.getTask().continueWith(..., Task.UI_THREAD_EXECUTOR);
+     * </pre>
+     *
+     * @param keyPath Key path to retrieve
+     * @return The value, or its retrieval
+     * @see #get(String)
+     */
+    public Pending getPending(String keyPath) throws InterruptedException, NoHrefException, IndexErrorException, MissingPropertyException, InvalidCollectionException, WrongDataTypeException, FetchException {
+        Object value = getOrPending(keyPath);
+        if (value instanceof Pending) {
+            return (Pending) value;
+        }
+        return new Pending(this, keyPath, Task.forResult(value));
+    }
+
+    /**
+     * Retrieve the value at a key path, or a Pending for it when it needs the network on a
+     * cache-only thread
      */
-    public <T> T get(final String keyPath) throws InterruptedException, NoHrefException, IndexErrorException, MissingPropertyException, InvalidCollectionException, WrongDataTypeException {
+    private Object getOrPending(String keyPath) throws InterruptedException, NoHrefException, IndexErrorException, MissingPropertyException, InvalidCollectionException, WrongDataTypeException, FetchException {
 
         // ## Parse Key
         final KeyPath parsed = new KeyPath(keyPath);
+        recordRead(parsed.nodeKey);
 
         // ## If we already have it
         if (!shouldFetchForKey(parsed.nodeKey)) {
@@ -132,12 +256,180 @@ public abstract class Hyper {
 
         // ## Fetch
         if (shouldFetchForKey(parsed.nodeKey)) {
-            performNetworkFetch();
+            if (isNetworkAllowed()) {
+                performNetworkFetch();
+            } else if (!fetchFromStore()) {
+                // nothing in memory or stored, continue in the background
+                return createPending(keyPath);
+            }
         }
 
         return getProperty(parsed);
     }
 
+    /**
+     * Retrieve the value at a key path, giving up once a deadline passes. Every fetch along the
+     * key path shares the deadline, with its timeouts shrunk to the time remaining.
+     *
+     * @param keyPath  Key path to retrieve
+     * @param deadline Deadline for the whole key path
+     * @param <T>      Expected type to retrieve
+     * @return The fetched type
+     * @throws DeadlineExceededException When a fetch could not finish in time, naming that hop
+     * @see #get(String)
+     */
+    public <T> T get(String keyPath, Deadline deadline) throws InterruptedException, NoHrefException, IndexErrorException, MissingPropertyException, InvalidCollectionException, WrongDataTypeException, FetchException {
+        // an outer deadline that is sooner still applies
+        Deadline previous = Deadline.set(deadline.min(Deadline.current()));
+        try {
+            return get(keyPath);
+        } finally {
+            Deadline.set(previous);
+        }
+    }
+
+    /**
+     * Get a numeric property at a key path without boxing it.
+     * <br/>
+     * A numeric key reads from a collection of numbers. On a thread the context's FetchPolicy keeps
+     * cache-only, a value that needs the network throws a PendingFetchException instead.
+     *
+     * @param keyPath Key path to retrieve
+     * @return The property as an int
+     * @throws WrongDataTypeException When the property is not a number
+     * @see #get(String)
+     */
+    public int getInt(String keyPath) throws InterruptedException, NoHrefException, IndexErrorException, MissingPropertyException, InvalidCollectionException, WrongDataTypeException, FetchException {
+        KeyPath parsed = new KeyPath(keyPath);
+        if (parsed.isMultiKey()) {
+            return getNode(parsed.nodeKey).getInt(parsed.nextKey);
+        }
+        fetchForKey(parsed.nodeKey);
+        Integer index = asIndex(parsed.nodeKey);
+        if (index != null) {
+            return getNumberFromCollection(index).getInt(index);
+        }
+        return getData().getInt(parsed.nodeKey);
+    }
+
+    /**
+     * @see #getInt(String)
+     */
+    public long getLong(String keyPath) throws InterruptedException, NoHrefException, IndexErrorException, MissingPropertyException, InvalidCollectionException, WrongDataTypeException, FetchException {
+        KeyPath parsed = new KeyPath(keyPath);
+        if (parsed.isMultiKey()) {
+            return getNode(parsed.nodeKey).getLong(parsed.nextKey);
+        }
+        fetchForKey(parsed.nodeKey);
+        Integer index = asIndex(parsed.nodeKey);
+        if (index != null) {
+            return getNumberFromCollection(index).getLong(index);
+        }
+        return getData().getLong(parsed.nodeKey);
+    }
+
+    /**
+     * @see #getInt(String)
+     */
+    public double getDouble(String keyPath) throws InterruptedException, NoHrefException, IndexErrorException, MissingPropertyException, InvalidCollectionException, WrongDataTypeException, FetchException {
+        KeyPath parsed = new KeyPath(keyPath);
+        if (parsed.isMultiKey()) {
+            return getNode(parsed.nodeKey).getDouble(parsed.nextKey);
+        }
+        fetchForKey(parsed.nodeKey);
+        Integer index = asIndex(parsed.nodeKey);
+        if (index != null) {
+            return getNumberFromCollection(index).getDouble(index);
+        }
+        return getData().getDouble(parsed.nodeKey);
+    }
+
+    /**
+     * Get a boolean property at a key path
+     *
+     * @param keyPath Key path to retrieve
+     * @return The property as a boolean
+     * @throws WrongDataTypeException When the property is not a boolean
+     * @see #get(String)
+     */
+    public boolean getBoolean(String keyPath) throws InterruptedException, NoHrefException, MissingPropertyException, InvalidCollectionException, WrongDataTypeException, FetchException {
+        KeyPath parsed = new KeyPath(keyPath);
+        if (parsed.isMultiKey()) {
+            return getNode(parsed.nodeKey).getBoolean(parsed.nextKey);
+        }
+        fetchForKey(parsed.nodeKey);
+        return getData().getBoolean(parsed.nodeKey);
+    }
+
+    /**
+     * Get an array of numbers at a key path, stored in a primitive array.
+     * <br/>
+     * <pre>
+     *     stats.getNumberArray("collection").getDouble(0)
+     *     stats.getNumberArray("samples").toLongArray()
+     * </pre>
+     *
+     * @param keyPath Key path to retrieve
+     * @return The numbers
+     * @throws WrongDataTypeException When the property is not an array of numbers
+     */
+    public NumberArray getNumberArray(String keyPath) throws InterruptedException, NoHrefException, MissingPropertyException, InvalidCollectionException, WrongDataTypeException, FetchException {
+        KeyPath parsed = new KeyPath(keyPath);
+        if (parsed.isMultiKey()) {
+            return getNode(parsed.nodeKey).getNumberArray(parsed.nextKey);
+        }
+        fetchForKey(parsed.nodeKey);
+        return getData().getNumberArray(parsed.nodeKey);
+    }
+
+    /**
+     * Retrieve the Hyper node at a key
+     *
+     * @throws PendingFetchException  When the node needs the network on a cache-only thread
+     * @throws WrongDataTypeException When the value is not a Hyper node
+     */
+    private Hyper getNode(String key) throws InterruptedException, NoHrefException, MissingPropertyException, InvalidCollectionException, WrongDataTypeException, FetchException {
+        Object value;
+        try {
+            value = get(key);
+        } catch (IndexErrorException ex) {
+            throw new MissingPropertyException("Index not found: " + key, ex);
+        }
+        if (!(value instanceof Hyper)) {
+            throw new WrongDataTypeException("Not a Hyper node: " + getConcatenatedKeyPath(key));
+        }
+        return (Hyper) value;
+    }
+
+    /**
+     * Fetch this node's data if a key is not available yet, like get does
+     *
+     * @throws PendingFetchException When that needs the network on a cache-only thread
+     */
+    private void fetchForKey(String key) throws InterruptedException, NoHrefException, PendingFetchException, FetchException {
+        recordRead(key);
+        if (!shouldFetchForKey(key)) {
+            return;
+        }
+        if (isNetworkAllowed()) {
+            performNetworkFetch();
+        } else if (!fetchFromStore()) {
+            throw new PendingFetchException(getConcatenatedKeyPath(key) + " is being fetched", fetchInBackground());
+        }
+    }
+
+    private NumberArray getNumberFromCollection(int index) throws IndexErrorException, InvalidCollectionException, WrongDataTypeException {
+        NumberArray numbers;
+        try {
+            numbers = getData().getNumberArray(DataSnapshot.KEY_COLLECTION);
+        } catch (MissingPropertyException ex) {
+            throw new InvalidCollectionException("Collection not found", ex);
+        }
+        if (index < 0 || index >= numbers.size()) {
+            throw new IndexErrorException("Invalid index");
+        }
+        return numbers;
+    }
 
     /**
      * Retrieve each item in this Hyper node's collection
@@ -152,17 +444,16 @@ public abstract class Hyper {
      * @return The list of objects from the given collection in the given format
      * @throws InterruptedException       Network fetch was interrupted
      * @throws NoHrefException            When fetching deep-links, if there is a missing link between nodes, this error will occur
+     * @throws FetchException             When fetching failed, or was not attempted because its host is failing
      * @throws InvalidCollectionException When fetching from a collection that doesn't exist or in an unexpected format
      * @throws WrongDataTypeException     When fetching an object that doesn't have the same class as the specified type T
      * @see #eachAsync(boolean)
      */
-    public <T> List<T> each() throws InterruptedException, NoHrefException, InvalidCollectionException, WrongDataTypeException {
+    public <T> List<T> each() throws InterruptedException, NoHrefException, InvalidCollectionException, WrongDataTypeException, FetchException {
         // ## Fetch
 
         // Ensure that our results are fetched
-        if (!isFetched()) {
-            performNetworkFetch();
-        }
+        fetchCollection(null);
 
         // ## Use our collection
         List<Object> collection = getCollection();
@@ -171,7 +462,6 @@ public abstract class Hyper {
 
         int N = collection.size();
         // list to save entries to
-
         final List<T> items = new ArrayList<T>(N);
         for (int index = 0; index < N; index++) {
 
@@ -202,6 +492,58 @@ public abstract class Hyper {
         return items;
     }
 
+    /**
+     * Hand each item in this object's collection to a callback. When the collection still has to
+     * be fetched, items are handed over while the response is being read, so the first items
+     * arrive long before a large page has finished downloading.
+     * <br/>
+     * Items are coerced the same way as by each(), and the callback runs on the calling thread.
+     *
+     * @param callback Receives each item in order
+     * @param <T>      Type of items to expect
+     * @throws InterruptedException       Network fetch was interrupted
+     * @throws NoHrefException            When there is no href to fetch the collection from
+     * @throws FetchException             When fetching failed, or was not attempted because its host is failing
+     * @throws InvalidCollectionException When fetching from a collection that doesn't exist or in an unexpected format
+     * @throws WrongDataTypeException     When an item doesn't have the type expected by the callback
+     * @see #each()
+     */
+    public <T> void each(ItemCallback<T> callback) throws InterruptedException, NoHrefException, InvalidCollectionException, WrongDataTypeException, FetchException {
+        CoercingCallback<T> items = new CoercingCallback<T>(callback);
+
+        // ## Fetch, streaming
+
+        fetchCollection(items);
+        items.rethrow();
+
+        // ## Items that were not streamed, for example stored or already fetched
+
+        List<Object> collection = getCollection();
+        for (int index = items.getDelivered(); index < collection.size(); index++) {
+            items.onItem(index, collection.get(index));
+            items.rethrow();
+        }
+    }
+
+    /**
+     * Ensure that the collection is fetched, or throw PendingFetchException when the fetch policy
+     * keeps this thread off the network
+     *
+     * @param items Receives raw items as they are parsed, may be null
+     */
+    private void fetchCollection(ItemCallback<Object> items) throws InterruptedException, NoHrefException, PendingFetchException, FetchException {
+        if (!isFetched()) {
+            if (isNetworkAllowed()) {
+                performNetworkFetch(items);
+            } else if (!fetchFromStore()) {
+                Data data = getData();
+                if (data == null || !data.hasProperty(DataSnapshot.KEY_COLLECTION)) {
+                    throw new PendingFetchException("Collection of " + getFriendlyKeyPath() + " is being fetched", fetchInBackground());
+                }
+            }
+        }
+    }
+
     /**
      * Retrieve an individual property, recursively acquiring the property as needed
      *
@@ -215,9 +557,15 @@ public abstract class Hyper {
      * @throws InvalidCollectionException When fetching from a collection that doesn't exist or in an unexpected format
      * @throws WrongDataTypeException     When fetching an object that doesn't have the same class as the specified type T
      */
-    protected <T> T getProperty(KeyPath keyPath) throws NoHrefException, InterruptedException, WrongDataTypeException, MissingPropertyException, IndexErrorException, InvalidCollectionException {
-        if (keyPath.isMultiKey()) {
-            return ((Hyper) get(keyPath.nodeKey)).get(keyPath.nextKey);
+    protected <T> T getProperty(KeyPath keyPath) throws NoHrefException, InterruptedException, WrongDataTypeException, MissingPropertyException, IndexErrorException, InvalidCollectionException, FetchException {
+        if (keyPath.filter != null) {
+            return (T) getFiltered(keyPath);
+        } else if (keyPath.isMultiKey()) {
+            Object node = getOrPending(keyPath.nodeKey);
+            if (node instanceof Pending) {
+                return (T) ((Pending) node).then(keyPath.nextKey);
+            }
+            return (T) ((Hyper) node).getOrPending(keyPath.nextKey);
         } else {
             // if we are dealing a numeric nodeKey
             Integer index = asIndex(keyPath.nodeKey);
@@ -231,6 +579,63 @@ public abstract class Hyper {
         }
     }
 
+    /**
+     * Retrieve the items of a collection that pass a filter, such as users[first_name=Matt], or
+     * the values at the rest of the key path of each of them, such as users[first_name=Matt].email
+     */
+    private Object getFiltered(KeyPath keyPath) throws NoHrefException, InterruptedException, WrongDataTypeException, MissingPropertyException, IndexErrorException, InvalidCollectionException, FetchException {
+        // ## Collection node
+        Hyper collection;
+        if (TextUtils.isEmpty(keyPath.nodeKey)) {
+            collection = this;
+        } else {
+            Object node = getOrPending(keyPath.nodeKey);
+            if (node instanceof Pending) {
+                return ((Pending) node).then(keyPath.filter + (keyPath.isMultiKey() ? "." + keyPath.nextKey : ""));
+            } else if (!(node instanceof Hyper)) {
+                throw new WrongDataTypeException("Expected a collection node at " + keyPath.nodeKey);
+            }
+            collection = (Hyper) node;
+        }
+
+        // ## Matches
+        List<Hyper> matches = collection.filter(keyPath.filter);
+        List<Object> results = new ArrayList<Object>(matches.size());
+        for (Hyper match : matches) {
+            results.add(keyPath.isMultiKey() ? match.getOrPending(keyPath.nextKey) : match);
+        }
+        return results;
+    }
+
+    /**
+     * Find the items of this collection and of every page linked from it as "next" that pass a
+     * filter, comparing the values embedded in the pages, from an index when there is one
+     */
+    private List<Hyper> filter(KeyFilter filter) throws NoHrefException, InterruptedException, WrongDataTypeException, InvalidCollectionException, FetchException {
+        fetchCollection(null);
+
+        // ## Indexed
+        CollectionIndex index = getContext().getIndexes().find(getIdentity(), filter);
+        if (index != null) {
+            return index.lookup(this, filter);
+        }
+
+        // ## Scan, page by page
+        List<Hyper> matches = new ArrayList<Hyper>();
+        Set<String> scanned = new HashSet<String>();
+        Hyper page = this;
+        while (page != null && scanned.add(page.getIdentity())) {
+            for (Object item : page.each()) {
+                if (item instanceof Hyper && filter.matches(CollectionIndex.getEmbedded(item, filter.keyPath))) {
+                    matches.add((Hyper) item);
+                }
+            }
+            Object next = CollectionIndex.getEmbedded(page, CollectionPublisher.KEY_NEXT);
+            page = next instanceof Hyper && ((Hyper) next).getHref() != null ? (Hyper) next : null;
+        }
+        return matches;
+    }
+
     /**
      * Retrieve a property directly from underlying data
      *
@@ -299,14 +704,26 @@ public abstract class Hyper {
      * @throws InterruptedException Network fetch was interrupted
      * @throws NoHrefException      When fetching deep-links, if there is a missing link between nodes, this error will occur
      */
-    protected Data performNetworkFetch() throws NoHrefException, InterruptedException {
+    protected Data performNetworkFetch() throws NoHrefException, InterruptedException, FetchException {
+        return performNetworkFetch(null);
+    }
+
+    /**
+     * Perform a network fetch, handing collection items to a callback as they are parsed
+     *
+     * @param items Receives raw collection items, may be null
+     * @return Parsed data
+     * @throws NoHrefException      When there is no href to fetch
+     * @throws InterruptedException Network fetch was interrupted
+     */
+    protected Data performNetworkFetch(ItemCallback<Object> items) throws NoHrefException, InterruptedException, FetchException {
         URL href = getHref();
         if (href == null) {
             // no href to fetch for, return error state
             throw new NoHrefException("Attempting to fetch data without an \"href\"");
         } else {
             // otherwise do the actual fetch in a task
-            return fetchDataFromNetwork();
+            return fetchDataFromNetwork(items);
         }
     }
 
@@ -317,47 +734,691 @@ public abstract class Hyper {
      *
      * @return Parsed data
      * @throws InterruptedException Network fetch was interrupted
+     * @throws FetchException       When the fetch failed and nothing is stored
      */
-    protected Data fetchDataFromNetwork() throws InterruptedException {
-        // get the client
-        OkHttpClient client = getContext().getHttpClient();
+    protected Data fetchDataFromNetwork() throws InterruptedException, FetchException {
+        return fetchDataFromNetwork(null);
+    }
+
+    /**
+     * Fetch and parse data from the internet, handing collection items to a callback while the
+     * response body is still being read.
+     * <br/>
+     * Retryable failures are tried again as the context's RetryPolicy says. A failure is
+     * remembered for a while, and fetches to a host whose circuit is open fail without a request.
+     * Either way a stored response is used when there is one.
+     *
+     * @param items Receives raw collection items as they are parsed, may be null
+     * @return Parsed data
+     * @throws InterruptedException Network fetch was interrupted
+     * @throws FetchException       When the fetch failed and nothing is stored
+     */
+    protected Data fetchDataFromNetwork(ItemCallback<Object> items) throws InterruptedException, FetchException {
+        HyperContext context = getContext();
+        HyperMetrics metrics = context.getMetrics();
         // and our href
         URL href = getHref();
+
+        // ## Stored
+
+        ResponseStore store = context.getResponseStore();
+        StoredResponse stored = store == null ? null : store.get(href.toString());
+        if (stored != null && stored.getAge() < context.getResponseStoreMaxAge()) {
+            // fresh enough, skip the network entirely
+            Log.v(TAG, "=== " + href + " (stored)");
+            return useStoredOrCurrent(stored);
+        }
+
+        // ## Failed recently
+
+        FailureCache failures = context.getFailureCache();
+        FetchException failure = failures == null ? null : failures.get(href.toString());
+        if (failure != null) {
+            metrics.onNegativeCacheHit();
+            if (stored != null) {
+                return useStoredOrCurrent(stored);
+            }
+            throw failure;
+        }
+
+        // ## Hints
+
+        ExpandHints hints = context.getExpandHints();
+        if (hints != null && getParent() != null) {
+            // next time, the parent may bring this node along
+            hints.onFollow(getParent().getFriendlyKeyPath(), getSegment());
+        }
+
+        // ## Attempts
+
+        RetryPolicy policy = context.getRetryPolicy() == null ? RetryPolicy.NONE : context.getRetryPolicy();
+        CircuitBreaker breaker = context.getCircuitBreaker();
+        ConcurrencyLimiter limiter = context.getConcurrencyLimiter();
+        Deadline deadline = Deadline.current();
+        String host = href.getAuthority();
+        // batches can not revalidate and may wait out their window, so not for those
+        BatchTransport batch = context.getBatchTransport();
+        if (batch != null && (stored != null || deadline != null || getHeldETag(items) != null || !batch.accepts(href))) {
+            batch = null;
+        }
+        for (int attempt = 0; ; attempt++) {
+            if (deadline != null && deadline.isExpired()) {
+                failure = new DeadlineExceededException(getFriendlyKeyPath(), href, failure);
+                break;
+            }
+            if (breaker != null && !breaker.allowRequest(host)) {
+                metrics.onCircuitRejected();
+                failure = new FetchException("Circuit open for " + host, href, 0, true, null);
+                break;
+            }
+            ConcurrencyLimiter.Permit permit = null;
+            try {
+                Data data = batch != null ? fetchBatched(batch, href, store, items) : null;
+                if (data == null) {
+                    // nothing joined the batch, not worth waiting for one again
+                    batch = null;
+                    if (limiter != null) {
+                        permit = limiter.acquire(host, deadline);
+                        if (permit == null) {
+                            failure = new DeadlineExceededException(getFriendlyKeyPath(), href, failure);
+                            break;
+                        }
+                    }
+                    data = fetchResponse(href, store, stored, items, permit, deadline);
+                }
+                if (breaker != null) {
+                    breaker.onSuccess(host);
+                }
+                return data;
+            } catch (FetchException ex) {
+                failure = ex;
+            } finally {
+                if (permit != null) {
+                    permit.release();
+                }
+            }
+            if (deadline != null && deadline.isExpired()) {
+                // most likely a timeout shrunk to the deadline, not the host's fault
+                failure = new DeadlineExceededException(getFriendlyKeyPath(), href, failure);
+                break;
+            }
+            if (breaker != null) {
+                // a host that answers is up, even when the answer is an error
+                if (failure.isRetryable()) {
+                    breaker.onFailure(host);
+                } else {
+                    breaker.onSuccess(host);
+                }
+            }
+            if (!policy.shouldRetry(failure, attempt)) {
+                break;
+            }
+            long delay = policy.getDelayMillis(failure, attempt);
+            if (deadline != null && delay >= deadline.getRemainingMillis()) {
+                failure = new DeadlineExceededException(getFriendlyKeyPath(), href, failure);
+                break;
+            }
+            Log.w(TAG, "Retrying " + href + " in " + delay + "ms", failure);
+            metrics.onRetry();
+            Thread.sleep(delay);
+        }
+
+        // ## Failed
+
+        metrics.onFailure();
+        if (stored != null) {
+            // offline, what we have stored is better than nothing
+            Log.w(TAG, "Using stored response for " + href, failure);
+            return useStoredOrCurrent(stored);
+        }
+        Log.e(TAG, "Error fetching data", failure);
+        if (failures != null && !(failure instanceof DeadlineExceededException)) {
+            // running out of time says nothing about the href
+            failures.put(href.toString(), failure);
+        }
+        throw failure;
+    }
+
+    /**
+     * Make a single request and parse its response
+     *
+     * @param href   Href to fetch
+     * @param store  Store for the response, may be null
+     * @param stored Stored response to revalidate, may be null
+     * @param items  Receives raw collection items as they are parsed, may be null
+     * @param permit   Concurrency slot of the fetch, told about the response and released before items are streamed, may be null
+     * @param deadline Deadline the timeouts shrink to, may be null
+     * @return Parsed data
+     * @throws InterruptedException When interrupted waiting for the response
+     * @throws FetchException       When there is no response, an unsuccessful one, or one that does not parse
+     */
+    private Data fetchResponse(URL href, ResponseStore store, StoredResponse stored, ItemCallback<Object> items, ConcurrencyLimiter.Permit permit, Deadline deadline) throws InterruptedException, FetchException {
+        // get the client
+        OkHttpClient client = getContext().getHttpClient();
+        if (deadline != null) {
+            client = withTimeout(client, deadline.getRemainingMillis());
+        }
+
+        BlockingFetchDetector detector = getContext().getBlockingFetchDetector();
+        if (detector != null) {
+            detector.onFetch(href);
+        }
+
         // build a request to the href
+        boolean fallback = isFetched() && mPartial;
+        String heldETag = getHeldETag(items);
         Request request = buildRequest(href);
+        boolean partial = mFieldsRequested;
+        mFieldsRequested = false;
+        if (partial) {
+            // a partial body is no good for other readers
+            store = null;
+            // nor to revalidate a whole one
+            heldETag = null;
+        } else if (fallback) {
+            getContext().getMetrics().onFieldsFallback();
+        }
+        DeltaUpdates deltas = getContext().getDeltaUpdates();
+        String acceptDelta = heldETag == null || deltas == null ? null : deltas.getAcceptHeader(this);
+        Request.Builder builder = request.newBuilder();
+        // negotiate only the encodings we can decode ourselves
+        if (request.header(ContentEncoding.HEADER_ACCEPT_ENCODING) == null) {
+            builder.header(ContentEncoding.HEADER_ACCEPT_ENCODING, ContentEncoding.ACCEPT_ENCODING);
+        }
+        if (heldETag != null) {
+            // revalidate the data we hold, and ask for the changes since if we can apply them
+            if (acceptDelta != null) {
+                builder.header(DeltaUpdates.HEADER_A_IM, acceptDelta);
+            }
+            builder.header(HEADER_IF_NONE_MATCH, heldETag);
+        } else {
+            // revalidate what we have stored
+            if (stored != null && stored.getETag() != null) {
+                builder.header(HEADER_IF_NONE_MATCH, stored.getETag());
+            }
+            if (stored != null && stored.getLastModified() != null) {
+                builder.header(HEADER_IF_MODIFIED_SINCE, stored.getLastModified());
+            }
+        }
+        request = builder.build();
         // using our pool, make a request, and then use the response to build Data
 
         // Get a response
+        long start = System.nanoTime();
         Response response;
         try {
             // make the request
             Log.v(TAG, ">>> " + href);
-            response = client.newCall(request).execute();
+            response = HedgedCall.execute(client, request, getContext().getHedgePolicy(), getContext().getConcurrencyLimiter());
             Log.v(TAG, "<<< " + href);
         } catch (IOException ex) {
-            // note error state
-            Log.e(TAG, "Error fetching data", ex);
-            return null;
-        } finally {
-            setFetched(true);
+            if (permit != null) {
+                permit.onDropped();
+            }
+            throw new FetchException("Error fetching " + href, href, 0, true, ex);
+        }
+        if (permit != null) {
+            permit.onResponse();
+            if (items != null) {
+                // the body is handed to the caller's callback as it arrives, which may well fetch
+                // from this host itself, so the slot is not held for it
+                permit.release();
+            }
+        }
+
+        if (heldETag != null && response.code() == HTTP_NOT_MODIFIED) {
+            // what we hold is current, as of now
+            closeQuietly(response.body());
+            long now = System.currentTimeMillis();
+            touchStoredResponse(store, href, now);
+            setFetchedAt(now);
+            return mData;
+        }
+        if (acceptDelta != null && response.code() == DeltaUpdates.HTTP_IM_USED) {
+            if (applyDeltaResponse(href, response, start)) {
+                return mData;
+            }
+            // start over with the whole body
+            mETag = null;
+            return fetchResponse(href, store, stored, items, null, deadline);
+        }
+        if (stored != null && response.code() == HTTP_NOT_MODIFIED) {
+            closeQuietly(response.body());
+            long now = System.currentTimeMillis();
+            touchStoredResponse(store, href, now);
+            Data data = useStoredResponse(stored);
+            setFetchedAt(now);
+            return data;
+        }
+        if (!response.isSuccessful()) {
+            closeQuietly(response.body());
+            int code = response.code();
+            boolean retryable = code >= 500 || code == HTTP_CLIENT_TIMEOUT || code == HTTP_TOO_MANY_REQUESTS;
+            if (retryable && permit != null) {
+                // the server is struggling, ease off
+                permit.onDropped();
+            }
+            throw new FetchException("HTTP " + code + " fetching " + href, href, code, retryable, parseRetryAfter(response), null);
         }
 
         // Parse a response
         try {
-            // parse data from that
-            Data data = parseResponse(response);
-            // save the data
+            ResponseBody body = response.body();
+            String encoding = response.header(ContentEncoding.HEADER_CONTENT_ENCODING);
+            // count bytes on both sides of the decoder
+            CountingInputStream compressed = new CountingInputStream(body.byteStream());
+            CountingInputStream decompressed = new CountingInputStream(ContentEncoding.decode(encoding, compressed));
+            try {
+                MediaType contentType = body.contentType();
+                Data data;
+                if (items != null) {
+                    // parse as the body arrives, keeping a copy for the store
+                    CopyingInputStream copy = store != null ? new CopyingInputStream(decompressed) : null;
+                    data = parseResponse(contentType, copy != null ? copy : decompressed, items);
+                    if (copy != null) {
+                        readBytes(copy);
+                        storeResponse(store, href, response.header(HEADER_ETAG), response.header(HEADER_LAST_MODIFIED), contentType, copy.toByteArray());
+                    }
+                } else if (store != null) {
+                    // keep the decoded body for the store
+                    byte[] bytes = readBytes(decompressed);
+                    storeResponse(store, href, response.header(HEADER_ETAG), response.header(HEADER_LAST_MODIFIED), contentType, bytes);
+                    data = parseResponse(contentType, new ByteArrayInputStream(bytes));
+                } else {
+                    // parse data from that
+                    data = parseResponse(contentType, decompressed);
+                }
+                // save the data
+                addData(data);
+                setFetched(true);
+                setFetchedAt(System.currentTimeMillis());
+                setFetchedBytes(decompressed.getCount());
+                mPartial = partial;
+                mETag = partial ? null : response.header(HEADER_ETAG);
+                FieldHints fieldHints = getContext().getFieldHints();
+                if (fieldHints != null) {
+                    long saved = fieldHints.onResponse(href, partial, decompressed.getCount());
+                    if (partial) {
+                        getContext().getMetrics().onPartialFetch(saved);
+                    }
+                }
+            } finally {
+                decompressed.close();
+                long duration = (System.nanoTime() - start) / 1000000L;
+                FetchStats stats = new FetchStats(href, response.code(), encoding, compressed.getCount(), decompressed.getCount(), duration);
+                Log.v(TAG, "=== " + stats);
+                getContext().getMetrics().onFetch(stats);
+            }
+        } catch (IOException ex) {
+            // the connection dropped mid-body
+            throw new FetchException("Error reading " + href, href, response.code(), true, ex);
+        } catch (Exception ex) {
+            // the body itself is broken, asking again will not help
+            throw new FetchException("Error parsing " + href, href, response.code(), false, ex);
+        }
+        return mData;
+    }
+
+    /**
+     * Fetch this node's href as part of a batch, and parse its part like any other response
+     *
+     * @param batch Transport collecting the batch
+     * @param href  Href to fetch
+     * @param store Store for the part, may be null
+     * @param items Receives raw collection items as they are parsed, may be null
+     * @return Parsed data, or null when nothing joined the batch and the href is to be fetched on its own
+     * @throws InterruptedException When interrupted waiting for the batch
+     * @throws FetchException       When the batch failed, or this href's part is an error or does not parse
+     */
+    private Data fetchBatched(BatchTransport batch, URL href, ResponseStore store, ItemCallback<Object> items) throws InterruptedException, FetchException {
+        long start = System.nanoTime();
+        // the same request as on its own, hints and all
+        Request request = buildRequest(href);
+        BatchTransport.Part part;
+        try {
+            Log.v(TAG, ">>> " + href + " (batched)");
+            part = batch.fetch(request);
+            Log.v(TAG, "<<< " + href + " (batched)");
+        } catch (IOException ex) {
+            throw new FetchException("Error fetching " + href + " in a batch", href, 0, true, ex);
+        }
+        if (part == null) {
+            return null;
+        }
+        boolean partial = mFieldsRequested;
+        mFieldsRequested = false;
+        if (partial) {
+            // a partial body is no good for other readers
+            store = null;
+        }
+        int code = part.code();
+        if (!part.isSuccessful()) {
+            boolean retryable = code >= 500 || code == HTTP_CLIENT_TIMEOUT || code == HTTP_TOO_MANY_REQUESTS;
+            throw new FetchException("HTTP " + code + " fetching " + href + " in a batch", href, code, retryable, null);
+        }
+        byte[] body = part.body();
+        try {
+            String type = part.header(BatchTransport.HEADER_CONTENT_TYPE);
+            MediaType contentType = type == null ? null : MediaType.parse(type);
+            Data data = items != null
+                ? parseResponse(contentType, new ByteArrayInputStream(body), items)
+                : parseResponse(contentType, new ByteArrayInputStream(body));
+            if (store != null) {
+                storeResponse(store, href, part.header(HEADER_ETAG), part.header(HEADER_LAST_MODIFIED), contentType, body);
+            }
             addData(data);
+            setFetched(true);
+            setFetchedAt(System.currentTimeMillis());
+            setFetchedBytes(body.length);
+            mPartial = partial;
+            mETag = partial ? null : part.header(HEADER_ETAG);
+            FieldHints fieldHints = getContext().getFieldHints();
+            if (fieldHints != null) {
+                long saved = fieldHints.onResponse(href, partial, body.length);
+                if (partial) {
+                    getContext().getMetrics().onPartialFetch(saved);
+                }
+            }
         } catch (Exception ex) {
-            // note error state
-            Log.e(TAG, "Error fetching data", ex);
+            throw new FetchException("Error parsing " + href, href, code, false, ex);
         } finally {
-            // mark fetched as having occurred whether or not the process succeeds
-            setFetched(true);
+            long duration = (System.nanoTime() - start) / 1000000L;
+            getContext().getMetrics().onFetch(new FetchStats(href, code, null, body.length, body.length, duration));
         }
         return mData;
     }
 
+    /**
+     * @param items Receives raw collection items as they are parsed, may be null
+     * @return ETag of the whole body this node holds, to revalidate and to ask for the changes
+     * since, or null to ask for the whole body
+     */
+    private String getHeldETag(ItemCallback<Object> items) {
+        // items are only streamed from whole bodies
+        if (items != null || !isFetched() || mPartial || mData == null) {
+            return null;
+        }
+        return mETag;
+    }
+
+    /**
+     * Apply a 226 IM Used response to the data this node holds. The stored response is left as it
+     * is, it is still a whole body with its own ETag.
+     *
+     * @return Whether or not the delta applied, the data is left as it was if not
+     * @throws FetchException When the connection dropped mid-delta
+     */
+    private boolean applyDeltaResponse(URL href, Response response, long start) throws FetchException {
+        ResponseBody body = response.body();
+        String encoding = response.header(ContentEncoding.HEADER_CONTENT_ENCODING);
+        CountingInputStream compressed = null;
+        byte[] delta;
+        try {
+            compressed = new CountingInputStream(body.byteStream());
+            delta = readBytes(ContentEncoding.decode(encoding, compressed));
+        } catch (IOException ex) {
+            throw new FetchException("Error reading " + href, href, response.code(), true, ex);
+        } finally {
+            closeQuietly(body);
+        }
+        long duration = (System.nanoTime() - start) / 1000000L;
+        FetchStats stats = new FetchStats(href, response.code(), encoding, compressed.getCount(), delta.length, duration);
+        Log.v(TAG, "=== " + stats + " (delta)");
+        HyperMetrics metrics = getContext().getMetrics();
+        metrics.onFetch(stats);
+
+        MediaType contentType = body.contentType();
+        String format = DeltaUpdates.getFormat(response.header(DeltaUpdates.HEADER_IM), contentType);
+        if (!patchData(format, contentType, delta, response.header(HEADER_ETAG))) {
+            return false;
+        }
+        metrics.onDeltaFetch(Math.max(0, getFetchedBytes() - delta.length));
+        return true;
+    }
+
+    /**
+     * Apply a delta to the data this node holds, telling change listeners
+     *
+     * @param eTag ETag of the data once patched, may be null
+     * @return Whether or not the delta applied, the data is left as it was if not
+     */
+    private boolean patchData(String format, MediaType contentType, byte[] delta, String eTag) {
+        ChangeNotifier notifier = getChangeNotifier();
+        if (notifier != null) {
+            notifier.beforeChange(this);
+        }
+        try {
+            applyDelta(mData, format, contentType, delta);
+            mETag = eTag;
+            setFetchedAt(System.currentTimeMillis());
+            return true;
+        } catch (DataParseException ex) {
+            Log.w(TAG, "Unable to apply " + format + " to " + getHref(), ex);
+            getContext().getMetrics().onDeltaFallback();
+            return false;
+        } finally {
+            if (notifier != null) {
+                notifier.afterChange(this);
+            }
+        }
+    }
+
+    /**
+     * @return A client sharing the connections of another, with no timeout longer than the given one
+     */
+    private static OkHttpClient withTimeout(OkHttpClient client, long millis) {
+        OkHttpClient clone = client.clone();
+        // at least a millisecond, 0 means no timeout at all
+        long timeout = Math.max(1, millis);
+        clone.setConnectTimeout(shrinkTimeout(client.getConnectTimeout(), timeout), TimeUnit.MILLISECONDS);
+        clone.setReadTimeout(shrinkTimeout(client.getReadTimeout(), timeout), TimeUnit.MILLISECONDS);
+        clone.setWriteTimeout(shrinkTimeout(client.getWriteTimeout(), timeout), TimeUnit.MILLISECONDS);
+        return clone;
+    }
+
+    private static long shrinkTimeout(long timeout, long max) {
+        return timeout == 0 ? max : Math.min(timeout, max);
+    }
+
+    /**
+     * @return Milliseconds from a Retry-After header in seconds, or -1
+     */
+    private static long parseRetryAfter(Response response) {
+        String retryAfter = response.header(HEADER_RETRY_AFTER);
+        if (retryAfter == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(retryAfter.trim()) * 1000;
+        } catch (NumberFormatException ex) {
+            // an HTTP date, let the policy decide
+            return -1;
+        }
+    }
+
+    /**
+     * Append a decoded response body to the store, failures only cost the next cold start
+     */
+    private void storeResponse(ResponseStore store, URL href, String eTag, String lastModified, MediaType contentType, byte[] body) {
+        try {
+            store.put(href.toString(),
+                eTag,
+                lastModified,
+                contentType == null ? null : contentType.toString(),
+                System.currentTimeMillis(),
+                body);
+        } catch (IOException ex) {
+            Log.w(TAG, "Unable to store response for " + href, ex);
+        }
+    }
+
+    /**
+     * Mark a stored response as fetched again, after the server answered that it is current
+     *
+     * @param store Store of the response, may be null
+     */
+    private void touchStoredResponse(ResponseStore store, URL href, long fetchedAt) {
+        if (store == null) {
+            return;
+        }
+        try {
+            store.touch(href.toString(), fetchedAt);
+        } catch (IOException ex) {
+            Log.w(TAG, "Unable to touch stored response for " + href, ex);
+        }
+    }
+
+    /**
+     * Use a stored response, unless this node already holds newer data, as it does after a delta
+     *
+     * @param stored Stored response
+     * @return This object's data
+     */
+    private Data useStoredOrCurrent(StoredResponse stored) {
+        if (isFetched() && getFetchedAt() > stored.getFetchedAt()) {
+            return mData;
+        }
+        return useStoredResponse(stored);
+    }
+
+    /**
+     * Use a stored response as this node's data. The body is not decoded until the data is read.
+     *
+     * @param stored Stored response
+     * @return This object's data
+     */
+    private Data useStoredResponse(final StoredResponse stored) {
+        final MediaType contentType = stored.getContentType() == null ? null : MediaType.parse(stored.getContentType());
+        addData(new LazyData(new LazyData.Decoder() {
+            @Override
+            public Data decode() throws DataParseException {
+                return parseStoredResponse(contentType, stored.getBody());
+            }
+        }, new LazyData.Listener() {
+            @Override
+            public void onDecodeFailed(DataParseException ex) {
+                // the stored body is no good, neither for this node nor for the next
+                ResponseStore store = getContext().getResponseStore();
+                URL href = getHref();
+                if (store != null && href != null) {
+                    try {
+                        store.remove(href.toString());
+                    } catch (IOException removeEx) {
+                        Log.w(TAG, "Unable to remove stored response for " + href, removeEx);
+                    }
+                }
+                Hyper.this.onDecodeFailed(ex);
+            }
+        }));
+        setFetched(true);
+        setFetchedAt(stored.getFetchedAt());
+        setFetchedBytes(stored.getBody().remaining());
+        mETag = stored.getETag();
+        return mData;
+    }
+
+    /**
+     * Parse a stored response body into Data. Override to decode straight from the buffer, which
+     * is usually memory-mapped.
+     *
+     * @param contentType Content-Type of the response, may be null
+     * @param body        Decoded response body
+     * @return The wrapped Data
+     * @throws DataParseException When parsing goes wrong
+     */
+    protected Data parseStoredResponse(MediaType contentType, ByteBuffer body) throws DataParseException {
+        try {
+            return parseResponse(contentType, new ByteBufferInputStream(body));
+        } catch (IOException ex) {
+            throw new DataParseException("Error reading stored response", ex);
+        }
+    }
+
+    /**
+     * @return Whether or not the context's FetchPolicy lets the current thread fetch implicitly
+     */
+    protected boolean isNetworkAllowed() {
+        FetchPolicy policy = getContext().getFetchPolicy();
+        return policy == null || policy.isNetworkAllowed();
+    }
+
+    /**
+     * Use a stored response without touching the network, refreshing it in the background if it is
+     * no longer fresh
+     *
+     * @return Whether or not a stored response was used
+     */
+    private boolean fetchFromStore() {
+        ResponseStore store = getContext().getResponseStore();
+        URL href = getHref();
+        if (store == null || href == null) {
+            return false;
+        }
+        StoredResponse stored = store.get(href.toString());
+        if (stored == null) {
+            return false;
+        }
+        useStoredResponse(stored);
+        if (stored.getAge() >= getContext().getResponseStoreMaxAge()) {
+            Task.call(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    fetchDataFromNetwork();
+                    return null;
+                }
+            }, getContext().getAsyncExecutor());
+        }
+        return true;
+    }
+
+    /**
+     * Fetch this node on the async executor, once for every caller
+     */
+    private synchronized Task<Hyper> fetchInBackground() {
+        if (mBackgroundFetch == null) {
+            mBackgroundFetch = fetchAsync();
+        }
+        return mBackgroundFetch;
+    }
+
+    /**
+     * @param keyPath Key path that needs this node fetched
+     * @return A Pending for the value at the key path, once this node is fetched
+     */
+    private Pending createPending(final String keyPath) {
+        Task<Object> task = fetchInBackground().continueWithTask(new Continuation<Hyper, Task<Object>>() {
+            @Override
+            public Task<Object> then(Task<Hyper> task) throws Exception {
+                if (task.isFaulted()) {
+                    return Task.forError(task.getError());
+                }
+                return getAsync(keyPath);
+            }
+        });
+        return new Pending(this, keyPath, task);
+    }
+
+    /**
+     * Read all bytes from a stream
+     */
+    protected static byte[] readBytes(InputStream stream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+    /* default */ static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ex) {
+            // nothing left to do with it
+        }
+    }
+
 
     /**
      * Whether or not we should do a live fetch to acquire a key
@@ -366,17 +1427,33 @@ public abstract class Hyper {
      */
 
     protected boolean shouldFetchForKey(String key) {
-        // if we've already fetched
-        if (isFetched()) {
+        // the key is about to be read, decode stored data now so that a body that does not decode
+        // is fetched again instead
+        Data data = getData();
+        if (data instanceof LazyData) {
+            ((LazyData) data).getDecoded();
+        }
+        // if we've already fetched everything
+        if (isFetched() && !mPartial) {
             // we do not need to fetch
             return false;
         }
         // if we have json that has the key
-        Data data = getData();
         if (data != null && data.hasProperty(key)) {
             // we don't need to fetch
             return false;
         }
+        // or an embedded collection that has the index
+        Integer index = asIndex(key);
+        if (index != null && data != null && data.hasProperty(DataSnapshot.KEY_COLLECTION)) {
+            try {
+                if (index >= 0 && index < getCollection().size()) {
+                    return false;
+                }
+            } catch (InvalidCollectionException ex) {
+                // fetch the real thing
+            }
+        }
         // we need to fetch in all other circumstances
         return true;
 
@@ -399,17 +1476,13 @@ public abstract class Hyper {
 
             // turn JSONObjects into Hyper nodes
             if (isRawData(value)) {
-                // get the full path
-                String fullPath = getConcatenatedKeyPath(relativePath);
                 // turn that raw data into something meaningful
                 Data data = createDataFromRawData(value);
                 // put that data in a meaningful hyper node
-                value = createHyperNodeFromData(fullPath, mHref, data);
+                value = createHyperNodeFromData(this, relativePath, data);
             } else if (value instanceof Data) {
-                // get the full path
-                String fullPath = getConcatenatedKeyPath(relativePath);
                 // put that data in a meaningful hyper node
-                value = createHyperNodeFromData(fullPath, mHref, (Data) value);
+                value = createHyperNodeFromData(this, relativePath, (Data) value);
             }
             // The TRUE VALUE of value, as the expected type
             T trueValue;
@@ -461,10 +1534,20 @@ public abstract class Hyper {
      * Merge the underlying data with new data
      */
     protected void addData(Data data) {
-        if (mData == null) {
-            mData = data;
-        } else {
-            mData.merge(data);
+        ChangeNotifier notifier = getChangeNotifier();
+        if (notifier != null) {
+            notifier.beforeChange(this);
+        }
+        try {
+            if (mData == null) {
+                mData = data;
+            } else {
+                mData.merge(data);
+            }
+        } finally {
+            if (notifier != null) {
+                notifier.afterChange(this);
+            }
         }
     }
 
@@ -472,16 +1555,219 @@ public abstract class Hyper {
      * Set the underlying data source for this Hyper node
      */
     protected void setData(Data data) {
+        ChangeNotifier notifier = getChangeNotifier();
+        if (notifier != null) {
+            notifier.beforeChange(this);
+        }
         mData = data;
+        if (notifier != null) {
+            notifier.afterChange(this);
+        }
+    }
+
+    private ChangeNotifier getChangeNotifier() {
+        HyperContext context = getContext();
+        return context == null ? null : context.getChangeNotifier();
+    }
+
+    /**
+     * Observe changes to the resource behind this Hyper node. Every node for the same resource
+     * shares its listeners, including nodes retrieved after the listener was added.
+     * <br/>
+     * Changes are batched and delivered as a single DataDiff on the context's async executor.
+     *
+     * @param listener Listener to add
+     */
+    public void addChangeListener(ChangeListener listener) {
+        getContext().getChangeNotifier().addListener(getIdentity(), listener);
+    }
+
+    /**
+     * Stop observing changes to the resource behind this Hyper node
+     *
+     * @param listener Listener to remove
+     */
+    public void removeChangeListener(ChangeListener listener) {
+        getContext().getChangeNotifier().removeListener(getIdentity(), listener);
+    }
+
+    /**
+     * Keep this node up to date with the changes its server pushes, over the context's LiveUpdates
+     * stream for its host. A change that carries the new data or a patch is applied in place, any
+     * other change fetches the node again with a conditional request.
+     *
+     * @return The subscription, cancel it to stop receiving changes
+     * @throws NoHrefException When there is no href to subscribe to
+     * @see HyperContext.Builder#setLiveUpdates(LiveUpdates)
+     */
+    public LiveUpdates.Subscription subscribe() throws NoHrefException {
+        LiveUpdates liveUpdates = getContext().getLiveUpdates();
+        if (liveUpdates == null) {
+            throw new IllegalStateException("No LiveUpdates in this node's context");
+        }
+        URL href = getHref();
+        if (href == null) {
+            throw new NoHrefException("Attempting to subscribe without an \"href\"");
+        }
+        return liveUpdates.subscribe(this, href);
+    }
+
+    /**
+     * Keep this node's data no older than maxAge while it is shown, with the context's
+     * RefreshScheduler. Every registration for the same resource shares one refresh, made with a
+     * conditional request and merged into each registered node.
+     *
+     * @param maxAge Oldest the data may get
+     * @param unit   Unit of maxAge
+     * @return The registration, pause it while the node is not shown and cancel it when done
+     * @throws NoHrefException When there is no href to refresh
+     */
+    public RefreshScheduler.Registration keepFresh(long maxAge, TimeUnit unit) throws NoHrefException {
+        URL href = getHref();
+        if (href == null) {
+            throw new NoHrefException("Attempting to keep fresh without an \"href\"");
+        }
+        return getContext().getRefreshScheduler().register(this, href.toString(), unit.toMillis(maxAge));
+    }
+
+    /**
+     * Merge in the data another node for the same resource fetched, as if this node had fetched it
+     *
+     * @param source Node that fetched the data
+     */
+    /* default */ void adoptData(Hyper source) {
+        Data data = source.getData();
+        if (data == null) {
+            return;
+        }
+        if (data != mData) {
+            addData(data);
+        }
+        setFetched(true);
+        setFetchedAt(source.getFetchedAt());
+        setFetchedBytes(source.getFetchedBytes());
+        mPartial = source.mPartial;
+        mETag = source.mETag;
+    }
+
+    /**
+     * @return ETag of the whole body this node's data was fetched from, or null
+     */
+    /* default */ String getETag() {
+        return mETag;
+    }
+
+    /**
+     * @return Whether this node's data was fetched with only some of its fields
+     */
+    /* default */ boolean isPartial() {
+        return mPartial;
+    }
+
+    /**
+     * Restore the validators of data this node already holds, for example from a snapshot
+     *
+     * @param eTag    ETag of the whole body, may be null
+     * @param partial Whether the data has only some of its fields
+     */
+    /* default */ void setETag(String eTag, boolean partial) {
+        mPartial = partial;
+        mETag = partial ? null : eTag;
+    }
+
+    /**
+     * Merge a body the server pushed into this node's data, the way a fetch does
+     *
+     * @param eTag ETag of the body, may be null
+     * @return Whether or not the body parsed
+     */
+    /* default */ boolean applyPushedData(MediaType contentType, byte[] body, String eTag) {
+        Data data;
+        try {
+            data = parseResponse(contentType, new ByteArrayInputStream(body));
+        } catch (Exception ex) {
+            Log.w(TAG, "Unable to parse pushed data for " + getHref(), ex);
+            return false;
+        }
+        addData(data);
+        setFetched(true);
+        setFetchedAt(System.currentTimeMillis());
+        setFetchedBytes(body.length);
+        mPartial = false;
+        mETag = eTag;
+        return true;
+    }
+
+    /**
+     * Apply a delta the server pushed to the data this node holds
+     *
+     * @param eTag ETag of the data once patched, may be null
+     * @return Whether or not the delta applied
+     */
+    /* default */ boolean applyPushedDelta(String format, MediaType contentType, byte[] delta, String eTag) {
+        if (!isFetched() || mPartial || mData == null || !canApplyDelta(format)) {
+            return false;
+        }
+        return patchData(format, contentType, delta, eTag);
+    }
+
+    /**
+     * Index the items of this collection by the value at a key path, so that filters such as
+     * [first_name=Matt] are answered without a scan. The index follows the pages linked from this
+     * collection as "next" as they are fetched, and is kept up to date as pages change.
+     *
+     * @param keyPath Key path of the indexed value, relative to each item
+     * @param type    HASH for equality filters, SORTED for equality and range filters
+     * @return The index, shared by every node for this collection
+     */
+    public CollectionIndex addIndex(String keyPath, CollectionIndex.Type type) {
+        return getContext().getIndexes().add(this, keyPath, type);
+    }
+
+    /**
+     * Stop maintaining an index of this collection
+     *
+     * @param index Index returned by addIndex
+     */
+    public void removeIndex(CollectionIndex index) {
+        getContext().getIndexes().remove(index);
+    }
+
+    /**
+     * @return Identity of the resource behind this Hyper node, its href or else its key path
+     */
+    /* default */ String getIdentity() {
+        URL href = getHref();
+        if (href != null) {
+            return href.toExternalForm();
+        }
+        return getFriendlyKeyPath();
     }
 
     /**
      * @return Return the key path of this Hyper node, or null if it is the root node.
      */
     public String getKeyPath() {
+        if (mKeyPath == null && mParent != null) {
+            mKeyPath = KeyPath.concat(mParent.getKeyPath(), mSegment);
+        }
         return mKeyPath;
     }
 
+    /**
+     * @return Return the node this Hyper node was retrieved from, or null if it is the root node.
+     */
+    public Hyper getParent() {
+        return mParent;
+    }
+
+    /**
+     * @return Return the key of this Hyper node within its parent
+     */
+    public String getSegment() {
+        return mSegment;
+    }
+
     /**
      * @return Return the key path of this Hyper node, or "root" if it is the root node.
      */
@@ -498,9 +1784,46 @@ public abstract class Hyper {
      * @return Return the href this Hyper node sits at
      */
     public URL getHref() {
+        if (!mHrefResolved) {
+            mHref = resolveHref();
+            mHrefResolved = true;
+        }
         return mHref;
     }
 
+    /**
+     * Set the href of this Hyper node, bypassing resolution from the underlying data
+     */
+    protected void setHref(URL href) {
+        mHref = href;
+        mHrefResolved = true;
+    }
+
+    /**
+     * Resolve the href of the underlying data against the parent's href using the context's
+     * UrlCache
+     *
+     * @return The resolved href or null if there is none
+     */
+    private URL resolveHref() {
+        Data data = getData();
+        if (data == null) {
+            return null;
+        }
+        URL base = mParent == null ? null : mParent.getHref();
+        try {
+            String href = data.getRawHref();
+            if (TextUtils.isEmpty(href)) {
+                return base;
+            }
+            return getContext().getUrlCache().resolve(base, href);
+        } catch (NoHrefException ex) {
+            return null;
+        } catch (MalformedURLException ex) {
+            return null;
+        }
+    }
+
     /**
      * @return Return the fetched state of this Hyper node
      */
@@ -515,12 +1838,70 @@ public abstract class Hyper {
         mFetched = fetched;
     }
 
+    /**
+     * @return Return the wall clock time, in milliseconds, the data of this Hyper node was fetched
+     * at, or 0 if it has not been fetched
+     */
+    public long getFetchedAt() {
+        return mFetchedAt;
+    }
+
+    /**
+     * Set the wall clock time the underlying data was fetched at
+     */
+    protected void setFetchedAt(long fetchedAt) {
+        mFetchedAt = fetchedAt;
+    }
+
+    /**
+     * @return Return the decoded size in bytes of the response this Hyper node's data was fetched
+     * from, or 0 if it has not been fetched
+     */
+    public long getFetchedBytes() {
+        return mFetchedBytes;
+    }
+
+    /**
+     * Set the decoded size of the response the underlying data was fetched from
+     */
+    protected void setFetchedBytes(long fetchedBytes) {
+        mFetchedBytes = fetchedBytes;
+    }
+
+    /**
+     * Forget that data which turned out not to decode was fetched, so that it is fetched again
+     *
+     * @param ex Why decoding failed
+     */
+    /* default */ void onDecodeFailed(DataParseException ex) {
+        Log.w(TAG, "Unable to decode the data of " + getFriendlyKeyPath() + ", fetching it again", ex);
+        setFetched(false);
+        mPartial = false;
+        mETag = null;
+        setFetchedAt(0);
+    }
+
     /**
      * Clears *all* data in this node and removes this node from the cache, if applicable
      */
     public void invalidate() {
-        setData(null);
+        // resolve the href before the data that describes it is gone
+        URL href = getHref();
+        FailureCache failures = getContext().getFailureCache();
+        if (href != null && failures != null) {
+            // ask again next time
+            failures.remove(href.toString());
+        }
+        // unfetched first, so listeners of the change do not read the missing data
         setFetched(false);
+        setData(null);
+        mPartial = false;
+        mETag = null;
+        setFetchedAt(0);
+        setFetchedBytes(0);
+        synchronized (this) {
+            mBackgroundFetch = null;
+        }
     }
 
     /**
@@ -546,6 +1927,12 @@ public abstract class Hyper {
      * @return An array of String keys or null if there is no data.
      */
     public String[] getAvailableKeys() {
+        FieldHints hints = getContext().getFieldHints();
+        URL href = hints == null ? null : getHref();
+        if (href != null) {
+            // every key may be read, stop asking for some
+            hints.onReadAll(href);
+        }
         Data data = getData();
         if (data != null) {
             return data.getKeys();
@@ -559,7 +1946,7 @@ public abstract class Hyper {
      *
      * @return A Task that may have either an error or a result, which is this instance.
      */
-    public Hyper fetch() throws InterruptedException, NoHrefException {
+    public Hyper fetch() throws InterruptedException, NoHrefException, FetchException {
         // if we've already fetched
         if (isFetched()) {
             // return self
@@ -571,6 +1958,21 @@ public abstract class Hyper {
         }
     }
 
+    /**
+     * Fetch this Hyper node's data again, keeping the current data until the response arrives.
+     * With DeltaUpdates, only the changes since the data held are downloaded.
+     *
+     * @return This instance
+     * @throws InterruptedException Network fetch was interrupted
+     * @throws NoHrefException      When there is no href to fetch
+     * @throws FetchException       When fetching failed, or was not attempted because its host is failing
+     * @see HyperContext.Builder#setDeltaUpdates(DeltaUpdates)
+     */
+    public Hyper refresh() throws InterruptedException, NoHrefException, FetchException {
+        performNetworkFetch();
+        return this;
+    }
+
     /**
      * Asyncronously retrieve the value at a given key path
      *
@@ -580,12 +1982,33 @@ public abstract class Hyper {
      * @see #get(String)
      */
     public <T> Task<T> getAsync(final String keyPath) {
+        return getAsync(keyPath, null);
+    }
+
+    /**
+     * Asyncronously retrieve the value at a given key path before a deadline. If the deadline
+     * passes while the call is still queued, it is dropped without a fetch.
+     *
+     * @param keyPath  Key path to retrieve
+     * @param deadline Deadline for the whole key path, may be null for none
+     * @param <T>      Expected type to retrieve
+     * @return A task wrapping the get(keyPath, deadline) call, failing with a
+     * DeadlineExceededException when time runs out
+     * @see #get(String, Deadline)
+     */
+    public <T> Task<T> getAsync(final String keyPath, final Deadline deadline) {
         final Task<T>.TaskCompletionSource result = Task.create();
         Task.call(new Callable<Void>() {
             @Override
             public Void call() throws Exception {
                 try {
-                    result.setResult((T) get(keyPath));
+                    if (deadline == null) {
+                        result.setResult((T) get(keyPath));
+                    } else if (deadline.isExpired()) {
+                        result.setError(new DeadlineExceededException(getConcatenatedKeyPath(keyPath), getHref(), null));
+                    } else {
+                        result.setResult((T) get(keyPath, deadline));
+                    }
                 } catch (ClassCastException ex) {
                     result.setError(new WrongDataTypeException(ex));
                 } catch (Exception ex) {
@@ -684,6 +2107,45 @@ public abstract class Hyper {
         return result.getTask();
     }
 
+    /**
+     * Publish the value at a key path, and again every time the data of this Hyper node, or of a
+     * resource the key path goes through, changes it. A subscriber without outstanding demand only
+     * receives the latest value. The publisher never completes, cancel the subscription to stop
+     * watching.
+     *
+     * @param keyPath Key path to watch
+     * @param <T>     Expected type of the value
+     * @return A publisher of the values at the key path, read on the context's async executor
+     * @see #addChangeListener(ChangeListener)
+     */
+    public <T> Publisher<T> watch(String keyPath) {
+        return new WatchPublisher<T>(this, keyPath);
+    }
+
+    /**
+     * Publish each item in this object's collection, then each item of the pages linked as "next".
+     * <br/>
+     * Pages are fetched on the context's async executor, and only while the subscriber has
+     * requested more items than have been fetched.
+     *
+     * @param <T> Type of items to expect
+     * @return A publisher of the collection's items
+     * @see #each()
+     */
+    public <T> Publisher<T> stream() {
+        return new CollectionPublisher<T>(this, false);
+    }
+
+    /**
+     * Publish this Hyper node and then each page linked as "next", fetched as they are requested
+     *
+     * @return A publisher of fetched pages
+     * @see #stream()
+     */
+    public Publisher<Hyper> pages() {
+        return new CollectionPublisher<Hyper>(this, true);
+    }
+
     @Override
     public String toString() {
         return getFriendlyKeyPath();
@@ -700,14 +2162,103 @@ public abstract class Hyper {
     protected abstract Request buildRequest(URL href);
 
     /**
-     * Parse a response into Data
+     * @param href Href about to be fetched
+     * @return The href asking the server for only the keys usually read from this node, if the
+     * context has FieldHints and this is not a fetch for a key that was left out
+     */
+    protected URL addFieldsHint(URL href) {
+        FieldHints hints = getContext().getFieldHints();
+        if (hints == null || (isFetched() && mPartial)) {
+            // a key that was left out is being read, fetch everything
+            return href;
+        }
+        URL hinted = hints.addHint(href);
+        mFieldsRequested = hinted != href;
+        return hinted;
+    }
+
+    /**
+     * Record that a key is read from this node, for FieldHints
+     */
+    private void recordRead(String key) {
+        FieldHints hints = getContext().getFieldHints();
+        if (hints == null || TextUtils.isEmpty(key) || asIndex(key) != null) {
+            return;
+        }
+        URL href = getHref();
+        if (href != null) {
+            hints.onRead(href, key);
+        }
+    }
+
+    /**
+     * @param href Href about to be fetched
+     * @return The href asking the server to embed the links usually followed from this node, if
+     * the context has ExpandHints
+     */
+    protected URL addExpandHint(URL href) {
+        ExpandHints hints = getContext().getExpandHints();
+        return hints == null ? href : hints.addHint(href, getFriendlyKeyPath());
+    }
+
+    /**
+     * Parse a response body into Data
+     *
+     * @param contentType Content-Type of the response, may be null
+     * @param body        Decoded response body, the caller takes care of closing it
+     * @return The wrapped Data
+     * @throws io.hypergroup.hyper.exception.DataParseException When parsing goes wrong
+     * @throws java.io.IOException                              When IO goes wrong
+     */
+    protected abstract Data parseResponse(MediaType contentType, InputStream body) throws IOException, DataParseException;
+
+    /**
+     * Parse a response body into Data, handing each item of its collection to the callback as
+     * soon as it is parsed. Override for formats that can be parsed incrementally, by default the
+     * items are handed over once the whole body is parsed.
      *
-     * @param response Response to parse
+     * @param contentType Content-Type of the response, may be null
+     * @param body        Decoded response body, the caller takes care of closing it
+     * @param items       Receives the raw collection items, before coercion
      * @return The wrapped Data
      * @throws io.hypergroup.hyper.exception.DataParseException When parsing goes wrong
      * @throws java.io.IOException                              When IO goes wrong
      */
-    protected abstract Data parseResponse(Response response) throws IOException, DataParseException;
+    protected Data parseResponse(MediaType contentType, InputStream body, ItemCallback<Object> items) throws IOException, DataParseException {
+        Data data = parseResponse(contentType, body);
+        if (data != null && data.hasProperty(DataSnapshot.KEY_COLLECTION)) {
+            try {
+                List<Object> collection = data.getCollection();
+                for (int index = 0; index < collection.size(); index++) {
+                    items.onItem(index, collection.get(index));
+                }
+            } catch (InvalidCollectionException ex) {
+                // not a collection, each() reports it
+            }
+        }
+        return data;
+    }
+
+    /**
+     * @param format One of the DeltaUpdates formats
+     * @return Whether or not this node can apply deltas in the format, none by default
+     */
+    protected boolean canApplyDelta(String format) {
+        return false;
+    }
+
+    /**
+     * Apply a delta to this node's data in place
+     *
+     * @param data        Data this node holds
+     * @param format      Format of the delta, one this node can apply, or null if the server did not say
+     * @param contentType Content-Type of the delta, may be null
+     * @param body        Decoded delta
+     * @throws DataParseException When the delta does not apply, the data must be left as it was
+     */
+    protected void applyDelta(Data data, String format, MediaType contentType, byte[] body) throws DataParseException {
+        throw new DataParseException("Deltas are not supported");
+    }
 
     /**
      * Return whether or not the data is in the raw underlying format (for example, JSONObject)
@@ -720,11 +2271,12 @@ public abstract class Hyper {
     /**
      * Construct a new Hyper node with the given data
      *
-     * @param keyPath Key path of the new node
+     * @param parent  Parent of the new node
+     * @param segment Key of the new node within its parent
      * @param data    Base data for the new node
      * @return The new Hyper node
      */
-    protected abstract Hyper createHyperNodeFromData(String keyPath, URL relativeHref, Data data);
+    protected abstract Hyper createHyperNodeFromData(Hyper parent, String segment, Data data);
 
     /**
      * Create Data from raw data (for example, JSONObject)
@@ -734,6 +2286,56 @@ public abstract class Hyper {
      */
     protected abstract Data createDataFromRawData(Object raw);
 
+    /**
+     * Coerces raw collection items for a caller's ItemCallback, holding on to its first error so
+     * that parsing can finish
+     */
+    private class CoercingCallback<T> implements ItemCallback<Object> {
+
+        private final ItemCallback<T> mCallback;
+        private int mDelivered;
+        private Exception mError;
+
+        CoercingCallback(ItemCallback<T> callback) {
+            mCallback = callback;
+        }
+
+        @Override
+        public void onItem(int index, Object item) {
+            if (mError != null || index != mDelivered) {
+                return;
+            }
+            try {
+                mCallback.onItem(index, Hyper.this.<T>coerce(String.valueOf(index), item));
+                mDelivered++;
+            } catch (WrongDataTypeException ex) {
+                mError = ex;
+            } catch (RuntimeException ex) {
+                mError = ex;
+            }
+        }
+
+        /**
+         * @return Number of items handed to the callback
+         */
+        int getDelivered() {
+            return mDelivered;
+        }
+
+        /**
+         * Throw the callback's error, if it had one
+         */
+        void rethrow() throws WrongDataTypeException {
+            if (mError instanceof WrongDataTypeException) {
+                throw (WrongDataTypeException) mError;
+            } else if (mError instanceof ClassCastException) {
+                throw new WrongDataTypeException(mError);
+            } else if (mError != null) {
+                throw (RuntimeException) mError;
+            }
+        }
+    }
+
     /**
      * Class that encapsulates common keyPath parsing.
      */
@@ -743,6 +2345,11 @@ public abstract class Hyper {
         String nodeKey;
         String nextKey;
 
+        /**
+         * Filter of the node's collection, as in users[first_name=Matt], may be null
+         */
+        KeyFilter filter;
+
         /**
          * Construct this key path, searching for the local node and extracting the remote nodes.
          * <br/>
@@ -754,21 +2361,46 @@ public abstract class Hyper {
             relativePath = keyPath;
             // if a Key path was provided
             if (!TextUtils.isEmpty(keyPath)) {
-                // if it has multiple parts
-                if (keyPath.contains(".")) {
-                    // break the path apart
-                    String[] parts = keyPath.split("\\.", 2);
+                // if it has multiple parts, dots inside a filter do not count
+                int dot = indexOfSeparator(keyPath);
+                if (dot != -1) {
                     // save the first part
-                    nodeKey = parts[0];
+                    nodeKey = keyPath.substring(0, dot);
                     // and the remainder
-                    nextKey = parts[1];
+                    nextKey = keyPath.substring(dot + 1);
                 } else {
                     // otherwise we have just a simple path
                     nodeKey = keyPath;
                     // with no remainder
                     nextKey = null;
                 }
+                // split a filter off the node key
+                int open = nodeKey.indexOf('[');
+                if (open != -1 && nodeKey.endsWith("]")) {
+                    filter = KeyFilter.parse(nodeKey.substring(open + 1, nodeKey.length() - 1));
+                    if (filter != null) {
+                        nodeKey = nodeKey.substring(0, open);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return Index of the first "." outside of brackets, or -1
+         */
+        private static int indexOfSeparator(String keyPath) {
+            int depth = 0;
+            for (int index = 0; index < keyPath.length(); index++) {
+                char c = keyPath.charAt(index);
+                if (c == '[') {
+                    depth++;
+                } else if (c == ']') {
+                    depth--;
+                } else if (c == '.' && depth == 0) {
+                    return index;
+                }
             }
+            return -1;
         }
 
         /**
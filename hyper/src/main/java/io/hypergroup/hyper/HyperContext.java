@@ -2,9 +2,12 @@ package io.hypergroup.hyper;
 
 import com.squareup.okhttp.OkHttpClient;
 
+import java.net.URL;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import bolts.Task;
+import io.hypergroup.hyper.store.ResponseStore;
 
 /**
  * Encapsulates functionality that is transferred from a Hyper node to the next new Hyper node
@@ -38,6 +41,106 @@ public class HyperContext {
      */
     private Executor mAsyncExecutor;
 
+    /**
+     * Cache of resolved hrefs
+     */
+    private UrlCache mUrlCache;
+
+    /**
+     * Network metrics
+     */
+    private HyperMetrics mMetrics;
+
+    /**
+     * Disk tier of raw responses, may be null
+     */
+    private ResponseStore mResponseStore;
+
+    /**
+     * Age under which stored responses are used without asking the network
+     */
+    private long mResponseStoreMaxAge;
+
+    /**
+     * Listeners for changes to node data
+     */
+    private ChangeNotifier mChangeNotifier;
+
+    /**
+     * Threads that may make implicit network requests
+     */
+    private FetchPolicy mFetchPolicy;
+
+    /**
+     * Records fetches made on the main thread, may be null
+     */
+    private BlockingFetchDetector mBlockingFetchDetector;
+
+    /**
+     * Probes URLs for previews
+     */
+    private UrlMetadataService mUrlMetadataService;
+
+    /**
+     * How failed fetches are retried
+     */
+    private RetryPolicy mRetryPolicy;
+
+    /**
+     * Hosts that are failing
+     */
+    private CircuitBreaker mCircuitBreaker;
+
+    /**
+     * Hrefs that failed recently
+     */
+    private FailureCache mFailureCache;
+
+    /**
+     * When slow fetches are hedged
+     */
+    private HedgePolicy mHedgePolicy;
+
+    /**
+     * How many fetches run at once, per host
+     */
+    private ConcurrencyLimiter mConcurrencyLimiter;
+
+    /**
+     * Links to ask the server to embed, null when it can not
+     */
+    private ExpandHints mExpandHints;
+
+    /**
+     * Keys to ask the server for, null when it can not return some keys only
+     */
+    private FieldHints mFieldHints;
+
+    /**
+     * Delta formats to ask for when fetching data again, null when the server sends none
+     */
+    private DeltaUpdates mDeltaUpdates;
+
+    /**
+     * Streams of pushed changes, null when the servers push none
+     */
+    private LiveUpdates mLiveUpdates;
+
+    /**
+     * Refreshes the nodes kept fresh, one resource at a time
+     */
+    private RefreshScheduler mRefreshScheduler;
+
+    /**
+     * Sends fetches to a batch endpoint together, null to send each on its own
+     */
+    private BatchTransport mBatchTransport;
+
+    /**
+     * Indexes of collections
+     */
+    private CollectionIndexes mIndexes;
+
     /* default */ HyperContext() {
     }
 
@@ -65,6 +168,166 @@ public class HyperContext {
         mAsyncExecutor = AsyncExecutor;
     }
 
+    public UrlCache getUrlCache() {
+        return mUrlCache;
+    }
+
+    public void setUrlCache(UrlCache urlCache) {
+        mUrlCache = urlCache;
+    }
+
+    public HyperMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    public void setMetrics(HyperMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    public ResponseStore getResponseStore() {
+        return mResponseStore;
+    }
+
+    public void setResponseStore(ResponseStore responseStore) {
+        mResponseStore = responseStore;
+    }
+
+    public long getResponseStoreMaxAge() {
+        return mResponseStoreMaxAge;
+    }
+
+    public void setResponseStoreMaxAge(long responseStoreMaxAge) {
+        mResponseStoreMaxAge = responseStoreMaxAge;
+    }
+
+    public ChangeNotifier getChangeNotifier() {
+        return mChangeNotifier;
+    }
+
+    public void setChangeNotifier(ChangeNotifier changeNotifier) {
+        mChangeNotifier = changeNotifier;
+    }
+
+    public FetchPolicy getFetchPolicy() {
+        return mFetchPolicy;
+    }
+
+    public void setFetchPolicy(FetchPolicy fetchPolicy) {
+        mFetchPolicy = fetchPolicy;
+    }
+
+    public BlockingFetchDetector getBlockingFetchDetector() {
+        return mBlockingFetchDetector;
+    }
+
+    public void setBlockingFetchDetector(BlockingFetchDetector blockingFetchDetector) {
+        mBlockingFetchDetector = blockingFetchDetector;
+    }
+
+    public UrlMetadataService getUrlMetadataService() {
+        return mUrlMetadataService;
+    }
+
+    public void setUrlMetadataService(UrlMetadataService urlMetadataService) {
+        mUrlMetadataService = urlMetadataService;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return mRetryPolicy;
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        mRetryPolicy = retryPolicy;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return mCircuitBreaker;
+    }
+
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        mCircuitBreaker = circuitBreaker;
+    }
+
+    public FailureCache getFailureCache() {
+        return mFailureCache;
+    }
+
+    public void setFailureCache(FailureCache failureCache) {
+        mFailureCache = failureCache;
+    }
+
+    public HedgePolicy getHedgePolicy() {
+        return mHedgePolicy;
+    }
+
+    public void setHedgePolicy(HedgePolicy hedgePolicy) {
+        mHedgePolicy = hedgePolicy;
+    }
+
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return mConcurrencyLimiter;
+    }
+
+    public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        mConcurrencyLimiter = concurrencyLimiter;
+    }
+
+    public ExpandHints getExpandHints() {
+        return mExpandHints;
+    }
+
+    public void setExpandHints(ExpandHints expandHints) {
+        mExpandHints = expandHints;
+    }
+
+    public FieldHints getFieldHints() {
+        return mFieldHints;
+    }
+
+    public DeltaUpdates getDeltaUpdates() {
+        return mDeltaUpdates;
+    }
+
+    public void setDeltaUpdates(DeltaUpdates deltaUpdates) {
+        mDeltaUpdates = deltaUpdates;
+    }
+
+    public LiveUpdates getLiveUpdates() {
+        return mLiveUpdates;
+    }
+
+    public void setLiveUpdates(LiveUpdates liveUpdates) {
+        mLiveUpdates = liveUpdates;
+    }
+
+    public void setFieldHints(FieldHints fieldHints) {
+        mFieldHints = fieldHints;
+    }
+
+    public RefreshScheduler getRefreshScheduler() {
+        return mRefreshScheduler;
+    }
+
+    public void setRefreshScheduler(RefreshScheduler refreshScheduler) {
+        mRefreshScheduler = refreshScheduler;
+    }
+
+    public BatchTransport getBatchTransport() {
+        return mBatchTransport;
+    }
+
+    public void setBatchTransport(BatchTransport batchTransport) {
+        mBatchTransport = batchTransport;
+    }
+
+    public CollectionIndexes getIndexes() {
+        return mIndexes;
+    }
+
+    public void setIndexes(CollectionIndexes indexes) {
+        mIndexes = indexes;
+    }
+
     /**
      * Build a HyperContext
      */
@@ -73,6 +336,31 @@ public class HyperContext {
         private Hyper mRoot;
         private OkHttpClient mHttpClient = null;
         private Executor mAsyncExecutor = ASYNC_EXECUTOR;
+        private int mUrlCacheSize = UrlCache.DEFAULT_MAX_SIZE;
+        private HyperMetrics.Listener mMetricsListener;
+        private ResponseStore mResponseStore;
+        private long mResponseStoreMaxAge = 0;
+        private FetchPolicy mFetchPolicy = FetchPolicy.ALLOW_ALL;
+        private BlockingFetchDetector mBlockingFetchDetector;
+        private UrlMetadataService mUrlMetadataService;
+        private RetryPolicy mRetryPolicy = RetryPolicy.NONE;
+        private CircuitBreaker mCircuitBreaker;
+        private long mNegativeCacheTtl = 0;
+        private HedgePolicy mHedgePolicy;
+        private boolean mConcurrencyLimited = true;
+        private int mInitialConcurrencyLimit = ConcurrencyLimiter.DEFAULT_INITIAL_LIMIT;
+        private int mMinConcurrencyLimit = ConcurrencyLimiter.DEFAULT_MIN_LIMIT;
+        private int mMaxConcurrencyLimit = ConcurrencyLimiter.DEFAULT_MAX_LIMIT;
+        private ExpandHints mExpandHints;
+        private FieldHints mFieldHints;
+        private DeltaUpdates mDeltaUpdates;
+        private LiveUpdates mLiveUpdates;
+        private URL mBatchEndpoint;
+        private long mBatchWindowMillis = BatchTransport.DEFAULT_WINDOW_MILLIS;
+        private int mBatchMaxSize = BatchTransport.DEFAULT_MAX_SIZE;
+        private long mRefreshWindowMillis = RefreshScheduler.DEFAULT_WINDOW_MILLIS;
+        private long mRefreshIdleAfterMillis = RefreshScheduler.DEFAULT_IDLE_AFTER_MILLIS;
+        private float mRefreshJitter = RefreshScheduler.DEFAULT_JITTER;
 
         //private HyperCache mHyperCache;
         public void Builder() {
@@ -100,16 +388,217 @@ public class HyperContext {
             return this;
         }
 
+        /**
+         * Override the number of resolved hrefs kept by the context
+         */
+        public Builder setUrlCacheSize(int urlCacheSize) {
+            mUrlCacheSize = urlCacheSize;
+            return this;
+        }
+
+        /**
+         * Receive the measurements of every fetch, such as compressed and decompressed sizes
+         */
+        public Builder setMetricsListener(HyperMetrics.Listener metricsListener) {
+            mMetricsListener = metricsListener;
+            return this;
+        }
+
+        /**
+         * Keep raw responses on disk. Stored responses are revalidated with their ETag or
+         * Last-Modified, and used as is when the network is unavailable.
+         */
+        public Builder setResponseStore(ResponseStore responseStore) {
+            mResponseStore = responseStore;
+            return this;
+        }
+
+        /**
+         * Use stored responses younger than maxAge without asking the network at all
+         */
+        public Builder setResponseStoreMaxAge(long maxAge, TimeUnit unit) {
+            mResponseStoreMaxAge = unit.toMillis(maxAge);
+            return this;
+        }
+
+        /**
+         * Choose the threads that may make implicit network requests, for example
+         * FetchPolicy.MAIN_THREAD_CACHE_ONLY
+         */
+        public Builder setFetchPolicy(FetchPolicy fetchPolicy) {
+            mFetchPolicy = fetchPolicy;
+            return this;
+        }
+
+        /**
+         * Debug mode, record a stack trace for every fetch made on the main thread
+         */
+        public Builder setBlockingFetchDetector(BlockingFetchDetector blockingFetchDetector) {
+            mBlockingFetchDetector = blockingFetchDetector;
+            return this;
+        }
+
+        /**
+         * Override the service probing URLs, by default it shares the context's http client
+         */
+        public Builder setUrlMetadataService(UrlMetadataService urlMetadataService) {
+            mUrlMetadataService = urlMetadataService;
+            return this;
+        }
+
+        /**
+         * Retry failed fetches, such as with RetryPolicy.DEFAULT, never retried by default
+         */
+        public Builder setRetryPolicy(RetryPolicy retryPolicy) {
+            mRetryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Refuse fetches to a failing host, such as with new CircuitBreaker(), off by default
+         */
+        public Builder setCircuitBreaker(CircuitBreaker circuitBreaker) {
+            mCircuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        /**
+         * Fail fetches of an href that failed less than ttl ago without asking the network again,
+         * 0 to always ask, as by default
+         */
+        public Builder setNegativeCacheTtl(long ttl, TimeUnit unit) {
+            mNegativeCacheTtl = unit.toMillis(ttl);
+            return this;
+        }
+
+        /**
+         * Send a second request for GETs that are slow to answer, off by default
+         */
+        public Builder setHedgePolicy(HedgePolicy hedgePolicy) {
+            mHedgePolicy = hedgePolicy;
+            return this;
+        }
+
+        /**
+         * Bound the concurrent fetches to each host, adapting the bound between min and max to
+         * the host's latency
+         */
+        public Builder setConcurrencyLimits(int initial, int min, int max) {
+            mInitialConcurrencyLimit = initial;
+            mMinConcurrencyLimit = min;
+            mMaxConcurrencyLimit = max;
+            return this;
+        }
+
+        /**
+         * Turn the per-host concurrency limit on or off, on by default
+         */
+        public Builder setConcurrencyLimited(boolean concurrencyLimited) {
+            mConcurrencyLimited = concurrencyLimited;
+            return this;
+        }
+
+        /**
+         * Only for servers that can embed linked resources, ask them to embed the links that are
+         * usually followed
+         */
+        public Builder setExpandHints(ExpandHints expandHints) {
+            mExpandHints = expandHints;
+            return this;
+        }
+
+        /**
+         * Only for servers that support sparse fieldsets, ask them for the keys that are usually
+         * read
+         */
+        public Builder setFieldHints(FieldHints fieldHints) {
+            mFieldHints = fieldHints;
+            return this;
+        }
+
+        /**
+         * Only for servers that support delta encoding, ask for the changes since the data held
+         * when a node is fetched again
+         */
+        public Builder setDeltaUpdates(DeltaUpdates deltaUpdates) {
+            mDeltaUpdates = deltaUpdates;
+            return this;
+        }
+
+        /**
+         * Only for servers that push changes as Server-Sent Events, lets nodes subscribe to them
+         */
+        public Builder setLiveUpdates(LiveUpdates liveUpdates) {
+            mLiveUpdates = liveUpdates;
+            return this;
+        }
+
+        /**
+         * Override how nodes kept fresh are refreshed: together once per window, early by up to
+         * jitter of their max age, and less often once there has been no activity for idleAfter
+         */
+        public Builder setRefreshScheduling(long window, long idleAfter, TimeUnit unit, float jitter) {
+            mRefreshWindowMillis = unit.toMillis(window);
+            mRefreshIdleAfterMillis = unit.toMillis(idleAfter);
+            mRefreshJitter = jitter;
+            return this;
+        }
+
+        /**
+         * Only for servers with a batch endpoint, send the fetches made within a window of time
+         * to it as one request, up to maxSize at a time
+         */
+        public Builder setBatchEndpoint(URL endpoint, long window, TimeUnit unit, int maxSize) {
+            mBatchEndpoint = endpoint;
+            mBatchWindowMillis = unit.toMillis(window);
+            mBatchMaxSize = maxSize;
+            return this;
+        }
+
         public HyperContext build() {
             HyperContext context = new HyperContext();
             context.setRoot(mRoot);
             context.setAsyncExecutor(mAsyncExecutor);
+            context.setUrlCache(new UrlCache(mUrlCacheSize));
+
+            HyperMetrics metrics = new HyperMetrics();
+            metrics.setListener(mMetricsListener);
+            context.setMetrics(metrics);
+
+            context.setResponseStore(mResponseStore);
+            context.setResponseStoreMaxAge(mResponseStoreMaxAge);
+            ChangeNotifier notifier = new ChangeNotifier(mAsyncExecutor);
+            context.setChangeNotifier(notifier);
+            context.setIndexes(new CollectionIndexes(notifier));
+            context.setFetchPolicy(mFetchPolicy);
+            context.setBlockingFetchDetector(mBlockingFetchDetector);
+            context.setRetryPolicy(mRetryPolicy == null ? RetryPolicy.NONE : mRetryPolicy);
+            context.setCircuitBreaker(mCircuitBreaker);
+            context.setFailureCache(new FailureCache(FailureCache.DEFAULT_MAX_SIZE, mNegativeCacheTtl));
+            context.setHedgePolicy(mHedgePolicy);
+            context.setExpandHints(mExpandHints);
+            context.setFieldHints(mFieldHints);
+            context.setDeltaUpdates(mDeltaUpdates);
+            context.setLiveUpdates(mLiveUpdates);
+            context.setRefreshScheduler(new RefreshScheduler(context, mRefreshWindowMillis, mRefreshIdleAfterMillis, mRefreshJitter));
+            if (mConcurrencyLimited) {
+                context.setConcurrencyLimiter(new ConcurrencyLimiter(mInitialConcurrencyLimit, mMinConcurrencyLimit, mMaxConcurrencyLimit, metrics));
+            }
 
             OkHttpClient client = mHttpClient;
             if (client == null) {
                 client = new OkHttpClient();
             }
             context.setHttpClient(client);
+            if (mBatchEndpoint != null) {
+                context.setBatchTransport(new BatchTransport(client, mBatchEndpoint, mBatchWindowMillis, mBatchMaxSize));
+            }
+
+            UrlMetadataService urlMetadataService = mUrlMetadataService;
+            if (urlMetadataService == null) {
+                urlMetadataService = new UrlMetadataService(client);
+            }
+            context.setUrlMetadataService(urlMetadataService);
 
             return context;
         }
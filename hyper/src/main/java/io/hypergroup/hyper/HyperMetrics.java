@@ -0,0 +1,327 @@
+package io.hypergroup.hyper;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running totals of the network activity of a HyperContext.
+ * <br/>
+ * Register a Listener to receive the measurements of each individual fetch.
+ */
+public class HyperMetrics {
+
+    /**
+     * Receives per-fetch measurements
+     */
+    public interface Listener {
+
+        /**
+         * Called on the fetching thread once a response body has been parsed
+         *
+         * @param stats Measurements of the fetch
+         */
+        public void onFetch(FetchStats stats);
+    }
+
+    private final AtomicLong mFetchCount = new AtomicLong();
+    private final AtomicLong mCompressedBytes = new AtomicLong();
+    private final AtomicLong mDecompressedBytes = new AtomicLong();
+    private final AtomicLong mRetryCount = new AtomicLong();
+    private final AtomicLong mFailureCount = new AtomicLong();
+    private final AtomicLong mNegativeCacheHits = new AtomicLong();
+    private final AtomicLong mCircuitRejections = new AtomicLong();
+    private final AtomicLong mLimiterWaitCount = new AtomicLong();
+    private final AtomicLong mPartialFetchCount = new AtomicLong();
+    private final AtomicLong mPartialSavedBytes = new AtomicLong();
+    private final AtomicLong mFieldsFallbackCount = new AtomicLong();
+    private final AtomicLong mDeltaFetchCount = new AtomicLong();
+    private final AtomicLong mDeltaSavedBytes = new AtomicLong();
+    private final AtomicLong mDeltaFallbackCount = new AtomicLong();
+    private final AtomicLong mLiveEventCount = new AtomicLong();
+    private final AtomicLong mLiveReconnectCount = new AtomicLong();
+    private final AtomicLong mRefreshWakeUpCount = new AtomicLong();
+    private final AtomicLong mScheduledRefreshCount = new AtomicLong();
+    private final AtomicLong mLimiterWaitMillis = new AtomicLong();
+    private final AtomicLong mMaxLimiterWaitMillis = new AtomicLong();
+
+    private volatile Listener mListener;
+
+    public Listener getListener() {
+        return mListener;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Record a completed fetch
+     *
+     * @param stats Measurements of the fetch
+     */
+    public void onFetch(FetchStats stats) {
+        mFetchCount.incrementAndGet();
+        mCompressedBytes.addAndGet(stats.getCompressedBytes());
+        mDecompressedBytes.addAndGet(stats.getDecompressedBytes());
+        Listener listener = mListener;
+        if (listener != null) {
+            listener.onFetch(stats);
+        }
+    }
+
+    /**
+     * Record that a failed fetch is about to be tried again
+     */
+    public void onRetry() {
+        mRetryCount.incrementAndGet();
+    }
+
+    /**
+     * Record a fetch that failed for good, after its retries
+     */
+    public void onFailure() {
+        mFailureCount.incrementAndGet();
+    }
+
+    /**
+     * Record a fetch failed by a remembered failure, without a request
+     */
+    public void onNegativeCacheHit() {
+        mNegativeCacheHits.incrementAndGet();
+    }
+
+    /**
+     * Record a fetch refused because its host's circuit is open
+     */
+    public void onCircuitRejected() {
+        mCircuitRejections.incrementAndGet();
+    }
+
+    /**
+     * Record the time a fetch waited for a concurrency slot
+     */
+    public void onLimiterWait(long millis) {
+        mLimiterWaitCount.incrementAndGet();
+        mLimiterWaitMillis.addAndGet(millis);
+        long max;
+        while (millis > (max = mMaxLimiterWaitMillis.get())) {
+            if (mMaxLimiterWaitMillis.compareAndSet(max, millis)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Record a fetch of some keys only
+     *
+     * @param savedBytes Decoded bytes saved against a full response
+     */
+    public void onPartialFetch(long savedBytes) {
+        mPartialFetchCount.incrementAndGet();
+        mPartialSavedBytes.addAndGet(savedBytes);
+    }
+
+    /**
+     * Record a full fetch for a key a partial fetch left out
+     */
+    public void onFieldsFallback() {
+        mFieldsFallbackCount.incrementAndGet();
+    }
+
+    /**
+     * Record a delta applied to the data a node held
+     *
+     * @param savedBytes Decoded bytes saved against the whole response the data was fetched from
+     */
+    public void onDeltaFetch(long savedBytes) {
+        mDeltaFetchCount.incrementAndGet();
+        mDeltaSavedBytes.addAndGet(savedBytes);
+    }
+
+    /**
+     * Record a delta that did not apply, and was followed by a full fetch
+     */
+    public void onDeltaFallback() {
+        mDeltaFallbackCount.incrementAndGet();
+    }
+
+    /**
+     * Record a change event received from a LiveUpdates stream
+     */
+    public void onLiveEvent() {
+        mLiveEventCount.incrementAndGet();
+    }
+
+    /**
+     * Record a LiveUpdates stream reconnecting
+     */
+    public void onLiveReconnect() {
+        mLiveReconnectCount.incrementAndGet();
+    }
+
+    /**
+     * Record the RefreshScheduler waking up
+     */
+    public void onRefreshWakeUp() {
+        mRefreshWakeUpCount.incrementAndGet();
+    }
+
+    /**
+     * Record a refresh made by the RefreshScheduler
+     */
+    public void onScheduledRefresh() {
+        mScheduledRefreshCount.incrementAndGet();
+    }
+
+    /**
+     * @return Number of response bodies parsed
+     */
+    public long getFetchCount() {
+        return mFetchCount.get();
+    }
+
+    /**
+     * @return Total body bytes read over the wire
+     */
+    public long getCompressedBytes() {
+        return mCompressedBytes.get();
+    }
+
+    /**
+     * @return Total body bytes handed to parsers
+     */
+    public long getDecompressedBytes() {
+        return mDecompressedBytes.get();
+    }
+
+    /**
+     * @return Compressed bytes over decompressed bytes, 1 when nothing has been fetched
+     */
+    public double getCompressionRatio() {
+        long decompressed = getDecompressedBytes();
+        if (decompressed == 0) {
+            return 1;
+        }
+        return (double) getCompressedBytes() / decompressed;
+    }
+
+    /**
+     * @return Number of retried fetches
+     */
+    public long getRetryCount() {
+        return mRetryCount.get();
+    }
+
+    /**
+     * @return Number of fetches that failed after their retries
+     */
+    public long getFailureCount() {
+        return mFailureCount.get();
+    }
+
+    /**
+     * @return Number of fetches failed by a remembered failure
+     */
+    public long getNegativeCacheHits() {
+        return mNegativeCacheHits.get();
+    }
+
+    /**
+     * @return Number of fetches refused by an open circuit
+     */
+    public long getCircuitRejections() {
+        return mCircuitRejections.get();
+    }
+
+    /**
+     * @return Number of fetches that went through the concurrency limiter
+     */
+    public long getLimiterWaitCount() {
+        return mLimiterWaitCount.get();
+    }
+
+    /**
+     * @return Total milliseconds fetches waited for a concurrency slot
+     */
+    public long getLimiterWaitMillis() {
+        return mLimiterWaitMillis.get();
+    }
+
+    /**
+     * @return Longest any fetch waited for a concurrency slot
+     */
+    public long getMaxLimiterWaitMillis() {
+        return mMaxLimiterWaitMillis.get();
+    }
+
+    /**
+     * @return Number of fetches of some keys only
+     */
+    public long getPartialFetchCount() {
+        return mPartialFetchCount.get();
+    }
+
+    /**
+     * @return Decoded bytes partial fetches saved, against the average full response of their
+     * URL templates
+     */
+    public long getPartialSavedBytes() {
+        return mPartialSavedBytes.get();
+    }
+
+    /**
+     * @return Number of full fetches for keys partial fetches left out
+     */
+    public long getFieldsFallbackCount() {
+        return mFieldsFallbackCount.get();
+    }
+
+    /**
+     * @return Number of deltas applied instead of full fetches
+     */
+    public long getDeltaFetchCount() {
+        return mDeltaFetchCount.get();
+    }
+
+    /**
+     * @return Decoded bytes deltas saved, against the whole responses the data was fetched from
+     */
+    public long getDeltaSavedBytes() {
+        return mDeltaSavedBytes.get();
+    }
+
+    /**
+     * @return Number of deltas that did not apply
+     */
+    public long getDeltaFallbackCount() {
+        return mDeltaFallbackCount.get();
+    }
+
+    /**
+     * @return Number of change events received from LiveUpdates streams
+     */
+    public long getLiveEventCount() {
+        return mLiveEventCount.get();
+    }
+
+    /**
+     * @return Number of times LiveUpdates streams reconnected
+     */
+    public long getLiveReconnectCount() {
+        return mLiveReconnectCount.get();
+    }
+
+    /**
+     * @return Number of times the RefreshScheduler woke up
+     */
+    public long getRefreshWakeUpCount() {
+        return mRefreshWakeUpCount.get();
+    }
+
+    /**
+     * @return Number of refreshes made by the RefreshScheduler, one per resource however many
+     * registrations it has
+     */
+    public long getScheduledRefreshCount() {
+        return mScheduledRefreshCount.get();
+    }
+}
@@ -0,0 +1,436 @@
+package io.hypergroup.hyper;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import io.hypergroup.hyper.exception.DataParseException;
+import io.hypergroup.hyper.exception.HyperException;
+import io.hypergroup.hyper.exception.MissingPropertyException;
+import io.hypergroup.hyper.json.JsonData;
+import io.hypergroup.hyper.msgpack.MsgPackData;
+import io.hypergroup.hyper.msgpack.MsgPackReader;
+import io.hypergroup.hyper.msgpack.MsgPackWriter;
+
+/**
+ * Compact binary snapshots of Hyper nodes, for onSaveInstanceState or a warm start from disk.
+ * <br/>
+ * Each node is written with the segments leading to it from its root, its href, fetch state,
+ * fetch time, ETag and its data encoded as MessagePack. The data of a node includes everything
+ * embedded in or merged into it, so a snapshot of a node covers its fetched subtree.
+ * <br/>
+ * Reading is streaming as well, and data is only decoded once a restored node is read from.
+ * Restored nodes get their parents back: a parent restored earlier in the same read is reused,
+ * one that was not snapshotted is rebuilt from the data embedded in its own parent.
+ */
+public final class HyperSnapshot {
+
+    /**
+     * Marks the start of a snapshot, "HYPS"
+     */
+    private static final int MAGIC = 0x48595053;
+
+    private static final int VERSION = 2;
+
+    private static final int TAG_END = 0;
+    private static final int TAG_NODE = 1;
+
+    private static final int FLAG_HREF = 1;
+    private static final int FLAG_FETCHED = 1 << 1;
+    private static final int FLAG_DATA = 1 << 2;
+    private static final int FLAG_JSON = 1 << 3;
+    private static final int FLAG_ETAG = 1 << 4;
+    private static final int FLAG_PARTIAL = 1 << 5;
+
+    private HyperSnapshot() {
+    }
+
+    /**
+     * Write a snapshot of the given nodes
+     *
+     * @param out   Stream to write to, it is not closed
+     * @param nodes Nodes to snapshot
+     * @throws IOException When writing fails
+     */
+    public static void write(OutputStream out, Hyper... nodes) throws IOException {
+        Writer writer = new Writer(out);
+        for (Hyper node : nodes) {
+            writer.write(node);
+        }
+        writer.finish();
+    }
+
+    /**
+     * Write a snapshot of the given nodes to a byte array, for example for a Bundle
+     *
+     * @param nodes Nodes to snapshot
+     * @return The snapshot
+     * @throws IOException When encoding fails
+     */
+    public static byte[] toByteArray(Hyper... nodes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        write(bytes, nodes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Restore all nodes of a snapshot
+     *
+     * @param in   Stream to read from, it is not closed
+     * @param root Root node to restore into, a node snapshotted as root is restored onto it
+     * @return The restored nodes in the order they were written
+     * @throws IOException When reading fails or the stream is not a snapshot
+     */
+    public static List<Hyper> read(InputStream in, Hyper root) throws IOException {
+        Reader reader = new Reader(in, root);
+        List<Hyper> nodes = new ArrayList<Hyper>();
+        Hyper node;
+        while ((node = reader.read()) != null) {
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
+    /**
+     * Writes nodes one at a time
+     */
+    public static class Writer implements Closeable {
+
+        private final DataOutputStream mOut;
+
+        /**
+         * Reused between nodes
+         */
+        private final ByteArrayOutputStream mBuffer = new ByteArrayOutputStream();
+
+        private boolean mFinished;
+
+        public Writer(OutputStream out) throws IOException {
+            mOut = new DataOutputStream(out);
+            mOut.writeInt(MAGIC);
+            mOut.writeInt(VERSION);
+        }
+
+        /**
+         * Write a node and its data
+         *
+         * @param node Node to write
+         * @throws IOException When writing fails
+         */
+        public void write(Hyper node) throws IOException {
+            URL href = node.getHref();
+            Data data = node.getData();
+            String eTag = node.getETag();
+            int flags = (href != null ? FLAG_HREF : 0)
+                | (node.isFetched() ? FLAG_FETCHED : 0)
+                | (data != null ? FLAG_DATA : 0)
+                | (isJson(data) ? FLAG_JSON : 0)
+                | (eTag != null ? FLAG_ETAG : 0)
+                | (node.isPartial() ? FLAG_PARTIAL : 0);
+
+            // segments from the root down, the root itself has none
+            LinkedList<String> segments = new LinkedList<String>();
+            for (Hyper child = node; child.getParent() != null; child = child.getParent()) {
+                segments.addFirst(child.getSegment());
+            }
+
+            mOut.writeByte(TAG_NODE);
+            mOut.writeByte(flags);
+            mOut.writeInt(segments.size());
+            for (String segment : segments) {
+                mOut.writeUTF(segment);
+            }
+            if (href != null) {
+                mOut.writeUTF(href.toExternalForm());
+            }
+            mOut.writeLong(node.getFetchedAt());
+            if (eTag != null) {
+                mOut.writeUTF(eTag);
+            }
+            if (data != null) {
+                mBuffer.reset();
+                MsgPackWriter writer = new MsgPackWriter(mBuffer);
+                writer.writeValue(data);
+                writer.flush();
+                mOut.writeInt(mBuffer.size());
+                mBuffer.writeTo(mOut);
+            }
+        }
+
+        /**
+         * Mark the end of the snapshot without closing the underlying stream
+         */
+        public void finish() throws IOException {
+            if (!mFinished) {
+                mFinished = true;
+                mOut.writeByte(TAG_END);
+                mOut.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            mOut.close();
+        }
+
+        private static boolean isJson(Data data) {
+            if (data instanceof LazyData) {
+                data = ((LazyData) data).getDecoded();
+            }
+            return data instanceof JsonData;
+        }
+    }
+
+    /**
+     * Reads nodes one at a time
+     */
+    public static class Reader {
+
+        private final DataInputStream mIn;
+        private final Hyper mRoot;
+
+        /**
+         * Nodes restored or rebuilt so far, by key path
+         */
+        private final Map<String, Hyper> mNodes = new HashMap<String, Hyper>();
+
+        private boolean mFinished;
+
+        /**
+         * @param in   Stream to read from
+         * @param root Root node to restore into
+         * @throws IOException When the stream is not a snapshot
+         */
+        public Reader(InputStream in, Hyper root) throws IOException {
+            mIn = new DataInputStream(in);
+            mRoot = root;
+            if (mIn.readInt() != MAGIC) {
+                throw new IOException("Not a Hyper snapshot");
+            }
+            int version = mIn.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported Hyper snapshot version: " + version);
+            }
+        }
+
+        /**
+         * Restore the next node. Its data is kept encoded until it is read from.
+         *
+         * @return The restored node, or null at the end of the snapshot
+         * @throws IOException When reading fails
+         */
+        public Hyper read() throws IOException {
+            if (mFinished) {
+                return null;
+            }
+            int tag = mIn.readByte();
+            if (tag == TAG_END) {
+                mFinished = true;
+                return null;
+            } else if (tag != TAG_NODE) {
+                throw new IOException("Corrupt Hyper snapshot");
+            }
+
+            int flags = mIn.readByte();
+            String[] segments = new String[mIn.readInt()];
+            for (int index = 0; index < segments.length; index++) {
+                segments[index] = mIn.readUTF();
+            }
+            String href = (flags & FLAG_HREF) != 0 ? mIn.readUTF() : null;
+            long fetchedAt = mIn.readLong();
+            String eTag = (flags & FLAG_ETAG) != 0 ? mIn.readUTF() : null;
+            Data data = null;
+            SnapshotDecoder decoder = null;
+            if ((flags & FLAG_DATA) != 0) {
+                byte[] encoded = new byte[mIn.readInt()];
+                mIn.readFully(encoded);
+                decoder = new SnapshotDecoder(encoded, (flags & FLAG_JSON) != 0);
+                data = new LazyData(decoder, decoder);
+            }
+
+            Hyper node;
+            if (segments.length == 0) {
+                node = mRoot;
+                node.setData(data);
+            } else {
+                String keyPath = keyPath(segments, segments.length);
+                node = mNodes.get(keyPath);
+                if (node == null) {
+                    Hyper parent = getNode(segments, segments.length - 1);
+                    node = parent.createHyperNodeFromData(parent, segments[segments.length - 1], data);
+                    mNodes.put(keyPath, node);
+                } else {
+                    // rebuilt as the parent of a node written before it
+                    node.setData(data);
+                }
+            }
+            node.setHref(href == null ? null : new URL(href));
+            node.setFetched((flags & FLAG_FETCHED) != 0);
+            node.setFetchedAt(fetchedAt);
+            node.setETag(eTag, (flags & FLAG_PARTIAL) != 0);
+            if (decoder != null) {
+                decoder.mNode = node;
+            }
+            return node;
+        }
+
+        /**
+         * Get the node at the first count segments, rebuilding it from the data embedded in its
+         * parent when it was not restored. The embedded data is looked up once it is read from,
+         * so the parent may be restored after it.
+         */
+        private Hyper getNode(String[] segments, int count) {
+            if (count == 0) {
+                return mRoot;
+            }
+            String keyPath = keyPath(segments, count);
+            Hyper node = mNodes.get(keyPath);
+            if (node == null) {
+                Hyper parent = getNode(segments, count - 1);
+                String segment = segments[count - 1];
+                node = parent.createHyperNodeFromData(parent, segment, new LazyData(new EmbeddedDecoder(parent, segment)));
+                mNodes.put(keyPath, node);
+            }
+            return node;
+        }
+
+        private static String keyPath(String[] segments, int count) {
+            String keyPath = null;
+            for (int index = 0; index < count; index++) {
+                keyPath = Hyper.KeyPath.concat(keyPath, segments[index]);
+            }
+            return keyPath;
+        }
+    }
+
+    /**
+     * Looks up the data a rebuilt node has embedded in its parent
+     */
+    private static class EmbeddedDecoder implements LazyData.Decoder {
+
+        private final Hyper mParent;
+        private final String mSegment;
+
+        EmbeddedDecoder(Hyper parent, String segment) {
+            mParent = parent;
+            mSegment = segment;
+        }
+
+        /**
+         * @return Data embedded in the parent under the segment as a key or collection index, or null
+         */
+        @Override
+        public Data decode() {
+            Data data = mParent.getData();
+            if (data == null) {
+                return null;
+            }
+            Object value = null;
+            try {
+                if (data.hasProperty(mSegment)) {
+                    value = data.getProperty(mSegment);
+                } else if (data.hasProperty(DataSnapshot.KEY_COLLECTION)) {
+                    List<Object> collection = data.getCollection();
+                    int index = Integer.parseInt(mSegment, 10);
+                    if (index >= 0 && index < collection.size()) {
+                        value = collection.get(index);
+                    }
+                }
+            } catch (HyperException ex) {
+                // nothing usable embedded
+            } catch (NumberFormatException ex) {
+                // not an index
+            }
+            if (value instanceof Data) {
+                return (Data) value;
+            } else if (value != null && mParent.isRawData(value)) {
+                return mParent.createDataFromRawData(value);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Decodes snapshotted data, back into org.json types if that is what it was, and has the node
+     * fetch it again if it can not
+     */
+    private static class SnapshotDecoder implements LazyData.Decoder, LazyData.Listener {
+
+        private final byte[] mEncoded;
+        private final boolean mJson;
+
+        /**
+         * Node restored with the data
+         */
+        volatile Hyper mNode;
+
+        SnapshotDecoder(byte[] encoded, boolean json) {
+            mEncoded = encoded;
+            mJson = json;
+        }
+
+        @Override
+        public Data decode() throws DataParseException {
+            Object value = new MsgPackReader(mEncoded).readValue();
+            if (!(value instanceof MsgPackData)) {
+                throw new DataParseException("Snapshot data is not a map");
+            }
+            if (!mJson) {
+                return (MsgPackData) value;
+            }
+            try {
+                return new JsonData((JSONObject) toJson(value));
+            } catch (JSONException ex) {
+                throw new DataParseException("Error restoring JSON", ex);
+            }
+        }
+
+        @Override
+        public void onDecodeFailed(DataParseException ex) {
+            Hyper node = mNode;
+            if (node != null) {
+                node.onDecodeFailed(ex);
+            }
+        }
+
+        private static Object toJson(Object value) throws JSONException {
+            if (value == null) {
+                return JSONObject.NULL;
+            } else if (value instanceof Data) {
+                Data data = (Data) value;
+                JSONObject json = new JSONObject();
+                for (String key : data.getKeys()) {
+                    try {
+                        json.put(key, toJson(data.getProperty(key)));
+                    } catch (MissingPropertyException ex) {
+                        // un-hittable, the key came from the data itself
+                    }
+                }
+                return json;
+            } else if (value instanceof List) {
+                JSONArray json = new JSONArray();
+                for (Object item : (List<?>) value) {
+                    json.put(toJson(item));
+                }
+                return json;
+            } else {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package io.hypergroup.hyper;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Demand accounting and serialized signalling shared by the publishers of a Hyper node.
+ * <br/>
+ * Subclasses emit from {@link #emit()}, which never runs concurrently with itself, and only
+ * call onNext while {@link #getRequested()} is positive.
+ */
+/* default */ abstract class HyperSubscription<T> implements Subscription {
+
+    protected final Subscriber<? super T> mSubscriber;
+
+    private final AtomicLong mRequested = new AtomicLong();
+
+    /**
+     * Number of times emission was asked for while it was already running
+     */
+    private final AtomicInteger mWip = new AtomicInteger();
+
+    private volatile boolean mCancelled;
+
+    private volatile Throwable mRequestError;
+
+    /**
+     * Set once onComplete or onError was signalled, only touched from emit
+     */
+    private boolean mDone;
+
+    /* default */ HyperSubscription(Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber may not be null");
+        }
+        mSubscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            mRequestError = new IllegalArgumentException("Non-positive request: " + n);
+        } else {
+            long current;
+            long next;
+            do {
+                current = mRequested.get();
+                next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            } while (!mRequested.compareAndSet(current, next));
+        }
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        if (!mCancelled) {
+            mCancelled = true;
+            onCancel();
+        }
+    }
+
+    /**
+     * Run emit, or have the emitting thread run it again
+     */
+    protected void drain() {
+        if (mWip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            if (!mCancelled && !mDone) {
+                if (mRequestError != null) {
+                    signalError(mRequestError);
+                } else {
+                    emit();
+                }
+            }
+            missed = mWip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Deliver what can be delivered, called serially
+     */
+    protected abstract void emit();
+
+    /**
+     * Release resources, called once when cancelled or terminated
+     */
+    protected abstract void onCancel();
+
+    protected boolean isCancelled() {
+        return mCancelled;
+    }
+
+    protected long getRequested() {
+        return mRequested.get();
+    }
+
+    /**
+     * Signal onNext and consume one unit of demand, only call from emit
+     */
+    protected void signalNext(T value) {
+        if (mRequested.get() != Long.MAX_VALUE) {
+            mRequested.decrementAndGet();
+        }
+        mSubscriber.onNext(value);
+    }
+
+    /**
+     * Signal onComplete, only call from emit
+     */
+    protected void signalComplete() {
+        mDone = true;
+        cancel();
+        mSubscriber.onComplete();
+    }
+
+    /**
+     * Signal onError, only call from emit
+     */
+    protected void signalError(Throwable error) {
+        mDone = true;
+        cancel();
+        mSubscriber.onError(error);
+    }
+}
@@ -0,0 +1,17 @@
+package io.hypergroup.hyper;
+
+/**
+ * Receives the items of a collection one at a time, while the response is still being read
+ *
+ * @see Hyper#each(ItemCallback)
+ */
+public interface ItemCallback<T> {
+
+    /**
+     * Called on the fetching thread as soon as an item has been parsed
+     *
+     * @param index Index of the item in the collection
+     * @param item  The item, null items included
+     */
+    public void onItem(int index, T item);
+}
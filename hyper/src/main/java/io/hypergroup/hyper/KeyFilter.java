@@ -0,0 +1,166 @@
+package io.hypergroup.hyper;
+
+import org.json.JSONObject;
+
+/**
+ * A comparison of the value at a key path of collection items, as in users[first_name=Matt]
+ * <br/>
+ * Supports =, &lt;, &lt;=, &gt; and &gt;=. Values are compared as booleans, numbers or strings,
+ * whichever they look like, so 10 matches both 10 and "10.0", and only values of the same kind
+ * are ordered against each other.
+ */
+/* default */ class KeyFilter {
+
+    /* default */ enum Operator {
+        EQUAL, LESS, LESS_OR_EQUAL, GREATER, GREATER_OR_EQUAL
+    }
+
+    /* default */ final String keyPath;
+    /* default */ final Operator operator;
+
+    /**
+     * Normalized value to compare to
+     */
+    /* default */ final Object value;
+
+    /**
+     * The expression as written, without brackets
+     */
+    /* default */ final String expression;
+
+    private KeyFilter(String expression, String keyPath, Operator operator, Object value) {
+        this.expression = expression;
+        this.keyPath = keyPath;
+        this.operator = operator;
+        this.value = value;
+    }
+
+    /**
+     * @param expression A comparison such as first_name=Matt or age&gt;=21
+     * @return The parsed filter, or null if the expression is not a comparison
+     */
+    /* default */ static KeyFilter parse(String expression) {
+        for (int index = 0; index < expression.length(); index++) {
+            char c = expression.charAt(index);
+            if (c != '=' && c != '<' && c != '>') {
+                continue;
+            }
+            boolean orEqual = c != '=' && index + 1 < expression.length() && expression.charAt(index + 1) == '=';
+            Operator operator;
+            if (c == '=') {
+                operator = Operator.EQUAL;
+            } else if (c == '<') {
+                operator = orEqual ? Operator.LESS_OR_EQUAL : Operator.LESS;
+            } else {
+                operator = orEqual ? Operator.GREATER_OR_EQUAL : Operator.GREATER;
+            }
+            String keyPath = expression.substring(0, index).trim();
+            String value = expression.substring(index + (orEqual ? 2 : 1)).trim();
+            if (keyPath.length() == 0) {
+                return null;
+            }
+            return new KeyFilter(expression, keyPath, operator, normalize(value));
+        }
+        return null;
+    }
+
+    /**
+     * @param raw Value found at the key path of an item
+     * @return Whether or not the item passes the filter
+     */
+    /* default */ boolean matches(Object raw) {
+        Object normalized = normalize(raw);
+        if (normalized == null || rank(normalized) != rank(value)) {
+            return false;
+        }
+        int comparison = compare(normalized, value);
+        switch (operator) {
+            case LESS:
+                return comparison < 0;
+            case LESS_OR_EQUAL:
+                return comparison <= 0;
+            case GREATER:
+                return comparison > 0;
+            case GREATER_OR_EQUAL:
+                return comparison >= 0;
+            default:
+                return comparison == 0;
+        }
+    }
+
+    /**
+     * Turn a value into a Boolean, a Long, a Double or a String, whichever it looks like. Integral
+     * numbers always become Longs, so that equal numbers are equal objects.
+     *
+     * @return The normalized value, or null for null
+     */
+    /* default */ static Object normalize(Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            return null;
+        } else if (value instanceof Boolean) {
+            return value;
+        } else if (value instanceof Number) {
+            return normalize((Number) value);
+        }
+        String string = value.toString();
+        if ("true".equals(string) || "false".equals(string)) {
+            return Boolean.valueOf(string);
+        }
+        if (string.length() > 0 && (Character.isDigit(string.charAt(0)) || string.charAt(0) == '-' || string.charAt(0) == '.')) {
+            try {
+                return Long.parseLong(string);
+            } catch (NumberFormatException ex) {
+                // not an integer
+            }
+            try {
+                return normalize(Double.parseDouble(string));
+            } catch (NumberFormatException ex) {
+                // not a number at all
+            }
+        }
+        return string;
+    }
+
+    private static Object normalize(Number number) {
+        if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+            return number.longValue();
+        }
+        double d = number.doubleValue();
+        if (d == Math.rint(d) && Math.abs(d) < (1L << 53)) {
+            return (long) d;
+        }
+        return d;
+    }
+
+    /**
+     * Order of the kinds of normalized values: booleans, numbers, strings
+     */
+    /* default */ static int rank(Object normalized) {
+        if (normalized instanceof Boolean) {
+            return 0;
+        } else if (normalized instanceof Number) {
+            return 1;
+        }
+        return 2;
+    }
+
+    /**
+     * Compare two normalized values, by kind first
+     */
+    /* default */ static int compare(Object a, Object b) {
+        int rank = rank(a) - rank(b);
+        if (rank != 0) {
+            return rank;
+        } else if (a instanceof Boolean) {
+            return (Boolean) a == (Boolean) b ? 0 : ((Boolean) a ? 1 : -1);
+        } else if (a instanceof Number) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        return ((String) a).compareTo((String) b);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + expression + "]";
+    }
+}
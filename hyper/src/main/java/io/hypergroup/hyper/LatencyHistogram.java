@@ -0,0 +1,70 @@
+package io.hypergroup.hyper;
+
+import java.util.Arrays;
+
+/**
+ * The most recent latencies of a kind of request, to read percentiles from
+ */
+public class LatencyHistogram {
+
+    /**
+     * Default number of latencies kept
+     */
+    public static final int DEFAULT_SIZE = 256;
+
+    private final long[] mSamples;
+
+    /**
+     * Number of latencies recorded, of which the last mSamples.length are kept
+     */
+    private long mCount;
+
+    /**
+     * Sorted copy of the samples, null once a sample is recorded after it was made
+     */
+    private long[] mSorted;
+
+    public LatencyHistogram() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * @param size Number of latencies kept
+     */
+    public LatencyHistogram(int size) {
+        mSamples = new long[size];
+    }
+
+    /**
+     * @param millis Latency of a request
+     */
+    public synchronized void record(long millis) {
+        mSamples[(int) (mCount % mSamples.length)] = millis;
+        mCount++;
+        mSorted = null;
+    }
+
+    /**
+     * @return Number of latencies recorded so far
+     */
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @param percentile Between 0 and 1, such as 0.95
+     * @return The latency that many of the kept latencies are at or below, -1 when there are none
+     */
+    public synchronized long getPercentile(double percentile) {
+        int size = (int) Math.min(mCount, mSamples.length);
+        if (size == 0) {
+            return -1;
+        }
+        if (mSorted == null) {
+            mSorted = Arrays.copyOf(mSamples, size);
+            Arrays.sort(mSorted);
+        }
+        int index = (int) Math.ceil(percentile * size) - 1;
+        return mSorted[Math.max(0, Math.min(size - 1, index))];
+    }
+}
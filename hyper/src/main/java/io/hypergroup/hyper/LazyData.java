@@ -0,0 +1,207 @@
+package io.hypergroup.hyper;
+
+import android.util.Log;
+
+import java.net.URL;
+import java.util.List;
+
+import io.hypergroup.hyper.exception.DataParseException;
+import io.hypergroup.hyper.exception.InvalidCollectionException;
+import io.hypergroup.hyper.exception.MissingPropertyException;
+import io.hypergroup.hyper.exception.NoHrefException;
+import io.hypergroup.hyper.exception.WrongDataTypeException;
+
+/**
+ * Data that is decoded the first time it is read.
+ * <br/>
+ * Used for stored responses, so that nodes can be restored without parsing bodies that are never
+ * looked at. A body that fails to decode behaves like empty data, and its Listener is told so that
+ * the node can fetch it again.
+ */
+public class LazyData implements Data {
+
+    /**
+     * Tag for logging
+     */
+    private static final String TAG = LazyData.class.getSimpleName();
+
+    /**
+     * Produces the real Data
+     */
+    public interface Decoder {
+
+        /**
+         * @return The decoded Data
+         * @throws DataParseException When decoding fails
+         */
+        public Data decode() throws DataParseException;
+    }
+
+    /**
+     * Told when the data turns out not to decode
+     */
+    public interface Listener {
+
+        /**
+         * Called once, on the thread that first read the data, outside of its lock
+         *
+         * @param ex Why decoding failed
+         */
+        public void onDecodeFailed(DataParseException ex);
+    }
+
+    /**
+     * Decoder, dropped once it has been used
+     */
+    private transient Decoder mDecoder;
+
+    /**
+     * Decoded data, null until first use or if decoding failed
+     */
+    private Data mData;
+
+    /**
+     * Told if decoding fails, may be null
+     */
+    private final Listener mListener;
+
+    public LazyData(Decoder decoder) {
+        this(decoder, null);
+    }
+
+    public LazyData(Decoder decoder, Listener listener) {
+        mDecoder = decoder;
+        mListener = listener;
+    }
+
+    /**
+     * @return Whether or not the data has been decoded yet
+     */
+    public synchronized boolean isDecoded() {
+        return mDecoder == null;
+    }
+
+    /**
+     * Decode the data if that hasn't happened yet
+     *
+     * @return The decoded data or null if it could not be decoded
+     */
+    public Data getDecoded() {
+        Data data;
+        DataParseException failure = null;
+        synchronized (this) {
+            if (mDecoder != null) {
+                try {
+                    mData = mDecoder.decode();
+                } catch (DataParseException ex) {
+                    failure = ex;
+                }
+                mDecoder = null;
+            }
+            data = mData;
+        }
+        if (failure != null) {
+            if (mListener != null) {
+                mListener.onDecodeFailed(failure);
+            } else {
+                Log.e(TAG, "Error decoding data", failure);
+            }
+        }
+        return data;
+    }
+
+    @Override
+    public boolean hasProperty(String key) {
+        Data data = getDecoded();
+        return data != null && data.hasProperty(key);
+    }
+
+    @Override
+    public Object getProperty(String key) throws MissingPropertyException {
+        Data data = getDecoded();
+        if (data == null) {
+            throw new MissingPropertyException("Property not found: " + key);
+        }
+        return data.getProperty(key);
+    }
+
+    @Override
+    public int getInt(String key) throws MissingPropertyException, WrongDataTypeException {
+        return getDecodedOrThrow(key).getInt(key);
+    }
+
+    @Override
+    public long getLong(String key) throws MissingPropertyException, WrongDataTypeException {
+        return getDecodedOrThrow(key).getLong(key);
+    }
+
+    @Override
+    public double getDouble(String key) throws MissingPropertyException, WrongDataTypeException {
+        return getDecodedOrThrow(key).getDouble(key);
+    }
+
+    @Override
+    public boolean getBoolean(String key) throws MissingPropertyException, WrongDataTypeException {
+        return getDecodedOrThrow(key).getBoolean(key);
+    }
+
+    @Override
+    public NumberArray getNumberArray(String key) throws MissingPropertyException, WrongDataTypeException {
+        return getDecodedOrThrow(key).getNumberArray(key);
+    }
+
+    private Data getDecodedOrThrow(String key) throws MissingPropertyException {
+        Data data = getDecoded();
+        if (data == null) {
+            throw new MissingPropertyException("Property not found: " + key);
+        }
+        return data;
+    }
+
+    @Override
+    public List<Object> getCollection() throws InvalidCollectionException {
+        Data data = getDecoded();
+        if (data == null) {
+            throw new InvalidCollectionException("Collection not found");
+        }
+        return data.getCollection();
+    }
+
+    @Override
+    public URL getHref(URL base) throws NoHrefException {
+        Data data = getDecoded();
+        if (data == null) {
+            throw new NoHrefException("Valid href not found");
+        }
+        return data.getHref(base);
+    }
+
+    @Override
+    public String getRawHref() throws NoHrefException {
+        Data data = getDecoded();
+        if (data == null) {
+            throw new NoHrefException("Valid href not found");
+        }
+        return data.getRawHref();
+    }
+
+    @Override
+    public String[] getKeys() {
+        Data data = getDecoded();
+        if (data == null) {
+            return new String[0];
+        }
+        return data.getKeys();
+    }
+
+    @Override
+    public synchronized void merge(Data data) {
+        Data decoded = getDecoded();
+        if (decoded == null) {
+            // nothing to merge into, take the new data as is
+            mData = data;
+        } else {
+            decoded.merge(data);
+        }
+    }
+}
@@ -0,0 +1,463 @@
+package io.hypergroup.hyper;
+
+import android.util.Log;
+
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import bolts.Task;
+import io.hypergroup.hyper.exception.NoHrefException;
+
+/**
+ * Keeps subscribed Hyper nodes up to date with changes their server pushes over Server-Sent
+ * Events, instead of polling them.
+ * <br/>
+ * There is one stream per host, at the same path on every host, shared by every node subscribed
+ * on that host. Each change event carries JSON naming the href that changed:
+ * <pre>
+ *     id: 42
+ *     event: change
+ *     data: {"href": "/users/1", "etag": "\"v2\"", "data": {...}}
+ * </pre>
+ * A change with "data" is merged into the subscribed nodes as if it had been fetched. A change with
+ * a "patch" in one of the DeltaUpdates "format"s, against the "base" ETag the node holds, is
+ * applied in place. Any other change fetches the nodes again with a conditional request, and a
+ * change to the "etag" a node already holds is skipped. Streams reconnect with Last-Event-ID, after
+ * the delay the server asks for, backing off while the host is unreachable.
+ *
+ * @see Hyper#subscribe()
+ */
+public class LiveUpdates {
+
+    /**
+     * Tag for logging
+     */
+    private static final String TAG = LiveUpdates.class.getSimpleName();
+
+    /**
+     * Default path of the event stream on every host
+     */
+    public static final String DEFAULT_PATH = "/events";
+
+    /**
+     * Default delay before reconnecting, until the server asks for another
+     */
+    public static final long DEFAULT_RETRY_MILLIS = 3000;
+
+    /**
+     * Longest delay before reconnecting to a host that can not be reached
+     */
+    public static final long MAX_RETRY_MILLIS = 60000;
+
+    public static final String HEADER_LAST_EVENT_ID = "Last-Event-ID";
+
+    private static final String HEADER_ACCEPT = "Accept";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String CONTENT_TYPE_EVENT_STREAM = "text/event-stream";
+    private static final String NO_CACHE = "no-cache";
+
+    private static final String EVENT_CHANGE = "change";
+    private static final String EVENT_MESSAGE = "message";
+
+    private static final String KEY_HREF = "href";
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_BASE = "base";
+    private static final String KEY_DATA = "data";
+    private static final String KEY_PATCH = "patch";
+    private static final String KEY_FORMAT = "format";
+
+    private static final MediaType MEDIA_TYPE_JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private final String mPath;
+    private final long mRetryMillis;
+
+    /**
+     * Open streams by host
+     */
+    private final Map<String, Stream> mStreams = new HashMap<String, Stream>();
+
+    public LiveUpdates() {
+        this(DEFAULT_PATH, DEFAULT_RETRY_MILLIS);
+    }
+
+    /**
+     * @param path        Path of the event stream on every host
+     * @param retryMillis Delay before reconnecting, until the server asks for another
+     */
+    public LiveUpdates(String path, long retryMillis) {
+        mPath = path;
+        mRetryMillis = retryMillis;
+    }
+
+    /**
+     * Subscribe a node, opening the stream for its host if it is the first
+     *
+     * @param node Node to keep up to date
+     * @param href Href of the node
+     * @return The subscription
+     * @throws NoHrefException When the stream's URL can not be built from the href
+     */
+    /* default */ synchronized Subscription subscribe(Hyper node, URL href) throws NoHrefException {
+        String host = href.getAuthority();
+        Stream stream = mStreams.get(host);
+        if (stream == null) {
+            URL endpoint;
+            try {
+                endpoint = new URL(href, mPath);
+            } catch (MalformedURLException ex) {
+                throw new NoHrefException("Invalid event stream for " + href, ex);
+            }
+            stream = new Stream(host, endpoint, node.getContext());
+            mStreams.put(host, stream);
+            stream.start();
+        }
+        Subscription subscription = new Subscription(stream, href.toString(), node);
+        stream.add(subscription);
+        return subscription;
+    }
+
+    private synchronized void unsubscribe(Subscription subscription) {
+        Stream stream = subscription.mStream;
+        if (stream.remove(subscription) && mStreams.get(stream.mHost) == stream) {
+            // nobody left on the host
+            mStreams.remove(stream.mHost);
+            stream.close();
+        }
+    }
+
+    /**
+     * Close every stream, subscriptions stop receiving changes
+     */
+    public synchronized void close() {
+        for (Stream stream : mStreams.values()) {
+            stream.close();
+        }
+        mStreams.clear();
+    }
+
+    /**
+     * @return Number of open streams, one per host with subscriptions
+     */
+    public synchronized int getStreamCount() {
+        return mStreams.size();
+    }
+
+    /**
+     * A node kept up to date, until cancelled
+     */
+    public class Subscription {
+
+        private final Stream mStream;
+        private final String mHref;
+        private final Hyper mNode;
+        private volatile boolean mCancelled;
+
+        private Subscription(Stream stream, String href, Hyper node) {
+            mStream = stream;
+            mHref = href;
+            mNode = node;
+        }
+
+        public Hyper getNode() {
+            return mNode;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * Stop receiving changes, closing the host's stream if this was its last subscription
+         */
+        public void cancel() {
+            if (!mCancelled) {
+                mCancelled = true;
+                unsubscribe(this);
+            }
+        }
+    }
+
+    /**
+     * The event stream of one host, read on its own thread
+     */
+    private class Stream implements Runnable {
+
+        private final String mHost;
+        private final URL mEndpoint;
+        private final HyperContext mContext;
+        private final OkHttpClient mClient;
+
+        /**
+         * Subscriptions by href
+         */
+        private final Map<String, List<Subscription>> mSubscriptions = new HashMap<String, List<Subscription>>();
+
+        /**
+         * Nodes being fetched again, and whether another change arrived meanwhile
+         */
+        private final Map<Hyper, Boolean> mRefreshing = new IdentityHashMap<Hyper, Boolean>();
+
+        private final Thread mThread;
+        private volatile boolean mClosed;
+        private volatile Call mCall;
+
+        /**
+         * Only touched by the stream's thread
+         */
+        private String mLastEventId;
+        private long mRetry = mRetryMillis;
+        private int mFailures;
+
+        Stream(String host, URL endpoint, HyperContext context) {
+            mHost = host;
+            mEndpoint = endpoint;
+            mContext = context;
+            // events may be far apart
+            mClient = context.getHttpClient().clone();
+            mClient.setReadTimeout(0, TimeUnit.MILLISECONDS);
+            mThread = new Thread(this, "hyper-live-" + host);
+            mThread.setDaemon(true);
+        }
+
+        void start() {
+            mThread.start();
+        }
+
+        synchronized void add(Subscription subscription) {
+            List<Subscription> subscriptions = mSubscriptions.get(subscription.mHref);
+            if (subscriptions == null) {
+                subscriptions = new ArrayList<Subscription>(1);
+                mSubscriptions.put(subscription.mHref, subscriptions);
+            }
+            subscriptions.add(subscription);
+        }
+
+        /**
+         * @return Whether or not the stream has no subscriptions left
+         */
+        synchronized boolean remove(Subscription subscription) {
+            List<Subscription> subscriptions = mSubscriptions.get(subscription.mHref);
+            if (subscriptions != null && subscriptions.remove(subscription) && subscriptions.isEmpty()) {
+                mSubscriptions.remove(subscription.mHref);
+            }
+            return mSubscriptions.isEmpty();
+        }
+
+        void close() {
+            mClosed = true;
+            Call call = mCall;
+            if (call != null) {
+                call.cancel();
+            }
+            mThread.interrupt();
+        }
+
+        @Override
+        public void run() {
+            while (!mClosed) {
+                try {
+                    read();
+                    mFailures = 0;
+                } catch (IOException ex) {
+                    if (mClosed) {
+                        break;
+                    }
+                    mFailures++;
+                    Log.w(TAG, "Lost " + mEndpoint, ex);
+                }
+                // the server asks for a delay, an unreachable host gets a longer one every time
+                long delay = mFailures == 0 ? mRetry : Math.min(MAX_RETRY_MILLIS, mRetry << Math.min(mFailures, 10));
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ex) {
+                    break;
+                }
+                if (!mClosed) {
+                    mContext.getMetrics().onLiveReconnect();
+                }
+            }
+        }
+
+        /**
+         * Connect and dispatch events until the stream ends
+         *
+         * @throws IOException When the stream can not be opened or breaks
+         */
+        private void read() throws IOException {
+            Request.Builder builder = new Request.Builder()
+                .url(mEndpoint)
+                .header(HEADER_ACCEPT, CONTENT_TYPE_EVENT_STREAM)
+                .header(HEADER_CACHE_CONTROL, NO_CACHE);
+            if (mLastEventId != null) {
+                // pick up where we left off
+                builder.header(HEADER_LAST_EVENT_ID, mLastEventId);
+            }
+            Call call = mClient.newCall(builder.build());
+            mCall = call;
+            if (mClosed) {
+                return;
+            }
+            Log.v(TAG, ">>> " + mEndpoint + " (live)");
+            Response response = call.execute();
+            try {
+                if (!response.isSuccessful()) {
+                    throw new IOException("HTTP " + response.code() + " opening " + mEndpoint);
+                }
+                BufferedReader reader = new BufferedReader(new InputStreamReader(response.body().byteStream(), "UTF-8"));
+                String event = null;
+                StringBuilder data = null;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() == 0) {
+                        // a blank line ends the event
+                        if (data != null) {
+                            dispatch(event, data.toString());
+                        }
+                        event = null;
+                        data = null;
+                        continue;
+                    }
+                    if (line.charAt(0) == ':') {
+                        // a comment, keeps the connection alive
+                        continue;
+                    }
+                    int colon = line.indexOf(':');
+                    String field = colon == -1 ? line : line.substring(0, colon);
+                    String value = colon == -1 ? "" : line.substring(colon + 1);
+                    if (value.startsWith(" ")) {
+                        value = value.substring(1);
+                    }
+                    if ("data".equals(field)) {
+                        data = data == null ? new StringBuilder(value) : data.append('\n').append(value);
+                    } else if ("event".equals(field)) {
+                        event = value;
+                    } else if ("id".equals(field)) {
+                        mLastEventId = value;
+                    } else if ("retry".equals(field)) {
+                        try {
+                            mRetry = Long.parseLong(value);
+                        } catch (NumberFormatException ex) {
+                            // ignored, as the spec says
+                        }
+                    }
+                }
+            } finally {
+                Hyper.closeQuietly(response.body());
+            }
+        }
+
+        /**
+         * Route a change to the nodes subscribed to its href
+         */
+        private void dispatch(String event, String data) {
+            if (event != null && !EVENT_CHANGE.equals(event) && !EVENT_MESSAGE.equals(event)) {
+                return;
+            }
+            mContext.getMetrics().onLiveEvent();
+            JSONObject change;
+            URL href;
+            try {
+                change = new JSONObject(data);
+                href = new URL(mEndpoint, change.getString(KEY_HREF));
+            } catch (JSONException ex) {
+                Log.w(TAG, "Invalid change from " + mEndpoint + ": " + data, ex);
+                return;
+            } catch (MalformedURLException ex) {
+                Log.w(TAG, "Invalid href from " + mEndpoint + ": " + data, ex);
+                return;
+            }
+            List<Subscription> subscriptions;
+            synchronized (this) {
+                subscriptions = mSubscriptions.get(href.toString());
+                if (subscriptions == null) {
+                    return;
+                }
+                subscriptions = new ArrayList<Subscription>(subscriptions);
+            }
+            for (Subscription subscription : subscriptions) {
+                apply(subscription.mNode, change);
+            }
+        }
+
+        private void apply(Hyper node, JSONObject change) {
+            String eTag = change.has(KEY_ETAG) ? change.optString(KEY_ETAG) : null;
+            if (eTag != null && eTag.equals(node.getETag())) {
+                // already current
+                return;
+            }
+            try {
+                Object data = change.opt(KEY_DATA);
+                if (data instanceof JSONObject && node.applyPushedData(MEDIA_TYPE_JSON, data.toString().getBytes("UTF-8"), eTag)) {
+                    return;
+                }
+                Object patch = change.opt(KEY_PATCH);
+                String base = change.has(KEY_BASE) ? change.optString(KEY_BASE) : null;
+                String format = change.has(KEY_FORMAT) ? change.optString(KEY_FORMAT) : DeltaUpdates.JSON_PATCH;
+                if (patch != null && (base == null || base.equals(node.getETag()))
+                    && node.applyPushedDelta(format, MEDIA_TYPE_JSON, patch.toString().getBytes("UTF-8"), eTag)) {
+                    return;
+                }
+            } catch (IOException ex) {
+                // UTF-8 is always there
+                Log.w(TAG, "Unable to apply change to " + node, ex);
+            }
+            refresh(node);
+        }
+
+        /**
+         * Fetch a node again on the async executor, once more if it changes again meanwhile
+         */
+        private void refresh(final Hyper node) {
+            synchronized (mRefreshing) {
+                if (mRefreshing.containsKey(node)) {
+                    mRefreshing.put(node, Boolean.TRUE);
+                    return;
+                }
+                mRefreshing.put(node, Boolean.FALSE);
+            }
+            Task.call(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    do {
+                        try {
+                            node.refresh();
+                        } catch (Exception ex) {
+                            Log.w(TAG, "Unable to refresh " + node, ex);
+                        }
+                    } while (isChangedAgain(node));
+                    return null;
+                }
+            }, mContext.getAsyncExecutor());
+        }
+
+        private boolean isChangedAgain(Hyper node) {
+            synchronized (mRefreshing) {
+                if (Boolean.TRUE.equals(mRefreshing.get(node))) {
+                    mRefreshing.put(node, Boolean.FALSE);
+                    return true;
+                }
+                mRefreshing.remove(node);
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package io.hypergroup.hyper;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list of numbers backed by a primitive array.
+ * <br/>
+ * Homogeneous numeric arrays are stored as int[], long[] or double[], whichever is the narrowest
+ * that holds every item. The typed getters read without boxing, List.get boxes on demand.
+ */
+public abstract class NumberArray extends AbstractList<Number> implements RandomAccess, Serializable {
+
+    private NumberArray() {
+    }
+
+    public static NumberArray of(int[] values) {
+        return new IntArray(values);
+    }
+
+    public static NumberArray of(long[] values) {
+        return new LongArray(values);
+    }
+
+    public static NumberArray of(double[] values) {
+        return new DoubleArray(values);
+    }
+
+    /**
+     * Copy a list of boxed numbers into the narrowest primitive array
+     *
+     * @param items Items to copy
+     * @return The items as a NumberArray, or null if any item is not an Integer, Long or Double
+     */
+    public static NumberArray copyOf(List<?> items) {
+        if (items instanceof NumberArray) {
+            return (NumberArray) items;
+        }
+        boolean wide = false;
+        boolean floating = false;
+        int N = items.size();
+        for (int index = 0; index < N; index++) {
+            Object item = items.get(index);
+            if (item instanceof Double || item instanceof Float) {
+                floating = true;
+            } else if (item instanceof Long) {
+                wide = true;
+            } else if (!(item instanceof Integer || item instanceof Short || item instanceof Byte)) {
+                return null;
+            }
+        }
+        if (floating) {
+            double[] values = new double[N];
+            for (int index = 0; index < N; index++) {
+                values[index] = ((Number) items.get(index)).doubleValue();
+            }
+            return of(values);
+        } else if (wide) {
+            long[] values = new long[N];
+            for (int index = 0; index < N; index++) {
+                values[index] = ((Number) items.get(index)).longValue();
+            }
+            return of(values);
+        } else {
+            int[] values = new int[N];
+            for (int index = 0; index < N; index++) {
+                values[index] = ((Number) items.get(index)).intValue();
+            }
+            return of(values);
+        }
+    }
+
+    public abstract int getInt(int index);
+
+    public abstract long getLong(int index);
+
+    public abstract double getDouble(int index);
+
+    /**
+     * @return Whether or not the items are stored as floating point values
+     */
+    public abstract boolean isFloatingPoint();
+
+    /**
+     * @return A copy of the items as ints, truncating wider values
+     */
+    public int[] toIntArray() {
+        int[] values = new int[size()];
+        for (int index = 0; index < values.length; index++) {
+            values[index] = getInt(index);
+        }
+        return values;
+    }
+
+    /**
+     * @return A copy of the items as longs
+     */
+    public long[] toLongArray() {
+        long[] values = new long[size()];
+        for (int index = 0; index < values.length; index++) {
+            values[index] = getLong(index);
+        }
+        return values;
+    }
+
+    /**
+     * @return A copy of the items as doubles
+     */
+    public double[] toDoubleArray() {
+        double[] values = new double[size()];
+        for (int index = 0; index < values.length; index++) {
+            values[index] = getDouble(index);
+        }
+        return values;
+    }
+
+    private static final class IntArray extends NumberArray {
+
+        private final int[] mValues;
+
+        IntArray(int[] values) {
+            mValues = values;
+        }
+
+        @Override
+        public Number get(int index) {
+            return mValues[index];
+        }
+
+        @Override
+        public int size() {
+            return mValues.length;
+        }
+
+        @Override
+        public int getInt(int index) {
+            return mValues[index];
+        }
+
+        @Override
+        public long getLong(int index) {
+            return mValues[index];
+        }
+
+        @Override
+        public double getDouble(int index) {
+            return mValues[index];
+        }
+
+        @Override
+        public boolean isFloatingPoint() {
+            return false;
+        }
+
+        @Override
+        public int[] toIntArray() {
+            return mValues.clone();
+        }
+    }
+
+    private static final class LongArray extends NumberArray {
+
+        private final long[] mValues;
+
+        LongArray(long[] values) {
+            mValues = values;
+        }
+
+        @Override
+        public Number get(int index) {
+            long value = mValues[index];
+            // box the way org.json does, Integer when it fits
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return (int) value;
+            }
+            return value;
+        }
+
+        @Override
+        public int size() {
+            return mValues.length;
+        }
+
+        @Override
+        public int getInt(int index) {
+            return (int) mValues[index];
+        }
+
+        @Override
+        public long getLong(int index) {
+            return mValues[index];
+        }
+
+        @Override
+        public double getDouble(int index) {
+            return mValues[index];
+        }
+
+        @Override
+        public boolean isFloatingPoint() {
+            return false;
+        }
+
+        @Override
+        public long[] toLongArray() {
+            return mValues.clone();
+        }
+    }
+
+    private static final class DoubleArray extends NumberArray {
+
+        private final double[] mValues;
+
+        DoubleArray(double[] values) {
+            mValues = values;
+        }
+
+        @Override
+        public Number get(int index) {
+            return mValues[index];
+        }
+
+        @Override
+        public int size() {
+            return mValues.length;
+        }
+
+        @Override
+        public int getInt(int index) {
+            return (int) mValues[index];
+        }
+
+        @Override
+        public long getLong(int index) {
+            return (long) mValues[index];
+        }
+
+        @Override
+        public double getDouble(int index) {
+            return mValues[index];
+        }
+
+        @Override
+        public boolean isFloatingPoint() {
+            return true;
+        }
+
+        @Override
+        public double[] toDoubleArray() {
+            return mValues.clone();
+        }
+    }
+}
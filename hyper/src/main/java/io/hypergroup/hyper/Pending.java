@@ -0,0 +1,94 @@
+package io.hypergroup.hyper;
+
+import bolts.Continuation;
+import bolts.Task;
+import io.hypergroup.hyper.exception.WrongDataTypeException;
+
+/**
+ * Returned by getPending() for a value, which needs the network when the thread is one the
+ * context's FetchPolicy keeps cache-only. The value is then being retrieved in the background.
+ * <pre>
+ *     Pending name = node.getPending("name");
+ *     if (name.getTask().isCompleted()) {
+ *         show(name.getTask().getResult());
+ *     } else {
+ *         name.getTask().continueWith(..., Task.UI_THREAD_EXECUTOR);
+ *     }
+ * </pre>
+ */
+public final class Pending {
+
+    /**
+     * Node the value is retrieved from
+     */
+    private final Hyper mNode;
+
+    /**
+     * Key path of the value relative to mNode
+     */
+    private final String mKeyPath;
+
+    /**
+     * Retrieval of the value
+     */
+    private final Task<Object> mTask;
+
+    /* default */ Pending(Hyper node, String keyPath, Task<Object> task) {
+        mNode = node;
+        mKeyPath = keyPath;
+        mTask = task;
+    }
+
+    /**
+     * @return Whether or not a value is a Pending
+     */
+    public static boolean isPending(Object value) {
+        return value instanceof Pending;
+    }
+
+    public Hyper getNode() {
+        return mNode;
+    }
+
+    public String getKeyPath() {
+        return mKeyPath;
+    }
+
+    /**
+     * @param <T> Expected type of the value
+     * @return A task completing with the value, on the context's async executor
+     */
+    public <T> Task<T> getTask() {
+        return (Task<T>) mTask;
+    }
+
+    /**
+     * Continue a pending node with the rest of a key path
+     *
+     * @param nextKey Key path relative to the pending node
+     * @return A Pending for the value at nextKey
+     */
+    /* default */ Pending then(final String nextKey) {
+        Task<Object> task = mTask.continueWithTask(new Continuation<Object, Task<Object>>() {
+            @Override
+            public Task<Object> then(Task<Object> task) throws Exception {
+                if (task.isFaulted()) {
+                    return Task.forError(task.getError());
+                } else if (task.isCancelled()) {
+                    return Task.cancelled();
+                }
+                Object value = task.getResult();
+                if (!(value instanceof Hyper)) {
+                    return Task.forError(new WrongDataTypeException("Expected a Hyper node at " + mKeyPath));
+                }
+                return ((Hyper) value).getAsync(nextKey);
+            }
+        });
+        return new Pending(mNode, Hyper.KeyPath.concat(mKeyPath, nextKey), task);
+    }
+
+    @Override
+    public String toString() {
+        return "Pending(" + mNode.getConcatenatedKeyPath(mKeyPath) + ")";
+    }
+}
@@ -0,0 +1,389 @@
+package io.hypergroup.hyper;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches the Hyper nodes of a list ahead of the viewport, so rows are ready when they scroll in.
+ * <br/>
+ * Feed it the viewport and scroll velocity from the list's scroll listener. The faster the
+ * scroll, the further ahead it prefetches, nearest rows first, on low priority threads. Prefetches
+ * that scroll out of range before they start are dropped, and once the prefetched responses
+ * exceed the memory budget the nodes farthest from the viewport are invalidated again.
+ */
+public class Prefetcher {
+
+    /**
+     * Tag for logging
+     */
+    private static final String TAG = Prefetcher.class.getSimpleName();
+
+    /**
+     * Default number of rows to prefetch ahead of a still viewport
+     */
+    public static final int DEFAULT_LOOKAHEAD = 6;
+
+    /**
+     * Default maximum number of rows to prefetch ahead of a fast scroll
+     */
+    public static final int DEFAULT_MAX_LOOKAHEAD = 30;
+
+    /**
+     * Default number of concurrent prefetches
+     */
+    public static final int DEFAULT_POOL_SIZE = 2;
+
+    /**
+     * Default decoded size of prefetched responses to keep
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 1024 * 1024;
+
+    /**
+     * How far ahead, in time, a scroll is anticipated
+     */
+    private static final float LOOKAHEAD_SECONDS = 0.5f;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Rows that may be prefetched
+     */
+    public interface Source {
+
+        /**
+         * @return Number of rows
+         */
+        public int getCount();
+
+        /**
+         * @param position Position of a row
+         * @return The Hyper node shown by the row, or null if it does not show one
+         */
+        public Hyper getNode(int position);
+    }
+
+    private final Source mSource;
+    private final ThreadPoolExecutor mExecutor;
+
+    private int mLookahead = DEFAULT_LOOKAHEAD;
+    private int mMaxLookahead = DEFAULT_MAX_LOOKAHEAD;
+    private long mMemoryBudget = DEFAULT_MEMORY_BUDGET;
+
+    /**
+     * Prefetches queued or running by position
+     */
+    private final Map<Integer, PrefetchTask> mTasks = new HashMap<Integer, PrefetchTask>();
+
+    /**
+     * Prefetched nodes by position, oldest first
+     */
+    private final Map<Integer, Retained> mRetained = new LinkedHashMap<Integer, Retained>();
+
+    private long mRetainedBytes;
+
+    /**
+     * Visible rows, first inclusive, last exclusive
+     */
+    private int mFirstVisible;
+    private int mLastVisible;
+
+    /**
+     * Rows to prefetch, start inclusive, end exclusive
+     */
+    private int mStart;
+    private int mEnd;
+
+    private int mPrefetchCount;
+    private int mCancelCount;
+    private int mEvictCount;
+
+    public Prefetcher(Source source) {
+        this(source, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * @param source   Rows to prefetch
+     * @param poolSize Maximum number of concurrent prefetches
+     */
+    public Prefetcher(Source source, int poolSize) {
+        mSource = source;
+        mExecutor = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new PriorityBlockingQueue<Runnable>(), new PrefetchThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param lookahead    Rows to prefetch ahead of a still viewport
+     * @param maxLookahead Maximum rows to prefetch ahead of a fast scroll
+     */
+    public synchronized void setLookahead(int lookahead, int maxLookahead) {
+        mLookahead = lookahead;
+        mMaxLookahead = Math.max(lookahead, maxLookahead);
+    }
+
+    /**
+     * @param memoryBudget Decoded size in bytes of prefetched responses to keep
+     */
+    public synchronized void setMemoryBudget(long memoryBudget) {
+        mMemoryBudget = memoryBudget;
+        enforceMemoryBudget();
+    }
+
+    /**
+     * Update the viewport
+     *
+     * @param firstVisible Position of the first visible row
+     * @param visibleCount Number of visible rows
+     * @param velocity     Scroll velocity in rows per second, negative when scrolling up
+     */
+    public synchronized void onScroll(int firstVisible, int visibleCount, float velocity) {
+        int count = mSource.getCount();
+        int lookahead = getLookahead(velocity);
+        mFirstVisible = firstVisible;
+        mLastVisible = Math.min(count, firstVisible + visibleCount);
+        if (velocity < 0) {
+            mStart = Math.max(0, firstVisible - lookahead);
+            mEnd = mLastVisible;
+        } else {
+            mStart = firstVisible;
+            mEnd = Math.min(count, mLastVisible + lookahead);
+        }
+
+        // ## Queued
+
+        // take queued prefetches out to drop or re-prioritize them
+        List<Runnable> queued = new ArrayList<Runnable>();
+        mExecutor.getQueue().drainTo(queued);
+        for (Runnable runnable : queued) {
+            PrefetchTask task = (PrefetchTask) runnable;
+            if (isInRange(task.position)) {
+                task.distance = getDistance(task.position);
+                mExecutor.execute(task);
+            } else {
+                task.cancelled = true;
+                mTasks.remove(task.position);
+                mCancelCount++;
+            }
+        }
+        // running prefetches cannot be stopped, but their results are not kept
+        for (PrefetchTask task : mTasks.values()) {
+            if (!isInRange(task.position)) {
+                task.cancelled = true;
+            }
+        }
+
+        // ## New
+
+        pruneRetained();
+        for (int position = mStart; position < mEnd; position++) {
+            if (mTasks.containsKey(position) || mRetained.containsKey(position)) {
+                continue;
+            }
+            Hyper node = mSource.getNode(position);
+            if (node == null || node.isFetched() || node.getHref() == null) {
+                continue;
+            }
+            PrefetchTask task = new PrefetchTask(position, node);
+            task.distance = getDistance(position);
+            mTasks.put(position, task);
+            mExecutor.execute(task);
+        }
+
+        enforceMemoryBudget();
+    }
+
+    /**
+     * Forget all prefetches, for example when the rows change. Prefetched nodes are kept as is.
+     */
+    public synchronized void reset() {
+        List<Runnable> queued = new ArrayList<Runnable>();
+        mExecutor.getQueue().drainTo(queued);
+        for (PrefetchTask task : mTasks.values()) {
+            task.cancelled = true;
+        }
+        mCancelCount += queued.size();
+        mTasks.clear();
+        mRetained.clear();
+        mRetainedBytes = 0;
+    }
+
+    /**
+     * Stop prefetching for good
+     */
+    public void shutdown() {
+        reset();
+        mExecutor.shutdown();
+    }
+
+    /**
+     * @return Number of nodes prefetched
+     */
+    public synchronized int getPrefetchCount() {
+        return mPrefetchCount;
+    }
+
+    /**
+     * @return Number of prefetches dropped because they scrolled out of range
+     */
+    public synchronized int getCancelCount() {
+        return mCancelCount;
+    }
+
+    /**
+     * @return Number of prefetched nodes invalidated to stay within the memory budget
+     */
+    public synchronized int getEvictCount() {
+        return mEvictCount;
+    }
+
+    /**
+     * @return Decoded size in bytes of the prefetched responses that are kept
+     */
+    public synchronized long getRetainedBytes() {
+        return mRetainedBytes;
+    }
+
+    private int getLookahead(float velocity) {
+        int rows = (int) Math.ceil(Math.abs(velocity) * LOOKAHEAD_SECONDS);
+        return Math.min(mMaxLookahead, mLookahead + rows);
+    }
+
+    private boolean isInRange(int position) {
+        return position >= mStart && position < mEnd;
+    }
+
+    /**
+     * @return Rows between a position and the viewport, 0 when it is visible
+     */
+    private int getDistance(int position) {
+        if (position < mFirstVisible) {
+            return mFirstVisible - position;
+        } else if (position >= mLastVisible) {
+            return position - mLastVisible + 1;
+        }
+        return 0;
+    }
+
+    private synchronized void onPrefetched(PrefetchTask task) {
+        if (mTasks.get(task.position) == task) {
+            mTasks.remove(task.position);
+        }
+        if (task.cancelled || !task.node.isFetched()) {
+            return;
+        }
+        mPrefetchCount++;
+        long bytes = task.node.getFetchedBytes();
+        mRetained.put(task.position, new Retained(task.node, bytes));
+        mRetainedBytes += bytes;
+        enforceMemoryBudget();
+    }
+
+    /**
+     * Invalidate the prefetched nodes farthest from the viewport until the budget is met
+     */
+    private void enforceMemoryBudget() {
+        pruneRetained();
+        while (mRetainedBytes > mMemoryBudget) {
+            Integer farthest = null;
+            for (Integer position : mRetained.keySet()) {
+                if (farthest == null || getDistance(position) > getDistance(farthest)) {
+                    farthest = position;
+                }
+            }
+            if (farthest == null || getDistance(farthest) == 0) {
+                // everything left is on screen
+                return;
+            }
+            Retained retained = mRetained.remove(farthest);
+            retained.node.invalidate();
+            mRetainedBytes -= retained.bytes;
+            mEvictCount++;
+        }
+    }
+
+    /**
+     * Forget retained nodes that were invalidated by someone else
+     */
+    private void pruneRetained() {
+        Iterator<Retained> iterator = mRetained.values().iterator();
+        while (iterator.hasNext()) {
+            Retained retained = iterator.next();
+            if (!retained.node.isFetched()) {
+                mRetainedBytes -= retained.bytes;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Prefetch of one row, nearest to the viewport first
+     */
+    private class PrefetchTask implements Runnable, Comparable<PrefetchTask> {
+
+        final int position;
+        final Hyper node;
+        volatile int distance;
+        volatile boolean cancelled;
+
+        PrefetchTask(int position, Hyper node) {
+            this.position = position;
+            this.node = node;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                node.fetch();
+            } catch (Exception ex) {
+                Log.w(TAG, "Error prefetching " + node, ex);
+            }
+            onPrefetched(this);
+        }
+
+        @Override
+        public int compareTo(PrefetchTask other) {
+            return distance < other.distance ? -1 : (distance == other.distance ? 0 : 1);
+        }
+    }
+
+    private static class Retained {
+
+        final Hyper node;
+        final long bytes;
+
+        Retained(Hyper node, long bytes) {
+            this.node = node;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Names prefetch threads and runs them below normal priority
+     */
+    private static class PrefetchThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "hyper-prefetch-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+}
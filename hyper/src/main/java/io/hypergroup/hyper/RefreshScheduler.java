@@ -0,0 +1,391 @@
+package io.hypergroup.hyper;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import bolts.Task;
+
+/**
+ * Keeps Hyper nodes as fresh as the screens showing them ask for, with one refresh per resource
+ * instead of one timer per screen.
+ * <br/>
+ * Registrations for the same href share an entry, refreshed at the shortest max age asked for. A
+ * single timer thread wakes up at most once per window and refreshes every entry due within it
+ * together, a little early by a random fraction of its max age so entries registered together drift
+ * apart. Refreshes are conditional on the ETag held, and the result is shared with every node
+ * registered for the resource. Entries whose registrations are all paused are skipped, and while
+ * the app reports no activity the max ages grow, up to MAX_IDLE_BACKOFF times.
+ *
+ * @see Hyper#keepFresh(long, TimeUnit)
+ */
+public class RefreshScheduler {
+
+    /**
+     * Tag for logging
+     */
+    private static final String TAG = RefreshScheduler.class.getSimpleName();
+
+    /**
+     * Default window refreshes are batched into
+     */
+    public static final long DEFAULT_WINDOW_MILLIS = 1000;
+
+    /**
+     * Default time without activity before the app is considered idle
+     */
+    public static final long DEFAULT_IDLE_AFTER_MILLIS = 60000;
+
+    /**
+     * Default largest fraction of a max age a refresh is made early by
+     */
+    public static final float DEFAULT_JITTER = 0.1f;
+
+    /**
+     * Most max ages are multiplied by while the app is idle
+     */
+    public static final int MAX_IDLE_BACKOFF = 16;
+
+    private final HyperContext mContext;
+    private final long mWindowMillis;
+    private final long mIdleAfterMillis;
+    private final float mJitter;
+    private final Random mRandom = new Random();
+
+    /**
+     * Entries by href
+     */
+    private final Map<String, Entry> mEntries = new HashMap<String, Entry>();
+
+    private final ScheduledThreadPoolExecutor mTimer = new ScheduledThreadPoolExecutor(1, new RefreshThreadFactory());
+
+    private final Runnable mWakeUpTask = new Runnable() {
+        @Override
+        public void run() {
+            wakeUp();
+        }
+    };
+
+    private ScheduledFuture<?> mWakeUp;
+    private long mWakeUpAt;
+    private volatile long mLastActivity = System.currentTimeMillis();
+
+    /**
+     * @param context         Context of the nodes, for its async executor and metrics
+     * @param windowMillis    Window refreshes are batched into
+     * @param idleAfterMillis Time without activity before the app is considered idle
+     * @param jitter          Largest fraction of a max age a refresh is made early by
+     */
+    /* default */ RefreshScheduler(HyperContext context, long windowMillis, long idleAfterMillis, float jitter) {
+        mContext = context;
+        mWindowMillis = Math.max(1, windowMillis);
+        mIdleAfterMillis = idleAfterMillis;
+        mJitter = Math.max(0, Math.min(1, jitter));
+    }
+
+    /**
+     * Register a node to be refreshed at least every maxAge
+     *
+     * @param node         Node to keep fresh
+     * @param href         Href of the node
+     * @param maxAgeMillis Oldest the node's data may get
+     * @return The registration, resumed
+     */
+    /* default */ synchronized Registration register(Hyper node, String href, long maxAgeMillis) {
+        mLastActivity = System.currentTimeMillis();
+        Entry entry = mEntries.get(href);
+        if (entry == null) {
+            entry = new Entry(href, node.isFetched() ? node.getFetchedAt() : 0);
+            mEntries.put(href, entry);
+        }
+        Registration registration = new Registration(entry, node, Math.max(1, maxAgeMillis));
+        entry.mRegistrations.add(registration);
+        schedule();
+        return registration;
+    }
+
+    private synchronized void unregister(Registration registration) {
+        Entry entry = registration.mEntry;
+        entry.mRegistrations.remove(registration);
+        if (entry.mRegistrations.isEmpty() && mEntries.get(entry.mHref) == entry) {
+            mEntries.remove(entry.mHref);
+        }
+        schedule();
+    }
+
+    /**
+     * Report user activity, such as from Activity.onUserInteraction(), ending any idle backoff
+     */
+    public void onActivity() {
+        long idle = System.currentTimeMillis() - mLastActivity;
+        mLastActivity = System.currentTimeMillis();
+        if (idle >= mIdleAfterMillis) {
+            synchronized (this) {
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * @return Number of resources kept fresh, however many registrations there are for each
+     */
+    public synchronized int getEntryCount() {
+        return mEntries.size();
+    }
+
+    /**
+     * Stop refreshing, registrations are kept but nothing is refreshed any more
+     */
+    public synchronized void close() {
+        mTimer.shutdownNow();
+        mWakeUp = null;
+    }
+
+    // ## Scheduling
+
+    /**
+     * @return What max ages are multiplied by, doubling every idle period without activity
+     */
+    private int getIdleBackoff(long now) {
+        long periods = (now - mLastActivity) / Math.max(1, mIdleAfterMillis);
+        return periods < 1 ? 1 : (int) Math.min(MAX_IDLE_BACKOFF, 1L << Math.min(30, periods));
+    }
+
+    /**
+     * Set the timer for the start of the window the next refresh is due in. Must hold the lock.
+     */
+    private void schedule() {
+        if (mTimer.isShutdown()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int backoff = getIdleBackoff(now);
+        long next = Long.MAX_VALUE;
+        for (Entry entry : mEntries.values()) {
+            if (!entry.mRefreshing && entry.isObserved()) {
+                next = Math.min(next, entry.getDueAt(backoff));
+            }
+        }
+        if (next == Long.MAX_VALUE) {
+            // nothing to wake up for
+            if (mWakeUp != null) {
+                mWakeUp.cancel(false);
+                mWakeUp = null;
+            }
+            return;
+        }
+        // windows are aligned, so every entry due in the same one shares the wake-up
+        long wakeUpAt = Math.max(now, next - next % mWindowMillis);
+        if (mWakeUp != null && mWakeUpAt == wakeUpAt) {
+            return;
+        }
+        if (mWakeUp != null) {
+            mWakeUp.cancel(false);
+        }
+        mWakeUpAt = wakeUpAt;
+        mWakeUp = mTimer.schedule(mWakeUpTask, wakeUpAt - now, TimeUnit.MILLISECONDS);
+    }
+
+    private void wakeUp() {
+        List<Entry> due = new ArrayList<Entry>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            int backoff = getIdleBackoff(now);
+            for (Entry entry : mEntries.values()) {
+                // refresh everything due before the window ends
+                if (!entry.mRefreshing && entry.isObserved() && entry.getDueAt(backoff) < now + mWindowMillis) {
+                    entry.mRefreshing = true;
+                    due.add(entry);
+                }
+            }
+            mWakeUp = null;
+            schedule();
+        }
+        mContext.getMetrics().onRefreshWakeUp();
+        for (Entry entry : due) {
+            refresh(entry);
+        }
+    }
+
+    private void refresh(final Entry entry) {
+        Task.call(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                Hyper node;
+                List<Hyper> others;
+                synchronized (RefreshScheduler.this) {
+                    node = entry.getNode();
+                    others = entry.getNodes();
+                }
+                if (node == null) {
+                    return null;
+                }
+                long fetchedAt = node.getFetchedAt();
+                try {
+                    node.refresh();
+                    mContext.getMetrics().onScheduledRefresh();
+                    if (node.getFetchedAt() != fetchedAt) {
+                        // share what changed with the other screens' nodes
+                        for (Hyper other : others) {
+                            if (other != node) {
+                                other.adoptData(node);
+                            }
+                        }
+                    }
+                } catch (Exception ex) {
+                    // try again when the next refresh is due
+                    Log.w(TAG, "Unable to refresh " + entry.mHref, ex);
+                }
+                synchronized (RefreshScheduler.this) {
+                    entry.mRefreshing = false;
+                    entry.mRefreshedAt = System.currentTimeMillis();
+                    entry.mEarly = mRandom.nextFloat() * mJitter;
+                    schedule();
+                }
+                return null;
+            }
+        }, mContext.getAsyncExecutor());
+    }
+
+    // ## Registrations
+
+    /**
+     * A node kept fresh, until cancelled. Pause it while the node is not shown.
+     */
+    public class Registration {
+
+        private final Entry mEntry;
+        private final Hyper mNode;
+        private final long mMaxAgeMillis;
+        private volatile boolean mPaused;
+        private volatile boolean mCancelled;
+
+        private Registration(Entry entry, Hyper node, long maxAgeMillis) {
+            mEntry = entry;
+            mNode = node;
+            mMaxAgeMillis = maxAgeMillis;
+        }
+
+        public Hyper getNode() {
+            return mNode;
+        }
+
+        public long getMaxAgeMillis() {
+            return mMaxAgeMillis;
+        }
+
+        public boolean isPaused() {
+            return mPaused;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * Stop refreshing for this registration while nobody is looking at its node
+         */
+        public void pause() {
+            synchronized (RefreshScheduler.this) {
+                mPaused = true;
+                schedule();
+            }
+        }
+
+        /**
+         * Refresh for this registration again, right away if it is overdue
+         */
+        public void resume() {
+            mLastActivity = System.currentTimeMillis();
+            synchronized (RefreshScheduler.this) {
+                mPaused = false;
+                schedule();
+            }
+        }
+
+        /**
+         * Stop refreshing for this registration
+         */
+        public void cancel() {
+            if (!mCancelled) {
+                mCancelled = true;
+                unregister(this);
+            }
+        }
+    }
+
+    /**
+     * Every registration for one href, guarded by the scheduler's lock
+     */
+    private static class Entry {
+
+        private final String mHref;
+        private final List<Registration> mRegistrations = new ArrayList<Registration>();
+        private long mRefreshedAt;
+        private float mEarly;
+        private boolean mRefreshing;
+
+        private Entry(String href, long refreshedAt) {
+            mHref = href;
+            mRefreshedAt = refreshedAt;
+        }
+
+        private boolean isObserved() {
+            for (Registration registration : mRegistrations) {
+                if (!registration.mPaused) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private long getDueAt(int backoff) {
+            long maxAge = Long.MAX_VALUE;
+            for (Registration registration : mRegistrations) {
+                if (!registration.mPaused) {
+                    maxAge = Math.min(maxAge, registration.mMaxAgeMillis);
+                }
+            }
+            return mRefreshedAt + (long) Math.min(Long.MAX_VALUE / 2, (double) maxAge * backoff * (1 - mEarly));
+        }
+
+        /**
+         * @return Node to refresh, one that is being looked at, or null once cancelled
+         */
+        private Hyper getNode() {
+            for (Registration registration : mRegistrations) {
+                if (!registration.mPaused) {
+                    return registration.mNode;
+                }
+            }
+            return mRegistrations.isEmpty() ? null : mRegistrations.get(0).mNode;
+        }
+
+        private List<Hyper> getNodes() {
+            List<Hyper> nodes = new ArrayList<Hyper>(mRegistrations.size());
+            for (Registration registration : mRegistrations) {
+                nodes.add(registration.mNode);
+            }
+            return nodes;
+        }
+    }
+
+    private static class RefreshThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "hyper-refresh");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.hypergroup.hyper;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.hypergroup.hyper.exception.FetchException;
+
+/**
+ * How often and after how long a failed fetch is tried again.
+ * <br/>
+ * Only retryable failures are retried, such as IOExceptions, 408, 429 and 5xx responses. Delays
+ * grow exponentially with full jitter, a random delay between zero and the exponential delay,
+ * so that the nodes of a failing host do not retry in lockstep. A server's Retry-After is
+ * honored up to the maximum delay.
+ */
+public class RetryPolicy {
+
+    /**
+     * Three attempts, 250ms apart at first
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(3, 250, 4000, TimeUnit.MILLISECONDS);
+
+    /**
+     * A single attempt
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0, TimeUnit.MILLISECONDS);
+
+    private final int mMaxAttempts;
+    private final long mBaseDelayMillis;
+    private final long mMaxDelayMillis;
+    private final Random mRandom = new Random();
+
+    /**
+     * @param maxAttempts Attempts in total, the first one included
+     * @param baseDelay   Upper bound of the delay before the first retry
+     * @param maxDelay    Upper bound of any delay
+     * @param unit        Unit of the delays
+     */
+    public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay, TimeUnit unit) {
+        mMaxAttempts = Math.max(1, maxAttempts);
+        mBaseDelayMillis = unit.toMillis(baseDelay);
+        mMaxDelayMillis = unit.toMillis(maxDelay);
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    /**
+     * @param failure Failure of the attempt
+     * @param attempt Number of the failed attempt, starting at 0
+     * @return Whether or not to try again
+     */
+    public boolean shouldRetry(FetchException failure, int attempt) {
+        return failure.isRetryable() && attempt + 1 < mMaxAttempts;
+    }
+
+    /**
+     * @param failure Failure of the attempt
+     * @param attempt Number of the failed attempt, starting at 0
+     * @return Milliseconds to wait before the next attempt
+     */
+    public long getDelayMillis(FetchException failure, int attempt) {
+        long ceiling = Math.min(mMaxDelayMillis, mBaseDelayMillis << Math.min(attempt, 30));
+        long delay = (long) (mRandom.nextDouble() * ceiling);
+        if (failure.getRetryAfterMillis() > 0) {
+            delay = Math.max(delay, Math.min(failure.getRetryAfterMillis(), mMaxDelayMillis));
+        }
+        return delay;
+    }
+}
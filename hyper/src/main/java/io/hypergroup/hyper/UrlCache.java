@@ -0,0 +1,120 @@
+package io.hypergroup.hyper;
+
+import android.util.LruCache;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Cache of resolved hrefs, shared by every Hyper node in a HyperContext.
+ * <br/>
+ * Entries are keyed by the base URL and the raw href together, so the same relative href under
+ * different parents resolves to different URLs. Sibling nodes resolve their hrefs against the
+ * same parent URL instance, so the base's external form is only built once for a run of them.
+ */
+public class UrlCache {
+
+    /**
+     * Default maximum number of resolved hrefs to keep
+     */
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    /**
+     * Resolved URLs keyed by base and raw href
+     */
+    private final LruCache<Key, URL> mCache;
+
+    /**
+     * Base URL last resolved against and its external form
+     */
+    private volatile Base mLastBase;
+
+    /**
+     * Create a cache holding at most maxSize resolved hrefs
+     *
+     * @param maxSize Maximum number of entries
+     */
+    public UrlCache(int maxSize) {
+        mCache = new LruCache<Key, URL>(maxSize);
+    }
+
+    /**
+     * Resolve an href relative to a base URL, using a cached URL when one is available.
+     *
+     * @param base Base URL, context for the new URL, may be null
+     * @param href Raw href to resolve
+     * @return The resolved URL
+     * @throws MalformedURLException When the href cannot be resolved against the base
+     */
+    public URL resolve(URL base, String href) throws MalformedURLException {
+        Key key = new Key(getExternalForm(base), href);
+        URL resolved = mCache.get(key);
+        if (resolved == null) {
+            resolved = new URL(base, href);
+            mCache.put(key, resolved);
+        }
+        return resolved;
+    }
+
+    /**
+     * Drop all cached URLs
+     */
+    public void clear() {
+        mCache.evictAll();
+    }
+
+    /**
+     * Compare base URLs by external form rather than URL.equals, which may perform host name lookups
+     */
+    private String getExternalForm(URL base) {
+        if (base == null) {
+            return null;
+        }
+        Base last = mLastBase;
+        if (last != null && last.url == base) {
+            return last.externalForm;
+        }
+        String externalForm = base.toExternalForm();
+        mLastBase = new Base(base, externalForm);
+        return externalForm;
+    }
+
+    private static class Base {
+
+        final URL url;
+        final String externalForm;
+
+        Base(URL url, String externalForm) {
+            this.url = url;
+            this.externalForm = externalForm;
+        }
+    }
+
+    /**
+     * A raw href and the external form of the base it is resolved against
+     */
+    private static class Key {
+
+        final String base;
+        final String href;
+
+        Key(String base, String href) {
+            this.base = base;
+            this.href = href;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return href.equals(key.href) && (base == null ? key.base == null : base.equals(key.base));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * href.hashCode() + (base == null ? 0 : base.hashCode());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package io.hypergroup.hyper;
+
+/**
+ * What a probe found out about a URL without downloading it
+ *
+ * @see UrlMetadataService
+ */
+public class UrlMetadata {
+
+    private final String mUrl;
+    private final int mCode;
+    private final String mContentType;
+    private final long mContentLength;
+    private final long mFetchedAt;
+
+    public UrlMetadata(String url, int code, String contentType, long contentLength, long fetchedAt) {
+        mUrl = url;
+        mCode = code;
+        mContentType = contentType;
+        mContentLength = contentLength;
+        mFetchedAt = fetchedAt;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * @return HTTP status code of the probe
+     */
+    public int getCode() {
+        return mCode;
+    }
+
+    /**
+     * @return Content-Type of the URL, or null if the server did not say
+     */
+    public String getContentType() {
+        return mContentType;
+    }
+
+    /**
+     * @return Full length of the content in bytes, or -1 if it is unknown
+     */
+    public long getContentLength() {
+        return mContentLength;
+    }
+
+    /**
+     * @return Wall clock time of the probe
+     */
+    public long getFetchedAt() {
+        return mFetchedAt;
+    }
+
+    /**
+     * @return Whether or not the URL points at an image
+     */
+    public boolean isImage() {
+        return mContentType != null && mContentType.startsWith("image/");
+    }
+
+    @Override
+    public String toString() {
+        return mUrl + " " + mCode + " " + mContentType + " " + mContentLength;
+    }
+}
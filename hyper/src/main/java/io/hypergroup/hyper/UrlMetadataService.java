@@ -0,0 +1,304 @@
+package io.hypergroup.hyper;
+
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import bolts.Continuation;
+import bolts.Task;
+
+/**
+ * Probes URLs for their content type and length, for example to decide how to preview a link.
+ * <br/>
+ * Probes go through the context's shared client on a small bounded pool. Concurrent probes of the
+ * same URL share one request, and results are kept in an LRU cache for a limited time, error
+ * responses for a shorter one. Probes that fail outright are remembered briefly too, so a dead
+ * host is not asked again by every view that shows its link. Servers that refuse HEAD are asked
+ * for the first byte with a ranged GET instead.
+ */
+public class UrlMetadataService {
+
+    /**
+     * Tag for logging
+     */
+    private static final String TAG = UrlMetadataService.class.getSimpleName();
+
+    /**
+     * Default number of concurrent probes
+     */
+    public static final int DEFAULT_POOL_SIZE = 4;
+
+    /**
+     * Default number of probe results to keep
+     */
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    /**
+     * Default time probe results are kept for
+     */
+    public static final long DEFAULT_TTL = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Default time results that are not 2xx are kept for
+     */
+    public static final long DEFAULT_ERROR_TTL = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Default time probes that failed are remembered for
+     */
+    public static final long DEFAULT_FAILURE_TTL = TimeUnit.SECONDS.toMillis(10);
+
+    private static final String HEADER_CONTENT_TYPE = "Content-Type";
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    private static final String HEADER_CONTENT_RANGE = "Content-Range";
+    private static final String HEADER_RANGE = "Range";
+
+    private static final int HTTP_PARTIAL_CONTENT = 206;
+    private static final int HTTP_BAD_METHOD = 405;
+    private static final int HTTP_NOT_IMPLEMENTED = 501;
+
+    /**
+     * Idle time after which pool threads exit
+     */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final OkHttpClient mClient;
+    private final ThreadPoolExecutor mExecutor;
+    private final LruCache<String, UrlMetadata> mCache;
+    private final LruCache<String, Failure> mFailures;
+    private final long mTtl;
+    private final long mErrorTtl;
+    private final long mFailureTtl;
+
+    /**
+     * Probes in flight by URL
+     */
+    private final Map<String, Task<UrlMetadata>> mInFlight = new HashMap<String, Task<UrlMetadata>>();
+
+    public UrlMetadataService(OkHttpClient client) {
+        this(client, DEFAULT_POOL_SIZE, DEFAULT_CACHE_SIZE, DEFAULT_TTL);
+    }
+
+    /**
+     * @param client    Client to probe with
+     * @param poolSize  Maximum number of concurrent probes
+     * @param cacheSize Maximum number of results to keep
+     * @param ttl       Milliseconds to keep results for
+     */
+    public UrlMetadataService(OkHttpClient client, int poolSize, int cacheSize, long ttl) {
+        this(client, poolSize, cacheSize, ttl, Math.min(ttl, DEFAULT_ERROR_TTL), Math.min(ttl, DEFAULT_FAILURE_TTL));
+    }
+
+    /**
+     * @param client     Client to probe with
+     * @param poolSize   Maximum number of concurrent probes
+     * @param cacheSize  Maximum number of results to keep
+     * @param ttl        Milliseconds to keep 2xx results for
+     * @param errorTtl   Milliseconds to keep other results for
+     * @param failureTtl Milliseconds to remember failed probes for
+     */
+    public UrlMetadataService(OkHttpClient client, int poolSize, int cacheSize, long ttl, long errorTtl, long failureTtl) {
+        mClient = client;
+        mCache = new LruCache<String, UrlMetadata>(cacheSize);
+        mFailures = new LruCache<String, Failure>(cacheSize);
+        mTtl = ttl;
+        mErrorTtl = errorTtl;
+        mFailureTtl = failureTtl;
+        mExecutor = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ProbeThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param url URL to look up
+     * @return A cached, unexpired result, or null if the URL needs probing
+     */
+    public UrlMetadata getCached(String url) {
+        UrlMetadata metadata = mCache.get(url);
+        if (metadata == null) {
+            return null;
+        }
+        long ttl = isSuccessful(metadata) ? mTtl : mErrorTtl;
+        if (System.currentTimeMillis() - metadata.getFetchedAt() >= ttl) {
+            mCache.remove(url);
+            return null;
+        }
+        return metadata;
+    }
+
+    /**
+     * @return The failure of a recent probe of the URL, or null
+     */
+    private IOException getCachedFailure(String url) {
+        Failure failure = mFailures.get(url);
+        if (failure == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - failure.failedAt >= mFailureTtl) {
+            mFailures.remove(url);
+            return null;
+        }
+        return failure.exception;
+    }
+
+    private static boolean isSuccessful(UrlMetadata metadata) {
+        return metadata.getCode() >= 200 && metadata.getCode() < 300;
+    }
+
+    /**
+     * Probe a URL, answering from the cache when possible
+     *
+     * @param url URL to probe
+     * @return A task completing with the URL's metadata on the probe pool, or failing with the
+     * IOException a recent probe failed with
+     */
+    public Task<UrlMetadata> probe(final String url) {
+        UrlMetadata cached = getCached(url);
+        if (cached != null) {
+            return Task.forResult(cached);
+        }
+        IOException failure = getCachedFailure(url);
+        if (failure != null) {
+            return Task.forError(failure);
+        }
+        synchronized (mInFlight) {
+            Task<UrlMetadata> inFlight = mInFlight.get(url);
+            if (inFlight != null) {
+                return inFlight;
+            }
+            Task<UrlMetadata> task = Task.call(new Callable<UrlMetadata>() {
+                @Override
+                public UrlMetadata call() throws Exception {
+                    UrlMetadata metadata;
+                    try {
+                        metadata = fetchMetadata(url);
+                    } catch (IOException ex) {
+                        mFailures.put(url, new Failure(ex, System.currentTimeMillis()));
+                        throw ex;
+                    }
+                    mCache.put(url, metadata);
+                    return metadata;
+                }
+            }, mExecutor).continueWithTask(new Continuation<UrlMetadata, Task<UrlMetadata>>() {
+                @Override
+                public Task<UrlMetadata> then(Task<UrlMetadata> task) throws Exception {
+                    synchronized (mInFlight) {
+                        mInFlight.remove(url);
+                    }
+                    return task;
+                }
+            });
+            // the probe may have finished already
+            if (!task.isCompleted()) {
+                mInFlight.put(url, task);
+            }
+            return task;
+        }
+    }
+
+    /**
+     * Forget every cached result and failure
+     */
+    public void clear() {
+        mCache.evictAll();
+        mFailures.evictAll();
+    }
+
+    /**
+     * Ask the server about a URL with HEAD, or with a one byte GET if HEAD is refused
+     */
+    private UrlMetadata fetchMetadata(String url) throws IOException {
+        Request head = new Request.Builder().url(url).head().build();
+        Response response = mClient.newCall(head).execute();
+        closeQuietly(response.body());
+        if (response.code() == HTTP_BAD_METHOD || response.code() == HTTP_NOT_IMPLEMENTED) {
+            Log.v(TAG, "HEAD refused for " + url + ", probing with a ranged GET");
+            Request get = new Request.Builder().url(url).header(HEADER_RANGE, "bytes=0-0").build();
+            response = mClient.newCall(get).execute();
+            closeQuietly(response.body());
+        }
+        return new UrlMetadata(url, response.code(), response.header(HEADER_CONTENT_TYPE),
+            getContentLength(response), System.currentTimeMillis());
+    }
+
+    /**
+     * @return Full length of the content, from Content-Range for partial responses
+     */
+    private static long getContentLength(Response response) {
+        String length = null;
+        if (response.code() == HTTP_PARTIAL_CONTENT) {
+            // bytes 0-0/12345
+            String range = response.header(HEADER_CONTENT_RANGE);
+            int slash = range == null ? -1 : range.lastIndexOf('/');
+            if (slash != -1) {
+                length = range.substring(slash + 1);
+            }
+        } else {
+            length = response.header(HEADER_CONTENT_LENGTH);
+        }
+        if (TextUtils.isEmpty(length)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(length.trim());
+        } catch (NumberFormatException ex) {
+            // "*" or garbage
+            return -1;
+        }
+    }
+
+    private static void closeQuietly(ResponseBody body) {
+        if (body == null) {
+            return;
+        }
+        try {
+            body.close();
+        } catch (IOException ex) {
+            // nothing left to do with it
+        }
+    }
+
+    /**
+     * A failed probe and when it failed
+     */
+    private static class Failure {
+
+        final IOException exception;
+        final long failedAt;
+
+        Failure(IOException exception, long failedAt) {
+            this.exception = exception;
+            this.failedAt = failedAt;
+        }
+    }
+
+    /**
+     * Names probe threads and keeps them from holding up the process
+     */
+    private static class ProbeThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "hyper-probe-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
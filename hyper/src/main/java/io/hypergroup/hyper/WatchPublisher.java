@@ -0,0 +1,233 @@
+package io.hypergroup.hyper;
+
+import android.util.Log;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import bolts.Task;
+import io.hypergroup.hyper.exception.FetchException;
+
+/**
+ * Publishes the value at a key path of a Hyper node, and again every time it changes.
+ * <br/>
+ * Changes are observed through the ChangeListeners of the node and of every resource the key path
+ * goes through, as friends in friends.count, following the key path wherever it leads after a
+ * change. A subscriber that has not requested more only receives the latest value once it does,
+ * intermediate values are dropped. A node that was invalidated is skipped until it is fetched
+ * again, and a failed fetch is logged and waits for the next change. The publisher never
+ * completes, cancel the subscription to stop watching.
+ *
+ * @see Hyper#watch(String)
+ */
+/* default */ class WatchPublisher<T> implements Publisher<T> {
+
+    /**
+     * Tag for logging
+     */
+    private static final String TAG = WatchPublisher.class.getSimpleName();
+
+    private final Hyper mNode;
+    private final String mKeyPath;
+
+    /* default */ WatchPublisher(Hyper node, String keyPath) {
+        mNode = node;
+        mKeyPath = keyPath;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        final WatchSubscription subscription = new WatchSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        mNode.addChangeListener(subscription);
+        Task.call(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                subscription.refresh(0, mNode);
+                return null;
+            }
+        }, mNode.getContext().getAsyncExecutor());
+    }
+
+    private class WatchSubscription extends HyperSubscription<T> implements ChangeListener {
+
+        /**
+         * Most recent value, waiting for demand
+         */
+        private T mLatest;
+        private boolean mHasLatest;
+
+        /**
+         * Most recent value read, to skip changes that do not affect the key path
+         */
+        private Object mLastRead;
+        private boolean mHasRead;
+
+        /**
+         * Latest node for each segment of the key path that has been read, the watched node first
+         */
+        private final List<Hyper> mPath = new ArrayList<Hyper>();
+
+        /**
+         * Identities of the resources along the key path that this subscription listens to
+         */
+        private final Set<String> mObserved = new HashSet<String>();
+
+        private volatile Throwable mError;
+
+        WatchSubscription(Subscriber<? super T> subscriber) {
+            super(subscriber);
+            mObserved.add(mNode.getIdentity());
+        }
+
+        @Override
+        public synchronized void onChange(Hyper node, DataDiff diff) {
+            if (node.getData() == null) {
+                // an invalidated node is published by the fetch that follows
+                return;
+            }
+            String identity = node.getIdentity();
+            for (int depth = 0; depth < mPath.size(); depth++) {
+                if (mPath.get(depth).getIdentity().equals(identity)) {
+                    refresh(depth, node);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Read the key path again from the latest node for one of the resources along it. The
+         * nodes before it stay as they are, so reading does not fetch them again.
+         *
+         * @param depth Number of segments before the node
+         * @param node  Latest node for the resource
+         */
+        synchronized void refresh(int depth, Hyper node) {
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                T value = read(depth, node);
+                if (mHasRead && isSameValue(mLastRead, value)) {
+                    return;
+                }
+                mLastRead = value;
+                mHasRead = true;
+                mLatest = value;
+                mHasLatest = value != null;
+            } catch (FetchException ex) {
+                // try again on the next change
+                Log.w(TAG, "Unable to read " + mKeyPath, ex);
+                return;
+            } catch (Exception ex) {
+                mError = ex;
+            }
+            drain();
+        }
+
+        /**
+         * Walk the key path from a node, one segment at a time, listening to every resource on the
+         * way before its data is read
+         */
+        private T read(int depth, Hyper node) throws Exception {
+            mPath.subList(depth, mPath.size()).clear();
+            mPath.add(node);
+            String keyPath = mKeyPath;
+            for (int skip = 0; skip < depth; skip++) {
+                keyPath = new Hyper.KeyPath(keyPath).nextKey;
+            }
+            try {
+                while (true) {
+                    Hyper.KeyPath parsed = new Hyper.KeyPath(keyPath);
+                    if (!parsed.isMultiKey()) {
+                        return node.get(keyPath);
+                    }
+                    String segment = keyPath.substring(0, keyPath.length() - parsed.nextKey.length() - 1);
+                    Object next = node.get(segment);
+                    if (!(next instanceof Hyper)) {
+                        // let the node say what is wrong with the rest of the key path
+                        return node.get(keyPath);
+                    }
+                    node = (Hyper) next;
+                    mPath.add(node);
+                    observe();
+                    keyPath = parsed.nextKey;
+                }
+            } finally {
+                observe();
+            }
+        }
+
+        /**
+         * Listen to the resources along the key path, and only to those
+         */
+        private void observe() {
+            Set<String> identities = new HashSet<String>();
+            identities.add(mNode.getIdentity());
+            for (Hyper node : mPath) {
+                if (node.getHref() != null) {
+                    identities.add(node.getIdentity());
+                }
+            }
+            ChangeNotifier notifier = mNode.getContext().getChangeNotifier();
+            for (String identity : identities) {
+                if (mObserved.add(identity)) {
+                    notifier.addListener(identity, this);
+                }
+            }
+            for (String identity : new ArrayList<String>(mObserved)) {
+                if (!identities.contains(identity)) {
+                    mObserved.remove(identity);
+                    notifier.removeListener(identity, this);
+                }
+            }
+        }
+
+        @Override
+        protected void emit() {
+            T value = null;
+            synchronized (this) {
+                if (mHasLatest && getRequested() > 0) {
+                    value = mLatest;
+                    mLatest = null;
+                    mHasLatest = false;
+                }
+            }
+            if (value != null) {
+                signalNext(value);
+            }
+            if (mError != null) {
+                signalError(mError);
+            }
+        }
+
+        @Override
+        protected void onCancel() {
+            ChangeNotifier notifier = mNode.getContext().getChangeNotifier();
+            synchronized (this) {
+                for (String identity : mObserved) {
+                    notifier.removeListener(identity, this);
+                }
+                mObserved.clear();
+            }
+        }
+    }
+
+    /**
+     * Nodes are recreated on every get, so they are compared by resource and content
+     */
+    private static boolean isSameValue(Object a, Object b) {
+        if (a instanceof Hyper && b instanceof Hyper) {
+            Hyper lhs = (Hyper) a;
+            Hyper rhs = (Hyper) b;
+            return lhs.getIdentity().equals(rhs.getIdentity()) && DataDiff.deepEquals(lhs.getData(), rhs.getData());
+        }
+        return DataDiff.deepEquals(a, b);
+    }
+}
@@ -0,0 +1,29 @@
+package io.hypergroup.hyper.exception;
+
+import java.net.URL;
+
+/**
+ * When a key path could not be resolved before its deadline. Reports the hop that was being
+ * fetched when time ran out.
+ */
+public class DeadlineExceededException extends FetchException {
+
+    private final String mKeyPath;
+
+    /**
+     * @param keyPath Friendly key path of the node that was being fetched
+     * @param href    URL of the node
+     * @param cause   Underlying error, such as a timeout, may be null
+     */
+    public DeadlineExceededException(String keyPath, URL href, Exception cause) {
+        super("Deadline exceeded fetching " + keyPath + " from " + href, href, 0, false, cause);
+        mKeyPath = keyPath;
+    }
+
+    /**
+     * @return Friendly key path of the hop that exceeded the deadline
+     */
+    public String getKeyPath() {
+        return mKeyPath;
+    }
+}
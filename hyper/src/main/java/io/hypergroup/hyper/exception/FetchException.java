@@ -0,0 +1,61 @@
+package io.hypergroup.hyper.exception;
+
+import java.net.URL;
+
+/**
+ * When fetching a Hyper node's data failed, or was not attempted because its host is failing
+ */
+public class FetchException extends HyperException {
+
+    private final URL mHref;
+    private final int mCode;
+    private final boolean mRetryable;
+    private final long mRetryAfterMillis;
+
+    /**
+     * @param message   Description of the failure
+     * @param href      URL that was fetched
+     * @param code      HTTP status code, or 0 when there was no response
+     * @param retryable Whether or not trying again later may succeed
+     * @param cause     Underlying error, may be null
+     */
+    public FetchException(String message, URL href, int code, boolean retryable, Exception cause) {
+        this(message, href, code, retryable, -1, cause);
+    }
+
+    /**
+     * @param retryAfterMillis Delay asked for by the server with Retry-After, or -1
+     */
+    public FetchException(String message, URL href, int code, boolean retryable, long retryAfterMillis, Exception cause) {
+        super(message, cause);
+        mHref = href;
+        mCode = code;
+        mRetryable = retryable;
+        mRetryAfterMillis = retryAfterMillis;
+    }
+
+    public URL getHref() {
+        return mHref;
+    }
+
+    /**
+     * @return HTTP status code, or 0 when there was no response
+     */
+    public int getCode() {
+        return mCode;
+    }
+
+    /**
+     * @return Whether or not the failure is likely transient, such as an IOException or a 5xx
+     */
+    public boolean isRetryable() {
+        return mRetryable;
+    }
+
+    /**
+     * @return Delay asked for by the server with Retry-After, or -1
+     */
+    public long getRetryAfterMillis() {
+        return mRetryAfterMillis;
+    }
+}
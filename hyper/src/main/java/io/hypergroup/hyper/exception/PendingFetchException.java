@@ -0,0 +1,24 @@
+package io.hypergroup.hyper.exception;
+
+import bolts.Task;
+
+/**
+ * When accessing a value or collection that is not loaded, from a thread that may not fetch it. It
+ * is being fetched in the background.
+ */
+public class PendingFetchException extends InvalidCollectionException {
+
+    private final Task<?> mTask;
+
+    public PendingFetchException(String message, Task<?> task) {
+        super(message);
+        mTask = task;
+    }
+
+    /**
+     * @return A task completing once fetched, with the value for get() and the node otherwise
+     */
+    public Task<?> getTask() {
+        return mTask;
+    }
+}
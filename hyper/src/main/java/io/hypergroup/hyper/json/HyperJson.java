@@ -1,17 +1,19 @@
 package io.hypergroup.hyper.json;
 
+import com.squareup.okhttp.MediaType;
 import com.squareup.okhttp.Request;
-import com.squareup.okhttp.Response;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 
 import io.hypergroup.hyper.Data;
 import io.hypergroup.hyper.Hyper;
 import io.hypergroup.hyper.HyperContext;
+import io.hypergroup.hyper.ItemCallback;
+import io.hypergroup.hyper.LazyData;
 import io.hypergroup.hyper.exception.DataParseException;
 
 /**
@@ -33,52 +35,54 @@ public class HyperJson extends Hyper {
      */
     private static final String ACCEPT_ANY = "*/*";
 
-    /**
-     * HTTP Header for Accept-Encoding
-     */
-    private static final String HTTP_HEADER_ACCEPT_ENCODING = "Accept-Encoding";
-
-    /**
-     * Allow gzip and compression
-     */
-    private static final String HTTP_HEADER_ACCEPT_ENCODING_GZIP = "compress, gzip";
-
     /* default */ HyperJson(String keyPath, URL href, HyperContext context) {
         super(keyPath, href, context);
     }
 
-    /* default */ HyperJson(String keyPath, URL relativeHref, Data data, HyperContext context) {
-        super(keyPath, relativeHref, data, context);
+    /* default */ HyperJson(Hyper parent, String segment, Data data, HyperContext context) {
+        super(parent, segment, data, context);
     }
 
     @Override
     protected Request buildRequest(URL href) {
         return new Request.Builder()
-            .url(mHref)
-            .addHeader(HTTP_HEADER_ACCEPT_ENCODING, HTTP_HEADER_ACCEPT_ENCODING_GZIP) // accept compression
+            .url(addFieldsHint(addExpandHint(href))) // Accept-Encoding is negotiated by Hyper, which decodes the body itself
             .addHeader(HEADER_ACCEPT, ACCEPT_ANY)// accept anything really, if parsing fails, then we have problems
             .build(); // build that request
     }
 
     @Override
-    protected Data parseResponse(Response response) throws IOException, DataParseException {
-        // get the body from the response
-        String body = response.body().string();
-        // try to parse the response
-        JSONObject json;
-        try {
-            json = new JSONObject(body);
-        } catch (JSONException ex) {
-            // fail sometimes
-            throw new DataParseException("Error parsing JSON", ex);
+    protected Data parseResponse(MediaType contentType, InputStream stream) throws IOException, DataParseException {
+        // parse and wrap JSONObject with the Data interface
+        return JsonData.parse(contentType, stream);
+    }
+
+    @Override
+    protected Data parseResponse(MediaType contentType, InputStream stream, ItemCallback<Object> callback) throws IOException, DataParseException {
+        // parse the collection item by item as the body arrives
+        return JsonData.parse(contentType, stream, callback);
+    }
+
+    @Override
+    protected boolean canApplyDelta(String format) {
+        return JsonPatch.supports(format);
+    }
+
+    @Override
+    protected void applyDelta(Data data, String format, MediaType contentType, byte[] body) throws DataParseException {
+        if (data instanceof LazyData) {
+            // restored from the store, decode it to patch it
+            data = ((LazyData) data).getDecoded();
+        }
+        if (!(data instanceof JsonData)) {
+            throw new DataParseException("Can not patch " + data);
         }
-        // wrap JSONObject with the Data interface
-        return new JsonData(json);
+        ((JsonData) data).patch(format, contentType, body);
     }
 
     @Override
-    protected Hyper createHyperNodeFromData(String keyPath, URL relativeHref, Data data) {
-        return new HyperJson(keyPath, relativeHref, data, getContext());
+    protected Hyper createHyperNodeFromData(Hyper parent, String segment, Data data) {
+        return new HyperJson(parent, segment, data, getContext());
     }
 
     @Override
@@ -12,6 +12,7 @@ import java.net.URL;
 
 import io.hypergroup.hyper.Hyper;
 import io.hypergroup.hyper.HyperContext;
+import io.hypergroup.hyper.store.ResponseStore;
 
 /**
  * Helper method for HyperJson
@@ -33,6 +34,16 @@ public class HyperJsons {
      */
     private static final String CACHE_DIR = "hyper-cache";
 
+    /**
+     * Default max response store size
+     */
+    private static final long STORE_SIZE_BYTES = 1024 * 1024 * 16;
+
+    /**
+     * Default response store dir
+     */
+    private static final String STORE_DIR = "hyper-store";
+
     /**
      * Client creation functions
      */
@@ -66,6 +77,34 @@ public class HyperJsons {
             return createCache(context, CACHE_DIR, CACHE_SIZE_BYTES);
         }
 
+        /**
+         * Create a ResponseStore for a HyperContext
+         *
+         * @param context   Android context to create the store with
+         * @param dirName   Directory name of the store
+         * @param sizeBytes Max size of the store in bytes
+         * @return A new store or null if there is an IOException
+         */
+        public static ResponseStore createResponseStore(Context context, String dirName, long sizeBytes) {
+            File dir = new File(context.getFilesDir(), dirName);
+            try {
+                return new ResponseStore(dir, sizeBytes);
+            } catch (IOException ex) {
+                Log.w(TAG, "Unable to create response store: " + dir, ex);
+                return null;
+            }
+        }
+
+        /**
+         * Create a ResponseStore for a HyperContext using default settings
+         *
+         * @param context Android context to create the store with
+         * @return A new store or null if there is an IOException
+         */
+        public static ResponseStore createResponseStore(Context context) {
+            return createResponseStore(context, STORE_DIR, STORE_SIZE_BYTES);
+        }
+
         /**
          * Create an OkHttpClient with a cache using default settings
          *
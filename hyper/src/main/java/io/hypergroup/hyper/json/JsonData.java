@@ -3,20 +3,34 @@ package io.hypergroup.hyper.json;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.squareup.okhttp.MediaType;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import io.hypergroup.hyper.Data;
+import io.hypergroup.hyper.ItemCallback;
+import io.hypergroup.hyper.NumberArray;
+import io.hypergroup.hyper.exception.DataParseException;
 import io.hypergroup.hyper.exception.InvalidCollectionException;
 import io.hypergroup.hyper.exception.MissingPropertyException;
 import io.hypergroup.hyper.exception.NoHrefException;
+import io.hypergroup.hyper.exception.WrongDataTypeException;
 
 /**
  * JSON implementation of Hyper.Data
@@ -33,18 +47,33 @@ public class JsonData implements Data {
     /**
      * Key used to extract collections
      */
-    private static final String KEY_COLLECTION = "collection";
+    /* default */ static final String KEY_COLLECTION = "collection";
 
     /**
      * Key used to extract hrefs
      */
     private static final String KEY_HREF = "href";
 
+    /**
+     * Charset of JSON bodies that do not declare one
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Size of the buffer used to read bodies
+     */
+    private static final int BUFFER_SIZE = 8192;
+
     /**
      * Wrapped object
      */
     private JSONObject mData;
 
+    /**
+     * Numeric arrays already copied into primitive arrays, by key
+     */
+    private transient Map<String, NumberArray> mNumberArrays;
+
     /**
      * Create a new JsonData as a wrapper for a JSONObject
      *
@@ -54,6 +83,60 @@ public class JsonData implements Data {
         mData = wrap;
     }
 
+    /**
+     * Parse a JSON response body
+     *
+     * @param contentType Content-Type of the body, used for its charset, may be null
+     * @param stream      Decoded body
+     * @return The parsed body
+     * @throws IOException        When reading the body fails
+     * @throws DataParseException When the body is not a JSON object
+     */
+    public static JsonData parse(MediaType contentType, InputStream stream) throws IOException, DataParseException {
+        // inflate the body straight into characters
+        Charset charset = contentType == null ? UTF_8 : contentType.charset(UTF_8);
+        String body = readFully(new InputStreamReader(stream, charset));
+        // try to parse the response
+        JSONObject json;
+        try {
+            json = new JSONObject(body);
+        } catch (JSONException ex) {
+            // fail sometimes
+            throw new DataParseException("Error parsing JSON", ex);
+        }
+        // wrap JSONObject with the Data interface
+        return new JsonData(json);
+    }
+
+    /**
+     * Parse a JSON response body from the stream, handing each item of its collection to the
+     * callback as soon as it has been read
+     *
+     * @param contentType Content-Type of the body, used for its charset, may be null
+     * @param stream      Decoded body
+     * @param callback    Receives the raw collection items, JSONObjects and values
+     * @return The parsed body
+     * @throws IOException        When reading the body fails
+     * @throws DataParseException When the body is not a JSON object
+     */
+    public static JsonData parse(MediaType contentType, InputStream stream, ItemCallback<Object> callback) throws IOException, DataParseException {
+        Charset charset = contentType == null ? UTF_8 : contentType.charset(UTF_8);
+        return new JsonData(new JsonStreamReader(new InputStreamReader(stream, charset), callback).read());
+    }
+
+    /**
+     * Read all characters from a reader
+     */
+    private static String readFully(Reader reader) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[BUFFER_SIZE];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            builder.append(buffer, 0, read);
+        }
+        return builder.toString();
+    }
+
     @Override
     public boolean hasProperty(String key) {
         return mData.has(key);
@@ -70,6 +153,93 @@ public class JsonData implements Data {
         }
     }
 
+    @Override
+    public int getInt(String key) throws MissingPropertyException, WrongDataTypeException {
+        Object value = getProperty(key);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        try {
+            // numeric strings, the way org.json coerces them
+            return mData.getInt(key);
+        } catch (JSONException ex) {
+            throw new WrongDataTypeException("Not a number: " + key, ex);
+        }
+    }
+
+    @Override
+    public long getLong(String key) throws MissingPropertyException, WrongDataTypeException {
+        Object value = getProperty(key);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        try {
+            return mData.getLong(key);
+        } catch (JSONException ex) {
+            throw new WrongDataTypeException("Not a number: " + key, ex);
+        }
+    }
+
+    @Override
+    public double getDouble(String key) throws MissingPropertyException, WrongDataTypeException {
+        Object value = getProperty(key);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        try {
+            return mData.getDouble(key);
+        } catch (JSONException ex) {
+            throw new WrongDataTypeException("Not a number: " + key, ex);
+        }
+    }
+
+    @Override
+    public boolean getBoolean(String key) throws MissingPropertyException, WrongDataTypeException {
+        getProperty(key);
+        try {
+            return mData.getBoolean(key);
+        } catch (JSONException ex) {
+            throw new WrongDataTypeException("Not a boolean: " + key, ex);
+        }
+    }
+
+    @Override
+    public synchronized NumberArray getNumberArray(String key) throws MissingPropertyException, WrongDataTypeException {
+        NumberArray numbers = mNumberArrays == null ? null : mNumberArrays.get(key);
+        if (numbers != null) {
+            return numbers;
+        }
+        Object value = getProperty(key);
+        if (value instanceof JSONArray) {
+            numbers = NumberArray.copyOf(asList((JSONArray) value));
+        }
+        if (numbers == null) {
+            throw new WrongDataTypeException("Not an array of numbers: " + key);
+        }
+        if (mNumberArrays == null) {
+            mNumberArrays = new HashMap<String, NumberArray>();
+        }
+        mNumberArrays.put(key, numbers);
+        return numbers;
+    }
+
+    /**
+     * View a JSONArray as a List without copying it
+     */
+    private static List<Object> asList(final JSONArray array) {
+        return new AbstractList<Object>() {
+            @Override
+            public Object get(int index) {
+                return array.opt(index);
+            }
+
+            @Override
+            public int size() {
+                return array.length();
+            }
+        };
+    }
+
     @Override
     public List<Object> getCollection() throws InvalidCollectionException {
         JSONArray collection;
@@ -107,25 +277,32 @@ public class JsonData implements Data {
 
     @Override
     public URL getHref(URL relativeHref) throws NoHrefException {
+        String href = getRawHref();
+        // if the href is empty
+        if (TextUtils.isEmpty(href)) {
+            // empty href
+            return relativeHref;
+        }
+        try {
+            // build a relative url
+            return new URL(relativeHref, href);
+        } catch (MalformedURLException ex) {
+            // fail with a standardized exception
+            throw new NoHrefException("Invalid href found", ex);
+        }
+    }
+
+    @Override
+    public String getRawHref() throws NoHrefException {
         try {
             if (mData.has(KEY_HREF) && mData.isNull(KEY_HREF)) {
                 throw new NoHrefException("Found null href");
             }
             // try to get a string named "href"
-            String href = mData.getString(KEY_HREF);
-            // if the href is empty
-            if (TextUtils.isEmpty(href)) {
-                // empty href
-                return relativeHref;
-            }
-            // build a relative url
-            return new URL(relativeHref, href);
+            return mData.getString(KEY_HREF);
         } catch (JSONException ex) {
             // fail with a standardized exception
             throw new NoHrefException("Valid href not found", ex);
-        } catch (MalformedURLException ex) {
-            // fail with a standardized exception
-            throw new NoHrefException("Invalid href found", ex);
         }
     }
 
@@ -139,8 +316,58 @@ public class JsonData implements Data {
         return keys.toArray(new String[keys.size()]);
     }
 
+    /**
+     * Apply a delta, keeping the wrapped object itself since it may be embedded in a parent's
+     * data. Only the objects and arrays on the paths the delta touches are rebuilt.
+     *
+     * @param format      One of the DeltaUpdates formats
+     * @param contentType Content-Type of the delta, used for its charset, may be null
+     * @param body        Decoded delta
+     * @throws DataParseException When the delta can not be parsed or does not apply, the data is
+     *                            left as it was
+     */
+    public void patch(String format, MediaType contentType, byte[] body) throws DataParseException {
+        Charset charset = contentType == null ? UTF_8 : contentType.charset(UTF_8);
+        JSONObject patched = JsonPatch.apply(format, mData, new String(body, charset));
+        synchronized (this) {
+            mNumberArrays = null;
+        }
+        for (String key : getKeys()) {
+            if (!patched.has(key)) {
+                mData.remove(key);
+            }
+        }
+        Iterator<String> iKeys = patched.keys();
+        while (iKeys.hasNext()) {
+            String key = iKeys.next();
+            Object value = patched.opt(key);
+            // untouched values are shared with the patched object
+            if (value != mData.opt(key)) {
+                try {
+                    mData.put(key, value);
+                } catch (JSONException ex) {
+                    Log.w(TAG, "Error patching data for key: " + key, ex);
+                }
+            }
+        }
+    }
+
     @Override
     public void merge(Data data) {
+        synchronized (this) {
+            mNumberArrays = null;
+        }
+        if (!(data instanceof JsonData)) {
+            // a node may be fetched in a different format than its parent
+            for (String key : data.getKeys()) {
+                try {
+                    mData.put(key, toJson(data.getProperty(key)));
+                } catch (Exception ex) {
+                    Log.w(TAG, "Error merging data for key: " + key, ex);
+                }
+            }
+            return;
+        }
         JSONObject jsonData = ((JsonData) data).mData;
         Iterator<String> iKeys = jsonData.keys();
         while (iKeys.hasNext()) {
@@ -152,4 +379,21 @@ public class JsonData implements Data {
             }
         }
     }
+
+    /**
+     * Turn Lists into JSONArrays, so that getCollection and getNumberArray read them. Other Data
+     * stays as it is for the node to wrap.
+     */
+    private static Object toJson(Object value) {
+        if (value instanceof List) {
+            JSONArray array = new JSONArray();
+            for (Object item : (List<?>) value) {
+                array.put(toJson(item));
+            }
+            return array;
+        } else if (value == null) {
+            return JSONObject.NULL;
+        }
+        return value;
+    }
 }
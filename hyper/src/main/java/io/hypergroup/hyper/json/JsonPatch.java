@@ -0,0 +1,389 @@
+package io.hypergroup.hyper.json;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import io.hypergroup.hyper.DeltaUpdates;
+import io.hypergroup.hyper.exception.DataParseException;
+
+/**
+ * Applies JSON Patch (RFC 6902) and JSON Merge Patch (RFC 7386) documents to a JSON object.
+ * <br/>
+ * Patching is copy-on-write. Every object and array on the path to a change is copied once,
+ * shallowly, and everything else is shared with the original, so changing one item of a large
+ * collection copies the collection's array and that item only. The original is never modified,
+ * so a patch that fails part way leaves no trace.
+ */
+/* default */ class JsonPatch {
+
+    private static final String OP_ADD = "add";
+    private static final String OP_REMOVE = "remove";
+    private static final String OP_REPLACE = "replace";
+    private static final String OP_MOVE = "move";
+    private static final String OP_COPY = "copy";
+    private static final String OP_TEST = "test";
+
+    /**
+     * Index that appends to an array
+     */
+    private static final String END_OF_ARRAY = "-";
+
+    /**
+     * Patched root
+     */
+    private JSONObject mRoot;
+
+    /**
+     * Objects and arrays this patch created, which it may change in place
+     */
+    private final Map<Object, Boolean> mCopies = new IdentityHashMap<Object, Boolean>();
+
+    private JsonPatch(JSONObject target) throws JSONException {
+        mRoot = copyObject(target);
+        mCopies.put(mRoot, Boolean.TRUE);
+    }
+
+    /**
+     * @param format One of the DeltaUpdates formats
+     * @return Whether or not patches in the format can be applied
+     */
+    /* default */ static boolean supports(String format) {
+        return DeltaUpdates.JSON_PATCH.equals(format) || DeltaUpdates.MERGE_PATCH.equals(format);
+    }
+
+    /**
+     * Apply a patch
+     *
+     * @param format One of the DeltaUpdates formats
+     * @param target Object to patch, left as it is
+     * @param patch  Body of the patch
+     * @return The patched object, sharing every value the patch did not touch with the target
+     * @throws DataParseException When the patch can not be parsed or does not apply
+     */
+    /* default */ static JSONObject apply(String format, JSONObject target, String patch) throws DataParseException {
+        try {
+            if (DeltaUpdates.JSON_PATCH.equals(format)) {
+                JsonPatch jsonPatch = new JsonPatch(target);
+                JSONArray operations = new JSONArray(patch);
+                for (int index = 0; index < operations.length(); index++) {
+                    jsonPatch.apply(operations.getJSONObject(index));
+                }
+                return jsonPatch.mRoot;
+            } else if (DeltaUpdates.MERGE_PATCH.equals(format)) {
+                Object patched = mergePatch(target, new JSONObject(patch));
+                return (JSONObject) patched;
+            }
+        } catch (JSONException ex) {
+            throw new DataParseException("Error applying " + format, ex);
+        }
+        throw new DataParseException("Unsupported delta format: " + format);
+    }
+
+    // ## JSON Patch
+
+    private void apply(JSONObject operation) throws JSONException {
+        String op = operation.getString("op");
+        List<String> path = parsePointer(operation.getString("path"));
+        if (OP_ADD.equals(op)) {
+            add(path, operation.get("value"));
+        } else if (OP_REMOVE.equals(op)) {
+            remove(path);
+        } else if (OP_REPLACE.equals(op)) {
+            replace(path, operation.get("value"));
+        } else if (OP_MOVE.equals(op)) {
+            List<String> from = parsePointer(operation.getString("from"));
+            if (path.size() > from.size() && path.subList(0, from.size()).equals(from)) {
+                throw new JSONException("Can not move " + from + " into itself");
+            }
+            Object value = get(from);
+            remove(from);
+            add(path, value);
+        } else if (OP_COPY.equals(op)) {
+            add(path, deepCopy(get(parsePointer(operation.getString("from")))));
+        } else if (OP_TEST.equals(op)) {
+            if (!jsonEquals(get(path), operation.get("value"))) {
+                throw new JSONException("Test failed at " + path);
+            }
+        } else {
+            throw new JSONException("Unknown operation: " + op);
+        }
+    }
+
+    private void add(List<String> path, Object value) throws JSONException {
+        if (path.isEmpty()) {
+            if (!(value instanceof JSONObject)) {
+                throw new JSONException("Can not replace the root with a value");
+            }
+            mRoot = (JSONObject) value;
+            return;
+        }
+        Object parent = getCopy(path, path.size() - 1);
+        String key = path.get(path.size() - 1);
+        if (parent instanceof JSONObject) {
+            ((JSONObject) parent).put(key, value);
+            return;
+        }
+        JSONArray array = (JSONArray) parent;
+        int length = array.length();
+        int index = END_OF_ARRAY.equals(key) ? length : parseIndex(key, length + 1);
+        if (index == length) {
+            array.put(value);
+            return;
+        }
+        // no insert before API 19, rebuild the array around the item
+        JSONArray inserted = new JSONArray();
+        for (int position = 0; position < length; position++) {
+            if (position == index) {
+                inserted.put(value);
+            }
+            inserted.put(array.opt(position));
+        }
+        replaceArray(path.subList(0, path.size() - 1), inserted);
+    }
+
+    private void remove(List<String> path) throws JSONException {
+        if (path.isEmpty()) {
+            throw new JSONException("Can not remove the root");
+        }
+        Object parent = getCopy(path, path.size() - 1);
+        String key = path.get(path.size() - 1);
+        if (parent instanceof JSONObject) {
+            if (!((JSONObject) parent).has(key)) {
+                throw new JSONException("Missing " + key);
+            }
+            ((JSONObject) parent).remove(key);
+            return;
+        }
+        JSONArray array = (JSONArray) parent;
+        int index = parseIndex(key, array.length());
+        // no remove before API 19 either
+        JSONArray removed = new JSONArray();
+        for (int position = 0; position < array.length(); position++) {
+            if (position != index) {
+                removed.put(array.opt(position));
+            }
+        }
+        replaceArray(path.subList(0, path.size() - 1), removed);
+    }
+
+    private void replace(List<String> path, Object value) throws JSONException {
+        if (path.isEmpty()) {
+            add(path, value);
+            return;
+        }
+        Object parent = getCopy(path, path.size() - 1);
+        String key = path.get(path.size() - 1);
+        // the value must be there to be replaced
+        getChild(parent, key);
+        setChild(parent, key, value);
+    }
+
+    /**
+     * @return The value at a path, without copying anything
+     */
+    private Object get(List<String> path) throws JSONException {
+        Object value = mRoot;
+        for (String key : path) {
+            value = getChild(value, key);
+        }
+        return value;
+    }
+
+    /**
+     * Make sure the containers on the first steps of a path are copies, copying those that are not
+     *
+     * @return The container at the end of those steps
+     */
+    private Object getCopy(List<String> path, int steps) throws JSONException {
+        Object container = mRoot;
+        for (int step = 0; step < steps; step++) {
+            String key = path.get(step);
+            Object child = getChild(container, key);
+            if (!mCopies.containsKey(child)) {
+                if (child instanceof JSONObject) {
+                    child = copyObject((JSONObject) child);
+                } else if (child instanceof JSONArray) {
+                    child = copyArray((JSONArray) child);
+                } else {
+                    throw new JSONException("Not an object or array at " + key);
+                }
+                mCopies.put(child, Boolean.TRUE);
+                setChild(container, key, child);
+            }
+            container = child;
+        }
+        if (!(container instanceof JSONObject) && !(container instanceof JSONArray)) {
+            throw new JSONException("Not an object or array at " + path);
+        }
+        return container;
+    }
+
+    private void replaceArray(List<String> path, JSONArray array) throws JSONException {
+        mCopies.put(array, Boolean.TRUE);
+        setChild(getCopy(path, path.size() - 1), path.get(path.size() - 1), array);
+    }
+
+    private static Object getChild(Object container, String key) throws JSONException {
+        if (container instanceof JSONObject) {
+            JSONObject object = (JSONObject) container;
+            if (!object.has(key)) {
+                throw new JSONException("Missing " + key);
+            }
+            return object.opt(key);
+        } else if (container instanceof JSONArray) {
+            JSONArray array = (JSONArray) container;
+            return array.opt(parseIndex(key, array.length()));
+        }
+        throw new JSONException("Not an object or array at " + key);
+    }
+
+    private static void setChild(Object container, String key, Object value) throws JSONException {
+        if (container instanceof JSONObject) {
+            ((JSONObject) container).put(key, value);
+        } else {
+            ((JSONArray) container).put(parseIndex(key, ((JSONArray) container).length()), value);
+        }
+    }
+
+    /**
+     * @param bound Exclusive upper bound of the index
+     */
+    private static int parseIndex(String key, int bound) throws JSONException {
+        int index;
+        try {
+            index = Integer.parseInt(key);
+        } catch (NumberFormatException ex) {
+            throw new JSONException("Not an index: " + key);
+        }
+        if (index < 0 || index >= bound || (key.length() > 1 && key.charAt(0) == '0')) {
+            throw new JSONException("Index out of bounds: " + key);
+        }
+        return index;
+    }
+
+    /**
+     * Split an RFC 6901 JSON Pointer into its unescaped keys
+     */
+    private static List<String> parsePointer(String pointer) throws JSONException {
+        List<String> keys = new ArrayList<String>();
+        if (pointer.length() == 0) {
+            return keys;
+        }
+        if (pointer.charAt(0) != '/') {
+            throw new JSONException("Invalid pointer: " + pointer);
+        }
+        for (String key : pointer.substring(1).split("/", -1)) {
+            keys.add(key.replace("~1", "/").replace("~0", "~"));
+        }
+        return keys;
+    }
+
+    // ## JSON Merge Patch
+
+    /**
+     * Merge a patch into a target, copying only the objects the patch reaches into
+     */
+    private static Object mergePatch(Object target, Object patch) throws JSONException {
+        if (!(patch instanceof JSONObject)) {
+            return patch;
+        }
+        JSONObject merge = (JSONObject) patch;
+        JSONObject result = target instanceof JSONObject ? copyObject((JSONObject) target) : new JSONObject();
+        Iterator<String> keys = merge.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            Object value = merge.opt(key);
+            if (value == JSONObject.NULL) {
+                result.remove(key);
+            } else {
+                result.put(key, mergePatch(result.opt(key), value));
+            }
+        }
+        return result;
+    }
+
+    // ## Values
+
+    private static JSONObject copyObject(JSONObject object) throws JSONException {
+        JSONObject copy = new JSONObject();
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            copy.put(key, object.opt(key));
+        }
+        return copy;
+    }
+
+    private static JSONArray copyArray(JSONArray array) {
+        JSONArray copy = new JSONArray();
+        for (int index = 0; index < array.length(); index++) {
+            copy.put(array.opt(index));
+        }
+        return copy;
+    }
+
+    /**
+     * Copy a value all the way down, so that the copy and the original can be patched apart
+     */
+    private static Object deepCopy(Object value) throws JSONException {
+        if (value instanceof JSONObject) {
+            JSONObject copy = new JSONObject();
+            Iterator<String> keys = ((JSONObject) value).keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                copy.put(key, deepCopy(((JSONObject) value).opt(key)));
+            }
+            return copy;
+        } else if (value instanceof JSONArray) {
+            JSONArray copy = new JSONArray();
+            for (int index = 0; index < ((JSONArray) value).length(); index++) {
+                copy.put(deepCopy(((JSONArray) value).opt(index)));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    /**
+     * Compare JSON values the way RFC 6902's test does, numbers by value
+     */
+    private static boolean jsonEquals(Object a, Object b) throws JSONException {
+        if (a instanceof Number && b instanceof Number) {
+            return ((Number) a).doubleValue() == ((Number) b).doubleValue();
+        } else if (a instanceof JSONObject && b instanceof JSONObject) {
+            JSONObject lhs = (JSONObject) a;
+            JSONObject rhs = (JSONObject) b;
+            if (lhs.length() != rhs.length()) {
+                return false;
+            }
+            Iterator<String> keys = lhs.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (!rhs.has(key) || !jsonEquals(lhs.opt(key), rhs.opt(key))) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (a instanceof JSONArray && b instanceof JSONArray) {
+            JSONArray lhs = (JSONArray) a;
+            JSONArray rhs = (JSONArray) b;
+            if (lhs.length() != rhs.length()) {
+                return false;
+            }
+            for (int index = 0; index < lhs.length(); index++) {
+                if (!jsonEquals(lhs.opt(index), rhs.opt(index))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return a == null ? b == null : a.equals(b);
+    }
+}
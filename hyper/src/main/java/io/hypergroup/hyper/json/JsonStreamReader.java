@@ -0,0 +1,128 @@
+package io.hypergroup.hyper.json;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import io.hypergroup.hyper.ItemCallback;
+import io.hypergroup.hyper.exception.DataParseException;
+
+/**
+ * Parses a hyper+json document from a stream into org.json types, handing each item of its
+ * top-level collection to a callback as soon as the item is complete.
+ * <br/>
+ * The document is still built in full, so the result is the same as parsing it with JSONObject.
+ */
+/* default */ class JsonStreamReader {
+
+    private final JsonReader mReader;
+    private final ItemCallback<Object> mCallback;
+
+    /**
+     * @param reader   Characters of the document
+     * @param callback Receives the raw items of the top-level collection as they are parsed
+     */
+    /* default */ JsonStreamReader(Reader reader, ItemCallback<Object> callback) {
+        mReader = new JsonReader(reader);
+        mCallback = callback;
+    }
+
+    /**
+     * @return The parsed document
+     * @throws IOException        When reading fails
+     * @throws DataParseException When the document is not a JSON object
+     */
+    public JSONObject read() throws IOException, DataParseException {
+        try {
+            if (mReader.peek() != JsonToken.BEGIN_OBJECT) {
+                throw new DataParseException("Expected a JSON object but found " + mReader.peek());
+            }
+            JSONObject json = new JSONObject();
+            mReader.beginObject();
+            while (mReader.hasNext()) {
+                String name = mReader.nextName();
+                if (JsonData.KEY_COLLECTION.equals(name) && mReader.peek() == JsonToken.BEGIN_ARRAY) {
+                    json.put(name, readCollection());
+                } else {
+                    json.put(name, readValue());
+                }
+            }
+            mReader.endObject();
+            return json;
+        } catch (JSONException ex) {
+            throw new DataParseException("Error parsing JSON", ex);
+        } catch (IllegalStateException ex) {
+            // JsonReader reports malformed documents this way
+            throw new DataParseException("Error parsing JSON", ex);
+        }
+    }
+
+    private JSONArray readCollection() throws IOException, JSONException {
+        JSONArray collection = new JSONArray();
+        mReader.beginArray();
+        int index = 0;
+        while (mReader.hasNext()) {
+            Object item = readValue();
+            collection.put(item);
+            mCallback.onItem(index++, item == JSONObject.NULL ? null : item);
+        }
+        mReader.endArray();
+        return collection;
+    }
+
+    private Object readValue() throws IOException, JSONException {
+        switch (mReader.peek()) {
+            case BEGIN_OBJECT:
+                JSONObject object = new JSONObject();
+                mReader.beginObject();
+                while (mReader.hasNext()) {
+                    object.put(mReader.nextName(), readValue());
+                }
+                mReader.endObject();
+                return object;
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                mReader.beginArray();
+                while (mReader.hasNext()) {
+                    array.put(readValue());
+                }
+                mReader.endArray();
+                return array;
+            case STRING:
+                return mReader.nextString();
+            case NUMBER:
+                return toNumber(mReader.nextString());
+            case BOOLEAN:
+                return mReader.nextBoolean();
+            case NULL:
+                mReader.nextNull();
+                return JSONObject.NULL;
+            default:
+                throw new JSONException("Unexpected " + mReader.peek());
+        }
+    }
+
+    /**
+     * Box numbers the way JSONObject does, as the narrowest of Integer, Long and Double
+     */
+    private static Number toNumber(String literal) {
+        if (literal.indexOf('.') == -1 && literal.indexOf('e') == -1 && literal.indexOf('E') == -1) {
+            try {
+                long value = Long.parseLong(literal);
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                    return (int) value;
+                }
+                return value;
+            } catch (NumberFormatException ex) {
+                // too long for a long, fall through to a double
+            }
+        }
+        return Double.valueOf(literal);
+    }
+}
@@ -0,0 +1,19 @@
+package io.hypergroup.hyper.model;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Overrides the key a {@link HyperModel} accessor reads
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface HyperKey {
+
+    /**
+     * @return Key to read
+     */
+    String value();
+}
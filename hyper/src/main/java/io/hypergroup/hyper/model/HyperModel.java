@@ -0,0 +1,31 @@
+package io.hypergroup.hyper.model;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the shape of a resource as an interface of no-argument accessors.
+ * <br/>
+ * The hyper-compiler annotation processor generates a class named Hyper + the interface's name
+ * that implements it on top of Data, with primitive returns and no reflection.
+ * <pre>
+ *     &#64;HyperModel
+ *     public interface User {
+ *         String firstName();
+ *         int id();
+ *         Avatar avatar();
+ *     }
+ *
+ *     User user = HyperUser.from(node);
+ * </pre>
+ * Accessors read the snake_case version of their name unless they are annotated with
+ * {@link HyperKey}. They may return primitives, their boxes, String, Data, other HyperModels or
+ * Lists of those. The generated from() checks every value once and throws a
+ * MissingPropertyException or WrongDataTypeException, from(Hyper) also fetches the node.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface HyperModel {
+}
@@ -0,0 +1,202 @@
+package io.hypergroup.hyper.model;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.hypergroup.hyper.Data;
+import io.hypergroup.hyper.Hyper;
+import io.hypergroup.hyper.exception.HyperException;
+import io.hypergroup.hyper.exception.InvalidCollectionException;
+import io.hypergroup.hyper.exception.MissingPropertyException;
+import io.hypergroup.hyper.exception.WrongDataTypeException;
+import io.hypergroup.hyper.json.JsonData;
+
+/**
+ * Typed property reads used by the classes generated for {@link HyperModel}s.
+ * <br/>
+ * A missing property throws a MissingPropertyException and a value of another type throws a
+ * WrongDataTypeException. Numbers and booleans may be given as strings, the way JsonData reads
+ * them. A null value reads as null, and only fails where a primitive is expected.
+ */
+public final class Models {
+
+    /**
+     * Key used to extract collections
+     */
+    private static final String KEY_COLLECTION = "collection";
+
+    private Models() {
+    }
+
+    /**
+     * @return The raw value of a property, or null if it is null
+     */
+    public static Object get(Data data, String key) throws MissingPropertyException {
+        Object value = data.getProperty(key);
+        return value == JSONObject.NULL ? null : value;
+    }
+
+    public static String getString(Data data, String key) throws MissingPropertyException, WrongDataTypeException {
+        return asString(get(data, key), key);
+    }
+
+    /**
+     * @return A number, parsing strings, or null
+     */
+    public static Number getNumber(Data data, String key) throws MissingPropertyException, WrongDataTypeException {
+        return asNumber(get(data, key), key);
+    }
+
+    public static int getInt(Data data, String key) throws MissingPropertyException, WrongDataTypeException {
+        return getPrimitiveNumber(data, key).intValue();
+    }
+
+    public static long getLong(Data data, String key) throws MissingPropertyException, WrongDataTypeException {
+        return getPrimitiveNumber(data, key).longValue();
+    }
+
+    public static double getDouble(Data data, String key) throws MissingPropertyException, WrongDataTypeException {
+        return getPrimitiveNumber(data, key).doubleValue();
+    }
+
+    public static float getFloat(Data data, String key) throws MissingPropertyException, WrongDataTypeException {
+        return getPrimitiveNumber(data, key).floatValue();
+    }
+
+    private static Number getPrimitiveNumber(Data data, String key) throws MissingPropertyException, WrongDataTypeException {
+        Number number = getNumber(data, key);
+        if (number == null) {
+            throw new WrongDataTypeException("Not a number: " + key);
+        }
+        return number;
+    }
+
+    public static boolean getBoolean(Data data, String key) throws MissingPropertyException, WrongDataTypeException {
+        Boolean value = getBooleanObject(data, key);
+        if (value == null) {
+            throw new WrongDataTypeException("Not a boolean: " + key);
+        }
+        return value;
+    }
+
+    /**
+     * @return A Boolean, parsing "true" and "false", or null
+     */
+    public static Boolean getBooleanObject(Data data, String key) throws MissingPropertyException, WrongDataTypeException {
+        return asBoolean(get(data, key), key);
+    }
+
+    /**
+     * @return A nested object as Data, or null
+     */
+    public static Data getData(Data data, String key) throws MissingPropertyException, WrongDataTypeException {
+        return asData(get(data, key), key);
+    }
+
+    /**
+     * @return The items of an array or of the collection, or null
+     */
+    public static List<Object> getList(Data data, String key) throws MissingPropertyException, WrongDataTypeException {
+        Object value = get(data, key);
+        if (value == null) {
+            return null;
+        } else if (KEY_COLLECTION.equals(key)) {
+            try {
+                return data.getCollection();
+            } catch (InvalidCollectionException ex) {
+                throw new WrongDataTypeException("Not a collection: " + key, ex);
+            }
+        } else if (value instanceof List) {
+            return (List<Object>) value;
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            int N = array.length();
+            List<Object> items = new ArrayList<Object>(N);
+            for (int index = 0; index < N; index++) {
+                Object item = array.opt(index);
+                items.add(item == JSONObject.NULL ? null : item);
+            }
+            return items;
+        }
+        throw new WrongDataTypeException("Not an array: " + key);
+    }
+
+    /**
+     * Read a list from a node like get would, the items of the collection as nodes
+     *
+     * @return The items, or null
+     */
+    public static List<Object> getList(Hyper node, String key) throws InterruptedException, HyperException {
+        if (node.get(key) == null) {
+            return null;
+        } else if (KEY_COLLECTION.equals(key)) {
+            return node.each();
+        }
+        return getList(node.getData(), key);
+    }
+
+    // ## Values
+
+    /**
+     * @param key Key the value was read from, for the error
+     */
+    public static String asString(Object value, String key) throws WrongDataTypeException {
+        if (value == null || value instanceof String) {
+            return (String) value;
+        }
+        throw new WrongDataTypeException("Not a string: " + key);
+    }
+
+    /**
+     * @param key Key the value was read from, for the error
+     */
+    public static Number asNumber(Object value, String key) throws WrongDataTypeException {
+        if (value == null || value instanceof Number) {
+            return (Number) value;
+        } else if (value instanceof String) {
+            try {
+                return Double.valueOf((String) value);
+            } catch (NumberFormatException ex) {
+                throw new WrongDataTypeException("Not a number: " + key, ex);
+            }
+        }
+        throw new WrongDataTypeException("Not a number: " + key);
+    }
+
+    /**
+     * @param key Key the value was read from, for the error
+     */
+    public static Boolean asBoolean(Object value, String key) throws WrongDataTypeException {
+        if (value == null || value instanceof Boolean) {
+            return (Boolean) value;
+        } else if ("true".equals(value) || "false".equals(value)) {
+            return Boolean.valueOf((String) value);
+        }
+        throw new WrongDataTypeException("Not a boolean: " + key);
+    }
+
+    /**
+     * @param key Key the value was read from, for the error
+     */
+    public static Hyper asNode(Object value, String key) throws WrongDataTypeException {
+        if (value == null || value instanceof Hyper) {
+            return (Hyper) value;
+        }
+        throw new WrongDataTypeException("Not an object: " + key);
+    }
+
+    /**
+     * @param key Key the value was read from, for the error
+     */
+    public static Data asData(Object value, String key) throws WrongDataTypeException {
+        if (value == null || value instanceof Data) {
+            return (Data) value;
+        } else if (value instanceof JSONObject) {
+            return new JsonData((JSONObject) value);
+        }
+        throw new WrongDataTypeException("Not an object: " + key);
+    }
+}
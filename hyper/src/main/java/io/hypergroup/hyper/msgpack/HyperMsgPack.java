@@ -0,0 +1,94 @@
+package io.hypergroup.hyper.msgpack;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+
+import io.hypergroup.hyper.Data;
+import io.hypergroup.hyper.Hyper;
+import io.hypergroup.hyper.HyperContext;
+import io.hypergroup.hyper.exception.DataParseException;
+import io.hypergroup.hyper.json.JsonData;
+
+/**
+ * MessagePack implementation of hypermedia, using the same keywords as hyper+json.
+ * <br/>
+ * MessagePack is preferred through the Accept header, servers that only speak hyper+json are
+ * still understood.
+ */
+public class HyperMsgPack extends Hyper {
+
+    /**
+     * HTTP Header for Accept
+     */
+    private static final String HEADER_ACCEPT = "Accept";
+
+    /**
+     * Prefer MessagePack, fall back to JSON
+     */
+    private static final String ACCEPT_MSGPACK = MsgPack.MEDIA_TYPE + ", application/json;q=0.5, */*;q=0.1";
+
+    /* default */ HyperMsgPack(String keyPath, URL href, HyperContext context) {
+        super(keyPath, href, context);
+    }
+
+    /* default */ HyperMsgPack(Hyper parent, String segment, Data data, HyperContext context) {
+        super(parent, segment, data, context);
+    }
+
+    @Override
+    protected Request buildRequest(URL href) {
+        return new Request.Builder()
+            .url(addFieldsHint(addExpandHint(href)))
+            .addHeader(HEADER_ACCEPT, ACCEPT_MSGPACK)
+            .build();
+    }
+
+    @Override
+    protected Data parseResponse(MediaType contentType, InputStream stream) throws IOException, DataParseException {
+        if (contentType == null || !MsgPack.isMsgPack(contentType.subtype())) {
+            // the server didn't honor our preference
+            return JsonData.parse(contentType, stream);
+        }
+        return asData(new MsgPackReader(readBytes(stream)).readValue());
+    }
+
+    @Override
+    protected Data parseStoredResponse(MediaType contentType, ByteBuffer body) throws DataParseException {
+        if (contentType == null || !MsgPack.isMsgPack(contentType.subtype())) {
+            return super.parseStoredResponse(contentType, body);
+        }
+        // decode straight out of the (memory-mapped) buffer
+        return asData(new MsgPackReader(body).readValue());
+    }
+
+    private static Data asData(Object value) throws DataParseException {
+        if (!(value instanceof MsgPackData)) {
+            throw new DataParseException("MessagePack body is not a map");
+        }
+        return (MsgPackData) value;
+    }
+
+    @Override
+    protected Hyper createHyperNodeFromData(Hyper parent, String segment, Data data) {
+        return new HyperMsgPack(parent, segment, data, getContext());
+    }
+
+    @Override
+    protected boolean isRawData(Object value) {
+        // MessagePack maps are decoded as Data, only JSON fallbacks are raw
+        return value instanceof JSONObject;
+    }
+
+    @Override
+    protected Data createDataFromRawData(Object raw) {
+        return new JsonData((JSONObject) raw);
+    }
+
+}
@@ -0,0 +1,57 @@
+package io.hypergroup.hyper.msgpack;
+
+import android.content.Context;
+
+import com.squareup.okhttp.OkHttpClient;
+
+import java.net.URL;
+
+import io.hypergroup.hyper.Hyper;
+import io.hypergroup.hyper.HyperContext;
+import io.hypergroup.hyper.json.HyperJsons;
+
+/**
+ * Helper method for HyperMsgPack
+ */
+public class HyperMsgPacks {
+
+    /**
+     * Create new root HyperMsgPack node with a cache directory
+     *
+     * @param context Android context to create the cache with
+     * @param url     URL that is the root of the hypermedia
+     * @return The newly created root Hyper node
+     */
+    public static Hyper createRoot(Context context, URL url) {
+        OkHttpClient client = HyperJsons.Client.createClient(context);
+        HyperContext.Builder builder = new HyperContext.Builder()
+            .setHttpClient(client);
+        return createRoot(url, builder.build());
+    }
+
+    /**
+     * Create a new root HyperMsgPack node at the given URL
+     *
+     * @param url URL that is the root of the hypermedia
+     * @return The newly created root Hyper node
+     */
+    public static Hyper createRoot(URL url) {
+        // bare bones root node
+        return createRoot(url, new HyperContext.Builder().build());
+    }
+
+    /**
+     * Create a new root HyperMsgPack node at the given url with your http client
+     *
+     * @param url          URL that is the root of the hypermedia
+     * @param hyperContext Your configured HyperContext
+     * @return The newly created root Hyper node
+     */
+    public static Hyper createRoot(URL url, HyperContext hyperContext) {
+        // create the root node
+        HyperMsgPack node = new HyperMsgPack(null, url, hyperContext);
+        // don't forget to set the root
+        hyperContext.setRoot(node);
+        return node;
+    }
+}
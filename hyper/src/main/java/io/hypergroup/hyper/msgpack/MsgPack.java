@@ -0,0 +1,51 @@
+package io.hypergroup.hyper.msgpack;
+
+/**
+ * MessagePack format bytes and media type
+ */
+public final class MsgPack {
+
+    /**
+     * Media type of MessagePack bodies
+     */
+    public static final String MEDIA_TYPE = "application/x-msgpack";
+
+    /* default */ static final int NIL = 0xc0;
+    /* default */ static final int FALSE = 0xc2;
+    /* default */ static final int TRUE = 0xc3;
+    /* default */ static final int BIN8 = 0xc4;
+    /* default */ static final int BIN16 = 0xc5;
+    /* default */ static final int BIN32 = 0xc6;
+    /* default */ static final int FLOAT32 = 0xca;
+    /* default */ static final int FLOAT64 = 0xcb;
+    /* default */ static final int UINT8 = 0xcc;
+    /* default */ static final int UINT16 = 0xcd;
+    /* default */ static final int UINT32 = 0xce;
+    /* default */ static final int UINT64 = 0xcf;
+    /* default */ static final int INT8 = 0xd0;
+    /* default */ static final int INT16 = 0xd1;
+    /* default */ static final int INT32 = 0xd2;
+    /* default */ static final int INT64 = 0xd3;
+    /* default */ static final int STR8 = 0xd9;
+    /* default */ static final int STR16 = 0xda;
+    /* default */ static final int STR32 = 0xdb;
+    /* default */ static final int ARRAY16 = 0xdc;
+    /* default */ static final int ARRAY32 = 0xdd;
+    /* default */ static final int MAP16 = 0xde;
+    /* default */ static final int MAP32 = 0xdf;
+
+    /* default */ static final int FIXMAP = 0x80;
+    /* default */ static final int FIXARRAY = 0x90;
+    /* default */ static final int FIXSTR = 0xa0;
+
+    private MsgPack() {
+    }
+
+    /**
+     * @param subtype Subtype of a media type, such as "x-msgpack"
+     * @return Whether or not the subtype names MessagePack
+     */
+    public static boolean isMsgPack(String subtype) {
+        return subtype != null && subtype.endsWith("msgpack");
+    }
+}
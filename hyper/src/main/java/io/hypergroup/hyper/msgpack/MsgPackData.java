@@ -0,0 +1,210 @@
+package io.hypergroup.hyper.msgpack;
+
+import android.text.TextUtils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.hypergroup.hyper.Data;
+import io.hypergroup.hyper.NumberArray;
+import io.hypergroup.hyper.exception.InvalidCollectionException;
+import io.hypergroup.hyper.exception.MissingPropertyException;
+import io.hypergroup.hyper.exception.NoHrefException;
+import io.hypergroup.hyper.exception.WrongDataTypeException;
+
+/**
+ * MessagePack implementation of Hyper.Data
+ * <br/>
+ * Wraps a decoded MessagePack map. Nested maps are already MsgPackData, so no wrapping is done
+ * when reading properties or collections.
+ */
+public class MsgPackData implements Data {
+
+    /**
+     * Key used to extract collections
+     */
+    private static final String KEY_COLLECTION = "collection";
+
+    /**
+     * Key used to extract hrefs
+     */
+    private static final String KEY_HREF = "href";
+
+    /**
+     * Wrapped map
+     */
+    private final Map<String, Object> mData;
+
+    /**
+     * Create a new MsgPackData as a wrapper for a decoded map
+     *
+     * @param wrap Map to wrap
+     */
+    public MsgPackData(Map<String, Object> wrap) {
+        mData = wrap;
+    }
+
+    /**
+     * Create a new, empty MsgPackData
+     */
+    public MsgPackData() {
+        this(new LinkedHashMap<String, Object>());
+    }
+
+    @Override
+    public boolean hasProperty(String key) {
+        return mData.containsKey(key);
+    }
+
+    @Override
+    public Object getProperty(String key) throws MissingPropertyException {
+        Object value = mData.get(key);
+        if (value == null && !mData.containsKey(key)) {
+            // fail with a standardized exception
+            throw new MissingPropertyException("Property not found: " + key);
+        }
+        return value;
+    }
+
+    @Override
+    public int getInt(String key) throws MissingPropertyException, WrongDataTypeException {
+        return getNumber(key).intValue();
+    }
+
+    @Override
+    public long getLong(String key) throws MissingPropertyException, WrongDataTypeException {
+        return getNumber(key).longValue();
+    }
+
+    @Override
+    public double getDouble(String key) throws MissingPropertyException, WrongDataTypeException {
+        return getNumber(key).doubleValue();
+    }
+
+    @Override
+    public boolean getBoolean(String key) throws MissingPropertyException, WrongDataTypeException {
+        Object value = getProperty(key);
+        if (!(value instanceof Boolean)) {
+            throw new WrongDataTypeException("Not a boolean: " + key);
+        }
+        return (Boolean) value;
+    }
+
+    private Number getNumber(String key) throws MissingPropertyException, WrongDataTypeException {
+        Object value = getProperty(key);
+        if (!(value instanceof Number)) {
+            throw new WrongDataTypeException("Not a number: " + key);
+        }
+        return (Number) value;
+    }
+
+    @Override
+    public NumberArray getNumberArray(String key) throws MissingPropertyException, WrongDataTypeException {
+        Object value = getProperty(key);
+        // decoding already stored numeric arrays in primitive arrays
+        if (value instanceof NumberArray) {
+            return (NumberArray) value;
+        }
+        NumberArray numbers = value instanceof List ? NumberArray.copyOf((List<?>) value) : null;
+        if (numbers == null) {
+            throw new WrongDataTypeException("Not an array of numbers: " + key);
+        }
+        mData.put(key, numbers);
+        return numbers;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Object> getCollection() throws InvalidCollectionException {
+        Object collection = mData.get(KEY_COLLECTION);
+        if (!(collection instanceof List)) {
+            // fail with a standardized exception
+            throw new InvalidCollectionException("Collection not found");
+        }
+        if (collection instanceof NumberArray) {
+            // read-only already, and copying would box every item
+            return (List<Object>) collection;
+        }
+        // decoding already produced wrapped items
+        return new ArrayList<Object>((List<Object>) collection);
+    }
+
+    @Override
+    public URL getHref(URL relativeHref) throws NoHrefException {
+        String href = getRawHref();
+        // if the href is empty
+        if (TextUtils.isEmpty(href)) {
+            // empty href
+            return relativeHref;
+        }
+        try {
+            // build a relative url
+            return new URL(relativeHref, href);
+        } catch (MalformedURLException ex) {
+            // fail with a standardized exception
+            throw new NoHrefException("Invalid href found", ex);
+        }
+    }
+
+    @Override
+    public String getRawHref() throws NoHrefException {
+        if (!mData.containsKey(KEY_HREF)) {
+            throw new NoHrefException("Valid href not found");
+        }
+        Object href = mData.get(KEY_HREF);
+        if (href == null) {
+            throw new NoHrefException("Found null href");
+        }
+        if (!(href instanceof String)) {
+            throw new NoHrefException("Valid href not found");
+        }
+        return (String) href;
+    }
+
+    @Override
+    public String[] getKeys() {
+        return mData.keySet().toArray(new String[mData.size()]);
+    }
+
+    @Override
+    public void merge(Data data) {
+        if (data instanceof MsgPackData) {
+            mData.putAll(((MsgPackData) data).mData);
+        } else {
+            // a node may be fetched in a different format than its parent
+            for (String key : data.getKeys()) {
+                try {
+                    mData.put(key, fromJson(data.getProperty(key)));
+                } catch (MissingPropertyException ex) {
+                    // un-hittable, the key came from the data itself
+                }
+            }
+        }
+    }
+
+    /**
+     * Turn JSON arrays into Lists, the way MessagePack arrays are decoded, so that getCollection
+     * and getNumberArray read them. JSON objects stay raw data for the node to wrap.
+     */
+    private static Object fromJson(Object value) {
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            int length = array.length();
+            List<Object> list = new ArrayList<Object>(length);
+            for (int index = 0; index < length; index++) {
+                list.add(fromJson(array.opt(index)));
+            }
+            return list;
+        } else if (value == JSONObject.NULL) {
+            return null;
+        }
+        return value;
+    }
+}
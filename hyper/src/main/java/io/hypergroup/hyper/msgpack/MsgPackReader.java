@@ -0,0 +1,293 @@
+package io.hypergroup.hyper.msgpack;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.hypergroup.hyper.NumberArray;
+import io.hypergroup.hyper.exception.DataParseException;
+
+/**
+ * Decodes MessagePack values from a ByteBuffer.
+ * <br/>
+ * Numbers are read straight from their binary form and strings are decoded from UTF-8 without
+ * any tokenizing. Maps become MsgPackData, arrays become Lists. Integers that fit are returned as
+ * Integer and the rest as Long, floating point values as Double, matching org.json. Arrays made
+ * up only of numbers of one kind are decoded straight into a NumberArray without boxing.
+ */
+public class MsgPackReader {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Buffer being read, its position is the read cursor
+     */
+    private final ByteBuffer mBuffer;
+
+    /**
+     * Create a reader over the remaining bytes of a buffer
+     *
+     * @param buffer Buffer to read, it is not copied
+     */
+    public MsgPackReader(ByteBuffer buffer) {
+        mBuffer = buffer;
+    }
+
+    /**
+     * Create a reader over a byte array
+     *
+     * @param bytes Bytes to read, they are not copied
+     */
+    public MsgPackReader(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * @return Whether or not there are bytes left to read
+     */
+    public boolean hasRemaining() {
+        return mBuffer.hasRemaining();
+    }
+
+    /**
+     * Read the next value
+     *
+     * @return The decoded value, null for nil
+     * @throws DataParseException When the buffer is truncated or holds an unsupported type
+     */
+    public Object readValue() throws DataParseException {
+        try {
+            return read();
+        } catch (BufferUnderflowException ex) {
+            throw new DataParseException("Truncated MessagePack", ex);
+        }
+    }
+
+    private Object read() throws DataParseException {
+        int type = mBuffer.get() & 0xff;
+
+        // ## Fixed formats
+
+        if (type <= 0x7f) {
+            // positive fixint
+            return type;
+        } else if (type <= 0x8f) {
+            return readMap(type & 0x0f);
+        } else if (type <= 0x9f) {
+            return readArray(type & 0x0f);
+        } else if (type <= 0xbf) {
+            return readString(type & 0x1f);
+        } else if (type >= 0xe0) {
+            // negative fixint
+            return (int) (byte) type;
+        }
+
+        // ## Tagged formats
+
+        switch (type) {
+            case MsgPack.NIL:
+                return null;
+            case MsgPack.FALSE:
+                return Boolean.FALSE;
+            case MsgPack.TRUE:
+                return Boolean.TRUE;
+            case MsgPack.BIN8:
+                return readBinary(mBuffer.get() & 0xff);
+            case MsgPack.BIN16:
+                return readBinary(mBuffer.getShort() & 0xffff);
+            case MsgPack.BIN32:
+                return readBinary(readLength32());
+            case MsgPack.FLOAT32:
+                return (double) mBuffer.getFloat();
+            case MsgPack.FLOAT64:
+                return mBuffer.getDouble();
+            case MsgPack.UINT8:
+                return mBuffer.get() & 0xff;
+            case MsgPack.UINT16:
+                return mBuffer.getShort() & 0xffff;
+            case MsgPack.UINT32:
+                return narrow(mBuffer.getInt() & 0xffffffffL);
+            case MsgPack.UINT64:
+                return narrow(mBuffer.getLong());
+            case MsgPack.INT8:
+                return (int) mBuffer.get();
+            case MsgPack.INT16:
+                return (int) mBuffer.getShort();
+            case MsgPack.INT32:
+                return mBuffer.getInt();
+            case MsgPack.INT64:
+                return narrow(mBuffer.getLong());
+            case MsgPack.STR8:
+                return readString(mBuffer.get() & 0xff);
+            case MsgPack.STR16:
+                return readString(mBuffer.getShort() & 0xffff);
+            case MsgPack.STR32:
+                return readString(readLength32());
+            case MsgPack.ARRAY16:
+                return readArray(mBuffer.getShort() & 0xffff);
+            case MsgPack.ARRAY32:
+                return readArray(readLength32());
+            case MsgPack.MAP16:
+                return readMap(mBuffer.getShort() & 0xffff);
+            case MsgPack.MAP32:
+                return readMap(readLength32());
+            default:
+                throw new DataParseException("Unsupported MessagePack type: 0x" + Integer.toHexString(type));
+        }
+    }
+
+    /**
+     * Box a long as an Integer when it fits, like org.json does
+     */
+    private static Object narrow(long value) {
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return (int) value;
+        }
+        return value;
+    }
+
+    private int readLength32() throws DataParseException {
+        int length = mBuffer.getInt();
+        if (length < 0) {
+            throw new DataParseException("MessagePack length too large");
+        }
+        return length;
+    }
+
+    private String readString(int length) {
+        if (mBuffer.hasArray()) {
+            // decode in place
+            int offset = mBuffer.arrayOffset() + mBuffer.position();
+            String value = new String(mBuffer.array(), offset, length, UTF_8);
+            mBuffer.position(mBuffer.position() + length);
+            return value;
+        }
+        // direct and mapped buffers have to be copied out first
+        byte[] bytes = new byte[length];
+        mBuffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private byte[] readBinary(int length) {
+        byte[] bytes = new byte[length];
+        mBuffer.get(bytes);
+        return bytes;
+    }
+
+    private List<?> readArray(int size) throws DataParseException {
+        if (size > 0 && isNumber(mBuffer.get(mBuffer.position()) & 0xff)) {
+            int start = mBuffer.position();
+            NumberArray numbers = readNumberArray(size);
+            if (numbers != null) {
+                return numbers;
+            }
+            // not all numbers, start over boxing each item
+            mBuffer.position(start);
+        }
+        List<Object> items = new ArrayList<Object>(size);
+        for (int index = 0; index < size; index++) {
+            items.add(read());
+        }
+        return items;
+    }
+
+    private static boolean isNumber(int type) {
+        return type <= 0x7f || type >= 0xe0 || (type >= MsgPack.FLOAT32 && type <= MsgPack.INT64);
+    }
+
+    /**
+     * Decode an array of numbers into a primitive array, when its items box back exactly as read
+     * would box them: all floats, all integers that fit an int, or all integers that do not
+     *
+     * @return The numbers, or null as soon as an item is not a number, or for mixed kinds of numbers
+     */
+    private NumberArray readNumberArray(int size) {
+        long[] longs = new long[size];
+        double[] doubles = null;
+        for (int index = 0; index < size; index++) {
+            int type = mBuffer.get() & 0xff;
+            long value;
+            if (type <= 0x7f) {
+                value = type;
+            } else if (type >= 0xe0) {
+                value = (byte) type;
+            } else {
+                switch (type) {
+                    case MsgPack.FLOAT32:
+                    case MsgPack.FLOAT64:
+                        if (index > 0 && doubles == null) {
+                            // integers and floats box differently
+                            return null;
+                        }
+                        if (doubles == null) {
+                            doubles = new double[size];
+                        }
+                        doubles[index] = type == MsgPack.FLOAT32 ? mBuffer.getFloat() : mBuffer.getDouble();
+                        continue;
+                    case MsgPack.UINT8:
+                        value = mBuffer.get() & 0xff;
+                        break;
+                    case MsgPack.UINT16:
+                        value = mBuffer.getShort() & 0xffff;
+                        break;
+                    case MsgPack.UINT32:
+                        value = mBuffer.getInt() & 0xffffffffL;
+                        break;
+                    case MsgPack.UINT64:
+                    case MsgPack.INT64:
+                        value = mBuffer.getLong();
+                        break;
+                    case MsgPack.INT8:
+                        value = mBuffer.get();
+                        break;
+                    case MsgPack.INT16:
+                        value = mBuffer.getShort();
+                        break;
+                    case MsgPack.INT32:
+                        value = mBuffer.getInt();
+                        break;
+                    default:
+                        return null;
+                }
+            }
+            if (doubles != null) {
+                return null;
+            }
+            longs[index] = value;
+        }
+        if (doubles != null) {
+            return NumberArray.of(doubles);
+        }
+        int wide = 0;
+        for (long value : longs) {
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                wide++;
+            }
+        }
+        if (wide == size) {
+            return NumberArray.of(longs);
+        } else if (wide > 0) {
+            // Integers and Longs
+            return null;
+        }
+        int[] ints = new int[size];
+        for (int index = 0; index < size; index++) {
+            ints[index] = (int) longs[index];
+        }
+        return NumberArray.of(ints);
+    }
+
+    private MsgPackData readMap(int size) throws DataParseException {
+        // size the map so that it never rehashes
+        Map<String, Object> map = new LinkedHashMap<String, Object>(size * 4 / 3 + 1);
+        for (int index = 0; index < size; index++) {
+            Object key = read();
+            map.put(String.valueOf(key), read());
+        }
+        return new MsgPackData(map);
+    }
+}
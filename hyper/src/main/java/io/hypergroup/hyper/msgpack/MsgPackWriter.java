@@ -0,0 +1,232 @@
+package io.hypergroup.hyper.msgpack;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+import io.hypergroup.hyper.Data;
+import io.hypergroup.hyper.exception.MissingPropertyException;
+
+/**
+ * Encodes values as MessagePack.
+ * <br/>
+ * Understands boxed primitives, Strings, byte arrays, Maps, Collections, Data, and the org.json
+ * types, so a JSON document can be converted value for value.
+ */
+public class MsgPackWriter {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final DataOutputStream mOut;
+
+    public MsgPackWriter(OutputStream out) {
+        mOut = new DataOutputStream(out);
+    }
+
+    /**
+     * Write a value and everything it contains
+     *
+     * @param value Value to write
+     * @throws IOException When writing fails or the value cannot be encoded
+     */
+    public void writeValue(Object value) throws IOException {
+        if (value == null || value == JSONObject.NULL) {
+            writeNil();
+        } else if (value instanceof Boolean) {
+            writeBoolean((Boolean) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            writeLong(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof byte[]) {
+            writeBinary((byte[]) value);
+        } else if (value instanceof Map) {
+            writeMap((Map<?, ?>) value);
+        } else if (value instanceof Collection) {
+            writeCollection((Collection<?>) value);
+        } else if (value instanceof Data) {
+            writeData((Data) value);
+        } else if (value instanceof JSONObject) {
+            writeJsonObject((JSONObject) value);
+        } else if (value instanceof JSONArray) {
+            writeJsonArray((JSONArray) value);
+        } else {
+            throw new IOException("Cannot encode " + value.getClass().getName() + " as MessagePack");
+        }
+    }
+
+    public void writeNil() throws IOException {
+        mOut.writeByte(MsgPack.NIL);
+    }
+
+    public void writeBoolean(boolean value) throws IOException {
+        mOut.writeByte(value ? MsgPack.TRUE : MsgPack.FALSE);
+    }
+
+    /**
+     * Write an integer in the smallest format that holds it
+     */
+    public void writeLong(long value) throws IOException {
+        if (value >= 0) {
+            if (value <= 0x7f) {
+                mOut.writeByte((int) value);
+            } else if (value <= 0xff) {
+                mOut.writeByte(MsgPack.UINT8);
+                mOut.writeByte((int) value);
+            } else if (value <= 0xffff) {
+                mOut.writeByte(MsgPack.UINT16);
+                mOut.writeShort((int) value);
+            } else if (value <= 0xffffffffL) {
+                mOut.writeByte(MsgPack.UINT32);
+                mOut.writeInt((int) value);
+            } else {
+                mOut.writeByte(MsgPack.INT64);
+                mOut.writeLong(value);
+            }
+        } else {
+            if (value >= -32) {
+                mOut.writeByte((int) value);
+            } else if (value >= Byte.MIN_VALUE) {
+                mOut.writeByte(MsgPack.INT8);
+                mOut.writeByte((int) value);
+            } else if (value >= Short.MIN_VALUE) {
+                mOut.writeByte(MsgPack.INT16);
+                mOut.writeShort((int) value);
+            } else if (value >= Integer.MIN_VALUE) {
+                mOut.writeByte(MsgPack.INT32);
+                mOut.writeInt((int) value);
+            } else {
+                mOut.writeByte(MsgPack.INT64);
+                mOut.writeLong(value);
+            }
+        }
+    }
+
+    public void writeDouble(double value) throws IOException {
+        mOut.writeByte(MsgPack.FLOAT64);
+        mOut.writeDouble(value);
+    }
+
+    public void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        int length = bytes.length;
+        if (length <= 0x1f) {
+            mOut.writeByte(MsgPack.FIXSTR | length);
+        } else if (length <= 0xff) {
+            mOut.writeByte(MsgPack.STR8);
+            mOut.writeByte(length);
+        } else if (length <= 0xffff) {
+            mOut.writeByte(MsgPack.STR16);
+            mOut.writeShort(length);
+        } else {
+            mOut.writeByte(MsgPack.STR32);
+            mOut.writeInt(length);
+        }
+        mOut.write(bytes);
+    }
+
+    public void writeBinary(byte[] value) throws IOException {
+        int length = value.length;
+        if (length <= 0xff) {
+            mOut.writeByte(MsgPack.BIN8);
+            mOut.writeByte(length);
+        } else if (length <= 0xffff) {
+            mOut.writeByte(MsgPack.BIN16);
+            mOut.writeShort(length);
+        } else {
+            mOut.writeByte(MsgPack.BIN32);
+            mOut.writeInt(length);
+        }
+        mOut.write(value);
+    }
+
+    /**
+     * Write the header of an array, followed by size calls to write its items
+     */
+    public void writeArrayHeader(int size) throws IOException {
+        if (size <= 0x0f) {
+            mOut.writeByte(MsgPack.FIXARRAY | size);
+        } else if (size <= 0xffff) {
+            mOut.writeByte(MsgPack.ARRAY16);
+            mOut.writeShort(size);
+        } else {
+            mOut.writeByte(MsgPack.ARRAY32);
+            mOut.writeInt(size);
+        }
+    }
+
+    /**
+     * Write the header of a map, followed by size key and value pairs
+     */
+    public void writeMapHeader(int size) throws IOException {
+        if (size <= 0x0f) {
+            mOut.writeByte(MsgPack.FIXMAP | size);
+        } else if (size <= 0xffff) {
+            mOut.writeByte(MsgPack.MAP16);
+            mOut.writeShort(size);
+        } else {
+            mOut.writeByte(MsgPack.MAP32);
+            mOut.writeInt(size);
+        }
+    }
+
+    public void flush() throws IOException {
+        mOut.flush();
+    }
+
+    private void writeMap(Map<?, ?> map) throws IOException {
+        writeMapHeader(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            writeString(String.valueOf(entry.getKey()));
+            writeValue(entry.getValue());
+        }
+    }
+
+    private void writeCollection(Collection<?> collection) throws IOException {
+        writeArrayHeader(collection.size());
+        for (Object item : collection) {
+            writeValue(item);
+        }
+    }
+
+    private void writeData(Data data) throws IOException {
+        String[] keys = data.getKeys();
+        writeMapHeader(keys.length);
+        for (String key : keys) {
+            writeString(key);
+            try {
+                writeValue(data.getProperty(key));
+            } catch (MissingPropertyException ex) {
+                // un-hittable, the key came from the data itself
+                throw new IOException("Missing property while encoding: " + key);
+            }
+        }
+    }
+
+    private void writeJsonObject(JSONObject json) throws IOException {
+        writeMapHeader(json.length());
+        Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            writeString(key);
+            writeValue(json.opt(key));
+        }
+    }
+
+    private void writeJsonArray(JSONArray json) throws IOException {
+        int N = json.length();
+        writeArrayHeader(N);
+        for (int index = 0; index < N; index++) {
+            writeValue(json.opt(index));
+        }
+    }
+}
@@ -0,0 +1,568 @@
+package io.hypergroup.hyper.store;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Append-only disk store of raw hypermedia responses, separate from the OkHttp http cache.
+ * <br/>
+ * Responses are appended to segment logs together with their validators and fetch time. An
+ * in-memory index maps each href to the location of its latest body, and reads hand out slices of
+ * a memory-mapped segment so that restoring a node costs a page-cache read.
+ * <br/>
+ * Once the segments grow past the size cap, the oldest responses are dropped and the live ones
+ * are compacted into fresh segments.
+ */
+public class ResponseStore implements Closeable {
+
+    /**
+     * Tag for logging
+     */
+    private static final String TAG = ResponseStore.class.getSimpleName();
+
+    /**
+     * Marks the start of every record, "HYPR"
+     */
+    private static final int MAGIC = 0x48595052;
+
+    /**
+     * Body length of a record that removes an href
+     */
+    private static final int TOMBSTONE = -1;
+
+    /**
+     * Body length of a record that marks the stored response for an href as fetched again
+     */
+    private static final int TOUCH = -2;
+
+    private static final int FLAG_ETAG = 1;
+    private static final int FLAG_LAST_MODIFIED = 1 << 1;
+    private static final int FLAG_CONTENT_TYPE = 1 << 2;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Default size a segment may reach before a new one is started
+     */
+    public static final long DEFAULT_SEGMENT_BYTES = 1024 * 1024 * 4;
+
+    /**
+     * Fraction of the size cap that trimming brings the live responses down to
+     */
+    private static final double TRIM_RATIO = 0.75;
+
+    private final File mDirectory;
+    private final long mMaxSizeBytes;
+    private final long mSegmentBytes;
+
+    /**
+     * Latest location of each href
+     */
+    private final Map<String, Entry> mIndex = new HashMap<String, Entry>();
+
+    /**
+     * Open segments by id
+     */
+    private final TreeMap<Integer, Segment> mSegments = new TreeMap<Integer, Segment>();
+
+    /**
+     * Segment being appended to
+     */
+    private Segment mActive;
+
+    /**
+     * Bytes of all segments
+     */
+    private long mTotalBytes;
+
+    /**
+     * Bytes of the records the index points to
+     */
+    private long mLiveBytes;
+
+    /**
+     * Open a store in the given directory, reading the records already there
+     *
+     * @param directory    Directory for the segment logs
+     * @param maxSizeBytes Size cap of all segments
+     * @throws IOException When the directory cannot be used
+     */
+    public ResponseStore(File directory, long maxSizeBytes) throws IOException {
+        this(directory, maxSizeBytes, Math.min(DEFAULT_SEGMENT_BYTES, Math.max(1, maxSizeBytes / 4)));
+    }
+
+    /**
+     * Open a store in the given directory, reading the records already there
+     *
+     * @param directory    Directory for the segment logs
+     * @param maxSizeBytes Size cap of all segments
+     * @param segmentBytes Size a segment may reach before a new one is started
+     * @throws IOException When the directory cannot be used
+     */
+    public ResponseStore(File directory, long maxSizeBytes, long segmentBytes) throws IOException {
+        mDirectory = directory;
+        mMaxSizeBytes = maxSizeBytes;
+        mSegmentBytes = segmentBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create store directory: " + directory);
+        }
+        load();
+    }
+
+    /**
+     * Read the latest response stored for an href
+     *
+     * @param href Href of the response
+     * @return The stored response or null if there is none
+     */
+    public synchronized StoredResponse get(String href) {
+        Entry entry = mIndex.get(href);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            ByteBuffer body = entry.segment.map();
+            body.position((int) entry.bodyOffset);
+            body.limit((int) entry.bodyOffset + entry.bodyLength);
+            return new StoredResponse(href, entry.eTag, entry.lastModified, entry.contentType, entry.fetchedAt, body.slice());
+        } catch (IOException ex) {
+            Log.w(TAG, "Unable to map stored response: " + href, ex);
+            return null;
+        }
+    }
+
+    /**
+     * @return Whether or not a response is stored for the href
+     */
+    public synchronized boolean contains(String href) {
+        return mIndex.containsKey(href);
+    }
+
+    /**
+     * Append a response, replacing any earlier response for the same href
+     *
+     * @param href         Href of the response
+     * @param eTag         ETag validator, may be null
+     * @param lastModified Last-Modified validator, may be null
+     * @param contentType  Content-Type of the body, may be null
+     * @param fetchedAt    Wall clock time the body was fetched at, in milliseconds
+     * @param body         Decoded body
+     * @throws IOException When writing fails
+     */
+    public synchronized void put(String href, String eTag, String lastModified, String contentType, long fetchedAt, byte[] body) throws IOException {
+        append(href, eTag, lastModified, contentType, fetchedAt, ByteBuffer.wrap(body));
+        if (mTotalBytes > mMaxSizeBytes) {
+            trim();
+        }
+    }
+
+    /**
+     * Mark the response stored for an href as fetched again, once the server confirmed it is still
+     * current, without writing its body again
+     *
+     * @param href      Href of the response
+     * @param fetchedAt Wall clock time it was confirmed at, in milliseconds
+     * @throws IOException When writing fails
+     */
+    public synchronized void touch(String href, long fetchedAt) throws IOException {
+        Entry entry = mIndex.get(href);
+        if (entry != null) {
+            writeRecord(href, null, null, null, fetchedAt, TOUCH, null);
+            mIndex.put(href, entry.touched(fetchedAt));
+            if (mTotalBytes > mMaxSizeBytes) {
+                trim();
+            }
+        }
+    }
+
+    /**
+     * Forget the response stored for an href
+     *
+     * @param href Href of the response
+     * @throws IOException When writing fails
+     */
+    public synchronized void remove(String href) throws IOException {
+        Entry entry = mIndex.remove(href);
+        if (entry != null) {
+            mLiveBytes -= entry.recordSize;
+            append(href, null, null, null, System.currentTimeMillis(), null);
+        }
+    }
+
+    /**
+     * @return Bytes used on disk by all segments
+     */
+    public synchronized long getSizeBytes() {
+        return mTotalBytes;
+    }
+
+    /**
+     * @return Number of hrefs with a stored response
+     */
+    public synchronized int getCount() {
+        return mIndex.size();
+    }
+
+    /**
+     * Rewrite the live responses into fresh segments and delete the old ones
+     *
+     * @throws IOException When writing fails
+     */
+    public synchronized void compact() throws IOException {
+        List<Entry> entries = new ArrayList<Entry>(mIndex.values());
+        // oldest first, so the newest end up in the active segment
+        Collections.sort(entries, BY_FETCHED_AT);
+
+        List<Segment> old = new ArrayList<Segment>(mSegments.values());
+        mActive = null;
+        for (Entry entry : entries) {
+            ByteBuffer body = entry.segment.map();
+            body.position((int) entry.bodyOffset);
+            body.limit((int) entry.bodyOffset + entry.bodyLength);
+            append(entry.href, entry.eTag, entry.lastModified, entry.contentType, entry.fetchedAt, body.slice());
+        }
+        for (Segment segment : old) {
+            mSegments.remove(segment.id);
+            mTotalBytes -= segment.length;
+            segment.delete();
+        }
+    }
+
+    /**
+     * Drop the oldest responses until the live ones fit well under the size cap, then compact
+     */
+    private void trim() throws IOException {
+        long target = (long) (mMaxSizeBytes * TRIM_RATIO);
+        if (mLiveBytes > target) {
+            List<Entry> entries = new ArrayList<Entry>(mIndex.values());
+            Collections.sort(entries, BY_FETCHED_AT);
+            Iterator<Entry> oldest = entries.iterator();
+            while (mLiveBytes > target && oldest.hasNext()) {
+                Entry entry = oldest.next();
+                mIndex.remove(entry.href);
+                mLiveBytes -= entry.recordSize;
+            }
+        }
+        compact();
+    }
+
+    /**
+     * Write a record to the active segment and index it
+     *
+     * @param body Body to write, or null for a tombstone
+     */
+    private void append(String href, String eTag, String lastModified, String contentType, long fetchedAt, ByteBuffer body) throws IOException {
+        int bodyLength = body == null ? TOMBSTONE : body.remaining();
+        long recordSize = writeRecord(href, eTag, lastModified, contentType, fetchedAt, bodyLength, body);
+
+        // ## Index
+
+        Entry previous = mIndex.remove(href);
+        if (previous != null) {
+            mLiveBytes -= previous.recordSize;
+        }
+        if (body != null) {
+            Entry entry = new Entry(href, mActive, mActive.length - bodyLength, bodyLength, recordSize, fetchedAt, eTag, lastModified, contentType);
+            mIndex.put(href, entry);
+            mLiveBytes += entry.recordSize;
+        }
+    }
+
+    /**
+     * Write a record to the active segment
+     *
+     * @param bodyLength Length of the body, or TOMBSTONE or TOUCH without one
+     * @param body       Body to write, may be null
+     * @return Size of the record
+     */
+    private long writeRecord(String href, String eTag, String lastModified, String contentType, long fetchedAt, int bodyLength, ByteBuffer body) throws IOException {
+        // ## Header
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream(128);
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeLong(fetchedAt);
+        header.writeUTF(href);
+        int flags = (eTag != null ? FLAG_ETAG : 0)
+            | (lastModified != null ? FLAG_LAST_MODIFIED : 0)
+            | (contentType != null ? FLAG_CONTENT_TYPE : 0);
+        header.writeByte(flags);
+        if (eTag != null) {
+            header.writeUTF(eTag);
+        }
+        if (lastModified != null) {
+            header.writeUTF(lastModified);
+        }
+        if (contentType != null) {
+            header.writeUTF(contentType);
+        }
+        header.writeInt(bodyLength);
+
+        // ## Record
+
+        int recordLength = header.size() + Math.max(0, bodyLength);
+        ByteBuffer prefix = ByteBuffer.allocate(8);
+        prefix.putInt(MAGIC);
+        prefix.putInt(recordLength);
+        prefix.flip();
+
+        Segment segment = getActiveSegment(8 + recordLength);
+        long recordOffset = segment.length;
+        segment.write(prefix);
+        segment.write(ByteBuffer.wrap(headerBytes.toByteArray()));
+        if (body != null) {
+            segment.write(body);
+        }
+        mTotalBytes += segment.length - recordOffset;
+        return 8 + recordLength;
+    }
+
+    /**
+     * @param recordSize Size of the record about to be written
+     * @return A segment with room for the record, rolling over to a new one if needed
+     */
+    private Segment getActiveSegment(long recordSize) throws IOException {
+        if (mActive == null || (mActive.length > 0 && mActive.length + recordSize > mSegmentBytes)) {
+            int id = mSegments.isEmpty() ? 0 : mSegments.lastKey() + 1;
+            mActive = new Segment(id, new File(mDirectory, segmentName(id)));
+            mSegments.put(id, mActive);
+        }
+        return mActive;
+    }
+
+    /**
+     * Scan the existing segments to rebuild the index, truncating torn records left by a crash
+     */
+    private void load() throws IOException {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            Integer id = segmentId(file.getName());
+            if (id != null) {
+                mSegments.put(id, new Segment(id, file));
+            }
+        }
+        for (Segment segment : mSegments.values()) {
+            long valid = scan(segment);
+            if (valid < segment.length) {
+                Log.w(TAG, "Truncating torn segment " + segment.file + " at " + valid);
+                segment.truncate(valid);
+            }
+            mTotalBytes += segment.length;
+        }
+        if (!mSegments.isEmpty()) {
+            mActive = mSegments.lastEntry().getValue();
+        }
+    }
+
+    /**
+     * Index every record in a segment
+     *
+     * @return Length of the segment up to the last complete record
+     */
+    private long scan(Segment segment) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file)));
+        long offset = 0;
+        try {
+            while (offset < segment.length) {
+                if (in.readInt() != MAGIC) {
+                    break;
+                }
+                int recordLength = in.readInt();
+                if (recordLength < 0 || offset + 8 + recordLength > segment.length) {
+                    break;
+                }
+                long fetchedAt = in.readLong();
+                String href = in.readUTF();
+                int flags = in.readByte();
+                String eTag = (flags & FLAG_ETAG) != 0 ? in.readUTF() : null;
+                String lastModified = (flags & FLAG_LAST_MODIFIED) != 0 ? in.readUTF() : null;
+                String contentType = (flags & FLAG_CONTENT_TYPE) != 0 ? in.readUTF() : null;
+                int bodyLength = in.readInt();
+                long recordEnd = offset + 8 + recordLength;
+
+                if (bodyLength == TOUCH) {
+                    Entry entry = mIndex.get(href);
+                    if (entry != null) {
+                        mIndex.put(href, entry.touched(fetchedAt));
+                    }
+                    offset = recordEnd;
+                    continue;
+                }
+                Entry previous = mIndex.remove(href);
+                if (previous != null) {
+                    mLiveBytes -= previous.recordSize;
+                }
+                if (bodyLength != TOMBSTONE) {
+                    long bodyOffset = recordEnd - bodyLength;
+                    Entry entry = new Entry(href, segment, bodyOffset, bodyLength, 8 + recordLength, fetchedAt, eTag, lastModified, contentType);
+                    mIndex.put(href, entry);
+                    mLiveBytes += entry.recordSize;
+                    // skip the body
+                    long remaining = bodyLength;
+                    while (remaining > 0) {
+                        long skipped = in.skip(remaining);
+                        if (skipped <= 0) {
+                            throw new EOFException();
+                        }
+                        remaining -= skipped;
+                    }
+                }
+                offset = recordEnd;
+            }
+        } catch (EOFException ex) {
+            // torn record, everything before it is still good
+        } finally {
+            in.close();
+        }
+        return offset;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment segment : mSegments.values()) {
+            segment.close();
+        }
+        mSegments.clear();
+        mIndex.clear();
+        mActive = null;
+    }
+
+    private static String segmentName(int id) {
+        return SEGMENT_PREFIX + String.format("%08d", id) + SEGMENT_SUFFIX;
+    }
+
+    private static Integer segmentId(String name) {
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()), 10);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static final Comparator<Entry> BY_FETCHED_AT = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            return lhs.fetchedAt < rhs.fetchedAt ? -1 : (lhs.fetchedAt == rhs.fetchedAt ? 0 : 1);
+        }
+    };
+
+    /**
+     * Index entry, where the latest body of an href lives
+     */
+    private static class Entry {
+
+        final String href;
+        final Segment segment;
+        final long bodyOffset;
+        final int bodyLength;
+        final long recordSize;
+        final long fetchedAt;
+        final String eTag;
+        final String lastModified;
+        final String contentType;
+
+        Entry(String href, Segment segment, long bodyOffset, int bodyLength, long recordSize, long fetchedAt, String eTag, String lastModified, String contentType) {
+            this.href = href;
+            this.segment = segment;
+            this.bodyOffset = bodyOffset;
+            this.bodyLength = bodyLength;
+            this.recordSize = recordSize;
+            this.fetchedAt = fetchedAt;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+        }
+
+        /**
+         * @return This entry, fetched again at the given time
+         */
+        Entry touched(long fetchedAt) {
+            return new Entry(href, segment, bodyOffset, bodyLength, recordSize, fetchedAt, eTag, lastModified, contentType);
+        }
+    }
+
+    /**
+     * A segment log file
+     */
+    private static class Segment {
+
+        final int id;
+        final File file;
+        final RandomAccessFile raf;
+        final FileChannel channel;
+        long length;
+
+        /**
+         * Mapping of the segment, remapped when the segment has grown past it
+         */
+        MappedByteBuffer map;
+
+        Segment(int id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            raf = new RandomAccessFile(file, "rw");
+            channel = raf.getChannel();
+            length = channel.size();
+        }
+
+        /**
+         * @return A read-only view of the whole segment with its own position and limit
+         */
+        ByteBuffer map() throws IOException {
+            if (map == null || map.capacity() < length) {
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            }
+            return map.duplicate();
+        }
+
+        void write(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                length += channel.write(buffer, length);
+            }
+        }
+
+        void truncate(long size) throws IOException {
+            channel.truncate(size);
+            length = size;
+        }
+
+        void close() throws IOException {
+            map = null;
+            raf.close();
+        }
+
+        void delete() throws IOException {
+            close();
+            if (!file.delete()) {
+                Log.w(TAG, "Unable to delete segment: " + file);
+            }
+        }
+    }
+}
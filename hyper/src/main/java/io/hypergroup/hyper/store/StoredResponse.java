@@ -0,0 +1,71 @@
+package io.hypergroup.hyper.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A response body read from a ResponseStore along with the validators it was stored with
+ */
+public class StoredResponse {
+
+    private final String mHref;
+    private final String mETag;
+    private final String mLastModified;
+    private final String mContentType;
+    private final long mFetchedAt;
+    private final ByteBuffer mBody;
+
+    /* default */ StoredResponse(String href, String eTag, String lastModified, String contentType, long fetchedAt, ByteBuffer body) {
+        mHref = href;
+        mETag = eTag;
+        mLastModified = lastModified;
+        mContentType = contentType;
+        mFetchedAt = fetchedAt;
+        mBody = body;
+    }
+
+    public String getHref() {
+        return mHref;
+    }
+
+    /**
+     * @return The ETag validator, or null
+     */
+    public String getETag() {
+        return mETag;
+    }
+
+    /**
+     * @return The Last-Modified validator, or null
+     */
+    public String getLastModified() {
+        return mLastModified;
+    }
+
+    /**
+     * @return The Content-Type of the body, or null
+     */
+    public String getContentType() {
+        return mContentType;
+    }
+
+    /**
+     * @return Wall clock time the body was fetched at, in milliseconds
+     */
+    public long getFetchedAt() {
+        return mFetchedAt;
+    }
+
+    /**
+     * @return Milliseconds since the body was fetched
+     */
+    public long getAge() {
+        return System.currentTimeMillis() - mFetchedAt;
+    }
+
+    /**
+     * @return A read-only view of the body, each call returns a view with its own position
+     */
+    public ByteBuffer getBody() {
+        return mBody.duplicate();
+    }
+}